@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.benchmarks;
+
+import java.util.Random;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * A PenTrace is a synthetic pen stroke: a looping, drifting path with
+ * varying pressure, tilt and orientation, sampled at a fixed rate with
+ * a little jitter. The same seed always produces the same trace.
+ * 
+ * toEvents() groups the samples the way Android delivers them to a
+ * 60 Hz display: one ACTION_DOWN, then an ACTION_MOVE per frame holding
+ * every sample since the previous frame as history, then an ACTION_UP.
+ * 
+ * @author wacom
+ */
+public final class PenTrace {
+	
+	/** Interval between display frames, in milliseconds. */
+	public static final float FRAME_INTERVAL = 1000 / 60f;
+	
+	public final int rate;
+	public final int count;
+	public final long[]  time;
+	public final float[] x, y, pressure, tilt, orientation;
+	
+	PenTrace(int rate, int count) {
+		this.rate = rate;
+		this.count = count;
+		time = new long[count];
+		x = new float[count];
+		y = new float[count];
+		pressure = new float[count];
+		tilt = new float[count];
+		orientation = new float[count];
+	}
+	
+	/**
+	 * Generate a trace.
+	 * 
+	 * @param rate     Sampling rate, in Hz
+	 * @param seconds  Length of the trace
+	 * @param seed     Seed for the jitter
+	 * @return         The trace, with times starting at zero
+	 */
+	public static PenTrace generate(int rate, float seconds, long seed) {
+		Random random = new Random(seed);
+		PenTrace trace = new PenTrace(rate, Math.max(2, Math.round(rate * seconds)));
+		
+		for (int i = 0; i < trace.count; i++) {
+			double t = i / (double)rate;
+			trace.time[i]        = Math.round(1000 * t);
+			trace.x[i]           = (float)(100 + 150 * t + 60 * Math.sin(2 * Math.PI * 2.3 * t) + random.nextGaussian() * 0.3);
+			trace.y[i]           = (float)(300 + 80 * Math.sin(2 * Math.PI * 1.7 * t + 0.5) + random.nextGaussian() * 0.3);
+			trace.pressure[i]    = (float)Math.max(0.05, Math.min(1, 0.55 + 0.35 * Math.sin(2 * Math.PI * 0.9 * t)));
+			trace.tilt[i]        = (float)(0.6 + 0.2 * Math.sin(2 * Math.PI * 0.4 * t));
+			trace.orientation[i] = (float)(-0.8 + 0.3 * Math.cos(2 * Math.PI * 0.3 * t));
+		}
+		return trace;
+	}
+	
+	/**
+	 * Group the trace into the MotionEvents a view would receive.
+	 * 
+	 * @param deviceId  Device ID to give the events
+	 * @param toolType  Tool type of the single pointer
+	 * @return          Events in the order they would be dispatched
+	 */
+	public MotionEvent[] toEvents(int deviceId, int toolType) {
+		int frames = (int)Math.ceil(time[count - 1] / FRAME_INTERVAL);
+		MotionEvent[] events = new MotionEvent[frames + 2];
+		
+		MotionEvent.PointerProperties[] props = { new MotionEvent.PointerProperties() };
+		MotionEvent.PointerCoords[] coords = { new MotionEvent.PointerCoords() };
+		props[0].id = 0;
+		props[0].toolType = toolType;
+		
+		int n = 0;
+		events[n++] = obtain(MotionEvent.ACTION_DOWN, 0, deviceId, props, coords);
+		
+		int i = 1;
+		for (int f = 1; f <= frames && i < count - 1; f++) {
+			float end = f * FRAME_INTERVAL;
+			MotionEvent e = obtain(MotionEvent.ACTION_MOVE, i++, deviceId, props, coords);
+			while (i < count - 1 && time[i] <= end)
+				e.addBatch(time[i], coords(i++, coords), 0);
+			events[n++] = e;
+		}
+		events[n++] = obtain(MotionEvent.ACTION_UP, count - 1, deviceId, props, coords);
+		
+		MotionEvent[] result = new MotionEvent[n];
+		System.arraycopy(events, 0, result, 0, n);
+		return result;
+	}
+	
+	MotionEvent obtain(int action, int i, int deviceId,
+	        MotionEvent.PointerProperties[] props, MotionEvent.PointerCoords[] coords) {
+		return MotionEvent.obtain(time[0], time[i], action, 1, props, coords(i, coords),
+		                          0, 0, 1, 1, deviceId, 0, InputDevice.SOURCE_STYLUS, 0);
+	}
+	
+	MotionEvent.PointerCoords[] coords(int i, MotionEvent.PointerCoords[] coords) {
+		MotionEvent.PointerCoords c = coords[0];
+		c.setAxisValue(MotionEvent.AXIS_X, x[i]);
+		c.setAxisValue(MotionEvent.AXIS_Y, y[i]);
+		c.setAxisValue(MotionEvent.AXIS_PRESSURE, pressure[i]);
+		c.setAxisValue(MotionEvent.AXIS_SIZE, 0.01f);
+		c.setAxisValue(MotionEvent.AXIS_TILT, tilt[i]);
+		c.setAxisValue(MotionEvent.AXIS_ORIENTATION, orientation[i]);
+		c.setAxisValue(MotionEvent.AXIS_DISTANCE, 0);
+		return coords;
+	}
+}
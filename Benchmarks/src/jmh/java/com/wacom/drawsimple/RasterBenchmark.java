@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for rasterizing a whole drawing, as when a journal is
+ * replayed or exported: sequentially through a single SoftwareBackend,
+ * and tile by tile with TileRasterizer on a ForkJoinPool of 'threads'
+ * threads (including the calling thread).
+ * 
+ * Setup fails unless the parallel result is bit-identical to the
+ * sequential one; TileRasterizerTest checks this more thoroughly.
+ * 
+ * @author wacom
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RasterBenchmark {
+	
+	static final int WIDTH = 2048, HEIGHT = 1536;
+	
+	@Param({"1", "2", "4", "8"})
+	int threads;
+	
+	DabList dabs;
+	SoftwareBackend target = new SoftwareBackend(WIDTH, HEIGHT);
+	TileRasterizer rasterizer = new TileRasterizer(128);
+	ForkJoinPool pool;
+	
+	@Setup
+	public void setup() {
+		dabs = drawing(300, 200, 42);
+		pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+		
+		SoftwareBackend sequential = new SoftwareBackend(WIDTH, HEIGHT);
+		dabs.drawTo(sequential);
+		parallel();
+		if (!Arrays.equals(sequential.getPixels(), target.getPixels()))
+			throw new IllegalStateException("Parallel rasterization differs from sequential");
+	}
+	
+	@TearDown
+	public void tearDown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+	
+	@Benchmark
+	public int sequential() {
+		target.clear();
+		dabs.drawTo(target);
+		return target.getPixels()[0];
+	}
+	
+	@Benchmark
+	public int parallel() {
+		target.clear();
+		rasterizer.rasterize(dabs, target, pool, threads - 1);
+		return target.getPixels()[0];
+	}
+	
+	/**
+	 * Random-walk strokes of assorted brushes, scattered over the canvas.
+	 */
+	static DabList drawing(int strokes, int samples, long seed) {
+		Random random = new Random(seed);
+		DabList dabs = new DabList();
+		for (int s = 0; s < strokes; s++) {
+			Brush brush = new Brush(10 + random.nextInt(30), 5 + random.nextInt(40), random.nextInt(101));
+			brush.setColor(random.nextInt() | 0x20000000);
+			Stroke stroke = new Stroke(brush, 0);
+			
+			float x = random.nextFloat() * WIDTH, y = random.nextFloat() * HEIGHT;
+			for (int i = 0; i < samples; i++) {
+				x += random.nextGaussian() * 6;
+				y += random.nextGaussian() * 6;
+				brush.strokeTo(dabs, stroke, new State().set(i, x, y, random.nextFloat(), 0.1f));
+			}
+			brush.endFill(dabs, stroke);
+		}
+		return dabs;
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import android.graphics.Matrix;
+import android.view.MotionEvent;
+
+import com.wacom.benchmarks.PenTrace;
+
+/**
+ * Benchmarks for the per-sample stroke path of Draw Simple. Each
+ * operation processes one second of a synthetic pen trace, so scores
+ * at different rates show how the cost scales with the sample rate.
+ * 
+ * Brush stamping is measured through a SoftwareBackend, since the
+ * canvas path needs a device.
+ * 
+ * @author wacom
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StrokeBenchmark {
+	
+	@Param({"120", "240", "480"})
+	int rate;
+	
+	State[] states;
+	State out = new State();
+	MotionEvent[] events;
+	StrokeBuffer buffer = new StrokeBuffer();
+	Matrix transform = new Matrix();
+	float[] point = new float[2];
+	
+	Brush brush;
+	Stroke stroke;
+	Brush solidBrush;
+	Stroke solidStroke;
+	SoftwareBackend backend;
+	
+	@Setup
+	public void setup() {
+		PenTrace trace = PenTrace.generate(rate, 1, 42);
+		states = new State[trace.count];
+		for (int i = 0; i < trace.count; i++) {
+			states[i] = new State().set(trace.time[i],
+			    trace.x[i], trace.y[i], trace.pressure[i], 0.01f);
+		}
+		events = trace.toEvents(1, MotionEvent.TOOL_TYPE_STYLUS);
+		
+		transform.setScale(1.25f, 1.25f);
+		transform.postTranslate(-40, -25);
+		
+		brush = new Brush(10, 20, 60);
+		stroke = new Stroke(brush, 0);
+		solidBrush = new Brush(10, 20, 100);
+		solidStroke = new Stroke(solidBrush, 0);
+		backend = new SoftwareBackend(512, 512);
+	}
+	
+	@Benchmark
+	public State interpolate() {
+		for (int i = 1; i < states.length; i++)
+			State.interpolate(states[i - 1], states[i], 0.5f, out);
+		return out;
+	}
+	
+	@Benchmark
+	public float distance() {
+		float sum = 0;
+		for (int i = 1; i < states.length; i++)
+			sum += State.distance(states[i - 1], states[i]);
+		return sum;
+	}
+	
+	/**
+	 * The dab loop: one whole stroke through Brush.strokeTo and endFill.
+	 */
+	@Benchmark
+	public int drawFill() {
+		for (int i = 0; i < states.length; i++)
+			brush.strokeTo(backend, stroke, states[i]);
+		brush.endFill(backend, stroke);
+		return backend.getPixels()[0];
+	}
+	
+	/**
+	 * The same stroke with a fully hard brush, which Brush fills as
+	 * solid geometry rather than stamping dabs.
+	 */
+	@Benchmark
+	public int drawSolid() {
+		for (int i = 0; i < states.length; i++)
+			solidBrush.strokeTo(backend, solidStroke, states[i]);
+		solidBrush.endFill(backend, solidStroke);
+		return backend.getPixels()[0];
+	}
+	
+	/**
+	 * Per-State transformation, as CanvasView.transformState does it.
+	 */
+	@Benchmark
+	public void transformState(Blackhole bh) {
+		for (int i = 0; i < states.length; i++) {
+			out.set(states[i]);
+			bh.consume(out.transform(transform, point));
+		}
+	}
+	
+	/**
+	 * Batched transformation, as CanvasView.drawFill does it: read each
+	 * event into a StrokeBuffer and map all its points in one call.
+	 */
+	@Benchmark
+	public int transformBuffer() {
+		int n = 0;
+		for (MotionEvent e : events) {
+			buffer.fill(e);
+			buffer.transform(transform);
+			n += buffer.size();
+		}
+		return n;
+	}
+}
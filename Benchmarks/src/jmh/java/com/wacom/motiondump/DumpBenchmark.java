@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.motiondump;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import com.wacom.benchmarks.PenTrace;
+
+/**
+ * Benchmarks for the dump path of Motion Dump, over every event of one
+ * second of a synthetic pen trace. DumpActivity captures each event as
+ * its callback receives it, and formats the latest one once per frame;
+ * 'format' formats every event, so it bounds the cost from above.
+ * 
+ * @author wacom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DumpBenchmark {
+	
+	static final int DEVICE_ID = 7;
+	
+	/** Axes reported by the synthetic pen, as a Wacom EMR pen reports them. */
+	static final int[] AXES = {
+		MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_PRESSURE,
+		MotionEvent.AXIS_SIZE, MotionEvent.AXIS_TOUCH_MAJOR, MotionEvent.AXIS_TOUCH_MINOR,
+		MotionEvent.AXIS_TOOL_MAJOR, MotionEvent.AXIS_TOOL_MINOR, MotionEvent.AXIS_ORIENTATION,
+		MotionEvent.AXIS_DISTANCE, MotionEvent.AXIS_TILT, MotionEvent.AXIS_GENERIC_1,
+		MotionEvent.AXIS_GENERIC_2, MotionEvent.AXIS_GENERIC_3, MotionEvent.AXIS_GENERIC_4
+	};
+	
+	@Param({"120", "240", "480"})
+	int rate;
+	
+	MotionEvent[] events;
+	DumpActivity activity;
+	DumpPage page = new DumpPage();
+	StringBuilder names = new StringBuilder();
+	
+	@Setup
+	public void setup() {
+		InputDevice pen = new InputDevice(DEVICE_ID, "Wacom Pen and multitouch sensor Pen",
+		                                  "benchmark-pen", InputDevice.SOURCE_STYLUS);
+		for (int axis : AXES)
+			pen.addMotionRange(axis, 0, 1);
+		InputDevice.register(pen);
+		
+		events = PenTrace.generate(rate, 1, 42).toEvents(DEVICE_ID, MotionEvent.TOOL_TYPE_STYLUS);
+		activity = new DumpActivity();
+	}
+	
+	/**
+	 * The work done for every event as it is received.
+	 */
+	@Benchmark
+	public int capture() {
+		for (MotionEvent e : events)
+			activity.capture(e, "onTouch");
+		return activity.getStats(DEVICE_ID).events.getCount();
+	}
+	
+	@Benchmark
+	public int format() {
+		int length = 0;
+		for (MotionEvent e : events) {
+			page.reset();
+			activity.format(e, "onTouch", page);
+			length += page.length();
+		}
+		return length;
+	}
+	
+	/**
+	 * Constant name lookups: an axis name for every axis of every sample,
+	 * and the flags of each event's source and buttons.
+	 */
+	@Benchmark
+	public int lookupConstants() {
+		int length = 0;
+		for (MotionEvent e : events) {
+			for (int h = 0; h <= e.getHistorySize(); h++) {
+				for (int axis : AXES)
+					length += DumpActivity.AXES.name(axis).length();
+			}
+			names.setLength(0);
+			DumpActivity.SOURCES.append(names, e.getSource());
+			DumpActivity.BUTTONS.append(names, e.getButtonState() | MotionEvent.BUTTON_STYLUS_PRIMARY);
+			length += names.length();
+		}
+		return length;
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import com.wacom.drawsimple.DrawPipeline;
+import com.wacom.motiondump.DumpPipeline;
+import com.wacom.trace.InputTrace;
+
+/**
+ * TraceReplay feeds an InputTrace recorded on a device into the drawing
+ * or dump pipeline on a plain JVM, and reports the distribution of the
+ * time taken to process each event.
+ * 
+ *   TraceReplay <trace> [draw|dump] [fast|original]
+ * 
+ * In "fast" mode (the default) events are processed back to back. In
+ * "original" mode each event is held back until the time at which it
+ * was originally delivered, relative to the first event, which keeps
+ * caches and the JIT in the same state they would be on the device.
+ * 
+ * Both apps write the same trace format, so either app's traces may be
+ * replayed into either pipeline.
+ * 
+ * @author wacom
+ */
+public final class TraceReplay {
+	
+	/**
+	 * A pipeline which events are replayed into.
+	 */
+	public interface Pipeline {
+		/**
+		 * Process one event.
+		 * 
+		 * @param callback  InputTrace.CALLBACK_* the event was delivered to
+		 * @param event     The event
+		 * @return          'true' if the pipeline handled the event, or
+		 *                  'false' if it should not be counted
+		 */
+		boolean process(int callback, MotionEvent event);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TraceReplay <trace> [draw|dump] [fast|original]");
+			System.exit(2);
+		}
+		
+		File file = new File(args[0]);
+		String target = args.length > 1 ? args[1] : "draw";
+		boolean original = args.length > 2 && args[2].equals("original");
+		
+		Pipeline pipeline;
+		if (target.equals("draw"))
+			pipeline = new DrawPipeline();
+		else if (target.equals("dump"))
+			pipeline = new DumpPipeline();
+		else
+			throw new IllegalArgumentException("Unknown target: " + target);
+		
+		long[] nanos;
+		try {
+			nanos = replay(file, pipeline, original);
+		} finally {
+			if (pipeline instanceof Closeable)
+				((Closeable)pipeline).close();
+		}
+		System.out.println(file.getName() + " -> " + target + (original ? " (original timing)" : " (fast)"));
+		System.out.println(summarize(nanos));
+	}
+	
+	/**
+	 * Replay a trace into a pipeline.
+	 * 
+	 * @param file      Trace to replay
+	 * @param pipeline  Pipeline to replay into
+	 * @param original  Whether to replay at the original timing
+	 * @return          Processing time of each event handled, in nanoseconds
+	 */
+	public static long[] replay(File file, Pipeline pipeline, boolean original) throws IOException {
+		long[] nanos = new long[1024];
+		int n = 0;
+		long firstEvent = -1;
+		long start = 0;
+		
+		InputTrace.Reader reader = new InputTrace.Reader(file);
+		try {
+			int tag;
+			while ((tag = reader.next()) != 0) {
+				if (tag == InputTrace.DEVICE) {
+					register(reader);
+					continue;
+				}
+				
+				MotionEvent event = reader.toMotionEvent();
+				if (original) {
+					if (firstEvent < 0) {
+						firstEvent = reader.getEventTime();
+						start = System.nanoTime();
+					}
+					long due = start + (reader.getEventTime() - firstEvent) * 1000000L;
+					for (long wait; (wait = due - System.nanoTime()) > 0; )
+						LockSupport.parkNanos(wait);
+				}
+				
+				long t0 = System.nanoTime();
+				boolean handled = pipeline.process(reader.callback, event);
+				long t1 = System.nanoTime();
+				event.recycle();
+				
+				if (handled) {
+					if (n == nanos.length)
+						nanos = Arrays.copyOf(nanos, 2 * n);
+					nanos[n++] = t1 - t0;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return Arrays.copyOf(nanos, n);
+	}
+	
+	/**
+	 * Make a recorded device known to InputDevice.getDevice, so that
+	 * replayed events can look up their device's ranges.
+	 */
+	static void register(InputTrace.Reader reader) {
+		InputDevice device = new InputDevice(reader.deviceId, reader.deviceName,
+		                                     "trace-" + reader.deviceId, reader.deviceSources);
+		for (int i = 0; i < reader.deviceAxes.length; i++)
+			device.addMotionRange(reader.deviceAxes[i], reader.deviceMin[i], reader.deviceMax[i]);
+		InputDevice.register(device);
+	}
+	
+	/**
+	 * Describe the distribution of per-event processing times.
+	 * 
+	 * @param nanos  Processing time of each event, in nanoseconds
+	 * @return       Count, mean, percentiles and maximum, in microseconds
+	 */
+	public static String summarize(long[] nanos) {
+		if (nanos.length == 0)
+			return "No events processed";
+		
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		double sum = 0;
+		for (long t : sorted)
+			sum += t;
+		
+		return String.format("events %d  mean %.1f us  p50 %.1f us  p90 %.1f us  p99 %.1f us  p99.9 %.1f us  max %.1f us",
+		    sorted.length, sum / sorted.length / 1000,
+		    percentile(sorted, 0.50) / 1000, percentile(sorted, 0.90) / 1000,
+		    percentile(sorted, 0.99) / 1000, percentile(sorted, 0.999) / 1000,
+		    sorted[sorted.length - 1] / 1000.0);
+	}
+	
+	/**
+	 * Nearest-rank percentile of a sorted array.
+	 */
+	static double percentile(long[] sorted, double p) {
+		int rank = (int)Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+}
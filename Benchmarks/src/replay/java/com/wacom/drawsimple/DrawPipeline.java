@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.view.MotionEvent;
+
+import com.wacom.benchmarks.TraceReplay;
+import com.wacom.trace.InputTrace;
+
+/**
+ * The stroke path of CanvasView, without a view: touch events are
+ * passed to the same StrokeEngine the view draws with, set up as
+ * DrawActivity sets it up. Samples are queued for a RenderThread, which
+ * stamps them through a CanvasBackend into a TiledLayer; finished
+ * strokes are recorded in an undo history and a journal, and predicted
+ * ink is drawn onto an overlay after every event, as with prediction
+ * enabled in the app. The time measured per event is therefore the
+ * time the UI thread spends drawing it.
+ * 
+ * The journal and anything the undo history spills are kept in a
+ * temporary directory, which is deleted by close.
+ * 
+ * Hover events only move the outline in CanvasView, so they are not
+ * counted.
+ * 
+ * @author wacom
+ */
+public class DrawPipeline implements TraceReplay.Pipeline, Closeable {
+	
+	/** How far ahead ink is predicted, in milliseconds, as in DrawActivity. */
+	static final long PREDICTION_HORIZON = 16;
+	
+	final StrokeEngine engine = new StrokeEngine();
+	final Matrix inverse = new Matrix();
+	final RectF dirty = new RectF();
+	final RectF predicted = new RectF();
+	final TiledLayer layer, overlay;
+	final RenderBackend preview;
+	final StampCache stamps = new StampCache();  // Shared by both backends, as in CanvasView
+	final File dir;
+	final StrokeJournal journal;
+	final UndoHistory history;
+	
+	public DrawPipeline() throws IOException {
+		this(2048, 1536);
+	}
+	
+	public DrawPipeline(int width, int height) throws IOException {
+		dir = Files.createTempDirectory("drawpipeline").toFile();
+		layer = new TiledLayer(width, height, Bitmap.Config.ARGB_8888);
+		overlay = new TiledLayer(width, height, Bitmap.Config.ARGB_8888);
+		preview = new CanvasBackend(overlay, stamps);
+		journal = new StrokeJournal(new File(dir, "drawing.journal"));
+		history = new UndoHistory(new File(dir, "undo"), 16 * 1024 * 1024, 50);
+		
+		synchronized (engine.lock) {
+			engine.setLayer(layer, new CanvasBackend(layer, stamps));
+			engine.setHistory(history);
+		}
+		engine.setJournal(journal);
+		engine.setPredictionHorizon(PREDICTION_HORIZON);
+		engine.startRenderThread(256, SampleRing.Policy.COALESCE);
+	}
+	
+	@Override
+	public boolean process(int callback, MotionEvent event) {
+		if (callback != InputTrace.CALLBACK_TOUCH)
+			return false;
+		
+		engine.changeTool(event);
+		if (!engine.drawFill(event, inverse, dirty))
+			return false;
+		
+		if (!predicted.isEmpty())
+			overlay.clear(predicted);
+		overlay.dirty.setEmpty();
+		engine.drawPredictions(preview);
+		predicted.set(overlay.dirty);
+		return true;
+	}
+	
+	/**
+	 * Stop the RenderThread once it has drawn every queued sample, and
+	 * delete the journal and undo history.
+	 */
+	@Override
+	public void close() throws IOException {
+		engine.stopRenderThread();
+		synchronized (engine.lock) {
+			engine.setHistory(null);
+		}
+		history.close();
+		journal.close();
+		delete(dir);
+	}
+	
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+		file.delete();
+	}
+	
+	public StrokeEngine getEngine() {
+		return engine;
+	}
+	
+	public TiledLayer getLayer() {
+		return layer;
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.motiondump;
+
+import android.view.MotionEvent;
+
+import com.wacom.benchmarks.TraceReplay;
+
+/**
+ * The dump path of DumpActivity: every event is captured, as each of
+ * the activity's callbacks does, and then formatted. The activity only
+ * formats the latest event once per frame, so this is the worst case,
+ * of one event per frame.
+ * 
+ * @author wacom
+ */
+public class DumpPipeline implements TraceReplay.Pipeline {
+	
+	static final String[] METHODS = { null, "onTouch", "onHover", "onGenericMotion" };
+	
+	final DumpActivity activity = new DumpActivity();
+	final DumpPage page = new DumpPage();
+	int length;
+	
+	@Override
+	public boolean process(int callback, MotionEvent event) {
+		activity.capture(event, METHODS[callback]);
+		page.reset();
+		activity.format(event, METHODS[callback], page);
+		length += page.length();
+		return true;
+	}
+	
+	/**
+	 * @return  Total length of the pages produced, so that the work
+	 *          cannot be optimized away
+	 */
+	public int getLength() {
+		return length;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.app;
+
+import java.io.File;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.KeyEvent;
+import android.view.View;
+
+/**
+ * JVM stand-in for android.app.Activity. An activity created off-device
+ * has no window or storage; findViewById and getExternalFilesDir always
+ * return null.
+ */
+public class Activity {
+	
+	Intent intent = new Intent();
+	
+	protected void onCreate(Bundle savedInstanceState) {
+	}
+	
+	protected void onDestroy() {
+	}
+	
+	public Intent getIntent() {
+		return intent;
+	}
+	
+	public void setIntent(Intent intent) {
+		this.intent = intent;
+	}
+	
+	public File getExternalFilesDir(String type) {
+		return null;
+	}
+	
+	public void setContentView(int layoutResID) {
+	}
+	
+	public View findViewById(int id) {
+		return null;
+	}
+	
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		return false;
+	}
+	
+	public boolean onKeyUp(int keyCode, KeyEvent event) {
+		return false;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for android.content.Intent, holding only extras.
+ */
+public class Intent {
+	
+	final Map<String,Object> extras = new HashMap<String,Object>();
+	
+	public Intent putExtra(String name, boolean value) {
+		extras.put(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, String value) {
+		extras.put(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, int value) {
+		extras.put(name, value);
+		return this;
+	}
+	
+	public boolean getBooleanExtra(String name, boolean defaultValue) {
+		Object value = extras.get(name);
+		return value instanceof Boolean ? (Boolean)value : defaultValue;
+	}
+	
+	public int getIntExtra(String name, int defaultValue) {
+		Object value = extras.get(name);
+		return value instanceof Integer ? (Integer)value : defaultValue;
+	}
+	
+	public String getStringExtra(String name) {
+		Object value = extras.get(name);
+		return value instanceof String ? (String)value : null;
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.Bitmap. Pixels are stored as ARGB
+ * ints, and only allocated once they are first drawn on or read, so
+ * benchmarks which draw through SoftwareBackend pay nothing for them.
+ */
+public final class Bitmap {
+	
+	public enum Config {
+		ALPHA_8, RGB_565, ARGB_4444, ARGB_8888
+	}
+	
+	public enum CompressFormat {
+		JPEG, PNG, WEBP
+	}
+	
+	final int width, height;
+	final Config config;
+	int[] pixels;
+	
+	Bitmap(int width, int height, Config config) {
+		this.width = width;
+		this.height = height;
+		this.config = config;
+	}
+	
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		return new Bitmap(width, height, config);
+	}
+	
+	public Bitmap copy(Config config, boolean mutable) {
+		Bitmap copy = new Bitmap(width, height, config);
+		if (pixels != null)
+			copy.pixels = pixels.clone();
+		return copy;
+	}
+	
+	/**
+	 * Write the size and the raw pixels, whatever the format, for
+	 * BitmapFactory.decodeByteArray to read back.
+	 */
+	public boolean compress(CompressFormat format, int quality, java.io.OutputStream stream) {
+		java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(8 + 4 * width * height);
+		out.putInt(width).putInt(height);
+		if (pixels != null)
+			out.asIntBuffer().put(pixels);
+		try {
+			stream.write(out.array());
+		} catch (java.io.IOException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public Config getConfig() {
+		return config;
+	}
+	
+	public int getRowBytes() {
+		return 4 * width;
+	}
+	
+	public boolean isMutable() {
+		return true;
+	}
+	
+	public boolean isRecycled() {
+		return false;
+	}
+	
+	public int getPixel(int x, int y) {
+		checkBounds(x, y);
+		return pixels == null ? 0 : pixels[y * width + x];
+	}
+	
+	public void setPixel(int x, int y, int color) {
+		checkBounds(x, y);
+		pixels()[y * width + x] = color;
+	}
+	
+	public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0)
+			return;
+		checkBounds(x, y);
+		checkBounds(x + width - 1, y + height - 1);
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++)
+				pixels[offset + j * stride + i] = this.pixels == null ? 0 : this.pixels[(y + j) * this.width + x + i];
+		}
+	}
+	
+	public void eraseColor(int color) {
+		if (pixels == null && color == 0)
+			return;
+		java.util.Arrays.fill(pixels(), color);
+	}
+	
+	int[] pixels() {
+		if (pixels == null)
+			pixels = new int[width * height];
+		return pixels;
+	}
+	
+	void checkBounds(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			throw new IllegalArgumentException("(" + x + ", " + y + ") is outside the bitmap");
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.BitmapFactory. Decodes only what
+ * the Bitmap stand-in's compress writes.
+ */
+public class BitmapFactory {
+	
+	public static class Options {
+		public boolean inMutable;
+		public Bitmap.Config inPreferredConfig = Bitmap.Config.ARGB_8888;
+	}
+	
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options options) {
+		java.nio.ByteBuffer in = java.nio.ByteBuffer.wrap(data, offset, length);
+		if (length < 8)
+			return null;
+		
+		int width = in.getInt(), height = in.getInt();
+		if (width <= 0 || height <= 0 || in.remaining() != 4 * width * height)
+			return null;
+		
+		Bitmap bitmap = Bitmap.createBitmap(width, height, options == null ? Bitmap.Config.ARGB_8888
+		                                                                   : options.inPreferredConfig);
+		in.asIntBuffer().get(bitmap.pixels());
+		return bitmap;
+	}
+}
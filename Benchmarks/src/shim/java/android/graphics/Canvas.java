@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.Canvas. Only drawBitmap(Bitmap,
+ * float, float, Paint) and drawCircle draw. drawBitmap composites the
+ * bitmap source-over, each pixel taken from the source pixel whose
+ * center it covers, as an unfiltered draw on Android does; the paint
+ * is ignored. drawCircle fills the pixels whose centers lie inside the
+ * circle with the paint's color or RadialGradient, without
+ * anti-aliasing. Translation is tracked for both; everything else
+ * (clipping, other shapes, paths) does nothing.
+ */
+public class Canvas {
+	
+	final Bitmap bitmap;            // Bitmap drawn into (may be null)
+	float dx, dy;                   // Translation
+	float[] saved = new float[16];  // Translations saved by save()
+	int saveCount;
+	
+	public Canvas() {
+		this(null);
+	}
+	
+	public Canvas(Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+	
+	public int save() {
+		if (2 * saveCount == saved.length)
+			saved = java.util.Arrays.copyOf(saved, 2 * saved.length);
+		saved[2 * saveCount] = dx;
+		saved[2 * saveCount + 1] = dy;
+		return ++saveCount;
+	}
+	
+	public void restore() {
+		if (saveCount == 0)
+			throw new IllegalStateException("Underflow in restore");
+		saveCount--;
+		dx = saved[2 * saveCount];
+		dy = saved[2 * saveCount + 1];
+	}
+	
+	public void translate(float dx, float dy) {
+		this.dx += dx;
+		this.dy += dy;
+	}
+	
+	public boolean clipRect(float left, float top, float right, float bottom) {
+		return true;
+	}
+	
+	public void drawColor(int color, PorterDuff.Mode mode) {
+	}
+	
+	public void drawCircle(float cx, float cy, float radius, Paint paint) {
+		if (this.bitmap == null || radius <= 0)
+			return;
+		
+		cx += dx;
+		cy += dy;
+		int i0 = Math.max((int)Math.floor(cx - radius), 0), i1 = Math.min((int)Math.ceil(cx + radius), bitmap.width);
+		int j0 = Math.max((int)Math.floor(cy - radius), 0), j1 = Math.min((int)Math.ceil(cy + radius), bitmap.height);
+		RadialGradient gradient = paint.shader instanceof RadialGradient ? (RadialGradient)paint.shader : null;
+		
+		int[] dst = bitmap.pixels();
+		for (int j = j0; j < j1; j++) {
+			for (int i = i0; i < i1; i++) {
+				float d = (float)Math.hypot(i + 0.5f - cx, j + 0.5f - cy);
+				if (d > radius)
+					continue;
+				
+				int color = gradient == null ? paint.color
+				          : gradient.colorAt((float)Math.hypot(i + 0.5f - dx - gradient.centerX,
+				                                               j + 0.5f - dy - gradient.centerY));
+				dst[j * bitmap.width + i] = srcOver(color, dst[j * bitmap.width + i]);
+			}
+		}
+	}
+	
+	public void drawPath(Path path, Paint paint) {
+	}
+	
+	public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+	}
+	
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		if (this.bitmap == null)
+			return;
+		
+		// Pixel x covers source pixel floor(x + 0.5 - left)
+		int x0 = (int)Math.ceil(left + dx - 0.5f);
+		int y0 = (int)Math.ceil(top + dy - 0.5f);
+		int i0 = Math.max(-x0, 0), i1 = Math.min(bitmap.width, this.bitmap.width - x0);
+		int j0 = Math.max(-y0, 0), j1 = Math.min(bitmap.height, this.bitmap.height - y0);
+		if (i0 >= i1 || j0 >= j1 || bitmap.pixels == null)
+			return;
+		
+		int[] dst = this.bitmap.pixels();
+		for (int j = j0; j < j1; j++) {
+			int s = j * bitmap.width;
+			int d = (y0 + j) * this.bitmap.width + x0;
+			for (int i = i0; i < i1; i++)
+				dst[d + i] = srcOver(bitmap.pixels[s + i], dst[d + i]);
+		}
+	}
+	
+	static int srcOver(int src, int dst) {
+		int sa = src >>> 24;
+		if (sa == 255)
+			return src;
+		if (sa == 0)
+			return dst;
+		
+		int da = (dst >>> 24) * (255 - sa) / 255;
+		int a = sa + da;
+		int r = ((src >> 16 & 0xff) * sa + (dst >> 16 & 0xff) * da + a / 2) / a;
+		int g = ((src >> 8 & 0xff) * sa + (dst >> 8 & 0xff) * da + a / 2) / a;
+		int b = ((src & 0xff) * sa + (dst & 0xff) * da + a / 2) / a;
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.Matrix. Implements affine
+ * transformations only, which is all the benchmarked code uses.
+ * Values are stored row-major as {scaleX, skewX, transX, skewY,
+ * scaleY, transY}.
+ */
+public class Matrix {
+	
+	final float[] m = {1, 0, 0, 0, 1, 0};
+	
+	public Matrix() {
+	}
+	
+	public void reset() {
+		setValues(1, 0, 0, 0, 1, 0);
+	}
+	
+	public void set(Matrix src) {
+		System.arraycopy(src.m, 0, m, 0, 6);
+	}
+	
+	public void setScale(float sx, float sy) {
+		setValues(sx, 0, 0, 0, sy, 0);
+	}
+	
+	public void setTranslate(float dx, float dy) {
+		setValues(1, 0, dx, 0, 1, dy);
+	}
+	
+	public boolean postTranslate(float dx, float dy) {
+		m[2] += dx;
+		m[5] += dy;
+		return true;
+	}
+	
+	public boolean postScale(float sx, float sy) {
+		for (int i = 0; i < 3; i++) {
+			m[i] *= sx;
+			m[i + 3] *= sy;
+		}
+		return true;
+	}
+	
+	public boolean postRotate(float degrees) {
+		double r = Math.toRadians(degrees);
+		float c = (float)Math.cos(r), s = (float)Math.sin(r);
+		for (int i = 0; i < 3; i++) {
+			float a = m[i], b = m[i + 3];
+			m[i]     = c * a - s * b;
+			m[i + 3] = s * a + c * b;
+		}
+		return true;
+	}
+	
+	public boolean invert(Matrix inverse) {
+		float det = m[0] * m[4] - m[1] * m[3];
+		if (det == 0)
+			return false;
+		
+		float a = m[4] / det, b = -m[1] / det;
+		float d = -m[3] / det, e = m[0] / det;
+		inverse.setValues(a, b, -(a * m[2] + b * m[5]),
+		                  d, e, -(d * m[2] + e * m[5]));
+		return true;
+	}
+	
+	public void mapPoints(float[] pts) {
+		mapPoints(pts, 0, pts, 0, pts.length / 2);
+	}
+	
+	public void mapPoints(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+		for (int i = 0; i < pointCount; i++) {
+			float x = src[srcIndex + 2*i];
+			float y = src[srcIndex + 2*i + 1];
+			dst[dstIndex + 2*i]     = m[0] * x + m[1] * y + m[2];
+			dst[dstIndex + 2*i + 1] = m[3] * x + m[4] * y + m[5];
+		}
+	}
+	
+	void setValues(float a, float b, float c, float d, float e, float f) {
+		m[0] = a; m[1] = b; m[2] = c;
+		m[3] = d; m[4] = e; m[5] = f;
+	}
+}
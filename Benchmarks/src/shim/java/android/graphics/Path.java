@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.Path. Paths hold no geometry.
+ */
+public class Path {
+	
+	public enum Direction {
+		CW, CCW
+	}
+	
+	public Path() {
+	}
+	
+	public void rewind() {
+	}
+	
+	public void addCircle(float x, float y, float radius, Direction dir) {
+	}
+	
+	public void moveTo(float x, float y) {
+	}
+	
+	public void lineTo(float x, float y) {
+	}
+	
+	public void close() {
+	}
+	
+	public boolean isEmpty() {
+		return true;
+	}
+	
+	public void computeBounds(RectF bounds, boolean exact) {
+		bounds.setEmpty();
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.RadialGradient. Canvas.drawCircle
+ * fills with it; the tile mode is ignored, since only the inside of the
+ * gradient's circle is drawn.
+ */
+public class RadialGradient extends Shader {
+	
+	final float centerX, centerY, radius;
+	final int[] colors;
+	final float[] stops;
+	
+	public RadialGradient(float centerX, float centerY, float radius,
+	                      int[] colors, float[] stops, TileMode tileMode) {
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.radius = radius;
+		this.colors = colors.clone();
+		this.stops = stops.clone();
+	}
+	
+	/**
+	 * @return  Non-premultiplied color at a distance from the center
+	 */
+	int colorAt(float distance) {
+		float t = distance / radius;
+		int k = 1;
+		while (k < stops.length - 1 && t > stops[k])
+			k++;
+		
+		float span = stops[k] - stops[k - 1];
+		float f = span <= 0 ? 1 : Math.max(0, Math.min(1, (t - stops[k - 1]) / span));
+		int a = colors[k - 1], b = colors[k];
+		int color = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int ca = a >>> shift & 0xff, cb = b >>> shift & 0xff;
+			color |= Math.round(ca + (cb - ca) * f) << shift;
+		}
+		return color;
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.graphics;
+
+/**
+ * JVM stand-in for android.graphics.RectF.
+ */
+public class RectF {
+	public float left, top, right, bottom;
+	
+	public RectF() {
+	}
+	
+	public RectF(float left, float top, float right, float bottom) {
+		set(left, top, right, bottom);
+	}
+	
+	public void set(float left, float top, float right, float bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+	
+	public void set(Rect src) {
+		set(src.left, src.top, src.right, src.bottom);
+	}
+	
+	public void set(RectF src) {
+		set(src.left, src.top, src.right, src.bottom);
+	}
+	
+	public void setEmpty() {
+		left = top = right = bottom = 0;
+	}
+	
+	public boolean isEmpty() {
+		return left >= right || top >= bottom;
+	}
+	
+	public float width() {
+		return right - left;
+	}
+	
+	public float height() {
+		return bottom - top;
+	}
+	
+	public void offset(float dx, float dy) {
+		left += dx;
+		right += dx;
+		top += dy;
+		bottom += dy;
+	}
+	
+	public void inset(float dx, float dy) {
+		left += dx;
+		top += dy;
+		right -= dx;
+		bottom -= dy;
+	}
+	
+	public void union(float left, float top, float right, float bottom) {
+		if (left >= right || top >= bottom)
+			return;
+		if (isEmpty()) {
+			set(left, top, right, bottom);
+			return;
+		}
+		this.left = Math.min(this.left, left);
+		this.top = Math.min(this.top, top);
+		this.right = Math.max(this.right, right);
+		this.bottom = Math.max(this.bottom, bottom);
+	}
+	
+	public void union(RectF r) {
+		union(r.left, r.top, r.right, r.bottom);
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * JVM stand-in for android.util.SparseArray: int keys kept sorted in a
+ * plain array, and looked up by binary search.
+ */
+public class SparseArray<E> {
+	
+	int[] keys = new int[8];
+	Object[] values = new Object[8];
+	int size;
+	
+	@SuppressWarnings("unchecked")
+	public E get(int key) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return i < 0 ? null : (E)values[i];
+	}
+	
+	public void put(int key, E value) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0) {
+			values[i] = value;
+			return;
+		}
+		
+		i = ~i;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+			values = Arrays.copyOf(values, 2 * size);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int keyAt(int index) {
+		return keys[index];
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E valueAt(int index) {
+		return (E)values[index];
+	}
+}
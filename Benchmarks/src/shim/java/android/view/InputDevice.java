@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM stand-in for android.view.InputDevice. Since there is no input
+ * system off-device, devices are described up front and made known to
+ * getDevice() with register(), which does not exist on Android.
+ */
+public final class InputDevice {
+	
+	public static final int SOURCE_CLASS_MASK        = 0x000000ff;
+	public static final int SOURCE_CLASS_NONE        = 0x00000000;
+	public static final int SOURCE_CLASS_BUTTON      = 0x00000001;
+	public static final int SOURCE_CLASS_POINTER     = 0x00000002;
+	public static final int SOURCE_CLASS_TRACKBALL   = 0x00000004;
+	public static final int SOURCE_CLASS_POSITION    = 0x00000008;
+	public static final int SOURCE_CLASS_JOYSTICK    = 0x00000010;
+	public static final int SOURCE_UNKNOWN           = 0x00000000;
+	public static final int SOURCE_KEYBOARD          = 0x00000101;
+	public static final int SOURCE_DPAD              = 0x00000201;
+	public static final int SOURCE_GAMEPAD           = 0x00000401;
+	public static final int SOURCE_TOUCHSCREEN       = 0x00001002;
+	public static final int SOURCE_MOUSE             = 0x00002002;
+	public static final int SOURCE_STYLUS            = 0x00004002;
+	public static final int SOURCE_BLUETOOTH_STYLUS  = 0x0000c002;
+	public static final int SOURCE_TRACKBALL         = 0x00010004;
+	public static final int SOURCE_MOUSE_RELATIVE    = 0x00020004;
+	public static final int SOURCE_TOUCHPAD          = 0x00100008;
+	public static final int SOURCE_TOUCH_NAVIGATION  = 0x00200000;
+	public static final int SOURCE_ROTARY_ENCODER    = 0x00400000;
+	public static final int SOURCE_JOYSTICK          = 0x01000010;
+	public static final int SOURCE_HDMI              = 0x02000001;
+	public static final int SOURCE_ANY               = 0xffffff00;
+	
+	public static final class MotionRange {
+		final int axis, source;
+		final float min, max;
+		
+		MotionRange(int axis, int source, float min, float max) {
+			this.axis = axis;
+			this.source = source;
+			this.min = min;
+			this.max = max;
+		}
+		
+		public int getAxis()     { return axis; }
+		public int getSource()   { return source; }
+		public float getMin()    { return min; }
+		public float getMax()    { return max; }
+		public float getRange()  { return max - min; }
+	}
+	
+	static final Map<Integer,InputDevice> devices = new HashMap<Integer,InputDevice>();
+	
+	final int id, sources;
+	final String name, descriptor;
+	final List<MotionRange> ranges = new ArrayList<MotionRange>();
+	
+	public InputDevice(int id, String name, String descriptor, int sources) {
+		this.id = id;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.sources = sources;
+	}
+	
+	/**
+	 * Describe one axis reported by the device. Not part of the
+	 * Android API.
+	 */
+	public InputDevice addMotionRange(int axis, float min, float max) {
+		ranges.add(new MotionRange(axis, sources, min, max));
+		return this;
+	}
+	
+	/**
+	 * Make a device available from getDevice(). Not part of the
+	 * Android API.
+	 */
+	public static void register(InputDevice device) {
+		devices.put(device.id, device);
+	}
+	
+	public static InputDevice getDevice(int id) {
+		return devices.get(id);
+	}
+	
+	public int getId()                          { return id; }
+	public String getName()                     { return name; }
+	public String getDescriptor()               { return descriptor; }
+	public int getSources()                     { return sources; }
+	public List<MotionRange> getMotionRanges()  { return ranges; }
+	
+	public MotionRange getMotionRange(int axis) {
+		for (MotionRange r : ranges) {
+			if (r.axis == axis)
+				return r;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.view;
+
+/**
+ * JVM stand-in for android.view.KeyEvent.
+ */
+public class KeyEvent {
+	
+	final int deviceId, source, keyCode, scanCode, repeatCount;
+	
+	public KeyEvent(int deviceId, int source, int keyCode, int scanCode, int repeatCount) {
+		this.deviceId = deviceId;
+		this.source = source;
+		this.keyCode = keyCode;
+		this.scanCode = scanCode;
+		this.repeatCount = repeatCount;
+	}
+	
+	public KeyEvent(KeyEvent other) {
+		this(other.deviceId, other.source, other.keyCode, other.scanCode, other.repeatCount);
+	}
+	
+	public static String keyCodeToString(int keyCode) {
+		return Integer.toString(keyCode);
+	}
+	
+	public final int getDeviceId()     { return deviceId; }
+	public final int getSource()       { return source; }
+	public final int getKeyCode()      { return keyCode; }
+	public final int getScanCode()     { return scanCode; }
+	public final int getRepeatCount()  { return repeatCount; }
+	
+	public final InputDevice getDevice() {
+		return InputDevice.getDevice(deviceId);
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package android.view;
+
+/**
+ * JVM stand-in for android.view.MotionEvent which holds real pointer
+ * data, so that code reading events can be benchmarked off-device.
+ * Events are built exactly as on Android, with obtain() and addBatch().
+ * Only the parts of the API used by the benchmarked sources exist, but
+ * every constant has its platform value so that reflection over them
+ * (as DumpActivity's ConstantIndex tables do) sees the same names.
+ */
+public final class MotionEvent {
+	
+	public static final int ACTION_MASK                = 0xff;
+	public static final int ACTION_DOWN                = 0;
+	public static final int ACTION_UP                  = 1;
+	public static final int ACTION_MOVE                = 2;
+	public static final int ACTION_CANCEL              = 3;
+	public static final int ACTION_OUTSIDE             = 4;
+	public static final int ACTION_POINTER_DOWN        = 5;
+	public static final int ACTION_POINTER_UP          = 6;
+	public static final int ACTION_HOVER_MOVE          = 7;
+	public static final int ACTION_SCROLL              = 8;
+	public static final int ACTION_HOVER_ENTER         = 9;
+	public static final int ACTION_HOVER_EXIT          = 10;
+	public static final int ACTION_BUTTON_PRESS        = 11;
+	public static final int ACTION_BUTTON_RELEASE      = 12;
+	public static final int ACTION_POINTER_INDEX_MASK  = 0xff00;
+	public static final int ACTION_POINTER_INDEX_SHIFT = 8;
+	
+	public static final int AXIS_X           = 0;
+	public static final int AXIS_Y           = 1;
+	public static final int AXIS_PRESSURE    = 2;
+	public static final int AXIS_SIZE        = 3;
+	public static final int AXIS_TOUCH_MAJOR = 4;
+	public static final int AXIS_TOUCH_MINOR = 5;
+	public static final int AXIS_TOOL_MAJOR  = 6;
+	public static final int AXIS_TOOL_MINOR  = 7;
+	public static final int AXIS_ORIENTATION = 8;
+	public static final int AXIS_VSCROLL     = 9;
+	public static final int AXIS_HSCROLL     = 10;
+	public static final int AXIS_Z           = 11;
+	public static final int AXIS_RX          = 12;
+	public static final int AXIS_RY          = 13;
+	public static final int AXIS_RZ          = 14;
+	public static final int AXIS_HAT_X       = 15;
+	public static final int AXIS_HAT_Y       = 16;
+	public static final int AXIS_LTRIGGER    = 17;
+	public static final int AXIS_RTRIGGER    = 18;
+	public static final int AXIS_THROTTLE    = 19;
+	public static final int AXIS_RUDDER      = 20;
+	public static final int AXIS_WHEEL       = 21;
+	public static final int AXIS_GAS         = 22;
+	public static final int AXIS_BRAKE       = 23;
+	public static final int AXIS_DISTANCE    = 24;
+	public static final int AXIS_TILT        = 25;
+	public static final int AXIS_SCROLL      = 26;
+	public static final int AXIS_RELATIVE_X  = 27;
+	public static final int AXIS_RELATIVE_Y  = 28;
+	public static final int AXIS_GENERIC_1   = 32;
+	public static final int AXIS_GENERIC_2   = 33;
+	public static final int AXIS_GENERIC_3   = 34;
+	public static final int AXIS_GENERIC_4   = 35;
+	public static final int AXIS_GENERIC_5   = 36;
+	public static final int AXIS_GENERIC_6   = 37;
+	public static final int AXIS_GENERIC_7   = 38;
+	public static final int AXIS_GENERIC_8   = 39;
+	public static final int AXIS_GENERIC_9   = 40;
+	public static final int AXIS_GENERIC_10  = 41;
+	public static final int AXIS_GENERIC_11  = 42;
+	public static final int AXIS_GENERIC_12  = 43;
+	public static final int AXIS_GENERIC_13  = 44;
+	public static final int AXIS_GENERIC_14  = 45;
+	public static final int AXIS_GENERIC_15  = 46;
+	public static final int AXIS_GENERIC_16  = 47;
+	
+	public static final int BUTTON_PRIMARY          = 1;
+	public static final int BUTTON_SECONDARY        = 2;
+	public static final int BUTTON_TERTIARY         = 4;
+	public static final int BUTTON_BACK             = 8;
+	public static final int BUTTON_FORWARD          = 16;
+	public static final int BUTTON_STYLUS_PRIMARY   = 32;
+	public static final int BUTTON_STYLUS_SECONDARY = 64;
+	
+	public static final int TOOL_TYPE_UNKNOWN = 0;
+	public static final int TOOL_TYPE_FINGER  = 1;
+	public static final int TOOL_TYPE_STYLUS  = 2;
+	public static final int TOOL_TYPE_MOUSE   = 3;
+	public static final int TOOL_TYPE_ERASER  = 4;
+	
+	/** Number of axes stored per pointer sample (AXIS_X to AXIS_GENERIC_16). */
+	static final int AXIS_COUNT = 48;
+	
+	public static final class PointerProperties {
+		public int id;
+		public int toolType;
+	}
+	
+	public static final class PointerCoords {
+		final float[] values = new float[AXIS_COUNT];
+		
+		public float getAxisValue(int axis) {
+			return values[axis];
+		}
+		
+		public void setAxisValue(int axis, float value) {
+			values[axis] = value;
+		}
+		
+		public void clear() {
+			java.util.Arrays.fill(values, 0);
+		}
+	}
+	
+	int action, buttonState, metaState, deviceId, source, flags;
+	long downTime;
+	
+	int pointers;
+	int[] ids, toolTypes;
+	
+	int rows;        // History size plus one
+	long[] times;    // Time of each row
+	float[] axes;    // [row][pointer][axis]
+	
+	MotionEvent(int pointers) {
+		this.pointers = pointers;
+		ids = new int[pointers];
+		toolTypes = new int[pointers];
+		times = new long[8];
+		axes = new float[8 * pointers * AXIS_COUNT];
+	}
+	
+	public static MotionEvent obtain(long downTime, long eventTime, int action,
+	        float x, float y, float pressure, float size, int metaState,
+	        float xPrecision, float yPrecision, int deviceId, int edgeFlags) {
+		MotionEvent e = new MotionEvent(1);
+		e.downTime = downTime;
+		e.action = action;
+		e.metaState = metaState;
+		e.deviceId = deviceId;
+		e.source = InputDevice.SOURCE_TOUCHSCREEN;
+		e.addRow(eventTime);
+		e.setSample(0, AXIS_X, x);
+		e.setSample(0, AXIS_Y, y);
+		e.setSample(0, AXIS_PRESSURE, pressure);
+		e.setSample(0, AXIS_SIZE, size);
+		return e;
+	}
+	
+	public static MotionEvent obtain(long downTime, long eventTime, int action,
+	        int pointerCount, PointerProperties[] pointerProperties, PointerCoords[] pointerCoords,
+	        int metaState, int buttonState, float xPrecision, float yPrecision,
+	        int deviceId, int edgeFlags, int source, int flags) {
+		MotionEvent e = new MotionEvent(pointerCount);
+		e.downTime = downTime;
+		e.action = action;
+		e.metaState = metaState;
+		e.buttonState = buttonState;
+		e.deviceId = deviceId;
+		e.source = source;
+		e.flags = flags;
+		for (int p = 0; p < pointerCount; p++) {
+			e.ids[p] = pointerProperties[p].id;
+			e.toolTypes[p] = pointerProperties[p].toolType;
+		}
+		e.addBatch(eventTime, pointerCoords, metaState);
+		return e;
+	}
+	
+	public static MotionEvent obtain(MotionEvent other) {
+		MotionEvent e = new MotionEvent(other.pointers);
+		e.action = other.action;
+		e.buttonState = other.buttonState;
+		e.metaState = other.metaState;
+		e.deviceId = other.deviceId;
+		e.source = other.source;
+		e.flags = other.flags;
+		e.downTime = other.downTime;
+		e.ids = other.ids.clone();
+		e.toolTypes = other.toolTypes.clone();
+		e.rows = other.rows;
+		e.times = other.times.clone();
+		e.axes = other.axes.clone();
+		return e;
+	}
+	
+	public void addBatch(long eventTime, float x, float y, float pressure, float size, int metaState) {
+		addRow(eventTime);
+		setSample(0, AXIS_X, x);
+		setSample(0, AXIS_Y, y);
+		setSample(0, AXIS_PRESSURE, pressure);
+		setSample(0, AXIS_SIZE, size);
+	}
+	
+	public void addBatch(long eventTime, PointerCoords[] pointerCoords, int metaState) {
+		addRow(eventTime);
+		for (int p = 0; p < pointers; p++) {
+			System.arraycopy(pointerCoords[p].values, 0, axes, index(rows - 1, p, 0), AXIS_COUNT);
+		}
+	}
+	
+	public void recycle() {
+	}
+	
+	public void setAction(int action) {
+		this.action = action;
+	}
+	
+	public void setSource(int source) {
+		this.source = source;
+	}
+	
+	public void setButtonState(int buttonState) {
+		this.buttonState = buttonState;
+	}
+	
+	public final int getAction()        { return action; }
+	public final int getActionMasked()  { return action & ACTION_MASK; }
+	public final int getActionIndex()   { return (action & ACTION_POINTER_INDEX_MASK) >> ACTION_POINTER_INDEX_SHIFT; }
+	public final int getButtonState()   { return buttonState; }
+	public final int getMetaState()     { return metaState; }
+	public final int getDeviceId()      { return deviceId; }
+	public final int getSource()        { return source; }
+	public final int getFlags()         { return flags; }
+	public final long getDownTime()     { return downTime; }
+	public final long getEventTime()    { return times[rows - 1]; }
+	public final int getPointerCount()  { return pointers; }
+	public final int getHistorySize()   { return rows - 1; }
+	
+	public final InputDevice getDevice() {
+		return InputDevice.getDevice(deviceId);
+	}
+	
+	public final int getPointerId(int pointerIndex)  { return ids[pointerIndex]; }
+	public final int getToolType(int pointerIndex)   { return toolTypes[pointerIndex]; }
+	
+	public final int findPointerIndex(int pointerId) {
+		for (int p = 0; p < pointers; p++) {
+			if (ids[p] == pointerId)
+				return p;
+		}
+		return -1;
+	}
+	
+	public final float getX()            { return getAxisValue(AXIS_X, 0); }
+	public final float getY()            { return getAxisValue(AXIS_Y, 0); }
+	public final float getPressure()     { return getAxisValue(AXIS_PRESSURE, 0); }
+	public final float getSize()         { return getAxisValue(AXIS_SIZE, 0); }
+	public final float getX(int p)       { return getAxisValue(AXIS_X, p); }
+	public final float getY(int p)       { return getAxisValue(AXIS_Y, p); }
+	public final float getPressure(int p) { return getAxisValue(AXIS_PRESSURE, p); }
+	public final float getSize(int p)    { return getAxisValue(AXIS_SIZE, p); }
+	public final float getOrientation(int p) { return getAxisValue(AXIS_ORIENTATION, p); }
+	
+	public final float getAxisValue(int axis)        { return getAxisValue(axis, 0); }
+	public final float getAxisValue(int axis, int p) { return axes[index(rows - 1, p, axis)]; }
+	
+	public final long getHistoricalEventTime(int h)  { return times[h]; }
+	public final float getHistoricalX(int h)         { return getHistoricalAxisValue(AXIS_X, 0, h); }
+	public final float getHistoricalY(int h)         { return getHistoricalAxisValue(AXIS_Y, 0, h); }
+	public final float getHistoricalPressure(int h)  { return getHistoricalAxisValue(AXIS_PRESSURE, 0, h); }
+	public final float getHistoricalSize(int h)      { return getHistoricalAxisValue(AXIS_SIZE, 0, h); }
+	public final float getHistoricalX(int p, int h)  { return getHistoricalAxisValue(AXIS_X, p, h); }
+	public final float getHistoricalY(int p, int h)  { return getHistoricalAxisValue(AXIS_Y, p, h); }
+	public final float getHistoricalPressure(int p, int h) { return getHistoricalAxisValue(AXIS_PRESSURE, p, h); }
+	public final float getHistoricalSize(int p, int h)     { return getHistoricalAxisValue(AXIS_SIZE, p, h); }
+	public final float getHistoricalOrientation(int p, int h) { return getHistoricalAxisValue(AXIS_ORIENTATION, p, h); }
+	
+	public final float getHistoricalAxisValue(int axis, int h)        { return getHistoricalAxisValue(axis, 0, h); }
+	public final float getHistoricalAxisValue(int axis, int p, int h) { return axes[index(h, p, axis)]; }
+	
+	int index(int row, int p, int axis) {
+		return (row * pointers + p) * AXIS_COUNT + axis;
+	}
+	
+	void addRow(long time) {
+		if (rows == times.length) {
+			times = java.util.Arrays.copyOf(times, 2 * rows);
+			axes = java.util.Arrays.copyOf(axes, 2 * axes.length);
+		}
+		times[rows++] = time;
+	}
+	
+	void setSample(int p, int axis, float value) {
+		axes[index(rows - 1, p, axis)] = value;
+	}
+}
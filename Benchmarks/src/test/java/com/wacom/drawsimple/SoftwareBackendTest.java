@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+import android.view.MotionEvent;
+
+/**
+ * Tests that SoftwareBackend draws what Brush and RenderBackend specify.
+ * 
+ * @author wacom
+ */
+public class SoftwareBackendTest {
+	
+	static final int WIDTH = 400, HEIGHT = 300;
+	static final int SMALL = 64;
+	
+	/** Opaque colors, since the Canvas stand-in blits stamps without their paint's alpha. */
+	static final int[] COLORS = {0xff000000, 0xffffffff, 0xff3070c0, 0xffe01848};
+	
+	/**
+	 * A single dab centered on a pixel corner, with a radius and hardness
+	 * on the StampCache's steps, should match the canvas path to within
+	 * 1/255 per channel.
+	 */
+	@Test
+	public void dabMatchesCanvas() {
+		StampCache steps = new StampCache();
+		for (int color : COLORS) {
+			for (int r = 1; r * steps.radiusStep <= 30; r++) {
+				for (int h = 0; h < steps.hardnessLevels; h++) {
+					float radius = r * steps.radiusStep;
+					float hardness = h / (float)(steps.hardnessLevels - 1);
+					SoftwareBackend software = new SoftwareBackend(SMALL, SMALL);
+					TiledLayer layer = new TiledLayer(SMALL, SMALL, Bitmap.Config.ARGB_8888);
+					software.drawDab(SMALL / 2, SMALL / 2, radius, hardness, color);
+					new CanvasBackend(layer).drawDab(SMALL / 2, SMALL / 2, radius, hardness, color);
+					
+					int difference = SoftwareBackend.maxDifference(software.getPixels(), premultiplied(layer, SMALL, SMALL));
+					assertTrue("Radius " + radius + ", hardness " + hardness + ": " + difference,
+					           difference <= 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Where many dabs overlap, rounding after each blend lets the two
+	 * paths drift apart by a few levels.
+	 */
+	@Test
+	public void overlappingDabsStayClose() {
+		Random random = new Random(3);
+		SoftwareBackend software = new SoftwareBackend(WIDTH, HEIGHT);
+		TiledLayer layer = new TiledLayer(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		CanvasBackend canvas = new CanvasBackend(layer);
+		for (int i = 0; i < 400; i++) {
+			int x = 40 + random.nextInt(WIDTH - 80), y = 40 + random.nextInt(HEIGHT - 80);
+			float radius = (1 + random.nextInt(60)) / 2f;
+			float hardness = random.nextInt(64) / 63f;
+			int color = COLORS[random.nextInt(COLORS.length)];
+			software.drawDab(x, y, radius, hardness, color);
+			canvas.drawDab(x, y, radius, hardness, color);
+		}
+		
+		int difference = SoftwareBackend.maxDifference(software.getPixels(), premultiplied(layer, WIDTH, HEIGHT));
+		assertTrue(difference + " levels apart", difference <= 6);
+	}
+	
+	/**
+	 * Read a layer back in SoftwareBackend's format, premultiplied ARGB.
+	 */
+	static int[] premultiplied(TiledLayer layer, int width, int height) {
+		int tile = TiledLayer.TILE_SIZE;
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Bitmap b = layer.getTile(x / tile, y / tile);
+				int c = b == null ? 0 : b.getPixel(x % tile, y % tile);
+				int a = c >>> 24;
+				pixels[y * width + x] = a << 24 | SoftwareBackend.mul(a, c >>> 16 & 0xff) << 16 |
+				                        SoftwareBackend.mul(a, c >>> 8 & 0xff) << 8 | SoftwareBackend.mul(a, c & 0xff);
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * A hard, opaque brush fills each curve as geometry. That should
+	 * cover nearly the same pixels as stamping the same stroke dab by
+	 * dab. Only single pixels along the edge may differ: stamped dabs
+	 * leave a scalloped edge, and stop up to one step short of the end
+	 * of the stroke.
+	 */
+	@Test
+	public void solidStrokeMatchesStampedDabs() {
+		// A hardness curve which is 1 everywhere leaves each dab fully
+		// hard, but forces the brush of this tool to stamp.
+		int tool = MotionEvent.TOOL_TYPE_MOUSE;
+		BrushDynamics.setForTool(tool, BrushDynamics.createDefault(tool)
+		                         .set(BrushDynamics.HARDNESS, BrushDynamics.PRESSURE, 0, 1, 1, 1));
+		try {
+			Brush solid = new Brush(10, 20, Brush.MAX_HARDNESS);
+			Brush stamped = new Brush(10, 20, Brush.MAX_HARDNESS);
+			stamped.setTool(tool);
+			
+			SoftwareBackend geometry = new SoftwareBackend(WIDTH, HEIGHT);
+			SoftwareBackend dabs = new SoftwareBackend(WIDTH, HEIGHT);
+			draw(solid, geometry, 7);
+			draw(stamped, dabs, 7);
+			assertTrue(solid.isSolid());
+			assertFalse(stamped.isSolid());
+			
+			int inked = 0, differing = 0;
+			int[] a = geometry.getPixels(), b = dabs.getPixels();
+			for (int i = 0; i < a.length; i++) {
+				if (a[i] != 0 || b[i] != 0)
+					inked++;
+				if (a[i] != b[i])
+					differing++;
+			}
+			assertNotEquals(0, inked);
+			assertTrue(differing + " of " + inked + " pixels differ", differing * 100 <= inked);
+		} finally {
+			BrushDynamics.setForTool(tool, null);
+		}
+	}
+	
+	/**
+	 * Draw a wandering stroke whose pressure swells and fades, sampled
+	 * every 8 ms.
+	 */
+	static void draw(Brush brush, RenderBackend canvas, long seed) {
+		Random random = new Random(seed);
+		Stroke stroke = new Stroke(brush, 0);
+		float x = WIDTH / 2, y = HEIGHT / 2, heading = 0;
+		for (int i = 0; i < 200; i++) {
+			heading += (float)random.nextGaussian() * 0.3f;
+			if (x < 20 || x > WIDTH - 20 || y < 20 || y > HEIGHT - 20)
+				heading = (float)Math.atan2(HEIGHT / 2 - y, WIDTH / 2 - x);
+			x += 4 * (float)Math.cos(heading);
+			y += 4 * (float)Math.sin(heading);
+			float pressure = 0.6f + 0.35f * (float)Math.sin(i / 15.0);
+			brush.strokeTo(canvas, stroke, new State().set(8 * i, x, y, pressure, 0.1f));
+		}
+		brush.endFill(canvas, stroke);
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * Tests that a StrokeEngine draws the same strokes whether they are
+ * stamped on the calling thread or by its RenderThread, and that its
+ * undo history restores the layer stroke by stroke.
+ * 
+ * @author wacom
+ */
+public class StrokeEngineTest {
+	
+	static final int WIDTH = 600, HEIGHT = 400;
+	
+	@Test
+	public void strokesAreDrawn() {
+		StrokeEngine engine = engine();
+		draw(engine, strokes(3, 1));
+		
+		int inked = 0;
+		for (int pixel : pixels(engine.layer)) {
+			if (pixel != 0)
+				inked++;
+		}
+		assertNotEquals(0, inked);
+	}
+	
+	@Test
+	public void renderThreadMatchesCallingThread() {
+		List<MotionEvent> events = strokes(5, 2);
+		StrokeEngine direct = engine();
+		draw(direct, events);
+		
+		StrokeEngine queued = engine();
+		queued.startRenderThread(64, SampleRing.Policy.BLOCK);
+		draw(queued, events);
+		queued.stopRenderThread();
+		
+		assertArrayEquals(pixels(direct.layer), pixels(queued.layer));
+	}
+	
+	@Test
+	public void undoRestoresEachStroke() throws IOException {
+		File dir = Files.createTempDirectory("undo").toFile();
+		UndoHistory history = new UndoHistory(dir, 16 * 1024 * 1024, 50);
+		StrokeEngine engine = engine();
+		engine.setHistory(history);
+		
+		try {
+			int[] empty = pixels(engine.layer);
+			draw(engine, strokes(1, 3));
+			int[] first = pixels(engine.layer);
+			draw(engine, strokes(1, 4));
+			int[] second = pixels(engine.layer);
+			
+			RectF changed = new RectF();
+			assertEquals(1, engine.undo(changed));
+			assertArrayEquals(first, pixels(engine.layer));
+			assertEquals(1, engine.undo(changed));
+			assertArrayEquals(empty, pixels(engine.layer));
+			assertEquals(0, engine.undo(changed));
+			
+			assertEquals(1, engine.redo(changed));
+			assertEquals(1, engine.redo(changed));
+			assertArrayEquals(second, pixels(engine.layer));
+		} finally {
+			history.close();
+			dir.delete();
+		}
+	}
+	
+	static StrokeEngine engine() {
+		StrokeEngine engine = new StrokeEngine();
+		TiledLayer layer = new TiledLayer(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		synchronized (engine.lock) {
+			engine.setLayer(layer, new CanvasBackend(layer));
+		}
+		return engine;
+	}
+	
+	static void draw(StrokeEngine engine, List<MotionEvent> events) {
+		Matrix identity = new Matrix();
+		RectF dirty = new RectF();
+		for (MotionEvent event : events) {
+			engine.changeTool(event);
+			engine.drawFill(event, identity, dirty);
+		}
+	}
+	
+	/**
+	 * Random wavy pen strokes, each a down, a few batched moves and an up.
+	 */
+	static List<MotionEvent> strokes(int count, long seed) {
+		Random random = new Random(seed);
+		List<MotionEvent> events = new ArrayList<MotionEvent>();
+		long t = 0;
+		for (int s = 0; s < count; s++) {
+			float x = 50 + random.nextFloat() * (WIDTH - 100);
+			float y = 50 + random.nextFloat() * (HEIGHT - 100);
+			float dx = random.nextFloat() * 6 - 3, dy = random.nextFloat() * 6 - 3;
+			long down = t;
+			
+			events.add(event(down, t, MotionEvent.ACTION_DOWN, x, y));
+			for (int frame = 0; frame < 12; frame++) {
+				MotionEvent move = null;
+				for (int i = 0; i < 4; i++) {
+					t += 4;
+					x += dx + random.nextFloat() - 0.5f;
+					y += dy + random.nextFloat() - 0.5f;
+					if (move == null)
+						move = event(down, t, MotionEvent.ACTION_MOVE, x, y);
+					else
+						move.addBatch(t, x, y, 0.2f + 0.6f * random.nextFloat(), 0.01f, 0);
+				}
+				events.add(move);
+			}
+			t += 4;
+			events.add(event(down, t, MotionEvent.ACTION_UP, x, y));
+			t += 100;
+		}
+		return events;
+	}
+	
+	static MotionEvent event(long down, long t, int action, float x, float y) {
+		MotionEvent.PointerProperties[] props = { new MotionEvent.PointerProperties() };
+		MotionEvent.PointerCoords[] coords = { new MotionEvent.PointerCoords() };
+		props[0].toolType = MotionEvent.TOOL_TYPE_STYLUS;
+		coords[0].setAxisValue(MotionEvent.AXIS_X, x);
+		coords[0].setAxisValue(MotionEvent.AXIS_Y, y);
+		coords[0].setAxisValue(MotionEvent.AXIS_PRESSURE, 0.5f);
+		coords[0].setAxisValue(MotionEvent.AXIS_SIZE, 0.01f);
+		return MotionEvent.obtain(down, t, action, 1, props, coords,
+		                          0, 0, 1, 1, 1, 0, InputDevice.SOURCE_STYLUS, 0);
+	}
+	
+	static int[] pixels(TiledLayer layer) {
+		int tile = TiledLayer.TILE_SIZE;
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				Bitmap b = layer.getTile(x / tile, y / tile);
+				pixels[y * WIDTH + x] = b == null ? 0 : b.getPixel(x % tile, y % tile);
+			}
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a StrokeJournal reads back exactly what was written, across
+ * growing the mapping, reopening and compacting, and that journals
+ * written by older versions can still be read and appended to.
+ * 
+ * @author wacom
+ */
+public class StrokeJournalTest {
+	
+	File dir;
+	File file;
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("journal").toFile();
+		file = new File(dir, "strokes.journal");
+	}
+	
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+	
+	@Test
+	public void recordsReadBack() throws IOException {
+		StrokeJournal journal = new StrokeJournal(file);
+		List<String> written = new ArrayList<String>();
+		Recorder expected = new Recorder(written);
+		
+		// One stroke with neither tool nor axes, one with both, written
+		// interleaved on two channels.
+		write(journal, expected, 0, 0, 0);
+		journal.begin(1, 0xff00ff00, 10, 40, 50, 2);
+		expected.begin(1, 0xff00ff00, 10, 40, 50, 2);
+		journal.sample(1, 5, 1.5f, 2.5f, 0.75f, 0.02f, 0.5f, -1.25f, 0.125f);
+		expected.sample(1, 5, 1.5f, 2.5f, 0.75f, 0.02f, 0.5f, -1.25f, 0.125f);
+		write(journal, expected, 2, 0, 0);
+		journal.end(1);
+		expected.end(1);
+		journal.undo();
+		expected.undo();
+		journal.redo();
+		expected.redo();
+		journal.clear();
+		expected.clear();
+		
+		assertEquals(written, read(journal.reader()));
+		journal.close();
+		assertEquals(written, read(StrokeJournal.Reader.open(file)));
+		assertEquals(journal.length(), file.length());
+	}
+	
+	@Test
+	public void liveStrokesFollowUndoAndRedo() throws IOException {
+		StrokeJournal journal = new StrokeJournal(file);
+		for (int s = 0; s < 3; s++)
+			write(journal, null, 0, s, 4);
+		journal.undo();
+		journal.undo();
+		journal.redo();
+		assertEquals(bits(0, 1), journal.reader().liveStrokes());
+		
+		// Ending a new stroke discards the stroke which could be redone
+		journal.undo();
+		write(journal, null, 0, 3, 4);
+		journal.redo();
+		assertEquals(bits(0, 3), journal.reader().liveStrokes());
+		
+		// A stroke still open counts as live, and cannot be undone
+		journal.begin(1, 0, 10, 20, 50, 0);
+		journal.undo();
+		assertEquals(bits(0, 4), journal.reader().liveStrokes());
+		journal.close();
+	}
+	
+	@Test
+	public void compactKeepsOnlyLiveStrokes() throws IOException {
+		StrokeJournal journal = new StrokeJournal(file);
+		write(journal, null, 0, 0, 4);           // Cleared
+		journal.clear();
+		List<String> kept = new ArrayList<String>();
+		Recorder expected = new Recorder(kept);
+		write(journal, expected, 0, 1, 4);
+		write(journal, null, 0, 2, 0);           // Empty
+		write(journal, expected, 1, 3, 4);
+		write(journal, null, 0, 4, 4);           // Undone
+		journal.undo();
+		journal.close();
+		
+		StrokeJournal.compact(file);
+		assertEquals(kept, read(StrokeJournal.Reader.open(file)));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+	
+	@Test
+	public void mappingGrows() throws IOException {
+		StrokeJournal journal = new StrokeJournal(file);
+		List<String> written = new ArrayList<String>();
+		int samples = 3 * StrokeJournal.INITIAL_CAPACITY / StrokeJournal.SAMPLE_SIZE;
+		write(journal, new Recorder(written), 0, 0, samples);
+		assertTrue(journal.length() > 2 * StrokeJournal.INITIAL_CAPACITY);
+		
+		assertEquals(written, read(journal.reader()));
+		journal.close();
+		assertEquals(written, read(StrokeJournal.Reader.open(file)));
+	}
+	
+	@Test
+	public void reopenedJournalAppends() throws IOException {
+		List<String> written = new ArrayList<String>();
+		Recorder expected = new Recorder(written);
+		StrokeJournal journal = new StrokeJournal(file);
+		write(journal, expected, 0, 0, 4);
+		journal.close();
+		long length = file.length();
+		
+		journal = new StrokeJournal(file);
+		assertEquals(length, journal.length());
+		write(journal, expected, 0, 1, 4);
+		journal.undo();
+		expected.undo();
+		journal.close();
+		
+		assertEquals(written, read(StrokeJournal.Reader.open(file)));
+	}
+	
+	@Test
+	public void olderVersionsAreRead() throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(StrokeJournal.MAGIC);
+		out.writeInt(2);
+		out.writeByte(StrokeJournal.BEGIN);
+		out.writeByte(3);
+		out.writeInt(0xff0000ff);
+		out.writeInt(10);
+		out.writeInt(20);
+		out.writeInt(50);
+		out.writeByte(StrokeJournal.SAMPLE);
+		out.writeByte(3);
+		out.writeLong(7);
+		out.writeFloat(1);
+		out.writeFloat(2);
+		out.writeFloat(0.5f);
+		out.writeFloat(0.01f);
+		out.writeByte(StrokeJournal.END);
+		out.writeByte(3);
+		out.writeByte(StrokeJournal.UNDO);
+		out.close();
+		
+		List<String> written = new ArrayList<String>();
+		Recorder expected = new Recorder(written);
+		expected.begin(3, 0xff0000ff, 10, 20, 50, 0);
+		expected.sample(3, 7, 1, 2, 0.5f, 0.01f, 0, 0, 0);
+		expected.end(3);
+		expected.undo();
+		assertEquals(written, read(StrokeJournal.Reader.open(file)));
+		
+		// Opening for writing upgrades the header in place
+		StrokeJournal journal = new StrokeJournal(file);
+		journal.begin(0, 0, 10, 20, 50, 2);
+		expected.begin(0, 0, 10, 20, 50, 2);
+		journal.close();
+		assertEquals(written, read(StrokeJournal.Reader.open(file)));
+		
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		in.readInt();
+		assertEquals(StrokeJournal.VERSION, in.readInt());
+		in.close();
+	}
+	
+	@Test(expected = IOException.class)
+	public void newerVersionsAreRejected() throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(StrokeJournal.MAGIC);
+		out.writeInt(StrokeJournal.VERSION + 1);
+		out.close();
+		StrokeJournal.Reader.open(file);
+	}
+	
+	/**
+	 * Write a stroke of 'samples' samples on a channel, ending it, and
+	 * pass the same records to 'expected' (if not null). Each stroke's
+	 * samples are made distinct by 'stroke'.
+	 */
+	static void write(StrokeJournal journal, Recorder expected, int ch, int stroke, int samples) {
+		journal.begin(ch, 0xff000000 | stroke, 10, 20 + stroke, 50, 0);
+		if (expected != null)
+			expected.begin(ch, 0xff000000 | stroke, 10, 20 + stroke, 50, 0);
+		for (int i = 0; i < samples; i++) {
+			long t = 1000L * stroke + i;
+			float x = stroke * 100 + i * 0.5f, y = i * 0.25f, p = (i % 10) / 10f;
+			journal.sample(ch, t, x, y, p, 0.01f, 0, 0, 0);
+			if (expected != null)
+				expected.sample(ch, t, x, y, p, 0.01f, 0, 0, 0);
+		}
+		journal.end(ch);
+		if (expected != null)
+			expected.end(ch);
+	}
+	
+	static List<String> read(StrokeJournal.Reader reader) {
+		List<String> records = new ArrayList<String>();
+		reader.readAll(new Recorder(records));
+		return records;
+	}
+	
+	static BitSet bits(int... strokes) {
+		BitSet set = new BitSet();
+		for (int s : strokes)
+			set.set(s);
+		return set;
+	}
+	
+	/**
+	 * Describes each record it visits as a line of text, so that two
+	 * sequences of records can be compared with a readable failure.
+	 */
+	static class Recorder implements StrokeJournal.Visitor {
+		final List<String> records;
+		
+		Recorder(List<String> records) {
+			this.records = records;
+		}
+		
+		public void begin(int channel, int color, int spacing, int size, int hardness, int tool) {
+			records.add("begin " + Arrays.toString(new int[] {channel, color, spacing, size, hardness, tool}));
+		}
+		public void sample(int channel, long time, float x, float y, float pressure, float size,
+		                   float tilt, float orientation, float twist) {
+			records.add("sample " + channel + " " + time + " "
+			            + Arrays.toString(new float[] {x, y, pressure, size, tilt, orientation, twist}));
+		}
+		public void end(int channel) {
+			records.add("end " + channel);
+		}
+		public void clear() {
+			records.add("clear");
+		}
+		public void undo() {
+			records.add("undo");
+		}
+		public void redo() {
+			records.add("redo");
+		}
+	}
+}
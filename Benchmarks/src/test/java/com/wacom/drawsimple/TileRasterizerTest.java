@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that TileRasterizer's output is bit-identical to drawing the
+ * same dabs sequentially, on one thread and on several.
+ * 
+ * @author wacom
+ */
+public class TileRasterizerTest {
+	
+	static final int WIDTH = 700, HEIGHT = 523;  // Not a multiple of any tile size
+	static final int THREADS = 8;
+	
+	static DabList dabs;
+	static int[] expected;
+	static ForkJoinPool pool;
+	
+	@BeforeClass
+	public static void drawSequentially() {
+		dabs = drawing(80, 120, 42);
+		SoftwareBackend sequential = new SoftwareBackend(WIDTH, HEIGHT);
+		dabs.drawTo(sequential);
+		expected = sequential.getPixels().clone();
+		pool = new ForkJoinPool(THREADS - 1);
+	}
+	
+	@AfterClass
+	public static void shutDown() {
+		pool.shutdown();
+	}
+	
+	@Test
+	public void drawingIsNotEmpty() {
+		assertNotEquals(0, dabs.size());
+		int inked = 0;
+		for (int pixel : expected) {
+			if (pixel != 0)
+				inked++;
+		}
+		assertNotEquals(0, inked);
+	}
+	
+	@Test
+	public void singleThreadMatchesSequential() {
+		SoftwareBackend target = new SoftwareBackend(WIDTH, HEIGHT);
+		new TileRasterizer(128).rasterize(dabs, target);
+		assertArrayEquals(expected, target.getPixels());
+	}
+	
+	@Test
+	public void callingThreadAloneMatchesSequential() {
+		SoftwareBackend target = new SoftwareBackend(WIDTH, HEIGHT);
+		new TileRasterizer(128).rasterize(dabs, target, pool, 0);
+		assertArrayEquals(expected, target.getPixels());
+	}
+	
+	@Test
+	public void parallelMatchesSequential() {
+		for (int tileSize : new int[] {32, 100, 128, 256}) {
+			TileRasterizer rasterizer = new TileRasterizer(tileSize);
+			for (int threads = 2; threads <= THREADS; threads *= 2) {
+				SoftwareBackend target = new SoftwareBackend(WIDTH, HEIGHT);
+				rasterizer.rasterize(dabs, target, pool, threads - 1);
+				assertArrayEquals("Tile size " + tileSize + ", " + threads + " threads",
+				                  expected, target.getPixels());
+			}
+		}
+	}
+	
+	@Test
+	public void reusedTargetMatchesSequential() {
+		SoftwareBackend target = new SoftwareBackend(WIDTH, HEIGHT);
+		TileRasterizer rasterizer = new TileRasterizer(64);
+		for (int i = 0; i < 3; i++) {
+			target.clear();
+			rasterizer.rasterize(dabs, target, pool, THREADS - 1);
+			assertArrayEquals(expected, target.getPixels());
+		}
+	}
+	
+	/**
+	 * Random-walk strokes of assorted brushes, overlapping each other
+	 * and the edges of the canvas.
+	 */
+	static DabList drawing(int strokes, int samples, long seed) {
+		Random random = new Random(seed);
+		DabList dabs = new DabList();
+		for (int s = 0; s < strokes; s++) {
+			Brush brush = new Brush(10 + random.nextInt(30), 5 + random.nextInt(40), random.nextInt(101));
+			brush.setColor(random.nextInt() | 0x20000000);
+			Stroke stroke = new Stroke(brush, 0);
+			
+			float x = random.nextFloat() * WIDTH, y = random.nextFloat() * HEIGHT;
+			for (int i = 0; i < samples; i++) {
+				x += random.nextGaussian() * 6;
+				y += random.nextGaussian() * 6;
+				brush.strokeTo(dabs, stroke, new State().set(i, x, y, random.nextFloat(), 0.1f));
+			}
+			brush.endFill(dabs, stroke);
+		}
+		return dabs;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Tests that a TiledLayer only allocates the tiles drawn on, and that
+ * drawing into it matches drawing into a single bitmap of its size.
+ * 
+ * @author wacom
+ */
+public class TiledLayerTest {
+	
+	static final int TILE = TiledLayer.TILE_SIZE;
+	static final int TILE_BYTES = 4 * TILE * TILE;
+	
+	@Test
+	public void emptyLayerAllocatesNothing() {
+		TiledLayer layer = new TiledLayer(8 * TILE, 6 * TILE, Bitmap.Config.ARGB_8888);
+		assertEquals(0, layer.getAllocatedTileCount());
+		assertEquals(0, layer.getByteCount());
+	}
+	
+	@Test
+	public void memoryTracksTouchedTiles() {
+		TiledLayer layer = new TiledLayer(8 * TILE, 6 * TILE, Bitmap.Config.ARGB_8888);
+		Bitmap stamp = stamp(20, 20, 0x80ff0000);
+		
+		layer.drawBitmap(stamp, 10, 10, null);
+		assertTiles(1, layer);
+		layer.drawBitmap(stamp, 30, 40, null);
+		assertTiles(1, layer);
+		
+		// Across a vertical boundary, then across a corner
+		layer.drawBitmap(stamp, TILE - 10, 10, null);
+		assertTiles(2, layer);
+		layer.drawBitmap(stamp, 3 * TILE - 10, 3 * TILE - 10, null);
+		assertTiles(6, layer);
+		
+		// Far corner, and partly off the layer
+		layer.drawBitmap(stamp, 8 * TILE - 10, 6 * TILE - 10, null);
+		assertTiles(7, layer);
+		layer.drawBitmap(stamp, -10, -10, null);
+		assertTiles(7, layer);
+		
+		layer.clear();
+		assertTiles(0, layer);
+	}
+	
+	@Test
+	public void stampEndingOnBoundaryStaysInItsTile() {
+		TiledLayer layer = new TiledLayer(4 * TILE, 4 * TILE, Bitmap.Config.ARGB_8888);
+		Bitmap stamp = stamp(16, 16, 0xff00ff00);
+		
+		layer.drawBitmap(stamp, TILE - 16, TILE - 16, null);
+		assertTiles(1, layer);
+		
+		// Off by a fraction of a pixel, the last column and row reach
+		// the next tiles
+		layer.drawBitmap(stamp, 2 * TILE - 15.4f, 2 * TILE - 15.4f, null);
+		assertTiles(5, layer);
+	}
+	
+	@Test
+	public void matchesSingleBitmap() {
+		int width = 3 * TILE + 37, height = 2 * TILE + 101;
+		TiledLayer layer = new TiledLayer(width, height, Bitmap.Config.ARGB_8888);
+		Bitmap single = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(single);
+		
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Bitmap stamp = gradient(1 + random.nextInt(80), random.nextInt() | 0x01000000);
+			float x = random.nextFloat() * (width + 100) - 50;
+			float y = random.nextFloat() * (height + 100) - 50;
+			layer.drawBitmap(stamp, x, y, null);
+			canvas.drawBitmap(stamp, x, y, null);
+		}
+		
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Bitmap tile = layer.getTile(x / TILE, y / TILE);
+				int pixel = tile == null ? 0 : tile.getPixel(x % TILE, y % TILE);
+				if (pixel != single.getPixel(x, y))
+					assertEquals("Pixel (" + x + ", " + y + ")",
+					             Integer.toHexString(single.getPixel(x, y)), Integer.toHexString(pixel));
+			}
+		}
+	}
+	
+	static void assertTiles(int tiles, TiledLayer layer) {
+		assertEquals(tiles, layer.getAllocatedTileCount());
+		assertEquals(tiles * TILE_BYTES, layer.getByteCount());
+	}
+	
+	static Bitmap stamp(int width, int height, int color) {
+		Bitmap b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		b.eraseColor(color);
+		return b;
+	}
+	
+	/**
+	 * A round stamp fading out from its center, like a soft brush dab.
+	 */
+	static Bitmap gradient(int size, int color) {
+		Bitmap b = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+		float r = size / 2f;
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				float d = (float)Math.hypot(x + 0.5f - r, y + 0.5f - r) / r;
+				int alpha = Math.round((color >>> 24) * Math.max(1 - d, 0));
+				b.setPixel(x, y, alpha << 24 | color & 0xffffff);
+			}
+		}
+		return b;
+	}
+}
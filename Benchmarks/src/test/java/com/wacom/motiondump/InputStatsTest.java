@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.motiondump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks InputStats against a brute-force recomputation over every
+ * sample in its window, through bursts fast enough to reach the LIMIT
+ * cap and pauses long enough to empty the window.
+ * 
+ * @author wacom
+ */
+public class InputStatsTest {
+	
+	static final int SAMPLES = 200000;
+	static final long WINDOW = InputStats.WINDOW;
+	
+	static final float[] PERCENTILES = {0, 0.01f, 0.25f, 0.5f, 0.9f, 0.99f, 0.999f, 1};
+	
+	@Test
+	public void matchesBruteForce() {
+		Random random = new Random(11);
+		InputStats.Rate rate = new InputStats.Rate(WINDOW);
+		InputStats.Latency latency = new InputStats.Latency(WINDOW);
+		long[] times = new long[SAMPLES];
+		long[] latencies = new long[SAMPLES];
+		int first = 0;         // First sample since the rate was last cleared
+		boolean capped = false, emptied = false;
+		
+		long time = 0;
+		for (int n = 0; n < SAMPLES; n++) {
+			// Alternate between bursts of 20 kHz and a slow 100 Hz, with
+			// an occasional pause longer than the window.
+			boolean burst = (n / 10000) % 2 == 0;
+			long gap = burst ? random.nextInt(100000) : 1000000L + random.nextInt(19000000);
+			if (random.nextInt(5000) == 0)
+				gap = WINDOW + random.nextInt(1000000);
+			time += gap;
+			if (n > 0 && gap > WINDOW) {
+				first = n;
+				emptied = true;
+			}
+			
+			long l = (long)(-Math.log(1 - random.nextDouble()) * 5000000);
+			if (random.nextInt(100) == 0)
+				l = random.nextBoolean() ? -l : Long.MAX_VALUE / 2;
+			times[n] = time;
+			latencies[n] = l;
+			rate.add(time);
+			latency.add(time, l);
+			
+			if (n % 97 != 0)
+				continue;
+			
+			// The window holds the latest samples no older than WINDOW, and
+			// at most LIMIT of them.
+			int start = first;
+			while (times[start] < time - WINDOW)
+				start++;
+			if (n + 1 - start > InputStats.LIMIT) {
+				start = n + 1 - InputStats.LIMIT;
+				capped = true;
+			}
+			int count = n + 1 - start;
+			assertEquals(count, rate.getCount());
+			assertEquals(count, latency.getCount());
+			
+			long span = times[n] - times[start];
+			assertEquals(count < 2 || span <= 0 ? 0 : (count - 1) * 1E9f / span, rate.getHz(), 0);
+			
+			long sum = 0, sumSquares = 0;
+			for (int i = start + 1; i <= n; i++) {
+				long interval = (times[i] - times[i - 1]) / 1000;
+				sum += interval;
+				sumSquares += interval * interval;
+			}
+			float jitter = 0;
+			if (count - 1 >= 2) {
+				double mean = (double)sum / (count - 1);
+				double variance = (double)sumSquares / (count - 1) - mean * mean;
+				jitter = variance <= 0 ? 0 : (float)Math.sqrt(variance) / 1000;
+			}
+			assertEquals(jitter, rate.getJitter(), 0);
+			
+			long[] us = new long[count];
+			for (int i = 0; i < count; i++)
+				us[i] = Math.min(Math.max(latencies[start + i] / 1000, 0), InputStats.Latency.MAX_LATENCY);
+			Arrays.sort(us);
+			assertEquals(us[count - 1] / 1000f, latency.getMax(), 0);
+			
+			for (float p : PERCENTILES) {
+				long expected = us[(int)Math.max(Math.ceil(p * (double)count), 1) - 1];
+				float actual = latency.getPercentile(p) * 1000;
+				assertTrue("p" + p + " of " + count + ": " + actual + " us, expected " + expected,
+				           Math.abs(actual - expected) <= 0.0625 * expected + 0.5);
+			}
+		}
+		assertTrue(capped);
+		assertTrue(emptied);
+	}
+	
+	@Test
+	public void windowIsClamped() {
+		InputStats stats = new InputStats(1, Long.MAX_VALUE);
+		assertEquals(InputStats.MAX_WINDOW, stats.window);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rateRejectsLongWindow() {
+		new InputStats.Rate(InputStats.MAX_WINDOW + 1);
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.motiondump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * Tests that a MotionCapture reads back every sample written to it, in
+ * order, when it spans many small segments.
+ * 
+ * @author wacom
+ */
+public class MotionCaptureTest {
+	
+	static final int PEN_ID = 5;
+	static final int TOUCH_ID = 9;  // Never registered, so captured with the default axes
+	
+	/** Axes the pen reports, in ascending order. */
+	static final int[] PEN_AXES = {
+		MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_PRESSURE, MotionEvent.AXIS_TILT
+	};
+	
+	/** Small enough that the capture spans several segments. */
+	static final int SEGMENT_SIZE = 8 * 1024;
+	
+	File dir;
+	
+	@BeforeClass
+	public static void registerPen() {
+		InputDevice pen = new InputDevice(PEN_ID, "Test Pen", "test-pen", InputDevice.SOURCE_STYLUS);
+		for (int axis : PEN_AXES)
+			pen.addMotionRange(axis, -axis, axis + 1);
+		pen.addMotionRange(MotionEvent.AXIS_X, -100, 100);  // Listed again, for another source
+		InputDevice.register(pen);
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("capture").toFile();
+	}
+	
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+	
+	@Test
+	public void samplesReadBack() throws IOException {
+		List<MotionEvent> events = gestures(40, 1);
+		capture(events);
+		
+		File[] segments = dir.listFiles();
+		assertTrue(segments.length + " segments", segments.length >= 4);
+		assertEquals(rows(events), read(dir));
+		
+		MotionCapture.Reader reader = new MotionCapture.Reader(dir);
+		while (reader.next() != null) {
+		}
+		MotionCapture.Device pen = reader.getDevice(PEN_ID);
+		assertEquals("Test Pen", pen.name);
+		assertEquals(InputDevice.SOURCE_STYLUS, pen.sources);
+		assertArrayEquals(PEN_AXES, pen.axes);
+		assertEquals(-MotionEvent.AXIS_X, pen.min[0], 0);
+		assertArrayEquals(MotionCapture.DEFAULT_AXES, reader.getDevice(TOUCH_ID).axes);
+		reader.close();
+	}
+	
+	/**
+	 * Every segment is trimmed to the bytes its header says are used,
+	 * and describes the devices of its own blocks, so that it can be
+	 * read without the segments before it.
+	 */
+	@Test
+	public void segmentsStandAlone() throws IOException {
+		capture(gestures(40, 2));
+		
+		for (File segment : dir.listFiles()) {
+			DataInputStream in = new DataInputStream(new FileInputStream(segment));
+			assertEquals(MotionCapture.MAGIC, in.readInt());
+			assertEquals(MotionCapture.VERSION, in.readInt());
+			int used = in.readInt();
+			in.close();
+			assertEquals(segment.length(), used);
+			assertTrue(used <= SEGMENT_SIZE);
+			
+			File alone = new File(dir, "alone");
+			alone.mkdir();
+			Files.copy(segment.toPath(), new File(alone, MotionCapture.segmentName(0)).toPath());
+			assertTrue(read(alone).size() > 0);
+			delete(alone);
+		}
+	}
+	
+	/**
+	 * Segments are read in order of their numbers, even once the
+	 * numbers outgrow the four digits of their names.
+	 */
+	@Test
+	public void segmentsReadInNumericOrder() throws IOException {
+		List<MotionEvent> events = gestures(40, 3);
+		capture(events);
+		
+		int segments = dir.listFiles().length;
+		for (int i = segments - 1; i > 0; i--) {
+			File from = new File(dir, MotionCapture.segmentName(i));
+			assertTrue(from.renameTo(new File(dir, MotionCapture.segmentName(i * 9999))));
+		}
+		assertEquals(rows(events), read(dir));
+		
+		assertEquals(10000, MotionCapture.segmentNumber("capture-10000.wdmc"));
+		assertEquals(-1, MotionCapture.segmentNumber("capture-0001.wdmc.tmp"));
+		assertEquals(-1, MotionCapture.segmentNumber("capture--1.wdmc"));
+	}
+	
+	void capture(List<MotionEvent> events) throws IOException {
+		MotionCapture.Writer writer = new MotionCapture.Writer(dir, SEGMENT_SIZE);
+		for (MotionEvent e : events)
+			writer.record(e);
+		writer.close();
+	}
+	
+	/**
+	 * Describe each row read from a capture as a line of text.
+	 */
+	static List<String> read(File dir) throws IOException {
+		List<String> rows = new ArrayList<String>();
+		MotionCapture.Reader reader = new MotionCapture.Reader(dir);
+		MotionCapture.Block b;
+		while ((b = reader.next()) != null) {
+			for (int r = 0; r < b.rows; r++) {
+				float[] values = new float[b.axes.length];
+				for (int a = 0; a < values.length; a++)
+					values[a] = b.values[a][r];
+				rows.add(row(b.device.id, b.time[r], b.event[r], b.source[r], b.action[r], b.buttonState[r],
+				             b.pointerId[r], b.toolType[r], values));
+			}
+		}
+		reader.close();
+		return rows;
+	}
+	
+	/**
+	 * Describe each row the events should be captured as, in the same
+	 * way as read().
+	 */
+	static List<String> rows(List<MotionEvent> events) {
+		List<String> rows = new ArrayList<String>();
+		for (int n = 0; n < events.size(); n++) {
+			MotionEvent e = events.get(n);
+			int[] axes = e.getDeviceId() == PEN_ID ? PEN_AXES : MotionCapture.DEFAULT_AXES;
+			int samples = e.getHistorySize() + 1;
+			for (int h = 0; h < samples; h++) {
+				boolean now = h == samples - 1;
+				for (int p = 0; p < e.getPointerCount(); p++) {
+					float[] values = new float[axes.length];
+					for (int a = 0; a < axes.length; a++)
+						values[a] = now ? e.getAxisValue(axes[a], p) : e.getHistoricalAxisValue(axes[a], p, h);
+					rows.add(row(e.getDeviceId(), now ? e.getEventTime() : e.getHistoricalEventTime(h), n,
+					             e.getSource(), e.getAction(), e.getButtonState(), e.getPointerId(p),
+					             e.getToolType(p), values));
+				}
+			}
+		}
+		return rows;
+	}
+	
+	static String row(int device, long time, int event, int source, int action, int buttonState,
+	                  int pointerId, int toolType, float[] values) {
+		return device + " " + time + " " + event + " " + source + " " + action + " " + buttonState + " "
+		       + pointerId + " " + toolType + " " + Arrays.toString(values);
+	}
+	
+	/**
+	 * Gestures alternating between a pen and two fingers, each a down,
+	 * several moves of four batched samples, and an up.
+	 */
+	static List<MotionEvent> gestures(int count, long seed) {
+		Random random = new Random(seed);
+		List<MotionEvent> events = new ArrayList<MotionEvent>();
+		long t = 0;
+		for (int g = 0; g < count; g++) {
+			boolean pen = g % 2 == 0;
+			int pointers = pen ? 1 : 2;
+			long down = t;
+			events.add(event(random, pen, pointers, down, t, MotionEvent.ACTION_DOWN));
+			for (int m = 0; m < 6; m++) {
+				t += 4;
+				MotionEvent move = event(random, pen, pointers, down, t, MotionEvent.ACTION_MOVE);
+				for (int h = 0; h < 3; h++) {
+					t += 4;
+					move.addBatch(t, coords(random, pointers), 0);
+				}
+				events.add(move);
+			}
+			t += 4;
+			events.add(event(random, pen, pointers, down, t, MotionEvent.ACTION_UP));
+			t += 50;
+		}
+		return events;
+	}
+	
+	static MotionEvent event(Random random, boolean pen, int pointers, long down, long t, int action) {
+		MotionEvent.PointerProperties[] props = new MotionEvent.PointerProperties[pointers];
+		for (int p = 0; p < pointers; p++) {
+			props[p] = new MotionEvent.PointerProperties();
+			props[p].id = p;
+			props[p].toolType = pen ? MotionEvent.TOOL_TYPE_STYLUS : MotionEvent.TOOL_TYPE_FINGER;
+		}
+		return MotionEvent.obtain(down, t, action, pointers, props, coords(random, pointers), 0,
+		                          pen ? MotionEvent.BUTTON_STYLUS_PRIMARY : 0, 1, 1, pen ? PEN_ID : TOUCH_ID, 0,
+		                          pen ? InputDevice.SOURCE_STYLUS : InputDevice.SOURCE_TOUCHSCREEN, 0);
+	}
+	
+	static MotionEvent.PointerCoords[] coords(Random random, int pointers) {
+		MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointers];
+		for (int p = 0; p < pointers; p++) {
+			coords[p] = new MotionEvent.PointerCoords();
+			for (int axis = 0; axis < 26; axis++)
+				coords[p].setAxisValue(axis, random.nextFloat() * 1000);
+		}
+		return coords;
+	}
+	
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * A BitmapPool keeps bitmaps which are no longer needed so that a later
+ * request for a bitmap of the same size and configuration can reuse one
+ * instead of allocating. Tiles released by clearing a TiledLayer, and
+ * the view-sized composite when the view changes size, come back here,
+ * which avoids an allocation spike each time they are needed again.
+ * 
+ * The pool holds at most a configured number of bytes, discarding the
+ * oldest bitmaps beyond that. It may be shared between threads.
+ * 
+ * @author wacom
+ */
+public class BitmapPool {
+	
+	final ArrayList<Bitmap> free = new ArrayList<Bitmap>();
+	int maxBytes;
+	int bytes;
+	int hits, misses;
+	
+	/**
+	 * @param maxBytes  Memory cap for all pooled bitmaps
+	 */
+	public BitmapPool(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Obtain a transparent bitmap, reusing a pooled one if possible.
+	 * 
+	 * @param width   Width of the bitmap
+	 * @param height  Height of the bitmap
+	 * @param config  Configuration of the bitmap
+	 * @return        A mutable bitmap, cleared to transparent
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		for (int i = free.size() - 1; i >= 0; i--) {
+			Bitmap b = free.get(i);
+			if (b.getWidth() == width && b.getHeight() == height && b.getConfig() == config) {
+				free.remove(i);
+				bytes -= byteCount(b);
+				hits++;
+				b.eraseColor(Color.TRANSPARENT);
+				return b;
+			}
+		}
+		
+		misses++;
+		return Bitmap.createBitmap(width, height, config);
+	}
+	
+	/**
+	 * Return a bitmap to the pool. The caller must not use it afterwards.
+	 * 
+	 * @param bitmap  Bitmap to pool (may be null)
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+			return;
+		
+		free.add(bitmap);
+		bytes += byteCount(bitmap);
+		trim(maxBytes);
+	}
+	
+	/**
+	 * Discard pooled bitmaps, oldest first, until the pool fits within
+	 * the given size.
+	 * 
+	 * @param limit  Size to trim the pool to, in bytes
+	 */
+	public synchronized void trim(int limit) {
+		while (bytes > limit && !free.isEmpty())
+			bytes -= byteCount(free.remove(0));
+	}
+	
+	/**
+	 * Discard every pooled bitmap.
+	 */
+	public synchronized void clear() {
+		trim(0);
+	}
+	
+	/**
+	 * @return  Total size of the pooled bitmaps, in bytes
+	 */
+	public synchronized int getByteCount() {
+		return bytes;
+	}
+	
+	/**
+	 * @return  Number of requests served from the pool
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+	
+	/**
+	 * @return  Number of requests which had to allocate
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+	
+	public synchronized String toString() {
+		return String.format("BitmapPool(%d KiB, %d hits, %d misses)", bytes / 1024, hits, misses);
+	}
+	
+	static int byteCount(Bitmap b) {
+		return b.getRowBytes() * b.getHeight();
+	}
+}
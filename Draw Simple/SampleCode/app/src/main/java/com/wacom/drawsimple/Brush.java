@@ -26,7 +26,6 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
-import android.graphics.RadialGradient;
 import android.graphics.Bitmap.Config;
 import android.util.Log;
 
@@ -34,24 +33,62 @@ import android.util.Log;
  * A Brush describes how strokes are rendered. Brushes have attributes like
  * size, hardness, and color.
  * 
+ * Strokes follow a Catmull-Rom spline through their samples, so that
+ * they remain smooth even at low sample rates. Dabs are placed along
+ * the spline at an exact arc-length spacing, proportional to the
+ * radius of each dab. Since the curve between two samples depends on
+ * the sample after them, a stroke is drawn one sample behind the most
+ * recent one until it ends.
+ * 
+ * The radius, hardness and opacity of each dab are scaled by the
+ * BrushDynamics of the brush's tool, looked up from the tool type
+ * when each stroke begins.
+ * 
+ * Dabs which are fully hard and opaque overlap to form exactly the
+ * shape swept by the brush's nib, so such brushes skip stamping: each
+ * curve is instead filled as a single stroke (see
+ * RenderBackend.drawStroke) through nodes at the ends of its measured
+ * pieces. This is chosen automatically for every curve, so it applies
+ * to brushes of MAX_HARDNESS and an opaque color whose tool's dynamics
+ * leave hardness and opacity alone.
+ * 
  * @author wacom
  */
 public class Brush {
 	
-	Bitmap fill, outline;
-	Canvas fillCanvas, outlineCanvas;
-	Paint  fillPaint, outlinePaint;
+	/** Length of the straight pieces a curve is measured along, in pixels. */
+	static final float FLATNESS = 2;
+	/** Most straight pieces a single curve is measured along. */
+	static final int MAX_PIECES = 64;
+	/** Smallest distance between dabs, in pixels. */
+	static final float MIN_STEP = 0.5f;
+	/** Hardness of a Brush created with default settings. */
+	static final int DEFAULT_HARDNESS = 20;
+	/** Hardness at which dabs are fully hard out to their edge. */
+	static final int MAX_HARDNESS = 100;
+	
+	Bitmap outline;
+	Canvas outlineCanvas;
+	Paint  outlinePaint;
+	int    outlineColor;
 	
-	State last;
+	StrokeJournal journal;     // Journal to record strokes in (may be null)
+	Stroke stroke;             // Stroke used when none is given explicitly
+	
+	int tool;                  // MotionEvent tool type the brush is used with
+	BrushDynamics dynamics;    // Dynamics of the tool as of the latest stroke
+	
+	State dab  = new State();  // Scratch state for interpolated dabs
+	State next = new State();  // Scratch state for buffered samples
+	float[] nodes = new float[3 * (MAX_PIECES + 1)]; // Scratch stroke nodes
 	int spacing, size, hardness;
-	int current_radius;
 	int foreground = Color.BLACK;
 	
 	/**
 	 * Create a Brush with some basic default settings.
 	 */
 	public Brush() {
-		this(10, 20, 20);
+		this(10, 20, DEFAULT_HARDNESS);
 	}
 	
 	/**
@@ -65,29 +102,55 @@ public class Brush {
 		this.spacing = spacing;
 		this.size = size;
 		this.hardness = hardness;
-		
-		this.fill = Bitmap.createBitmap(size, size, Config.ARGB_8888);
-		this.fillCanvas = new Canvas(this.fill);
-		this.fillPaint = new Paint();
-		this.fillPaint.setStyle(Paint.Style.FILL);
-		this.fillPaint.setColor(Color.BLACK);
+		this.dynamics = BrushDynamics.forTool(tool);
 		
 		this.outline = Bitmap.createBitmap(size, size, Config.ARGB_8888);
 		this.outlineCanvas = new Canvas(this.outline);
 		this.outlinePaint = new Paint();
 		this.outlinePaint.setStyle(Paint.Style.STROKE);
 		this.outlinePaint.setColor(Color.BLACK);
+		renderOutline(foreground);
+		
+		this.stroke = new Stroke(this, 0);
 	}
 	
 	/**
 	 * Ends a filled brush stroke that is currently taking place. Calling
 	 * this method prevents the end of one stroke from being automatically
 	 * connected to the begining of the next (as drawFill does by default).
+	 * The final part of the stroke, which was waiting on a further
+	 * sample, is drawn now.
 	 * 
+	 * @param canvas  Backend to draw with
+	 * @return        'true' if a stroke was taking place
 	 * @see drawFill
 	 */
-	public void endFill() {
-		this.last = null;
+	public boolean endFill(RenderBackend canvas) {
+		return endFill(canvas, stroke);
+	}
+	
+	/**
+	 * Ends the given stroke, as endFill(RenderBackend) does for the
+	 * brush's own stroke.
+	 * 
+	 * @param canvas  Backend to draw with
+	 * @param stroke  Stroke to end
+	 * @return        'true' if the stroke was taking place
+	 */
+	public boolean endFill(RenderBackend canvas, Stroke stroke) {
+		boolean ended = stroke.drawing;
+		if (ended) {
+			if (stroke.count == 1)
+				drawFill(canvas, stroke.last);
+			else
+				drawCurve(canvas, stroke.before, stroke.from, stroke.last, stroke.last, stroke.carry);
+			
+			if (journal != null)
+				journal.end(stroke.channel);
+		}
+		
+		stroke.drawing = false;
+		return ended;
 	}
 	
 	/**
@@ -99,6 +162,35 @@ public class Brush {
 		this.foreground = foreground;
 	}
 	
+	/**
+	 * Update the hardness of the brush.
+	 * 
+	 * @param hardness  Maximum hardness the brush can take on, between 0
+	 *                  and MAX_HARDNESS (inclusive)
+	 */
+	public void setHardness(int hardness) {
+		this.hardness = hardness;
+	}
+	
+	public int getHardness() {
+		return hardness;
+	}
+	
+	/**
+	 * Update the tool the brush is used with. The tool's dynamics take
+	 * effect from the next stroke.
+	 * 
+	 * @param tool  MotionEvent tool type, e.g. MotionEvent.TOOL_TYPE_STYLUS
+	 * @see BrushDynamics#forTool
+	 */
+	public void setTool(int tool) {
+		this.tool = tool;
+	}
+	
+	public int getTool() {
+		return tool;
+	}
+	
 	/**
 	 * Draw the brush as a smooth stroke through all the given states.
 	 * In-between states will be interpolated as necessary, matching the
@@ -106,110 +198,282 @@ public class Brush {
 	 * remembered to let the next call to this function continue drawing
 	 * the same stroke. To begin drawing a new stroke, call 'endFill'.
 	 * 
-	 * @param canvas  Canvas to draw into
+	 * @param canvas  Backend to draw with
 	 * @param state   Array of states to draw the stroke along
 	 * @see endFill
 	 */
-	public void drawFill(Canvas canvas, State[] state) {
-		if (last != null)
-			drawFill(canvas, last, state[0]);
+	public void drawFill(RenderBackend canvas, State[] state) {
+		for (int i = 0; i < state.length; i++) {
+			strokeTo(canvas, state[i]);
+		}
+	}
+	
+	/**
+	 * Draw the brush as a smooth stroke through all the samples in the
+	 * given buffer. This behaves exactly like drawFill(RenderBackend, State[])
+	 * but reads the samples directly from the buffer, creating no
+	 * objects along the way.
+	 * 
+	 * @param canvas  Backend to draw with
+	 * @param buffer  Samples to draw the stroke along
+	 * @see endFill
+	 */
+	public void drawFill(RenderBackend canvas, StrokeBuffer buffer) {
+		for (int i = 0; i < buffer.size(); i++) {
+			strokeTo(canvas, buffer.get(i, next));
+		}
+	}
+	
+	/**
+	 * Extend the current stroke to the given state. The curve between
+	 * the previous two states is drawn, now that the state following
+	 * them is known. The state is remembered (copied) so that the next
+	 * call continues the same stroke. If the brush has
+	 * a journal, the state is also recorded there.
+	 * 
+	 * @param canvas  Backend to draw with
+	 * @param s       State to extend the stroke to
+	 * @see endFill
+	 */
+	public void strokeTo(RenderBackend canvas, State s) {
+		strokeTo(canvas, stroke, s);
+	}
+	
+	/**
+	 * Extend the given stroke to the given state, as strokeTo does for
+	 * the brush's own stroke. Any number of strokes may be drawn with
+	 * the same brush at once.
+	 * 
+	 * @param canvas  Backend to draw with
+	 * @param stroke  Stroke to extend
+	 * @param s       State to extend the stroke to
+	 * @see endFill
+	 */
+	public void strokeTo(RenderBackend canvas, Stroke stroke, State s) {
+		if (journal != null) {
+			if (!stroke.drawing)
+				journal.begin(stroke.channel, foreground, spacing, size, hardness, tool);
+			journal.sample(stroke.channel, s.time, s.x, s.y, s.pressure, s.size,
+			               s.tilt, s.orientation, s.twist);
+		}
 		
-		for (int i = 1; i < state.length; i++) {
-			drawFill(canvas, state[i-1], state[i]);
+		if (!stroke.drawing) {
+			dynamics = BrushDynamics.forTool(tool);
+			stroke.before.set(s);
+			stroke.from.set(s);
+			stroke.last.set(s);
+			stroke.count = 1;
+			stroke.carry = 0;
+			stroke.drawing = true;
+			return;
 		}
 		
-		last = state[state.length-1];
+		stroke.carry = drawCurve(canvas, stroke.before, stroke.from, stroke.last, s, stroke.carry);
+		
+		State oldest = stroke.before;
+		stroke.before = stroke.from;
+		stroke.from = stroke.last;
+		stroke.last = oldest.set(s);
+		stroke.count++;
 	}
 	
 	/**
-	 * Draw the brush as a smooth stroke between the two given states.
+	 * Draw the brush as a straight stroke between the two given states.
 	 * In-between states will be interpolated as necessary, matching
 	 * the brush's defined spacing.
 	 * 
-	 * @param canvas  Canvas to draw into
+	 * @param canvas  Backend to draw with
 	 * @param a       State to begin drawing stroke at
 	 * @param b       State to end drawing stroke at
 	 */
-	public void drawFill(Canvas canvas, State a, State b) {
-		float dist = State.distance(a,b);
-		float d = 0;
+	public void drawFill(RenderBackend canvas, State a, State b) {
+		if (State.distance(a, b) == 0)
+			drawFill(canvas, a);
+		else
+			drawCurve(canvas, a, a, b, b, 0);
+	}
+	
+	/**
+	 * Draw the Catmull-Rom curve between the states 'p1' and 'p2'. The
+	 * curve is measured along short straight pieces, and dabs are
+	 * placed along it at the brush's spacing. Each step is based on the
+	 * radius of the dab just placed. Pressure, size, tilt and time are
+	 * interpolated linearly between 'p1' and 'p2'. The stroke velocity
+	 * at each end of the curve is estimated from its neighbours, and is
+	 * interpolated along with them.
+	 * 
+	 * @param canvas  Backend to draw with
+	 * @param p0      State before the curve
+	 * @param p1      State to begin the curve at
+	 * @param p2      State to end the curve at
+	 * @param p3      State after the curve
+	 * @param carry   Distance along the curve to place the first dab at
+	 * @return        Distance past the end of the curve to place the
+	 *                next dab at
+	 */
+	float drawCurve(RenderBackend canvas, State p0, State p1, State p2, State p3, float carry) {
+		float chord = State.distance(p1, p2);
+		if (chord == 0)
+			return carry;
+		
+		// P(t) = p1 + (bt + ct^2 + dt^3) / 2
+		float bx = p2.x - p0.x;
+		float by = p2.y - p0.y;
+		float cx = 2*p0.x - 5*p1.x + 4*p2.x - p3.x;
+		float cy = 2*p0.y - 5*p1.y + 4*p2.y - p3.y;
+		float dx = 3*(p1.x - p2.x) + p3.x - p0.x;
+		float dy = 3*(p1.y - p2.y) + p3.y - p0.y;
+		
+		float v1 = velocity(p0, p2);
+		float v2 = velocity(p1, p3);
+		
+		int n = Math.min(MAX_PIECES, (int)Math.ceil(chord / FLATNESS));
+		if (isSolid()) {
+			for (int k = 0; k <= n; k++) {
+				float t = k / (float)n;
+				State.interpolate(p1, p2, t, dab);
+				nodes[3*k]     = p1.x + t * (bx + t * (cx + t * dx)) / 2;
+				nodes[3*k + 1] = p1.y + t * (by + t * (cy + t * dy)) / 2;
+				nodes[3*k + 2] = radius(dynamics.get(BrushDynamics.RADIUS, dab, v1 + (v2 - v1) * t));
+			}
+			canvas.drawStroke(nodes, 0, n + 1, foreground);
+			return 0;
+		}
+		
+		float x0 = p1.x, y0 = p1.y, t0 = 0;
 		
-		do {
-			float frac = 0;
-			if (dist != 0)
-				frac = d/dist;
+		for (int k = 1; k <= n; k++) {
+			float t = k / (float)n;
+			float x1 = p1.x + t * (bx + t * (cx + t * dx)) / 2;
+			float y1 = p1.y + t * (by + t * (cy + t * dy)) / 2;
+			float len = (float)Math.sqrt((x1 - x0)*(x1 - x0) + (y1 - y0)*(y1 - y0));
 			
-			State s = State.interpolate(a, b, frac);
-			drawFill(canvas, s);
+			while (carry <= len) {
+				float f = len == 0 ? 0 : carry / len;
+				float tf = t0 + (t - t0) * f;
+				State.interpolate(p1, p2, tf, dab);
+				dab.x = x0 + (x1 - x0) * f;
+				dab.y = y0 + (y1 - y0) * f;
+				
+				carry += drawDab(canvas, dab, v1 + (v2 - v1) * tf);
+			}
 			
-			d += (2 * current_radius * spacing / 100.0);
-		} while (d < dist);
+			carry -= len;
+			x0 = x1;
+			y0 = y1;
+			t0 = t;
+		}
+		return carry;
+	}
+	
+	/**
+	 * @return  'true' if every dab the brush draws is fully hard and
+	 *          opaque, so that strokes may be filled as solid shapes
+	 */
+	boolean isSolid() {
+		return hardness >= MAX_HARDNESS && (foreground >>> 24) == 0xff &&
+		       !dynamics.affects(BrushDynamics.HARDNESS) &&
+		       !dynamics.affects(BrushDynamics.OPACITY);
+	}
+	
+	/**
+	 * @param a  State at the start of a chord
+	 * @param b  State at the end of a chord
+	 * @return   Average speed along the chord, in pixels per millisecond
+	 */
+	static float velocity(State a, State b) {
+		long dt = b.time - a.time;
+		return dt > 0 ? State.distance(a, b) / dt : 0;
 	}
 	
 	/**
-	 * Stamp the currently-rendered fill onto the provided canvas.
+	 * Draw a single dab of the brush fill through the provided backend,
+	 * shaped by the tool's dynamics at the state's pressure, tilt, etc.
+	 * The stroke is taken to be at rest.
 	 * 
-	 * @param canvas  Canvas to draw into
+	 * @param canvas  Backend to draw with
 	 * @param s       State to use for drawing
 	 */
-	public void drawFill(Canvas canvas, State s) {
-		float x = s.x - fill.getWidth()/2f;
-		float y = s.y - fill.getHeight()/2f;
+	public void drawFill(RenderBackend canvas, State s) {
+		drawDab(canvas, s, 0);
+	}
+	
+	/**
+	 * Draw a single dab, shaped by the tool's dynamics.
+	 * 
+	 * @param canvas    Backend to draw with
+	 * @param s         State to use for drawing
+	 * @param velocity  Stroke velocity at the dab, in pixels per millisecond
+	 * @return          Distance to the next dab, in pixels
+	 */
+	float drawDab(RenderBackend canvas, State s, float velocity) {
+		float r = radius(dynamics.get(BrushDynamics.RADIUS, s, velocity));
+		float h = hardness(dynamics.get(BrushDynamics.HARDNESS, s, velocity));
+		float opacity = dynamics.get(BrushDynamics.OPACITY, s, velocity);
 		
-		render(foreground, Math.min(s.pressure, 1), 1);
-		canvas.drawBitmap(fill, x, y, null);
+		int color = foreground;
+		if (opacity < 1)
+			color = (int)((foreground >>> 24) * opacity + 0.5f) << 24 | (foreground & 0xffffff);
+		
+		canvas.drawDab(s.x, s.y, r, h, color);
+		return Math.max(2 * r * spacing / 100f, MIN_STEP);
 	}
 	
 	/**
-	 * Stamp the currently-rendered outline onto the provided canvas.
+	 * Stamp the brush outline onto the provided canvas. The outline
+	 * is only re-rendered when the brush color changes.
 	 * 
-	 * @param canvas  Canvas to draw into
+	 * @param canvas  Target to draw into
 	 * @param s       State to use for drawing
 	 */
-	public void drawOutline(Canvas canvas, State s) {
+	public void drawOutline(DrawTarget canvas, State s) {
 		float x = s.x - outline.getWidth()/2f;
 		float y = s.y - outline.getHeight()/2f;
 		
-		render(foreground, Math.min(s.pressure, 1), 1);
+		if (outlineColor != foreground)
+			renderOutline(foreground);
 		canvas.drawBitmap(outline, x, y, null);
 	}
 	
 	/**
-	 * Update the image that will be stamped by the brush with each
-	 * call to drawFill and drawOutline. Settings like color and
-	 * radius may be changed at any time to provide dynamic brush
-	 * strokes.
+	 * Convert a radius from a fraction of maximum size into pixels.
 	 * 
-	 * @param color     Fill color to use for the brush
-	 * @param radius	Radius as a fraction of maximum size
-	 * @param hardness  Hardness as a fraction of maximum hardness 
+	 * @param radius  Radius as a fraction of maximum size
+	 * @return        Radius in pixels
 	 */
-	void render(int color, float radius, float hardness) {
-		if (hardness < 0 || hardness > 1)
-			throw new IllegalArgumentException("Hardness may only take on values between 0 and 1 (inclusive)");
+	float radius(float radius) {
 		if (radius < 0 || radius > 1)
 			throw new IllegalArgumentException("Radius may only take on values between 0 and 1 (inclusive)");
 		
-		float center = size/2f;
-		radius *= size/2f;
-		hardness *= this.hardness / 100.0f;
+		return radius * size/2f;
+	}
+	
+	/**
+	 * Convert a hardness from a fraction of maximum hardness into the
+	 * absolute hardness used to render stamps.
+	 * 
+	 * @param hardness  Hardness as a fraction of maximum hardness
+	 * @return          Hardness between 0 and 1 (inclusive)
+	 */
+	float hardness(float hardness) {
+		if (hardness < 0 || hardness > 1)
+			throw new IllegalArgumentException("Hardness may only take on values between 0 and 1 (inclusive)");
 		
-		current_radius = (int)Math.ceil(radius);
+		return hardness * this.hardness / 100.0f;
+	}
+	
+	/**
+	 * Update the image that will be stamped by the brush with each
+	 * call to drawOutline.
+	 * 
+	 * @param color  Outline color to use for the brush
+	 */
+	void renderOutline(int color) {
+		float center = size/2f;
 		
-		fillCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
 		outlineCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-		
-		if (current_radius > 0) {
-			RadialGradient gradient = new RadialGradient(center, center, radius,
-			    new int[] {color, color, color & 0x00ffffff},
-			    new float[] {0.0f, hardness, 1.0f},
-			    android.graphics.Shader.TileMode.CLAMP);
-			
-			fillPaint.setShader(gradient);
-			fillCanvas.drawCircle(center, center, radius, fillPaint);
-		}
-		
 		outlinePaint.setColor(color);
 		outlineCanvas.drawCircle(center, center, center, outlinePaint);
+		outlineColor = color;
 	}
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import android.view.MotionEvent;
+
+/**
+ * BrushDynamics maps the state of a tool (pressure, tilt, orientation,
+ * twist and stroke velocity) to the radius, hardness and opacity of
+ * each dab. Every output is the product of one curve per input, each
+ * a fraction between 0 and 1. Curves are defined by piecewise-linear
+ * control points and sampled into lookup tables up front, so that
+ * shaping a dab costs only a few array reads per output, with no
+ * transcendental math.
+ * 
+ * Each tool type has its own dynamics, looked up with forTool. A
+ * registered BrushDynamics is shared by every brush of that tool, so
+ * it should be configured before being registered with setForTool and
+ * left alone afterwards.
+ * 
+ * @author wacom
+ */
+public class BrushDynamics {
+	
+	/** Pressure, between 0 and 1. */
+	public static final int PRESSURE = 0;
+	/** Tilt away from perpendicular, between 0 and PI/2 radians. */
+	public static final int TILT = 1;
+	/** Direction of tilt, between -PI and PI radians. */
+	public static final int ORIENTATION = 2;
+	/** Barrel rotation, as a fraction of a full turn between 0 and 1. */
+	public static final int TWIST = 3;
+	/** Stroke velocity, between 0 and MAX_VELOCITY. */
+	public static final int VELOCITY = 4;
+	static final int INPUTS = 5;
+	
+	/** Dab radius, as a fraction of the brush size. */
+	public static final int RADIUS = 0;
+	/** Dab hardness, as a fraction of the brush hardness. */
+	public static final int HARDNESS = 1;
+	/** Dab opacity, as a fraction of the brush color's alpha. */
+	public static final int OPACITY = 2;
+	static final int OUTPUTS = 3;
+	
+	/** Fastest stroke velocity a curve can distinguish, in pixels per millisecond. */
+	public static final float MAX_VELOCITY = 5;
+	
+	/** Number of intervals each input's domain is sampled at. */
+	static final int TABLE_SIZE = 256;
+	
+	static final float PI = (float)Math.PI;
+	static final float[] DOMAIN_MIN = { 0, 0,    -PI, 0, 0 };
+	static final float[] DOMAIN_MAX = { 1, PI/2,  PI, 1, MAX_VELOCITY };
+	static final float[] DOMAIN_SCALE = new float[INPUTS];  // Table intervals per unit of input
+	
+	static {
+		for (int i = 0; i < INPUTS; i++)
+			DOMAIN_SCALE[i] = TABLE_SIZE / (DOMAIN_MAX[i] - DOMAIN_MIN[i]);
+	}
+	
+	static final BrushDynamics[] tools = new BrushDynamics[MotionEvent.TOOL_TYPE_ERASER + 1];
+	
+	/** One table per output and input; null if the input has no effect. */
+	final float[][] tables = new float[OUTPUTS * INPUTS][];
+	
+	/**
+	 * Create a BrushDynamics on which no input has any effect: every
+	 * dab is drawn at the brush's full size, hardness and opacity.
+	 */
+	public BrushDynamics() {
+	}
+	
+	/**
+	 * Obtain the dynamics registered for a tool type, or the tool's
+	 * default dynamics if none have been registered.
+	 * 
+	 * @param tool  MotionEvent tool type, e.g. MotionEvent.TOOL_TYPE_STYLUS
+	 * @return      Dynamics to draw the tool's strokes with
+	 */
+	public static synchronized BrushDynamics forTool(int tool) {
+		if (tool < 0 || tool >= tools.length)
+			tool = MotionEvent.TOOL_TYPE_UNKNOWN;
+		
+		if (tools[tool] == null)
+			tools[tool] = createDefault(tool);
+		return tools[tool];
+	}
+	
+	/**
+	 * Register the dynamics of a tool type. Strokes begun afterward by
+	 * any brush of the tool use the new dynamics.
+	 * 
+	 * @param tool      MotionEvent tool type, e.g. MotionEvent.TOOL_TYPE_STYLUS
+	 * @param dynamics  Dynamics to register, or null to restore the default
+	 */
+	public static synchronized void setForTool(int tool, BrushDynamics dynamics) {
+		if (tool < 0 || tool >= tools.length)
+			throw new IllegalArgumentException("Unknown tool type " + tool);
+		
+		tools[tool] = dynamics;
+	}
+	
+	/**
+	 * Create the default dynamics of a tool type. Every tool sizes its
+	 * dabs linearly by pressure. A stylus additionally fades with light
+	 * pressure, softens as it is tilted, and thins as it speeds up.
+	 * 
+	 * @param tool  MotionEvent tool type, e.g. MotionEvent.TOOL_TYPE_STYLUS
+	 * @return      A new BrushDynamics
+	 */
+	public static BrushDynamics createDefault(int tool) {
+		BrushDynamics d = new BrushDynamics();
+		d.set(RADIUS, PRESSURE, 0, 0, 1, 1);
+		
+		if (tool == MotionEvent.TOOL_TYPE_STYLUS) {
+			d.set(OPACITY, PRESSURE, 0, 0.4f, 0.6f, 1);
+			d.set(HARDNESS, TILT, 0.3f, 1, PI/2, 0.4f);
+			d.set(RADIUS, VELOCITY, 0.5f, 1, MAX_VELOCITY, 0.7f);
+		}
+		return d;
+	}
+	
+	/**
+	 * Define the curve by which an input scales an output. The curve
+	 * passes through the given (input, fraction) control points, which
+	 * must be in increasing order of input, and is flat beyond the
+	 * first and last of them.
+	 * 
+	 * @param output  RADIUS, HARDNESS or OPACITY
+	 * @param input   PRESSURE, TILT, ORIENTATION, TWIST or VELOCITY
+	 * @param points  Alternating input values (in the input's units)
+	 *                and output fractions
+	 * @return        This BrushDynamics
+	 */
+	public BrushDynamics set(int output, int input, float... points) {
+		check(output, input);
+		if (points.length < 2 || points.length % 2 != 0)
+			throw new IllegalArgumentException("Control points must be (input, fraction) pairs");
+		for (int i = 2; i < points.length; i += 2) {
+			if (points[i] < points[i - 2])
+				throw new IllegalArgumentException("Control points must be in increasing order of input");
+		}
+		
+		float min = DOMAIN_MIN[input];
+		float step = (DOMAIN_MAX[input] - min) / TABLE_SIZE;
+		float[] table = new float[TABLE_SIZE + 1];
+		
+		int k = 0;
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			float x = min + i * step;
+			while (k + 2 < points.length && points[k + 2] <= x)
+				k += 2;
+			
+			if (x <= points[0])
+				table[i] = points[1];
+			else if (k + 2 >= points.length)
+				table[i] = points[points.length - 1];
+			else {
+				float f = (x - points[k]) / (points[k + 2] - points[k]);
+				table[i] = points[k + 1] + (points[k + 3] - points[k + 1]) * f;
+			}
+		}
+		
+		tables[output * INPUTS + input] = table;
+		return this;
+	}
+	
+	/**
+	 * Remove the curve by which an input scales an output, so that the
+	 * input no longer affects it.
+	 * 
+	 * @param output  RADIUS, HARDNESS or OPACITY
+	 * @param input   PRESSURE, TILT, ORIENTATION, TWIST or VELOCITY
+	 * @return        This BrushDynamics
+	 */
+	public BrushDynamics clear(int output, int input) {
+		check(output, input);
+		tables[output * INPUTS + input] = null;
+		return this;
+	}
+	
+	/**
+	 * @param output  RADIUS, HARDNESS or OPACITY
+	 * @return        'true' if any input has a curve for the output
+	 */
+	public boolean affects(int output) {
+		check(output, 0);
+		for (int i = 0; i < INPUTS; i++) {
+			if (tables[output * INPUTS + i] != null)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Evaluate an output for a tool state.
+	 * 
+	 * @param output    RADIUS, HARDNESS or OPACITY
+	 * @param s         State of the tool
+	 * @param velocity  Stroke velocity, in pixels per millisecond
+	 * @return          The output's fraction, between 0 and 1 (inclusive)
+	 */
+	public float get(int output, State s, float velocity) {
+		int o = output * INPUTS;
+		float v = lookup(o + PRESSURE, PRESSURE, s.pressure)
+		        * lookup(o + TILT, TILT, s.tilt)
+		        * lookup(o + ORIENTATION, ORIENTATION, s.orientation)
+		        * lookup(o + TWIST, TWIST, s.twist)
+		        * lookup(o + VELOCITY, VELOCITY, velocity);
+		
+		return v > 0 ? (v < 1 ? v : 1) : 0;
+	}
+	
+	/**
+	 * Read a table, interpolating between its two nearest entries.
+	 * Values outside the input's domain are clamped to it.
+	 */
+	float lookup(int index, int input, float value) {
+		float[] table = tables[index];
+		if (table == null)
+			return 1;
+		
+		float f = (value - DOMAIN_MIN[input]) * DOMAIN_SCALE[input];
+		if (!(f > 0))
+			return table[0];
+		if (f >= TABLE_SIZE)
+			return table[TABLE_SIZE];
+		
+		int i = (int)f;
+		return table[i] + (table[i + 1] - table[i]) * (f - i);
+	}
+	
+	static void check(int output, int input) {
+		if (output < 0 || output >= OUTPUTS)
+			throw new IllegalArgumentException("Unknown output " + output);
+		if (input < 0 || input >= INPUTS)
+			throw new IllegalArgumentException("Unknown input " + input);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * A CanvasBackend draws dabs into a DrawTarget by blitting stamps from
+ * a StampCache, i.e. through android.graphics. Stamps are rendered
+ * opaque and blitted with the dab's alpha, so that dabs whose opacity
+ * varies (see BrushDynamics) still share stamps. Strokes are filled
+ * as a single anti-aliased Path per call.
+ * 
+ * @author wacom
+ */
+public class CanvasBackend implements RenderBackend {
+	
+	final DrawTarget target;
+	final StampCache stamps;
+	final Paint paint = new Paint();
+	final Paint fill = new Paint();
+	final Path path = new Path();
+	final float[] hull = new float[8];
+	
+	/**
+	 * Create a CanvasBackend with its own StampCache, of the default size.
+	 * 
+	 * @param target  Target to draw dabs into
+	 */
+	public CanvasBackend(DrawTarget target) {
+		this(target, new StampCache());
+	}
+	
+	/**
+	 * @param target  Target to draw dabs into
+	 * @param stamps  Cache to blit stamps from, which may be shared with
+	 *                other backends. Dabs of the same color and similar
+	 *                radius and hardness share a single stamp.
+	 */
+	public CanvasBackend(DrawTarget target, StampCache stamps) {
+		this.target = target;
+		this.stamps = stamps;
+		this.fill.setStyle(Paint.Style.FILL);
+		this.fill.setAntiAlias(true);
+	}
+	
+	@Override
+	public void drawDab(float x, float y, float radius, float hardness, int color) {
+		Bitmap stamp = stamps.get(color | 0xff000000, radius, hardness);
+		if (stamp == null)
+			return;
+		
+		paint.setAlpha(color >>> 24);
+		target.drawBitmap(stamp, x - stamp.getWidth()/2f, y - stamp.getHeight()/2f, paint);
+	}
+	
+	/**
+	 * Build the stroke as one path of circles and hull quads, all wound
+	 * clockwise so that the default (non-zero) fill takes their union.
+	 */
+	@Override
+	public void drawStroke(float[] nodes, int first, int count, int color) {
+		path.rewind();
+		for (int k = 0; k < count; k++) {
+			int n = first + 3 * k;
+			if (nodes[n + 2] > 0)
+				path.addCircle(nodes[n], nodes[n + 1], nodes[n + 2], Path.Direction.CW);
+			
+			if (k > 0 && StrokeHull.find(nodes, n - 3, hull, 0)) {
+				// A positive shoelace area is clockwise on screen, where y
+				// grows downward.
+				float area = 0;
+				for (int c = 0; c < 8; c += 2)
+					area += hull[c] * hull[(c + 3) % 8] - hull[(c + 2) % 8] * hull[c + 1];
+				int start = area >= 0 ? 0 : 6;
+				int step = area >= 0 ? 2 : -2;
+				path.moveTo(hull[start], hull[start + 1]);
+				for (int c = 1; c < 4; c++)
+					path.lineTo(hull[start + c * step], hull[start + c * step + 1]);
+				path.close();
+			}
+		}
+		if (path.isEmpty())
+			return;
+		
+		fill.setColor(color);
+		target.drawPath(path, fill);
+	}
+	
+	public DrawTarget getTarget() {
+		return target;
+	}
+}
@@ -21,10 +21,13 @@
  */
 package com.wacom.drawsimple;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 
+import com.wacom.trace.InputTrace;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -35,34 +38,168 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Shader;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.View.OnTouchListener;
 import android.view.View.OnHoverListener;
 
 /**
  * CanvasView provides a View that can be drawn on by consuming touch,
- * pen, and other MotionEvents. Each device is assigned its own Brush.
+ * pen, and other MotionEvents. The events are drawn by a StrokeEngine,
+ * which assigns each device its own Brush and lets every pointer of an
+ * event draw its own Stroke, so several fingers (or a pen and a finger)
+ * can draw at once. The view adds the viewport, the brush outline and
+ * the compositing of the drawing onto the screen.
  * 
  * @author wacom
  */
 public class CanvasView extends View implements OnTouchListener, OnHoverListener {
 
-	Map<Integer,Brush> brushes = new HashMap<Integer,Brush>();
-	Brush brush;
+	/**
+	 * Times taken by a part of drawing each frame.
+	 */
+	public static class FrameStats {
+		int count;
+		long total, max, last;
+		
+		synchronized void add(long nanos) {
+			count++;
+			total += nanos;
+			max = Math.max(max, nanos);
+			last = nanos;
+		}
+		
+		/**
+		 * @return  Number of frames timed
+		 */
+		public synchronized int getCount() {
+			return count;
+		}
+		
+		/**
+		 * @return  Mean time per frame, in milliseconds
+		 */
+		public synchronized float getMeanMillis() {
+			return count == 0 ? 0 : total / 1e6f / count;
+		}
+		
+		/**
+		 * @return  Longest time for a single frame, in milliseconds
+		 */
+		public synchronized float getMaxMillis() {
+			return max / 1e6f;
+		}
+		
+		/**
+		 * @return  Time for the most recent frame, in milliseconds
+		 */
+		public synchronized float getLastMillis() {
+			return last / 1e6f;
+		}
+		
+		public synchronized void reset() {
+			count = 0;
+			total = max = last = 0;
+		}
+		
+		public synchronized String toString() {
+			return String.format("FrameStats(n=%d, mean=%.3fms, max=%.3fms)",
+			    count, getMeanMillis(), getMaxMillis());
+		}
+	}
+	
+	/** Limits of the viewport's zoom, in screen pixels per canvas pixel. */
+	static final float MIN_SCALE = 1 / 16f, MAX_SCALE = 8;
+	/** Distance to drag with the tertiary button pressed to double the zoom, in pixels. */
+	static final float ZOOM_DRAG = 200;
+	/** Time between attempts to queue a held-aside sample, in milliseconds. */
+	static final long FLUSH_DELAY = 4;
+	/** Most memory kept in the bitmap pool, in bytes. */
+	static final int POOL_BYTES = (int)Math.min(Runtime.getRuntime().maxMemory() / 8, 32 * 1024 * 1024);
+	/** Most memory kept in brush stamps, in bytes. */
+	static final int STAMP_BYTES = 4 * 1024 * 1024;
+	
+	final StrokeEngine engine = new StrokeEngine(); // Draws the strokes into 'layer'
 	
 	Matrix transform, inverse; // Transform between view-space and bitmap-space
+	float scale = 1;           // Zoom of 'transform'
+	TilePyramid pyramid;       // Downsampled copies of 'layer' (guarded by 'lock')
+	Paint filterPaint = new Paint(Paint.FILTER_BITMAP_FLAG); // Draws downsampled levels
+	Rect levelRegion = new Rect(); // Scratch rectangle for drawing a pyramid level
+	
+	Bitmap composite;              // View-space cache of the checkerboard and 'layer'
+	Canvas compositeCanvas;        // Canvas drawing into 'composite'
+	Rect compositeStale = new Rect(); // View-space area of 'composite' to be redrawn
+	Rect layerRegion = new Rect(); // Scratch rectangle for redrawing 'composite'
+	FrameStats frameStats = new FrameStats();     // Time spent in onDraw
+	FrameStats compositeStats = new FrameStats(); // Time spent redrawing 'composite'
 	
-	Bitmap checker;
-	Bitmap layer;         // Layer containing the drawing
-	Bitmap overlay;       // Overlay for fill "shadow"
-	Canvas layerCanvas;   // Canvas for drawing into 'layer'
-	Canvas overlayCanvas; // Canvas for drawing into 'overlay'
+	Bitmap checker;       // Single tile of the checkerboard pattern (reloaded if trimmed)
+	Paint checkerPaint;   // Paint for filling areas with 'checker'
+	BitmapPool pool = new BitmapPool(POOL_BYTES); // Tiles and composites awaiting reuse
+	final StampCache stamps = new StampCache(STAMP_BYTES, 0.5f, 64); // Shared by every CanvasBackend drawing for the view
+	int layoutWidth, layoutHeight; // View size the bitmaps were laid out for
+	TiledLayer layer;     // Layer containing the drawing
+	TiledLayer overlay;   // Overlay for fill "shadow"
+	RenderBackend preview; // Draws dabs into 'overlay'
 	
 	PointF grab;
+	PointF zoomAnchor;     // Where a tertiary-button zoom began
+	float zoomLastY;       // Last position of a tertiary-button zoom
+	boolean pinching;      // Whether fingers are pinching to zoom
+	float focusX, focusY;  // Last focus of the pinch
+	ScaleGestureDetector scaler;
+	
+	State cursor = new State();                // Reused for every outline
+	float[] point = new float[2];              // Reused by transformState
+	
+	RectF outlineBounds = new RectF(); // Bitmap-space bounds of the drawn outline
+	RectF predictionBounds = new RectF(); // Bitmap-space bounds of the drawn predictions
+	RectF dirty = new RectF();         // Bitmap-space area to be invalidated
+	RectF mapped = new RectF();        // Scratch rectangle for mapping bounds
+	Rect  region = new Rect();         // Scratch rectangle for clip/invalidation
+	
+	final Object lock = engine.lock;   // Guards 'layer' while a RenderThread runs
+	RectF changed = new RectF();       // Bitmap-space area changed by undo/redo
+	JournalReplay replay;              // Restores the drawing from the engine's journal
+	RectF published = new RectF();     // Area drawn in the background (guarded by 'lock')
+	InputTrace.Writer trace;           // Records every event received (may be null)
+	boolean publishPosted;             // Whether 'publisher' is waiting to run (guarded by 'lock')
+	boolean flushPosted;               // Whether 'flusher' is waiting to run
+	
+	/**
+	 * Invalidates the area most recently published in the background.
+	 * Posted to the UI thread at most once per pending publish.
+	 */
+	final Runnable publisher = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (lock) {
+				dirty.set(published);
+				published.setEmpty();
+				publishPosted = false;
+			}
+			invalidateLayer(dirty);
+		}
+	};
+	
+	/**
+	 * Queues the sample the RenderThread's queue holds aside, retrying
+	 * until there is room, so that a stroke is drawn up to the pen even
+	 * once the pen stops moving.
+	 */
+	final Runnable flusher = new Runnable() {
+		@Override
+		public void run() {
+			flushPosted = engine.flushHeld() && postDelayed(this, FLUSH_DELAY);
+		}
+	};
 	
 	/**
 	 * Create a new CanvasView. Note that this constructor does not
@@ -76,30 +213,173 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 		super(context, attrs);
 		setOnTouchListener(this);
 		setOnHoverListener(this);
+		engine.setListener(new StrokeEngine.Listener() {
+			@Override
+			public void onDrawn(RectF bounds) {
+				publish(bounds);
+			}
+		});
+		
+		scaler = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+			@Override
+			public boolean onScaleBegin(ScaleGestureDetector detector) {
+				focusX = detector.getFocusX();
+				focusY = detector.getFocusY();
+				return true;
+			}
+			
+			@Override
+			public boolean onScale(ScaleGestureDetector detector) {
+				transform.postTranslate(detector.getFocusX() - focusX, detector.getFocusY() - focusY);
+				focusX = detector.getFocusX();
+				focusY = detector.getFocusY();
+				zoomBy(detector.getScaleFactor(), focusX, focusY);
+				return true;
+			}
+		});
 	}
 	
 	/**
 	 * This method is called "when this view should assign a size and
 	 * position to all of its children". We use this chance to initialize
-	 * the bitmaps based on the view's now-known size.
+	 * the bitmaps based on the view's now-known size. Later layout passes
+	 * keep the bitmaps, and only adapt them if the size has changed.
 	 */
 	public void onLayout(boolean changed, int left, int top, int right, int bottom) {
-		initBitmaps();
+		if (layer == null)
+			initBitmaps();
+		else if (getWidth() != layoutWidth || getHeight() != layoutHeight)
+			resizeBitmaps();
+	}
+	
+	/**
+	 * Start a new undo history for the drawing when the view is shown
+	 * again after onDetachedFromWindow released the old one. The first
+	 * time the view is shown, initBitmaps starts the history instead.
+	 */
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		synchronized (lock) {
+			if (layer != null && engine.history == null)
+				engine.setHistory(newHistory());
+		}
+	}
+	
+	/**
+	 * Release the undo history, including anything it spilled to disk,
+	 * once the view is no longer shown. Strokes drawn before then can
+	 * no longer be undone.
+	 */
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		synchronized (lock) {
+			if (engine.history != null)
+				engine.history.close();
+			engine.setHistory(null);
+		}
 	}
 	
 	/**
 	 * This method is called whenever Android requires us to redraw
-	 * ourselves. We blit each of the three bitmaps to the provided
-	 * canvas in bottom-up order, transforming them by the current
-	 * viewport transformation.
+	 * ourselves. The checkerboard and the drawing are flattened into a
+	 * view-sized composite, which is blitted to the provided canvas as
+	 * a single bitmap. The tiles of the overlay (i.e. the outline and
+	 * predicted ink) are then drawn over it as a final pass, transformed
+	 * by the current viewport transformation.
+	 * 
+	 * The composite is only redrawn where the drawing has changed, or
+	 * entirely once the viewport moves, so hovering over the canvas
+	 * costs a blit of the composite and the overlay's few tiles.
 	 * 
 	 * @param canvas
 	 */
 	@Override
 	public void onDraw(Canvas canvas) {
-		canvas.drawBitmap(checker, transform, null);
-		canvas.drawBitmap(layer, transform, null);
-		canvas.drawBitmap(overlay, transform, null);
+		if (!canvas.getClipBounds(region))
+			return;
+		long start = System.nanoTime();
+		
+		int w = Math.max(getWidth(), 1);
+		int h = Math.max(getHeight(), 1);
+		if (composite == null || composite.getWidth() != w || composite.getHeight() != h) {
+			pool.put(composite);
+			composite = pool.get(w, h, Bitmap.Config.ARGB_8888);
+			compositeCanvas = new Canvas(composite);
+			compositeStale.set(0, 0, w, h);
+		}
+		if (compositeStale.intersect(0, 0, w, h))
+			drawComposite(compositeStale);
+		compositeStale.setEmpty();
+		canvas.drawBitmap(composite, region, region, null);
+		
+		mapped.set(region);
+		inverse.mapRect(mapped);
+		mapped.roundOut(region);
+		if (region.intersect(0, 0, overlay.getWidth(), overlay.getHeight())) {
+			canvas.save();
+			canvas.concat(transform);
+			overlay.draw(canvas, region, null);
+			canvas.restore();
+		}
+		
+		frameStats.add(System.nanoTime() - start);
+	}
+	
+	/**
+	 * Redraw part of the composite: the checkerboard, with the drawing
+	 * blitted over it. When zoomed out by half or more, the drawing is
+	 * blitted from the matching level of the tile pyramid instead of
+	 * the full-resolution layer.
+	 * 
+	 * @param area  View-space area to redraw
+	 */
+	protected void drawComposite(Rect area) {
+		long start = System.nanoTime();
+		Canvas canvas = compositeCanvas;
+		canvas.save();
+		canvas.clipRect(area);
+		canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+		
+		mapped.set(area);
+		inverse.mapRect(mapped);
+		mapped.roundOut(layerRegion);
+		if (layerRegion.intersect(0, 0, layer.getWidth(), layer.getHeight())) {
+			canvas.concat(transform);
+			canvas.drawRect(layerRegion, getCheckerPaint());
+			synchronized (lock) {
+				int level = pyramid.levelFor(scale);
+				if (level == 0) {
+					layer.draw(canvas, layerRegion, null);
+				}
+				else {
+					int f = 1 << level;
+					levelRegion.set(layerRegion.left >> level, layerRegion.top >> level,
+					                (layerRegion.right + f - 1) >> level, (layerRegion.bottom + f - 1) >> level);
+					canvas.scale(f, f);
+					pyramid.update(level).draw(canvas, levelRegion, filterPaint);
+				}
+			}
+		}
+		
+		canvas.restore();
+		compositeStats.add(System.nanoTime() - start);
+	}
+	
+	/**
+	 * @return  Time taken by each call to onDraw
+	 */
+	public FrameStats getFrameStats() {
+		return frameStats;
+	}
+	
+	/**
+	 * @return  Time taken to redraw the changed parts of the composite,
+	 *          for the frames where anything had changed
+	 */
+	public FrameStats getCompositeStats() {
+		return compositeStats;
 	}
 	
 	/**
@@ -117,9 +397,10 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	public boolean onTouch(View view, MotionEvent event) {
 		boolean handled = false;
 		
-		changeTool(event);
+		record(InputTrace.CALLBACK_TOUCH, event);
+		engine.changeTool(event);
 		
-		if (moveViewport(event))
+		if (zoomViewport(event) || moveViewport(event))
 			return true;
 		
 		handled |= drawFill(event);
@@ -140,9 +421,10 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	 */
 	@Override
 	public boolean onHover(View v, MotionEvent event) {
-		changeTool(event);
+		record(InputTrace.CALLBACK_HOVER, event);
+		engine.changeTool(event);
 		
-		if (moveViewport(event))
+		if (zoomViewport(event) || moveViewport(event))
 			return true;
 		
 		return drawOutline(event);
@@ -154,6 +436,7 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	 * @param color  New brush color (e.g. 0xff000000 or Color.BLACK for black)
 	 */
 	public void setColor(int color) {
+		Brush brush = engine.getBrush();
 		if (brush == null)
 			return;
 		
@@ -161,48 +444,169 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	}
 	
 	/**
-	 * Attempt to draw the brush fill to the layer bitmap. This fill will
-	 * be drawn so long as a touch is occurring. Once the touch ends, the
-	 * active brush will be signaled to stop drawing the stroke, in
-	 * preparation for the next stroke.
+	 * Change the hardness of every brush.
+	 * 
+	 * @param hardness  Maximum hardness, between 0 and
+	 *                  Brush.MAX_HARDNESS (inclusive)
+	 */
+	public void setHardness(int hardness) {
+		engine.setHardness(hardness);
+	}
+	
+	public int getHardness() {
+		return engine.getHardness();
+	}
+	
+	/**
+	 * Attempt to draw the brush fill to the layer bitmap. A fill will be
+	 * drawn for each pointer so long as it is touching. Once a pointer
+	 * lifts, its stroke is ended in preparation for the next stroke,
+	 * while the strokes of any other pointers carry on. Only the area
+	 * covered by the stamped dabs is invalidated.
 	 * 
 	 * The raw MotionEvent data is transformed from being View-relative to
-	 * being viewport-relative.
+	 * being viewport-relative, and then drawn by the StrokeEngine. If a
+	 * RenderThread is running, the samples are only queued here and the
+	 * actual drawing happens on that thread. If a sample is held aside
+	 * because the thread has fallen behind, queueing it is retried until
+	 * there is room.
 	 * 
 	 * @param event  Event to attempt to use for drawing the fill
 	 * @return       'true' if the event is used to draw the fill
 	 */
 	protected boolean drawFill(MotionEvent event) {
-		State states[] = State.getStates(event);
-		transformState(states, inverse);
+		if (!engine.drawFill(event, inverse, dirty))
+			return false;
 		
-		switch (event.getAction()) {
-			case MotionEvent.ACTION_DOWN:
-			case MotionEvent.ACTION_MOVE:
-				brush.drawFill(layerCanvas, states);
-				break;
-			
-			case MotionEvent.ACTION_UP:
-				brush.drawFill(layerCanvas, states);
-				/* fall-through */
-			
-			case MotionEvent.ACTION_CANCEL:
-				brush.endFill();
-				break;
-			
-			default:
-				return false;
-		}
+		if (!flushPosted && engine.flushHeld())
+			flushPosted = postDelayed(flusher, FLUSH_DELAY);
 		
-		invalidate();
+		invalidateLayer(dirty);
 		return true;
 	}
 	
+	/**
+	 * Draw a tail of predicted ink onto the overlay ahead of each stroke
+	 * that is being drawn. Since real ink lags one sample behind (see
+	 * Brush), the tail begins at the second most recent sample. It is
+	 * replaced each time new samples arrive, once real ink has caught
+	 * up with it.
+	 */
+	protected void drawPredictions() {
+		if (engine.getPredictionHorizon() <= 0)
+			return;
+		
+		synchronized (lock) {
+			overlay.dirty.setEmpty();
+			engine.drawPredictions(preview);
+			predictionBounds.set(overlay.dirty);
+		}
+	}
+	
+	/**
+	 * Enable or disable drawing predicted ink ahead of each stroke.
+	 * 
+	 * @param horizon  How far ahead to predict, in milliseconds, or 0
+	 *                 to disable prediction
+	 */
+	public void setPredictionHorizon(long horizon) {
+		engine.setPredictionHorizon(horizon);
+	}
+	
+	public long getPredictionHorizon() {
+		return engine.getPredictionHorizon();
+	}
+	
+	/**
+	 * @return  Errors of the predictions made so far, measured against
+	 *          the samples which later arrived
+	 */
+	public InkPredictor.Stats getPredictionStats() {
+		return engine.getPredictionStats();
+	}
+	
+	/**
+	 * Start rasterizing strokes on a dedicated RenderThread. Touch
+	 * events will then only queue their samples, leaving the UI thread
+	 * free to dispatch input. Does nothing if already started.
+	 * 
+	 * @param capacity  Number of samples that may be queued
+	 * @param policy    What to do when the queue is full
+	 */
+	public void startRenderThread(int capacity, SampleRing.Policy policy) {
+		engine.startRenderThread(capacity, policy);
+	}
+	
+	/**
+	 * Stop the RenderThread, if running, and return to rasterizing
+	 * strokes on the UI thread. Any samples still queued, including
+	 * one held aside by the COALESCE policy, are drawn before this
+	 * method returns.
+	 */
+	public void stopRenderThread() {
+		engine.stopRenderThread();
+		publisher.run();
+	}
+	
+	/**
+	 * Undo the most recent stroke. Nothing is undone while a stroke is
+	 * still being drawn.
+	 * 
+	 * @return  'true' if a stroke was undone
+	 */
+	public boolean undo() {
+		return undoRedo(true);
+	}
+	
+	/**
+	 * Redo the most recently undone stroke.
+	 * 
+	 * @return  'true' if a stroke was redone
+	 */
+	public boolean redo() {
+		return undoRedo(false);
+	}
+	
+	boolean undoRedo(boolean undo) {
+		changed.setEmpty();
+		int n = undo ? engine.undo(changed) : engine.redo(changed);
+		invalidateLayer(changed);
+		return n > 0;
+	}
+	
+	/**
+	 * @return  The queue feeding the RenderThread, or null if the
+	 *          thread has never been started
+	 */
+	public SampleRing getSampleRing() {
+		return engine.getSampleRing();
+	}
+	
+	/**
+	 * Publish an area drawn by the RenderThread or JournalReplay,
+	 * scheduling it to be invalidated on the UI thread. Must be called
+	 * with 'lock' held.
+	 * 
+	 * @param bounds  Bitmap-space area that has changed
+	 */
+	void publish(RectF bounds) {
+		if (bounds.isEmpty())
+			return;
+		
+		published.union(bounds);
+		if (!publishPosted) {
+			publishPosted = true;
+			post(publisher);
+		}
+	}
+	
 	/**
 	 * Attempt to draw the brush outline as an overlay. This outline will
 	 * be drawn so long as a touch is occurring or the tool is hovering.
 	 * To ensure old outlines do not persist on the overlay bitmap, each
-	 * successful call results in it being cleared and redrawn.
+	 * call results in the previous outline being cleared. Predicted ink
+	 * shares the overlay, so it is cleared and redrawn here as well.
+	 * Only the old and new overlay areas are invalidated.
 	 * 
 	 * The raw MotionEvent data is transformed from being view-relative
 	 * to being viewport-relative.
@@ -211,26 +615,137 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	 * @return       'true' if the event is used to draw the outline
 	 */
 	protected boolean drawOutline(MotionEvent event) {
-		State states[] = {new State(event)};
-		transformState(states, inverse);
+		transformState(cursor.set(event), inverse);
 		
-		overlayCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+		dirty.set(outlineBounds);
+		dirty.union(predictionBounds);
+		if (!outlineBounds.isEmpty()) {
+			overlay.clear(outlineBounds);
+			outlineBounds.setEmpty();
+		}
+		if (!predictionBounds.isEmpty()) {
+			overlay.clear(predictionBounds);
+			predictionBounds.setEmpty();
+		}
+		
+		drawPredictions();
+		dirty.union(predictionBounds);
 		
 		switch (event.getAction()) {
 			case MotionEvent.ACTION_DOWN:
 			case MotionEvent.ACTION_MOVE:
 			case MotionEvent.ACTION_HOVER_ENTER:
 			case MotionEvent.ACTION_HOVER_MOVE:
-				brush.drawOutline(overlayCanvas, states[0]);
+				// The cursor is the event's first pointer, the only one
+				// while hovering, so its own device and tool pick the brush.
+				overlay.dirty.setEmpty();
+				engine.brushFor(event, 0).drawOutline(overlay, cursor);
+				outlineBounds.set(overlay.dirty);
+				dirty.union(outlineBounds);
 				break;
 			
 			default:
+				invalidateCanvas(dirty);
 				return false;
 		}
-		invalidate();
+		invalidateCanvas(dirty);
 		return true;
 	}
 	
+	/**
+	 * Export the drawing as a PNG image, on a background thread. The
+	 * drawing may continue to be changed while it is exported.
+	 * 
+	 * @param out       Stream to write the image to, closed once done
+	 * @param listener  Listener to notify once finished (may be null)
+	 * @return          The running export
+	 */
+	public PngExporter exportPng(OutputStream out, PngExporter.Listener listener) {
+		PngExporter exporter;
+		synchronized (lock) {
+			exporter = new PngExporter(lock, layer, out, listener);
+		}
+		exporter.start();
+		return exporter;
+	}
+	
+	/**
+	 * Record every event received from now on in the given trace, so
+	 * that it can later be replayed by the benchmark harness.
+	 * 
+	 * @param trace  Trace to record events in, or null to stop recording
+	 */
+	public void setTrace(InputTrace.Writer trace) {
+		this.trace = trace;
+	}
+	
+	public InputTrace.Writer getTrace() {
+		return trace;
+	}
+	
+	/**
+	 * Record an event in the trace, if any. Recording stops if the
+	 * trace cannot be written.
+	 */
+	void record(int callback, MotionEvent event) {
+		if (trace == null)
+			return;
+		
+		try {
+			trace.record(callback, event);
+		} catch (IOException e) {
+			Log.e("CanvasView", "Unable to record trace, recording stopped", e);
+			trace = null;
+		}
+	}
+	
+	/**
+	 * Record every stroke drawn from now on in the given journal. If the
+	 * journal already holds strokes, they are replayed into the layer.
+	 * 
+	 * @param journal  Journal to record strokes in (may be null)
+	 */
+	public void setJournal(StrokeJournal journal) {
+		engine.setJournal(journal);
+		
+		if (layer != null)
+			replayJournal();
+	}
+	
+	/**
+	 * Throw out the existing drawing and start over with a new, empty
+	 * canvas. The journal records that the canvas was cleared.
+	 */
+	public void newCanvas() {
+		synchronized (lock) {
+			if (engine.journal != null)
+				engine.journal.clear();
+		}
+		initBitmaps();
+	}
+	
+	/**
+	 * Start replaying the journal into the layer on a background thread,
+	 * cancelling any replay already in progress. Strokes appear as they
+	 * are replayed.
+	 */
+	protected void replayJournal() {
+		synchronized (lock) {
+			if (replay != null)
+				replay.cancel();
+			replay = null;
+			
+			StrokeJournal journal = engine.journal;
+			if (journal == null || journal.length() <= StrokeJournal.HEADER_SIZE)
+				return;
+			
+			StrokeJournal.Reader reader = journal.reader();
+			reader.skipCleared();
+			replay = new JournalReplay(this, reader, layer);
+			replay.start();
+		}
+	}
+	
 	/**
 	 * Attempt to move the bitmaps (the "viewport") around the CanvasView.
 	 * While a non-primary button is pressed, the canvas can be dragged
@@ -253,7 +768,7 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 				transform.invert(inverse);
 			}
 			grab = new PointF(x, y);
-			invalidate();
+			invalidateComposite();
 			return true;
 		}
 		
@@ -262,25 +777,89 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	}
 	
 	/**
-	 * Switch the currently-active tool to the tool associated with the
-	 * provided event. Each MotionEvent stores the ID of the device which
-	 * generated it, as well as the tool type. This information is combined
-	 * into a single key and used to search the "brushes" hashmap.
+	 * Attempt to zoom the viewport. Two or more fingers pinch to zoom
+	 * about their focus, and any strokes the fingers began are
+	 * cancelled; the rest of the gesture draws nothing. A pen and a
+	 * finger together still draw. Dragging vertically with the
+	 * tertiary (e.g. upper barrel) button pressed zooms about the
+	 * point where the drag began: up to zoom in, down to zoom out.
 	 * 
-	 * @param event  Event to locate new tool with
+	 * @param event  Event to attempt to zoom the viewport with
+	 * @return       'true' if the event is used to zoom the viewport
 	 */
-	protected void changeTool(MotionEvent event) {
-		int key = event.getDeviceId();
-		
-		// XXX: Comment out this line if building for API level < 14.
-		key |= (event.getToolType(0) << 8);
+	protected boolean zoomViewport(MotionEvent event) {
+		int action = event.getActionMasked();
+		if (allFingers(event)) {
+			scaler.onTouchEvent(event);
+			if (event.getPointerCount() >= 2 && !pinching) {
+				pinching = true;
+				cancelStrokes(event);
+			}
+		}
+		if (pinching) {
+			if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+				pinching = false;
+			return true;
+		}
 		
-		brush = brushes.get(key);
+		// XXX: Comment out the entirety of this 'if' statement if
+		//building for API level < 14. Button zooming will not be
+		//supported.
+		if ((event.getButtonState() & MotionEvent.BUTTON_TERTIARY) != 0) {
+			float y = event.getY();
+			if (zoomAnchor == null)
+				zoomAnchor = new PointF(event.getX(), y);
+			else
+				zoomBy((float)Math.pow(2, (zoomLastY - y) / ZOOM_DRAG), zoomAnchor.x, zoomAnchor.y);
+			zoomLastY = y;
+			return true;
+		}
 		
-		if (brush == null) {
-			brush = new Brush();
-			brushes.put(key, brush);
+		zoomAnchor = null;
+		return false;
+	}
+	
+	/**
+	 * Scale the viewport about a point, within the zoom limits.
+	 * 
+	 * @param factor  Factor to scale by
+	 * @param x       View-space X coordinate to scale about
+	 * @param y       View-space Y coordinate to scale about
+	 */
+	protected void zoomBy(float factor, float x, float y) {
+		float target = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+		transform.postScale(target / scale, target / scale, x, y);
+		transform.invert(inverse);
+		scale = target;
+		invalidateComposite();
+	}
+	
+	public float getScale() {
+		return scale;
+	}
+	
+	/**
+	 * @return  'true' if every pointer of the event is a finger
+	 */
+	static boolean allFingers(MotionEvent event) {
+		// XXX: Return 'false' if building for API level < 14.
+		for (int i = 0; i < event.getPointerCount(); i++) {
+			if (event.getToolType(i) != MotionEvent.TOOL_TYPE_FINGER)
+				return false;
 		}
+		return true;
+	}
+	
+	/**
+	 * End the strokes of an event's pointers without drawing anything
+	 * further, as if the event had been cancelled.
+	 */
+	void cancelStrokes(MotionEvent event) {
+		MotionEvent cancel = MotionEvent.obtain(event);
+		cancel.setAction(MotionEvent.ACTION_CANCEL);
+		drawFill(cancel);
+		drawOutline(cancel);
+		cancel.recycle();
 	}
 	
 	/**
@@ -294,13 +873,65 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 	 */
 	protected void transformState(State[] states, Matrix transform) {
 		for (int i = 0; i < states.length; i++) {
-			float loc[] = {states[i].x, states[i].y};
-			transform.mapPoints(loc);
-			states[i].x = loc[0];
-			states[i].y = loc[1];
+			transformState(states[i], transform);
 		}
 	}
 	
+	/**
+	 * Transform a single State by a given matrix.
+	 * 
+	 * @param state      State to transform
+	 * @param transform  Matrix transformation to apply to the State
+	 */
+	protected void transformState(State state, Matrix transform) {
+		state.transform(transform, point);
+	}
+	
+	/**
+	 * Invalidate the part of the view showing the given bitmap-space
+	 * area. The area is mapped through the viewport transformation and
+	 * grown by a pixel to cover any anti-aliased edges. Only the overlay
+	 * is redrawn; use invalidateLayer if 'layer' has changed.
+	 * 
+	 * @param bounds  Bitmap-space area of the overlay that has changed
+	 */
+	protected void invalidateCanvas(RectF bounds) {
+		if (bounds.isEmpty())
+			return;
+		
+		transform.mapRect(mapped, bounds);
+		mapped.roundOut(region);
+		region.inset(-1, -1);
+		invalidate(region);
+	}
+	
+	/**
+	 * Invalidate the part of the view showing the given bitmap-space
+	 * area of 'layer', which has changed. The composite is redrawn
+	 * there before it is next blitted.
+	 * 
+	 * @param bounds  Bitmap-space area that has changed
+	 */
+	protected void invalidateLayer(RectF bounds) {
+		if (bounds.isEmpty())
+			return;
+		
+		transform.mapRect(mapped, bounds);
+		mapped.roundOut(region);
+		region.inset(-1, -1);
+		compositeStale.union(region);
+		invalidate(region);
+	}
+	
+	/**
+	 * Invalidate the whole view, redrawing the whole composite. This is
+	 * needed whenever the viewport transformation changes.
+	 */
+	protected void invalidateComposite() {
+		compositeStale.set(0, 0, getWidth(), getHeight());
+		invalidate();
+	}
+	
 	/**
 	 * Initialize the various bitmaps that are blited to the screen.
 	 * This method uses the current view size to determine appropriate
@@ -315,36 +946,152 @@ public class CanvasView extends View implements OnTouchListener, OnHoverListener
 		initBitmaps(canvasWidth, canvasHeight);
 		transform.postTranslate((viewWidth - canvasWidth)/2, (viewHeight - canvasHeight)/2);
 		transform.invert(inverse);
+		layoutWidth = viewWidth;
+		layoutHeight = viewHeight;
+		invalidateComposite();
 	}
 	
 	/**
-	 * Initialize the various bitmaps that are blited to the screen.
-	 * In addition to initializing the bitmap that is drawn to, this
-	 * also initializes the "checker" bitmap for visualizing the alpha
-	 * channel and the "overlay" bitmap for visualizing the current
+	 * Adapt the bitmaps to a new view size without losing the drawing or
+	 * the undo history. The canvas grows if the new size calls for a
+	 * larger one, but never shrinks, so that rotating the device back
+	 * and forth does not crop anything. The viewport keeps its zoom and
+	 * stays centered.
+	 */
+	protected void resizeBitmaps() {
+		int viewWidth  = getWidth();
+		int viewHeight = getHeight();
+		int canvasWidth  = Math.max(layer.getWidth(),  Math.round(0.85f * viewWidth));
+		int canvasHeight = Math.max(layer.getHeight(), Math.round(0.85f * viewHeight));
+		
+		if (canvasWidth != layer.getWidth() || canvasHeight != layer.getHeight()) {
+			synchronized (lock) {
+				int columns = layer.columns;
+				layer.grow(canvasWidth, canvasHeight);
+				if (engine.history != null)
+					engine.history.remap(layer, columns);
+				pyramid.clear();
+				pyramid = new TilePyramid(layer);
+			}
+			overlay.grow(canvasWidth, canvasHeight);
+		}
+		
+		transform.postTranslate((viewWidth - layoutWidth)/2f, (viewHeight - layoutHeight)/2f);
+		transform.invert(inverse);
+		layoutWidth = viewWidth;
+		layoutHeight = viewHeight;
+		invalidateComposite();
+	}
+	
+	/**
+	 * Release memory in response to ComponentCallbacks2.onTrimMemory.
+	 * Caches derived from other data go first: pooled bitmaps, brush
+	 * stamps and the checkerboard, all of which are recreated as they
+	 * are needed. Once the view is hidden, the composite and the tile
+	 * pyramid follow. Under heavier pressure the undo history is
+	 * spilled to disk, keeping only the drawing itself in memory.
+	 * 
+	 * @param level  Level passed to onTrimMemory
+	 */
+	public void trimMemory(int level) {
+		checker = null;
+		checkerPaint = null;
+		stamps.clear();
+		
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+			pool.put(composite);
+			composite = null;
+			compositeCanvas = null;
+			synchronized (lock) {
+				if (pyramid != null)
+					pyramid.clear();
+			}
+		}
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ||
+		    level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			synchronized (lock) {
+				if (engine.history != null)
+					engine.history.spillAll();
+			}
+		}
+		
+		// Last, since clearing the caches above may have pooled bitmaps
+		pool.clear();
+		Log.i("DrawSimple", "Trimmed memory (level " + level + "): " + pool);
+	}
+	
+	/**
+	 * @return  Pool of bitmaps shared by the layers and the composite
+	 */
+	public BitmapPool getBitmapPool() {
+		return pool;
+	}
+	
+	/**
+	 * @return  Paint for filling areas with the checkerboard, decoding
+	 *          the checkerboard if it is not loaded
+	 */
+	protected Paint getCheckerPaint() {
+		if (checkerPaint == null) {
+			checker = BitmapFactory.decodeResource(getResources(), R.drawable.checker);
+			checkerPaint = new Paint();
+			checkerPaint.setShader(new BitmapShader(checker,
+					Shader.TileMode.REPEAT, Shader.TileMode.REPEAT));
+		}
+		return checkerPaint;
+	}
+	
+	/**
+	 * @return  A new, empty undo history, spilling to the cache directory
+	 */
+	protected UndoHistory newHistory() {
+		return new UndoHistory(new File(getContext().getCacheDir(), "undo"), 16 * 1024 * 1024, 50);
+	}
+	
+	/**
+	 * Initialize the various layers that are blited to the screen.
+	 * In addition to initializing the layer that is drawn to, this
+	 * also initializes the "checker" paint for visualizing the alpha
+	 * channel and the "overlay" layer for visualizing the current
 	 * tool location.
 	 * 
-	 * @param w  Width of the bitmap to draw on
-	 * @param h  Height of the bitmap to draw on
+	 * Both layers are tiled, and allocate memory only as they are drawn
+	 * on. The canvas may therefore be made much larger than the view.
+	 * 
+	 * @param w  Width of the canvas to draw on
+	 * @param h  Height of the canvas to draw on
 	 */
 	protected void initBitmaps(int w, int h) {
 		if (w <= 0) { w = 1; }
 		if (h <= 0) { h = 1; }
 		
-		checker = Bitmap.createBitmap(w, h, Bitmap.Config.RGB_565);
-		Paint p = new Paint();
-		p.setShader(new BitmapShader(
-				BitmapFactory.decodeResource(getResources(), R.drawable.checker),
-				Shader.TileMode.REPEAT, Shader.TileMode.REPEAT));
-		new Canvas(checker).drawRect(0, 0, w, h, p);
-		
-		layer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-		layerCanvas = new Canvas(layer);
-		
-		overlay = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-		overlayCanvas = new Canvas(overlay);
+		synchronized (lock) {
+			// The old drawing's tiles are pooled for the new one
+			if (layer != null) {
+				layer.setTileListener(null);
+				layer.clear();
+				pyramid.clear();
+			}
+			layer = new TiledLayer(w, h, Bitmap.Config.ARGB_8888);
+			layer.setPool(pool);
+			pyramid = new TilePyramid(layer);
+			engine.setLayer(layer, new CanvasBackend(layer, stamps));
+			
+			if (engine.history == null)
+				engine.setHistory(newHistory());
+			engine.history.clear();
+		}
+		replayJournal();
+		if (overlay != null)
+			overlay.clear();
+		overlay = new TiledLayer(w, h, Bitmap.Config.ARGB_8888);
+		overlay.setPool(pool);
+		preview = new CanvasBackend(overlay, stamps);
 		
 		transform = new Matrix();
 		inverse = new Matrix();
+		scale = 1;
+		outlineBounds.setEmpty();
+		invalidateComposite();
 	}
 }
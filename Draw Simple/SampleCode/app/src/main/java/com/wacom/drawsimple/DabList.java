@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.Arrays;
+
+/**
+ * A DabList is a RenderBackend which only records the dabs drawn into
+ * it, in order. The recorded dabs can be drawn into another backend
+ * later, or rasterized tile by tile by a TileRasterizer.
+ * 
+ * Strokes are recorded as entries whose nodes are kept aside. Their
+ * position is the center of the stroke's bounding box, and their
+ * radius half of its longer side, so that the axis-aligned square
+ * x +/- radius, y +/- radius encloses the whole stroke. Dabs are
+ * binned into tiles by that same square, so strokes are located in
+ * the same way as dabs.
+ * 
+ * A scale may be applied as dabs are recorded, which re-renders the
+ * strokes at a different resolution.
+ * 
+ * @author wacom
+ */
+public class DabList implements RenderBackend {
+	
+	float[] x, y, radius, hardness;
+	int[] color;
+	int[] nodeOffset, nodeCount;  // Nodes of each stroke entry (count 0 for dabs)
+	float[] nodes;
+	int size, nodesUsed;
+	float scale = 1;
+	
+	public DabList() {
+		this(1024);
+	}
+	
+	/**
+	 * @param capacity  Number of dabs to make room for initially
+	 */
+	public DabList(int capacity) {
+		capacity = Math.max(capacity, 16);
+		x = new float[capacity];
+		y = new float[capacity];
+		radius = new float[capacity];
+		hardness = new float[capacity];
+		color = new int[capacity];
+		nodeOffset = new int[capacity];
+		nodeCount = new int[capacity];
+		nodes = new float[3 * capacity];
+	}
+	
+	@Override
+	public void drawDab(float x, float y, float radius, float hardness, int color) {
+		if (size == this.x.length)
+			grow();
+		
+		this.x[size] = x * scale;
+		this.y[size] = y * scale;
+		this.radius[size] = radius * scale;
+		this.hardness[size] = hardness;
+		this.color[size] = color;
+		this.nodeCount[size] = 0;
+		size++;
+	}
+	
+	@Override
+	public void drawStroke(float[] nodes, int first, int count, int color) {
+		if (count <= 0)
+			return;
+		if (size == this.x.length)
+			grow();
+		if (nodesUsed + 3 * count > this.nodes.length)
+			this.nodes = Arrays.copyOf(this.nodes, Math.max(2 * this.nodes.length, nodesUsed + 3 * count));
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int k = 0; k < 3 * count; k += 3) {
+			float nx = nodes[first + k] * scale;
+			float ny = nodes[first + k + 1] * scale;
+			float nr = nodes[first + k + 2] * scale;
+			this.nodes[nodesUsed + k] = nx;
+			this.nodes[nodesUsed + k + 1] = ny;
+			this.nodes[nodesUsed + k + 2] = nr;
+			
+			nr = Math.max(nr, 0);
+			minX = Math.min(minX, nx - nr);
+			minY = Math.min(minY, ny - nr);
+			maxX = Math.max(maxX, nx + nr);
+			maxY = Math.max(maxY, ny + nr);
+		}
+		
+		this.x[size] = (minX + maxX) / 2;
+		this.y[size] = (minY + maxY) / 2;
+		this.radius[size] = Math.max(maxX - minX, maxY - minY) / 2;
+		this.hardness[size] = 1;
+		this.color[size] = color;
+		this.nodeOffset[size] = nodesUsed;
+		this.nodeCount[size] = count;
+		nodesUsed += 3 * count;
+		size++;
+	}
+	
+	/**
+	 * Draw every recorded dab into another backend, in order.
+	 */
+	public void drawTo(RenderBackend canvas) {
+		for (int i = 0; i < size; i++)
+			draw(i, canvas);
+	}
+	
+	/**
+	 * Draw a single recorded dab or stroke into another backend.
+	 * 
+	 * @param i       Index of the entry to draw
+	 * @param canvas  Backend to draw with
+	 */
+	void draw(int i, RenderBackend canvas) {
+		if (nodeCount[i] == 0)
+			canvas.drawDab(x[i], y[i], radius[i], hardness[i], color[i]);
+		else
+			canvas.drawStroke(nodes, nodeOffset[i], nodeCount[i], color[i]);
+	}
+	
+	/**
+	 * @param scale  Factor applied to the position and radius of every
+	 *               dab recorded from now on
+	 */
+	public void setScale(float scale) {
+		this.scale = scale;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Forget every recorded dab.
+	 */
+	public void clear() {
+		size = 0;
+		nodesUsed = 0;
+	}
+	
+	void grow() {
+		int n = 2 * x.length;
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		radius = Arrays.copyOf(radius, n);
+		hardness = Arrays.copyOf(hardness, n);
+		color = Arrays.copyOf(color, n);
+		nodeOffset = Arrays.copyOf(nodeOffset, n);
+		nodeCount = Arrays.copyOf(nodeCount, n);
+	}
+}
@@ -21,18 +21,28 @@
  */
 package com.wacom.drawsimple;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 import com.wacom.drawsimple.R;
+import com.wacom.trace.InputTrace;
 
 import android.os.Bundle;
 import android.app.Activity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 
 /**
  * DrawActivity allows the user to make simple drawings. A CanvasView
  * is used to provide a canvas on which to draw, and a palate of eight
- * color swatches allows easy switching of brush color.
+ * color swatches allows easy switching of brush color. Every stroke
+ * is recorded in a journal, so the drawing is restored when the
+ * activity is next created.
  * 
  * @author wacom
  */
@@ -45,6 +55,11 @@ public class DrawActivity extends Activity {
 	    {R.id.color_magenta, 0xffff00ff}, {R.id.color_yellow, 0xffffff00} 
 	};
 	
+	/** How far ahead ink is predicted when prediction is enabled, in milliseconds. */
+	static final long PREDICTION_HORIZON = 16;
+	
+	StrokeJournal journal;
+	
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -61,6 +76,74 @@ public class DrawActivity extends Activity {
 				}
 			});
 		}
+		
+		journal = openJournal(new File(getFilesDir(), "drawing.journal"));
+		canvas.setJournal(journal);
+	}
+	
+	@Override
+	protected void onDestroy() {
+		stopTrace();
+		((CanvasView)findViewById(R.id.canvas)).setJournal(null);
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				Log.e("DrawActivity", "Unable to close journal", e);
+			}
+		}
+		super.onDestroy();
+	}
+	
+	/**
+	 * Open the journal of strokes drawn so far, compacting it first. A
+	 * journal which cannot be read is discarded in favor of a new one.
+	 * 
+	 * @param file  File holding the journal
+	 * @return      The opened journal, or null if none could be opened
+	 */
+	StrokeJournal openJournal(File file) {
+		try {
+			if (file.exists())
+				StrokeJournal.compact(file);
+			return new StrokeJournal(file);
+		} catch (IOException e) {
+			Log.w("DrawActivity", "Discarding unreadable journal", e);
+		}
+		
+		try {
+			file.delete();
+			return new StrokeJournal(file);
+		} catch (IOException e) {
+			Log.e("DrawActivity", "Unable to create journal", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Rasterize strokes on a dedicated thread while the activity is in
+	 * the foreground. If the thread falls behind, intermediate samples
+	 * are coalesced rather than stalling touch input.
+	 */
+	@Override
+	protected void onResume() {
+		super.onResume();
+		((CanvasView)findViewById(R.id.canvas)).startRenderThread(256, SampleRing.Policy.COALESCE);
+	}
+	
+	@Override
+	protected void onPause() {
+		CanvasView canvas = (CanvasView)findViewById(R.id.canvas);
+		canvas.stopRenderThread();
+		Log.i("DrawActivity", "Frames: " + canvas.getFrameStats() + ", composite: " + canvas.getCompositeStats() +
+				", pool: " + canvas.getBitmapPool());
+		super.onPause();
+	}
+	
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		((CanvasView)findViewById(R.id.canvas)).trimMemory(level);
 	}
 	
 	@Override
@@ -69,16 +152,154 @@ public class DrawActivity extends Activity {
 		return true;
 	}
 	
+	/**
+	 * Undo the most recent stroke.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onUndo(MenuItem item) {
+		((CanvasView)findViewById(R.id.canvas)).undo();
+		return true;
+	}
+	
+	/**
+	 * Redo the most recently undone stroke.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onRedo(MenuItem item) {
+		((CanvasView)findViewById(R.id.canvas)).redo();
+		return true;
+	}
+	
+	/**
+	 * Toggle drawing predicted ink ahead of each stroke.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onPredict(MenuItem item) {
+		item.setChecked(!item.isChecked());
+		((CanvasView)findViewById(R.id.canvas)).setPredictionHorizon(item.isChecked() ? PREDICTION_HORIZON : 0);
+		return true;
+	}
+	
+	/**
+	 * Toggle between the default soft brush and a fully hard one. Hard,
+	 * opaque strokes are filled as solid shapes rather than stamped dab
+	 * by dab (see Brush). So that this holds for the stylus too, its
+	 * pressure and tilt no longer fade or soften a hard brush; they
+	 * still size it.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onHardBrush(MenuItem item) {
+		item.setChecked(!item.isChecked());
+		boolean hard = item.isChecked();
+		
+		int stylus = MotionEvent.TOOL_TYPE_STYLUS;
+		BrushDynamics.setForTool(stylus, hard ? BrushDynamics.createDefault(stylus)
+		                                        .clear(BrushDynamics.OPACITY, BrushDynamics.PRESSURE)
+		                                        .clear(BrushDynamics.HARDNESS, BrushDynamics.TILT) : null);
+		((CanvasView)findViewById(R.id.canvas)).setHardness(hard ? Brush.MAX_HARDNESS : Brush.DEFAULT_HARDNESS);
+		return true;
+	}
+	
+	/**
+	 * Toggle recording every input event in a trace file, which can be
+	 * replayed by the benchmark harness. Traces are written to the
+	 * "traces" directory of the app's external files.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onTrace(MenuItem item) {
+		if (item.isChecked())
+			stopTrace();
+		else
+			startTrace();
+		
+		item.setChecked(((CanvasView)findViewById(R.id.canvas)).getTrace() != null);
+		return true;
+	}
+	
+	void startTrace() {
+		File dir = getExternalFilesDir("traces");
+		if (dir == null) {
+			Log.e("DrawActivity", "External storage unavailable, not recording trace");
+			return;
+		}
+		
+		try {
+			File file = new File(dir, "trace-" + System.currentTimeMillis() + ".trace");
+			((CanvasView)findViewById(R.id.canvas)).setTrace(new InputTrace.Writer(file));
+			Log.i("DrawActivity", "Recording trace to " + file);
+		} catch (IOException e) {
+			Log.e("DrawActivity", "Unable to create trace", e);
+		}
+	}
+	
+	void stopTrace() {
+		CanvasView canvas = (CanvasView)findViewById(R.id.canvas);
+		InputTrace.Writer trace = canvas.getTrace();
+		canvas.setTrace(null);
+		if (trace != null) {
+			try {
+				trace.close();
+			} catch (IOException e) {
+				Log.e("DrawActivity", "Unable to close trace", e);
+			}
+		}
+	}
+	
+	/**
+	 * Export the drawing as a PNG image to the "exports" directory of
+	 * the app's external files. The export runs in the background, so
+	 * drawing may continue meanwhile.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	public boolean onExport(MenuItem item) {
+		File dir = getExternalFilesDir("exports");
+		if (dir == null) {
+			Log.e("DrawActivity", "External storage unavailable, not exporting");
+			return true;
+		}
+		
+		final File file = new File(dir, "drawing-" + System.currentTimeMillis() + ".png");
+		PngExporter.Listener listener = new PngExporter.Listener() {
+			@Override
+			public void exportFinished(PngExporter exporter, IOException error) {
+				if (error != null)
+					Log.e("DrawActivity", "Unable to export " + file, error);
+				else
+					Log.i("DrawActivity", "Exported " + file);
+			}
+		};
+		
+		try {
+			CanvasView canvas = (CanvasView)findViewById(R.id.canvas);
+			canvas.exportPng(new BufferedOutputStream(new FileOutputStream(file)), listener);
+		} catch (IOException e) {
+			Log.e("DrawActivity", "Unable to create " + file, e);
+		}
+		return true;
+	}
+	
 	/**
 	 * Have the CanvasView throw out its existing canvas and recreate a
 	 * new one to draw into. The new canvas is hard-coded to be 640x480
-	 * in size.
+	 * in size. The journal records the canvas being cleared.
 	 * 
 	 * @param item
 	 * @return
 	 */
 	public boolean onNewCanvas(MenuItem item) {
-		((CanvasView)findViewById(R.id.canvas)).initBitmaps();
+		((CanvasView)findViewById(R.id.canvas)).newCanvas();
 		return true;
 	}
 
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * A DrawTarget is anything a Brush can stamp into. It provides the
+ * small subset of Canvas operations that brushes actually use, which
+ * lets drawing surfaces other than a single Canvas (e.g. a TiledLayer)
+ * be drawn on.
+ * 
+ * @author wacom
+ */
+public interface DrawTarget {
+	
+	/**
+	 * Draw a bitmap with its top-left corner at the given location,
+	 * exactly as Canvas.drawBitmap(Bitmap, float, float, Paint) does.
+	 * 
+	 * @param bitmap  Bitmap to draw
+	 * @param left    Target-space position of the bitmap's left side
+	 * @param top     Target-space position of the bitmap's top side
+	 * @param paint   Paint used to draw the bitmap (may be null)
+	 */
+	void drawBitmap(Bitmap bitmap, float left, float top, Paint paint);
+	
+	/**
+	 * Draw a path, exactly as Canvas.drawPath(Path, Paint) does.
+	 * 
+	 * @param path   Target-space path to draw
+	 * @param paint  Paint used to draw the path
+	 */
+	void drawPath(Path path, Paint paint);
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+/**
+ * An InkPredictor extrapolates where a stroke is headed from its most
+ * recent samples, so that a short tail of predicted ink can be drawn
+ * ahead of the real ink to hide some of the pen-to-pixel latency. The
+ * prediction follows the velocity, acceleration and pressure trend of
+ * the last few samples. Acceleration is damped and the predicted
+ * distance is capped so that a sudden stop only overshoots a little.
+ * 
+ * Predictions are checked against the samples which later arrive, and
+ * the error is accumulated in a Stats object for tuning.
+ * 
+ * @author wacom
+ */
+public class InkPredictor {
+	
+	/**
+	 * Accumulated distance between predicted positions and the actual
+	 * positions reached at the predicted times.
+	 */
+	public static class Stats {
+		int count;
+		double sum, sumSquares;
+		float max;
+		
+		synchronized void add(float error) {
+			count++;
+			sum += error;
+			sumSquares += error * error;
+			max = Math.max(max, error);
+		}
+		
+		/**
+		 * @return  Number of predictions checked
+		 */
+		public synchronized int getCount() {
+			return count;
+		}
+		
+		/**
+		 * @return  Mean prediction error, in pixels
+		 */
+		public synchronized float getMeanError() {
+			return count == 0 ? 0 : (float)(sum / count);
+		}
+		
+		/**
+		 * @return  Root-mean-square prediction error, in pixels
+		 */
+		public synchronized float getRmsError() {
+			return count == 0 ? 0 : (float)Math.sqrt(sumSquares / count);
+		}
+		
+		/**
+		 * @return  Largest prediction error, in pixels
+		 */
+		public synchronized float getMaxError() {
+			return max;
+		}
+		
+		public synchronized void reset() {
+			count = 0;
+			sum = sumSquares = 0;
+			max = 0;
+		}
+		
+		public synchronized String toString() {
+			return String.format("Stats(n=%d, mean=%.2f, rms=%.2f, max=%.2f)",
+			    count, getMeanError(), getRmsError(), getMaxError());
+		}
+	}
+	
+	/** Number of recent samples the prediction is based on. */
+	static final int HISTORY = 4;
+	/** Fraction of the measured acceleration to extrapolate with. */
+	static final float ACCELERATION_DAMPING = 0.5f;
+	
+	final long[]  time     = new long[HISTORY];
+	final float[] x        = new float[HISTORY];
+	final float[] y        = new float[HISTORY];
+	final float[] pressure = new float[HISTORY];
+	final float[] size     = new float[HISTORY];
+	final float[] tilt        = new float[HISTORY];
+	final float[] orientation = new float[HISTORY];
+	final float[] twist       = new float[HISTORY];
+	int count;   // Number of valid samples
+	int newest;  // Index of the most recent sample
+	
+	long horizon;
+	float maxDistance;
+	final Stats stats;
+	
+	// Most recent prediction, until a sample reaches its time
+	boolean predicted;
+	long  predictedTime;
+	float predictedX, predictedY;
+	
+	/**
+	 * Create an InkPredictor with its own Stats.
+	 * 
+	 * @param horizon      How far ahead to predict, in milliseconds
+	 * @param maxDistance  Furthest a prediction may reach, in pixels
+	 */
+	public InkPredictor(long horizon, float maxDistance) {
+		this(horizon, maxDistance, new Stats());
+	}
+	
+	/**
+	 * Create an InkPredictor which adds its errors to the given Stats.
+	 * 
+	 * @param horizon      How far ahead to predict, in milliseconds
+	 * @param maxDistance  Furthest a prediction may reach, in pixels
+	 * @param stats        Stats to accumulate prediction errors in
+	 */
+	public InkPredictor(long horizon, float maxDistance, Stats stats) {
+		this.horizon = horizon;
+		this.maxDistance = maxDistance;
+		this.stats = stats;
+	}
+	
+	/**
+	 * @param horizon  How far ahead to predict, in milliseconds. No
+	 *                 predictions are made if zero.
+	 */
+	public void setHorizon(long horizon) {
+		this.horizon = horizon;
+	}
+	
+	public long getHorizon() {
+		return horizon;
+	}
+	
+	public Stats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Add the next actual sample of the stroke. If the sample reaches
+	 * the time of an outstanding prediction, the prediction's error is
+	 * recorded. A sample at the same time as the previous one replaces
+	 * it.
+	 * 
+	 * @param s  The sample
+	 */
+	public void add(State s) {
+		if (count > 0 && s.time <= time[newest]) {
+			store(newest, s);
+			return;
+		}
+		
+		if (predicted && count > 0 && s.time >= predictedTime) {
+			float frac = (predictedTime - time[newest]) / (float)(s.time - time[newest]);
+			float ax = x[newest] + (s.x - x[newest]) * frac;
+			float ay = y[newest] + (s.y - y[newest]) * frac;
+			stats.add((float)Math.hypot(ax - predictedX, ay - predictedY));
+			predicted = false;
+		}
+		
+		newest = (newest + 1) % HISTORY;
+		store(newest, s);
+		count = Math.min(count + 1, HISTORY);
+	}
+	
+	/**
+	 * Forget the stroke, e.g. once it ends. An outstanding prediction
+	 * is discarded without being checked.
+	 */
+	public void reset() {
+		count = 0;
+		predicted = false;
+	}
+	
+	/**
+	 * Copy the most recent actual sample.
+	 * 
+	 * @param out  State to copy the sample into
+	 * @return     'false' if there is no sample
+	 */
+	public boolean latest(State out) {
+		if (count == 0)
+			return false;
+		
+		out.set(time[newest], x[newest], y[newest], pressure[newest], size[newest],
+		        tilt[newest], orientation[newest], twist[newest]);
+		return true;
+	}
+	
+	/**
+	 * Copy the actual sample before the most recent one.
+	 * 
+	 * @param out  State to copy the sample into
+	 * @return     'false' if there is no such sample
+	 */
+	public boolean previous(State out) {
+		if (count < 2)
+			return false;
+		
+		int i = (newest + HISTORY - 1) % HISTORY;
+		out.set(time[i], x[i], y[i], pressure[i], size[i], tilt[i], orientation[i], twist[i]);
+		return true;
+	}
+	
+	/**
+	 * Predict the state of the stroke 'horizon' milliseconds after the
+	 * most recent sample. At least two samples are required.
+	 * 
+	 * @param out  State to store the prediction in
+	 * @return     'false' if no prediction could be made
+	 */
+	public boolean predict(State out) {
+		if (horizon <= 0 || count < 2)
+			return false;
+		
+		int i0 = newest;
+		int i1 = (newest + HISTORY - 1) % HISTORY;
+		int ik = (newest + HISTORY - count + 1) % HISTORY;
+		
+		float window = time[i0] - time[ik];
+		float vx = (x[i0] - x[ik]) / window;
+		float vy = (y[i0] - y[ik]) / window;
+		float vp = (pressure[i0] - pressure[ik]) / window;
+		
+		// The window's velocity is that of its midpoint; if there are
+		// enough samples, advance it to the newest using the change in
+		// velocity across the window.
+		float ax = 0, ay = 0;
+		if (count > 2) {
+			float recent = time[i0] - time[i1];
+			float older  = time[i1] - time[ik];
+			ax = ((x[i0] - x[i1]) / recent - (x[i1] - x[ik]) / older) / (window / 2);
+			ay = ((y[i0] - y[i1]) / recent - (y[i1] - y[ik]) / older) / (window / 2);
+			ax *= ACCELERATION_DAMPING;
+			ay *= ACCELERATION_DAMPING;
+			vx += ax * window / 2;
+			vy += ay * window / 2;
+		}
+		
+		float h = horizon;
+		float dx = vx * h + ax * h * h / 2;
+		float dy = vy * h + ay * h * h / 2;
+		float dist = (float)Math.hypot(dx, dy);
+		if (dist > maxDistance) {
+			dx *= maxDistance / dist;
+			dy *= maxDistance / dist;
+		}
+		
+		float p = Math.max(0, Math.min(1, pressure[i0] + vp * h));
+		out.set(time[i0] + horizon, x[i0] + dx, y[i0] + dy, p, size[i0],
+		        tilt[i0], orientation[i0], twist[i0]);
+		
+		// Predictions are checked one at a time; while one is still
+		// outstanding, newer ones go unchecked.
+		if (!predicted) {
+			predicted = true;
+			predictedTime = out.time;
+			predictedX = out.x;
+			predictedY = out.y;
+		}
+		return true;
+	}
+	
+	void store(int i, State s) {
+		time[i] = s.time;
+		x[i] = s.x;
+		y[i] = s.y;
+		pressure[i] = s.pressure;
+		size[i] = s.size;
+		tilt[i] = s.tilt;
+		orientation[i] = s.orientation;
+		twist[i] = s.twist;
+	}
+	
+	/**
+	 * Measure how well strokes recorded in a journal would have been
+	 * predicted. A prediction is made after every sample, and checked
+	 * against the samples which follow it.
+	 * 
+	 * @param reader       Reader positioned at the first record to use
+	 * @param horizon      How far ahead to predict, in milliseconds
+	 * @param maxDistance  Furthest a prediction may reach, in pixels
+	 * @return             Errors of every prediction checked
+	 */
+	public static Stats evaluate(StrokeJournal.Reader reader, long horizon, float maxDistance) {
+		final Stats stats = new Stats();
+		final InkPredictor[] predictors = new InkPredictor[256];
+		final State sample = new State();
+		final State prediction = new State();
+		for (int i = 0; i < predictors.length; i++)
+			predictors[i] = new InkPredictor(horizon, maxDistance, stats);
+		
+		reader.readAll(new StrokeJournal.Visitor() {
+			public void begin(int ch, int color, int spacing, int size, int hardness, int tool) {
+				predictors[ch].reset();
+			}
+			public void sample(int ch, long time, float x, float y, float pressure, float size,
+			                   float tilt, float orientation, float twist) {
+				predictors[ch].add(sample.set(time, x, y, pressure, size, tilt, orientation, twist));
+				predictors[ch].predict(prediction);
+			}
+			public void end(int ch) {
+				predictors[ch].reset();
+			}
+			public void clear() {
+			}
+			public void undo() {
+			}
+			public void redo() {
+			}
+		});
+		return stats;
+	}
+}
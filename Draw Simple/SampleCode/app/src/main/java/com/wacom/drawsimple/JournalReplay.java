@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.BitSet;
+
+/**
+ * A JournalReplay restores a drawing by replaying the strokes recorded
+ * in a StrokeJournal through fresh Brushes, on a background thread.
+ * Records are replayed in small chunks, each of which is published to
+ * the CanvasView so that the drawing appears progressively rather than
+ * all at once at the end. Strokes which were undone are skipped, and
+ * replayed strokes are not recorded in the layer's undo history.
+ * 
+ * @author wacom
+ */
+class JournalReplay implements Runnable, StrokeJournal.Visitor {
+	
+	/** Number of records to replay before publishing progress. */
+	static final int CHUNK_SIZE = 512;
+	
+	final CanvasView view;
+	final StrokeJournal.Reader reader;
+	final TiledLayer layer;
+	final RenderBackend ink;
+	final Brush[] brushes = new Brush[256];
+	final State sample = new State();
+	BitSet live;
+	int begun;
+	final Thread thread = new Thread(this, "DrawSimple-Replay");
+	volatile boolean cancelled;
+	
+	/**
+	 * @param view    View whose lock guards the layer, and which should
+	 *                be notified of progress
+	 * @param reader  Reader positioned at the first record to replay
+	 * @param layer   Layer to replay the strokes into
+	 */
+	JournalReplay(CanvasView view, StrokeJournal.Reader reader, TiledLayer layer) {
+		this.view = view;
+		this.reader = reader;
+		this.layer = layer;
+		this.ink = new CanvasBackend(layer, view.stamps);
+	}
+	
+	void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stop replaying at the end of the current chunk.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+	
+	@Override
+	public void run() {
+		live = reader.liveStrokes();
+		
+		boolean more = true;
+		while (more && !cancelled) {
+			synchronized (view.lock) {
+				TiledLayer.TileListener history = layer.listener;
+				layer.setTileListener(null);
+				
+				for (int n = 0; n < CHUNK_SIZE && more; n++) {
+					more = reader.next(this);
+				}
+				
+				layer.setTileListener(history);
+				view.publish(layer.dirty);
+				layer.dirty.setEmpty();
+			}
+		}
+	}
+	
+	@Override
+	public void begin(int channel, int color, int spacing, int size, int hardness, int tool) {
+		if (!live.get(begun++)) {
+			brushes[channel] = null;
+			return;
+		}
+		
+		Brush brush = new Brush(spacing, size, hardness);
+		brush.setColor(color);
+		brush.setTool(tool);
+		brushes[channel] = brush;
+	}
+	
+	@Override
+	public void sample(int channel, long time, float x, float y, float pressure, float size,
+	                   float tilt, float orientation, float twist) {
+		Brush brush = brushes[channel];
+		if (brush != null)
+			brush.strokeTo(ink, sample.set(time, x, y, pressure, size, tilt, orientation, twist));
+	}
+	
+	@Override
+	public void end(int channel) {
+		if (brushes[channel] != null)
+			brushes[channel].endFill(ink);
+		brushes[channel] = null;
+	}
+	
+	@Override
+	public void clear() {
+		layer.clear();
+		layer.dirty.set(0, 0, layer.getWidth(), layer.getHeight());
+	}
+	
+	@Override
+	public void undo() {
+	}
+	
+	@Override
+	public void redo() {
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import android.graphics.Bitmap;
+
+/**
+ * A PngExporter writes a TiledLayer to a stream as a PNG image, on a
+ * background thread. The layer is copied and encoded one band of tiles
+ * at a time, so memory use is bounded by the width of the layer rather
+ * than its area: one band of pixels, one encoded row, and the
+ * compressor's buffers. No full-size bitmap is ever created.
+ * 
+ * The view's lock is held only while each band is copied, so strokes
+ * may continue to be drawn during an export. Each band is a consistent
+ * snapshot, but a stroke drawn across a band boundary mid-export may
+ * only appear in the bands copied after it was drawn. If the layer
+ * grows during an export (e.g. on rotation), the image keeps the size
+ * the layer had when the export began.
+ * 
+ * @author wacom
+ */
+public class PngExporter implements Runnable {
+	
+	/** Size of the IDAT chunks written. */
+	static final int CHUNK_SIZE = 64 * 1024;
+	
+	static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+	static final int IHDR = 0x49484452;
+	static final int IDAT = 0x49444154;
+	static final int IEND = 0x49454e44;
+	
+	/** Row filter which stores each byte as the difference from the pixel to its left. */
+	static final int FILTER_SUB = 1;
+	
+	/**
+	 * Notified on the export thread once an export has finished.
+	 */
+	public interface Listener {
+		/**
+		 * @param exporter  Exporter which has finished
+		 * @param error     Error which stopped the export, or null if
+		 *                  the whole image was written
+		 */
+		void exportFinished(PngExporter exporter, IOException error);
+	}
+	
+	final Object lock;
+	final TiledLayer layer;
+	final OutputStream out;
+	final Listener listener;
+	final Thread thread = new Thread(this, "DrawSimple-Export");
+	volatile boolean cancelled;
+	
+	final int width, height;
+	final int tileColumns, tileRows;  // Tiles exported; the layer may grow during the export
+	final int[] band;     // ARGB pixels of one band of tiles
+	final byte[] row;     // Filtered RGBA bytes of one row, plus its filter type
+	final byte[] chunk = new byte[CHUNK_SIZE];
+	int chunkLength;
+	final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	final CRC32 crc = new CRC32();
+	final byte[] header = new byte[8];
+	
+	/**
+	 * @param lock      Lock guarding the layer while it is drawn on
+	 * @param layer     Layer to export
+	 * @param out       Stream to write the PNG to. It is closed once the
+	 *                  export finishes.
+	 * @param listener  Listener to notify once finished (may be null)
+	 */
+	public PngExporter(Object lock, TiledLayer layer, OutputStream out, Listener listener) {
+		this.lock = lock;
+		this.layer = layer;
+		this.out = out;
+		this.listener = listener;
+		this.width = layer.getWidth();
+		this.height = layer.getHeight();
+		this.tileColumns = layer.columns;
+		this.tileRows = layer.rows;
+		this.band = new int[width * TiledLayer.TILE_SIZE];
+		this.row = new byte[1 + 4 * width];
+	}
+	
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stop exporting after the current band. The listener is notified
+	 * with an error, and the stream is left holding a partial image.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	@Override
+	public void run() {
+		IOException error = null;
+		try {
+			writeHeader();
+			for (int r = 0; r < tileRows; r++) {
+				if (cancelled)
+					throw new IOException("Export cancelled");
+				
+				int rows = Math.min(TiledLayer.TILE_SIZE, height - r * TiledLayer.TILE_SIZE);
+				copyBand(r, rows);
+				writeBand(rows);
+			}
+			writeEnd();
+		} catch (IOException e) {
+			error = e;
+		} catch (RuntimeException e) {
+			// Still notify the listener, rather than take the app down
+			error = new IOException("Export failed", e);
+		} finally {
+			deflater.end();
+			try {
+				out.close();
+			} catch (IOException e) {
+				if (error == null)
+					error = e;
+			}
+		}
+		
+		if (listener != null)
+			listener.exportFinished(this, error);
+	}
+	
+	/**
+	 * Copy one row of tiles into 'band'. Unallocated tiles are left
+	 * transparent.
+	 * 
+	 * @param r     Tile row to copy
+	 * @param rows  Number of pixel rows in the band
+	 */
+	void copyBand(int r, int rows) {
+		synchronized (lock) {
+			for (int c = 0; c < tileColumns; c++) {
+				int x = c * TiledLayer.TILE_SIZE;
+				int w = Math.min(TiledLayer.TILE_SIZE, width - x);
+				Bitmap tile = layer.getTile(c, r);
+				if (tile != null) {
+					tile.getPixels(band, x, width, 0, 0, w, rows);
+					continue;
+				}
+				
+				for (int j = 0; j < rows; j++) {
+					int offset = j * width + x;
+					for (int i = 0; i < w; i++)
+						band[offset + i] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Filter and compress the rows of 'band', writing IDAT chunks as
+	 * the compressed data fills them.
+	 * 
+	 * @param rows  Number of pixel rows in the band
+	 */
+	void writeBand(int rows) throws IOException {
+		for (int j = 0; j < rows; j++) {
+			int offset = j * width;
+			row[0] = FILTER_SUB;
+			for (int i = 0, k = 1; i < width; i++, k += 4) {
+				int argb = band[offset + i];
+				row[k]     = (byte)(argb >> 16);
+				row[k + 1] = (byte)(argb >> 8);
+				row[k + 2] = (byte)argb;
+				row[k + 3] = (byte)(argb >>> 24);
+			}
+			for (int k = row.length - 1; k > 4; k--)
+				row[k] -= row[k - 4];
+			
+			deflater.setInput(row);
+			while (!deflater.needsInput())
+				deflate();
+		}
+	}
+	
+	void writeHeader() throws IOException {
+		out.write(SIGNATURE);
+		
+		byte[] ihdr = new byte[13];
+		putInt(ihdr, 0, width);
+		putInt(ihdr, 4, height);
+		ihdr[8] = 8;  // Bit depth
+		ihdr[9] = 6;  // Color type: RGBA
+		ihdr[10] = 0; // Compression: deflate
+		ihdr[11] = 0; // Filtering: adaptive
+		ihdr[12] = 0; // No interlacing
+		writeChunk(IHDR, ihdr, ihdr.length);
+	}
+	
+	void writeEnd() throws IOException {
+		deflater.finish();
+		while (!deflater.finished())
+			deflate();
+		if (chunkLength > 0)
+			writeChunk(IDAT, chunk, chunkLength);
+		writeChunk(IEND, chunk, 0);
+		out.flush();
+	}
+	
+	/**
+	 * Compress into 'chunk', writing it out as an IDAT once full.
+	 */
+	void deflate() throws IOException {
+		chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+		if (chunkLength == CHUNK_SIZE) {
+			writeChunk(IDAT, chunk, chunkLength);
+			chunkLength = 0;
+		}
+	}
+	
+	void writeChunk(int type, byte[] data, int length) throws IOException {
+		putInt(header, 0, length);
+		putInt(header, 4, type);
+		out.write(header, 0, 8);
+		out.write(data, 0, length);
+		
+		crc.reset();
+		crc.update(header, 4, 4);
+		crc.update(data, 0, length);
+		putInt(header, 0, (int)crc.getValue());
+		out.write(header, 0, 4);
+	}
+	
+	static void putInt(byte[] b, int offset, int value) {
+		b[offset]     = (byte)(value >>> 24);
+		b[offset + 1] = (byte)(value >>> 16);
+		b[offset + 2] = (byte)(value >>> 8);
+		b[offset + 3] = (byte)value;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+/**
+ * A RenderBackend is what a Brush draws its dabs with. Each dab is a
+ * filled circle with a radial falloff, blended source-over onto the
+ * existing pixels. Hard brushes may instead fill the whole shape swept
+ * by their nib in a single call, see drawStroke. Keeping this separate
+ * from any particular drawing surface lets the same stroke engine drive
+ * the Android canvas path (CanvasBackend) or a plain-Java pixel buffer
+ * (SoftwareBackend).
+ * 
+ * @author wacom
+ */
+public interface RenderBackend {
+	
+	/**
+	 * Draw a single dab. The dab is fully opaque out to 'hardness'
+	 * times its radius, and then fades linearly to transparent at its
+	 * radius.
+	 * 
+	 * @param x         Target-space x coordinate of the dab's center
+	 * @param y         Target-space y coordinate of the dab's center
+	 * @param radius    Radius of the dab, in pixels
+	 * @param hardness  Hardness of the dab, between 0 and 1 (inclusive)
+	 * @param color     Color of the dab, as non-premultiplied ARGB
+	 */
+	void drawDab(float x, float y, float radius, float hardness, int color);
+	
+	/**
+	 * Fill the shape swept by a hard, round nib moving along a polyline,
+	 * its radius changing linearly from node to node: the union of a
+	 * circle at every node and the hull joining each consecutive pair.
+	 * This looks the same as drawing dabs of hardness 1 arbitrarily
+	 * close together along the polyline, except that each pixel is
+	 * blended only once, so it only matches exactly for opaque colors.
+	 * 
+	 * @param nodes   Target-space (x, y, radius) triples
+	 * @param first   Index of the first node's x coordinate
+	 * @param count   Number of nodes
+	 * @param color   Color of the stroke, as non-premultiplied ARGB
+	 */
+	void drawStroke(float[] nodes, int first, int count, int color);
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Process;
+
+/**
+ * A RenderThread drains samples queued by a StrokeEngine and stamps
+ * them into the engine's layer, keeping rasterization off the UI
+ * thread. The area drawn by each batch of samples is published to the
+ * engine's listener, e.g. CanvasView, which invalidates it on the UI
+ * thread.
+ * 
+ * @author wacom
+ */
+class RenderThread implements Runnable {
+	
+	/** Maximum number of samples to stamp before publishing a frame. */
+	static final int BATCH_SIZE = 64;
+	
+	final StrokeEngine engine;
+	final SampleRing ring;
+	final State sample = new State();
+	final Thread thread = new Thread(this, "DrawSimple-Render");
+	volatile boolean running = true;
+	
+	RenderThread(StrokeEngine engine, SampleRing ring) {
+		this.engine = engine;
+		this.ring = ring;
+	}
+	
+	void start() {
+		thread.start();
+	}
+	
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+		
+		while (running) {
+			ring.await(10000000);
+			
+			synchronized (engine.lock) {
+				TiledLayer layer = engine.layer;
+				Brush brush;
+				
+				for (int n = 0; n < BATCH_SIZE && (brush = ring.poll(sample)) != null; n++) {
+					engine.stamp(brush, ring.lastPointer(), sample, ring.lastFlags());
+				}
+				
+				engine.publish(layer.dirty);
+				layer.dirty.setEmpty();
+			}
+		}
+	}
+	
+	/**
+	 * Stop the thread once it finishes its current batch, and wait for
+	 * it to exit. Samples still queued are left in the ring.
+	 * 
+	 * The thread is woken with unpark rather than interrupted: it writes
+	 * the journal, and an interrupt landing in one of the journal's
+	 * channel operations would close the channel for good.
+	 */
+	void quit() {
+		running = false;
+		LockSupport.unpark(thread);
+		
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
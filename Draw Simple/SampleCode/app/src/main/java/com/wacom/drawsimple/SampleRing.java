@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A SampleRing carries tool samples from the UI thread (the single
+ * producer) to a render thread (the single consumer) without locking.
+ * Each slot holds one sample as primitives in parallel arrays, along
+ * with the Brush that should draw it, so that passing a sample creates
+ * no objects. Samples also carry the ID of the pointer they came from,
+ * so that several simultaneous strokes can share one ring.
+ * 
+ * When the ring is full the producer applies a backpressure Policy.
+ * Samples that begin or end a stroke are never dropped or coalesced;
+ * for those the producer always waits for space.
+ * 
+ * @author wacom
+ */
+public class SampleRing {
+	
+	/**
+	 * What the producer should do when the ring is full.
+	 */
+	public enum Policy {
+		/** Wait for the consumer to make room. */
+		BLOCK,
+		/** Discard the oldest queued sample to make room. */
+		DROP_OLDEST,
+		/** Hold the newest sample aside, replacing any sample already held. */
+		COALESCE
+	}
+	
+	/** The sample is drawn, and the stroke then ends. */
+	static final int FLAG_END = 1;
+	/** The sample is not drawn; the stroke simply ends. */
+	static final int FLAG_CANCEL = 2;
+	/** The sample begins a stroke. */
+	static final int FLAG_START = 4;
+	
+	final int mask;
+	final Policy policy;
+	
+	final Brush[] brush;
+	final int[]   pointer;
+	final long[]  time;
+	final float[] x, y, pressure, size;
+	final float[] tilt, orientation, twist;
+	final int[]   flags;
+	
+	final AtomicLong head = new AtomicLong(); // Next slot to write
+	final AtomicLong tail = new AtomicLong(); // Next slot to read
+	
+	volatile Thread consumer;  // Set while the consumer is parked
+	int polledFlags;           // Flags of the last polled sample (consumer-owned)
+	int polledPointer;         // Pointer ID of the last polled sample (consumer-owned)
+	
+	volatile long dropped;     // Written only by the producer
+	volatile long coalesced;   // Written only by the producer
+	volatile int  maxDepth;    // Written only by the producer
+	
+	// Sample held aside by the COALESCE policy (producer-owned)
+	boolean pending;
+	Brush   pendingBrush;
+	int     pendingPointer;
+	long    pendingTime;
+	float   pendingX, pendingY, pendingPressure, pendingSize;
+	float   pendingTilt, pendingOrientation, pendingTwist;
+	
+	/**
+	 * Create an empty SampleRing.
+	 * 
+	 * @param capacity  Number of slots, rounded up to a power of two
+	 * @param policy    Backpressure policy to apply when full
+	 */
+	public SampleRing(int capacity, Policy policy) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("Capacity must be at least 2");
+		
+		int n = Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = n - 1;
+		this.policy = policy;
+		
+		brush = new Brush[n];
+		pointer = new int[n];
+		time = new long[n];
+		x = new float[n];
+		y = new float[n];
+		pressure = new float[n];
+		size = new float[n];
+		tilt = new float[n];
+		orientation = new float[n];
+		twist = new float[n];
+		flags = new int[n];
+	}
+	
+	/**
+	 * Add a sample to the ring. Must only be called from the producer
+	 * thread.
+	 * 
+	 * @param b      Brush to draw the sample with
+	 * @param id     Pointer ID of the sample
+	 * @param t      Sample time
+	 * @param sx     Sample x coordinate
+	 * @param sy     Sample y coordinate
+	 * @param sp     Sample pressure
+	 * @param ss     Sample size
+	 * @param st     Sample tilt
+	 * @param so     Sample orientation
+	 * @param sw     Sample twist
+	 * @param f      Combination of FLAG_START, FLAG_END and FLAG_CANCEL,
+	 *               or 0
+	 */
+	public void offer(Brush b, int id, long t, float sx, float sy, float sp, float ss,
+	                  float st, float so, float sw, int f) {
+		if (pending)
+			flushPending(f != 0 || pendingBrush != b || pendingPointer != id);
+		
+		long h = head.get();
+		while (h - tail.get() > mask) {
+			if (f == 0 && policy == Policy.COALESCE) {
+				hold(b, id, t, sx, sy, sp, ss, st, so, sw);
+				return;
+			}
+			if (f == 0 && policy == Policy.DROP_OLDEST && dropOldest())
+				continue;
+			
+			LockSupport.parkNanos(50000);
+		}
+		
+		write(h, b, id, t, sx, sy, sp, ss, st, so, sw, f);
+	}
+	
+	/**
+	 * Move the sample held aside by the COALESCE policy, if any, into
+	 * the ring without waiting. Must only be called from the producer
+	 * thread.
+	 * 
+	 * @return  'true' if a held sample was written
+	 */
+	public boolean flush() {
+		return pending && flushPending(false);
+	}
+	
+	/**
+	 * Remove the oldest sample from the ring. Must only be called from
+	 * the consumer thread.
+	 * 
+	 * @param out  State to copy the sample into
+	 * @return     The Brush to draw the sample with, or null if empty
+	 */
+	public Brush poll(State out) {
+		while (true) {
+			long t = tail.get();
+			if (t == head.get())
+				return null;
+			
+			int i = (int)(t & mask);
+			Brush b = brush[i];
+			out.set(time[i], x[i], y[i], pressure[i], size[i], tilt[i], orientation[i], twist[i]);
+			polledFlags = flags[i];
+			polledPointer = pointer[i];
+			
+			// The producer may have dropped this slot and started
+			// overwriting it while we copied; if so, try again.
+			if (tail.compareAndSet(t, t + 1))
+				return b;
+		}
+	}
+	
+	/**
+	 * @return  Flags of the sample most recently returned by poll
+	 */
+	public int lastFlags() {
+		return polledFlags;
+	}
+	
+	/**
+	 * @return  Pointer ID of the sample most recently returned by poll
+	 */
+	public int lastPointer() {
+		return polledPointer;
+	}
+	
+	/**
+	 * Wait until the ring is non-empty, the timeout expires, or the
+	 * waiting thread is interrupted. Must only be called from the
+	 * consumer thread.
+	 * 
+	 * @param nanos  Maximum time to wait
+	 */
+	public void await(long nanos) {
+		consumer = Thread.currentThread();
+		if (isEmpty())
+			LockSupport.parkNanos(this, nanos);
+		consumer = null;
+	}
+	
+	/**
+	 * @return  'true' if the COALESCE policy is holding a sample aside.
+	 *          Must only be called from the producer thread.
+	 */
+	public boolean isHolding() {
+		return pending;
+	}
+	
+	public boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+	
+	/**
+	 * @return  Number of samples currently waiting in the ring
+	 */
+	public int getDepth() {
+		return (int)(head.get() - tail.get());
+	}
+	
+	/**
+	 * @return  Largest number of samples that have waited in the ring
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * @return  Number of samples discarded by the DROP_OLDEST policy
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * @return  Number of samples replaced by the COALESCE policy
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+	
+	public Policy getPolicy() {
+		return policy;
+	}
+	
+	void write(long h, Brush b, int id, long t, float sx, float sy, float sp, float ss,
+	           float st, float so, float sw, int f) {
+		int i = (int)(h & mask);
+		brush[i] = b;
+		pointer[i] = id;
+		time[i] = t;
+		x[i] = sx;
+		y[i] = sy;
+		pressure[i] = sp;
+		size[i] = ss;
+		tilt[i] = st;
+		orientation[i] = so;
+		twist[i] = sw;
+		flags[i] = f;
+		head.set(h + 1);
+		
+		int depth = (int)(h + 1 - tail.get());
+		if (depth > maxDepth)
+			maxDepth = depth;
+		
+		Thread c = consumer;
+		if (c != null)
+			LockSupport.unpark(c);
+	}
+	
+	/**
+	 * Discard the oldest sample, unless it begins or ends a stroke.
+	 * 
+	 * @return  'true' if a slot was freed
+	 */
+	boolean dropOldest() {
+		long t = tail.get();
+		if (flags[(int)(t & mask)] != 0 || !tail.compareAndSet(t, t + 1))
+			return false;
+		
+		dropped++;
+		return true;
+	}
+	
+	void hold(Brush b, int id, long t, float sx, float sy, float sp, float ss,
+	          float st, float so, float sw) {
+		if (pending)
+			coalesced++;
+		
+		pending = true;
+		pendingBrush = b;
+		pendingPointer = id;
+		pendingTime = t;
+		pendingX = sx;
+		pendingY = sy;
+		pendingPressure = sp;
+		pendingSize = ss;
+		pendingTilt = st;
+		pendingOrientation = so;
+		pendingTwist = sw;
+	}
+	
+	/**
+	 * Move the held-aside sample into the ring.
+	 * 
+	 * @param wait  Whether to wait for space if the ring is full
+	 * @return      'true' if the held sample was written
+	 */
+	boolean flushPending(boolean wait) {
+		long h = head.get();
+		while (h - tail.get() > mask) {
+			if (!wait)
+				return false;
+			LockSupport.parkNanos(50000);
+		}
+		
+		pending = false;
+		write(h, pendingBrush, pendingPointer, pendingTime, pendingX, pendingY, pendingPressure, pendingSize,
+		      pendingTilt, pendingOrientation, pendingTwist, 0);
+		return true;
+	}
+}
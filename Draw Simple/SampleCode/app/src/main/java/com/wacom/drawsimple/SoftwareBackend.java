@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+/**
+ * A SoftwareBackend draws dabs directly into an int[] of premultiplied
+ * ARGB pixels (the layout Bitmap.copyPixelsToBuffer produces for an
+ * ARGB_8888 bitmap), using nothing but plain Java. This allows strokes
+ * to be rasterized, benchmarked and checked off-device.
+ * 
+ * The distance of each pixel from a dab's center is interpolated from a
+ * table indexed by squared distance, so no square roots are taken per
+ * pixel, and source-over blending works on two channels at a time. The
+ * table does not depend on the dab, so nothing is rebuilt when the
+ * hardness changes from one dab to the next.
+ * 
+ * Strokes are filled row by row: each circle and hull of the stroke
+ * covers a single run of pixels in a row, and the union of those runs
+ * is blended once. As with a dab of hardness 1, a pixel is covered if
+ * its center lies inside the shape.
+ * 
+ * Tolerance: a single dab matches one drawn through a CanvasBackend to
+ * within 1/255 per channel of premultiplied ARGB, provided that the
+ * dab's center lies on a pixel corner and its radius and hardness fall
+ * exactly on the StampCache's quantization steps. Both paths round to
+ * 8 bits after every blend, so areas covered by many dabs may drift
+ * apart by a few more levels. Dabs off those steps additionally differ
+ * by up to half a pixel in position and half a radius step in size,
+ * since the canvas path quantizes its stamps and blits them without
+ * filtering.
+ * 
+ * @author wacom
+ */
+public class SoftwareBackend implements RenderBackend {
+	
+	/** Number of distance table entries between the center and the edge. */
+	static final int TABLE_SIZE = 4096;
+	
+	/**
+	 * Entry 'k' holds sqrt(k / TABLE_SIZE), the distance from the center
+	 * as a fraction of the radius. The final entry repeats the edge, in
+	 * case a squared distance just inside the edge rounds up to it.
+	 */
+	static final float[] DISTANCE = new float[TABLE_SIZE + 2];
+	
+	static {
+		for (int k = 0; k <= TABLE_SIZE; k++)
+			DISTANCE[k] = (float)Math.sqrt(k / (float)TABLE_SIZE);
+		DISTANCE[TABLE_SIZE + 1] = 1;
+	}
+	
+	final int[] pixels;
+	final int offset, stride;
+	final int width, height;
+	int clipLeft, clipTop, clipRight, clipBottom; // Area dabs may change
+	
+	float[] hulls = new float[8 * 64];  // Hull corners of each stroke segment
+	boolean[] covered;                  // Pixels of the current row a stroke covers
+	int coveredLeft, coveredRight;      // Range of 'covered' which may be set
+	
+	/**
+	 * Create a SoftwareBackend drawing into a new, transparent buffer.
+	 * 
+	 * @param width   Width of the buffer, in pixels
+	 * @param height  Height of the buffer, in pixels
+	 */
+	public SoftwareBackend(int width, int height) {
+		this(new int[width * height], 0, width, width, height);
+	}
+	
+	/**
+	 * Create a SoftwareBackend drawing into part of an existing buffer.
+	 * 
+	 * @param pixels  Premultiplied ARGB pixels
+	 * @param offset  Index of the top-left pixel
+	 * @param stride  Number of entries between the starts of two rows
+	 * @param width   Width of the area to draw into, in pixels
+	 * @param height  Height of the area to draw into, in pixels
+	 */
+	public SoftwareBackend(int[] pixels, int offset, int stride, int width, int height) {
+		if (offset < 0 || stride < width || offset + (height - 1) * stride + width > pixels.length)
+			throw new IllegalArgumentException("Area does not fit within the buffer");
+		
+		this.pixels = pixels;
+		this.offset = offset;
+		this.stride = stride;
+		this.width = width;
+		this.height = height;
+		setClip(0, 0, width, height);
+	}
+	
+	/**
+	 * Restrict drawing to part of the area. Pixels outside the clip are
+	 * never touched, while those inside receive exactly the same values
+	 * they would without it, so disjoint clips of one buffer may be
+	 * drawn into from different threads.
+	 * 
+	 * @param left    Left edge of the clip (inclusive)
+	 * @param top     Top edge of the clip (inclusive)
+	 * @param right   Right edge of the clip (exclusive)
+	 * @param bottom  Bottom edge of the clip (exclusive)
+	 */
+	public void setClip(int left, int top, int right, int bottom) {
+		clipLeft = Math.max(0, left);
+		clipTop = Math.max(0, top);
+		clipRight = Math.min(width, right);
+		clipBottom = Math.min(height, bottom);
+	}
+	
+	@Override
+	public void drawDab(float x, float y, float radius, float hardness, int color) {
+		int alpha = color >>> 24;
+		if (radius <= 0 || alpha == 0)
+			return;
+		
+		int left   = Math.max(clipLeft,   (int)Math.floor(x - radius));
+		int top    = Math.max(clipTop,    (int)Math.floor(y - radius));
+		int right  = Math.min(clipRight,  (int)Math.ceil(x + radius));
+		int bottom = Math.min(clipBottom, (int)Math.ceil(y + radius));
+		
+		// Opacity falls linearly from 'alpha' at 'hardness' to 0 at the
+		// edge; 'ramp' is its slope, per radius of distance.
+		float r2 = radius * radius;
+		float scale = TABLE_SIZE / r2;
+		float ramp = hardness < 1 ? alpha / (1 - hardness) : Float.MAX_VALUE;
+		int rb = color & 0x00ff00ff;
+		int g  = (color >>> 8) & 0xff;
+		
+		for (int j = top; j < bottom; j++) {
+			float dy = j + 0.5f - y;
+			float dy2 = dy * dy;
+			int row = offset + j * stride;
+			
+			for (int i = left; i < right; i++) {
+				float dx = i + 0.5f - x;
+				float d2 = dx * dx + dy2;
+				if (d2 >= r2)
+					continue;
+				
+				float f = d2 * scale;
+				int k = (int)f;
+				float u = DISTANCE[k] + (DISTANCE[k + 1] - DISTANCE[k]) * (f - k);
+				int sa = (int)Math.min(alpha, (1 - u) * ramp + 0.5f);
+				if (sa != 0)
+					blend(row + i, sa, rb, g);
+			}
+		}
+	}
+	
+	@Override
+	public void drawStroke(float[] nodes, int first, int count, int color) {
+		int alpha = color >>> 24;
+		if (count <= 0 || alpha == 0)
+			return;
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int k = 0; k < count; k++) {
+			int n = first + 3 * k;
+			float r = Math.max(nodes[n + 2], 0);
+			minX = Math.min(minX, nodes[n] - r);
+			minY = Math.min(minY, nodes[n + 1] - r);
+			maxX = Math.max(maxX, nodes[n] + r);
+			maxY = Math.max(maxY, nodes[n + 1] + r);
+		}
+		
+		int left   = Math.max(clipLeft,   (int)Math.floor(minX));
+		int top    = Math.max(clipTop,    (int)Math.floor(minY));
+		int right  = Math.min(clipRight,  (int)Math.ceil(maxX));
+		int bottom = Math.min(clipBottom, (int)Math.ceil(maxY));
+		if (left >= right || top >= bottom)
+			return;
+		
+		if (hulls.length < 8 * count)
+			hulls = new float[8 * count];
+		for (int k = 1; k < count; k++) {
+			if (!StrokeHull.find(nodes, first + 3 * (k - 1), hulls, 8 * k))
+				hulls[8 * k] = Float.NaN;
+		}
+		if (covered == null)
+			covered = new boolean[width];
+		coveredLeft = left;
+		coveredRight = right;
+		
+		int rb = color & 0x00ff00ff;
+		int g  = (color >>> 8) & 0xff;
+		
+		for (int j = top; j < bottom; j++) {
+			float py = j + 0.5f;
+			int lo = right, hi = left;
+			
+			for (int k = 0; k < count; k++) {
+				int n = first + 3 * k;
+				float dy = py - nodes[n + 1];
+				float dx2 = nodes[n + 2] * nodes[n + 2] - dy * dy;
+				if (dx2 <= 0)
+					continue;
+				
+				float dx = (float)Math.sqrt(dx2);
+				long run = cover(nodes[n] - dx, nodes[n] + dx);
+				lo = Math.min(lo, (int)(run >> 32));
+				hi = Math.max(hi, (int)run);
+			}
+			
+			for (int k = 1; k < count; k++) {
+				int h = 8 * k;
+				if (Float.isNaN(hulls[h]))
+					continue;
+				
+				// The hull is convex, so a row crosses it in a single run
+				// between the leftmost and rightmost edge crossings.
+				float x0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE;
+				for (int e = 0; e < 8; e += 2) {
+					float ax = hulls[h + e], ay = hulls[h + e + 1];
+					float bx = hulls[h + (e + 2) % 8], by = hulls[h + (e + 3) % 8];
+					if ((ay - py) * (by - py) > 0 || ay == by)
+						continue;
+					
+					float x = ax + (py - ay) * (bx - ax) / (by - ay);
+					x0 = Math.min(x0, x);
+					x1 = Math.max(x1, x);
+				}
+				if (x0 >= x1)
+					continue;
+				
+				long run = cover(x0, x1);
+				lo = Math.min(lo, (int)(run >> 32));
+				hi = Math.max(hi, (int)run);
+			}
+			
+			int row = offset + j * stride;
+			for (int i = lo; i < hi; i++) {
+				if (covered[i]) {
+					covered[i] = false;
+					blend(row + i, alpha, rb, g);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Mark the pixels of the current row whose centers lie strictly
+	 * between two x coordinates as covered.
+	 * 
+	 * @return  The first marked pixel in the upper 32 bits, and one past
+	 *          the last in the lower 32 bits
+	 */
+	long cover(float x0, float x1) {
+		int a = Math.max(coveredLeft,  (int)Math.floor(x0 - 0.5f) + 1);
+		int b = Math.min(coveredRight, (int)Math.ceil(x1 - 0.5f));
+		if (a >= b)
+			return ((long)coveredRight << 32) | coveredLeft;
+		
+		for (int i = a; i < b; i++)
+			covered[i] = true;
+		return ((long)a << 32) | b;
+	}
+	
+	/**
+	 * Blend a premultiplied source of alpha 'sa' over a single pixel.
+	 * 
+	 * @param p   Index of the pixel
+	 * @param sa  Source alpha
+	 * @param rb  Red and blue channels of the (unpremultiplied) source
+	 * @param g   Green channel of the (unpremultiplied) source
+	 */
+	void blend(int p, int sa, int rb, int g) {
+		int srcRB = mulPair(rb, sa);
+		int srcAG = (sa << 16) | mul(g, sa);
+		
+		int dst = pixels[p];
+		int inv = 255 - sa;
+		int dstRB = mulPair(dst & 0x00ff00ff, inv);
+		int dstAG = mulPair((dst >>> 8) & 0x00ff00ff, inv);
+		
+		pixels[p] = ((srcAG + dstAG) << 8) | (srcRB + dstRB);
+	}
+	
+	/**
+	 * Make every pixel transparent.
+	 */
+	public void clear() {
+		for (int j = 0; j < height; j++) {
+			int row = offset + j * stride;
+			for (int i = 0; i < width; i++)
+				pixels[row + i] = 0;
+		}
+	}
+	
+	/**
+	 * @return  The premultiplied ARGB pixels being drawn into
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @return  a * b / 255, rounded
+	 */
+	static int mul(int a, int b) {
+		int t = a * b + 128;
+		return (t + (t >>> 8)) >>> 8;
+	}
+	
+	/**
+	 * Multiply the two 8-bit channels held in bits 0-7 and 16-23 by
+	 * f / 255, rounded.
+	 */
+	static int mulPair(int pair, int f) {
+		int t = pair * f + 0x00800080;
+		return ((t + ((t >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+	}
+	
+	/**
+	 * @param premultiplied  Premultiplied ARGB color
+	 * @return               The same color as non-premultiplied ARGB
+	 */
+	public static int unpremultiply(int premultiplied) {
+		int a = premultiplied >>> 24;
+		if (a == 0 || a == 255)
+			return a == 0 ? 0 : premultiplied;
+		
+		int r = ((premultiplied >> 16) & 0xff) * 255 / a;
+		int g = ((premultiplied >> 8) & 0xff) * 255 / a;
+		int b = (premultiplied & 0xff) * 255 / a;
+		return a << 24 | Math.min(r, 255) << 16 | Math.min(g, 255) << 8 | Math.min(b, 255);
+	}
+	
+	/**
+	 * Compare two equally-sized pixel buffers.
+	 * 
+	 * @return  The largest difference between any two corresponding
+	 *          channels, between 0 and 255
+	 */
+	public static int maxDifference(int[] a, int[] b) {
+		if (a.length != b.length)
+			throw new IllegalArgumentException("Buffers differ in size");
+		
+		int max = 0;
+		for (int i = 0; i < a.length; i++) {
+			int x = a[i], y = b[i];
+			for (int shift = 0; shift < 32; shift += 8) {
+				max = Math.max(max, Math.abs(((x >>> shift) & 0xff) - ((y >>> shift) & 0xff)));
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.graphics.Bitmap.Config;
+
+/**
+ * A StampCache holds pre-rendered brush stamps so that drawing a dab
+ * is a single bitmap blit rather than a gradient allocation and an
+ * offscreen redraw. Stamps are keyed by color, radius and hardness.
+ * Radius and hardness are quantized into buckets so that a stroke of
+ * slowly-changing pressure reuses a small number of stamps.
+ *
+ * The least-recently-used stamps are evicted once the total size of
+ * the cached bitmaps exceeds the configured memory cap.
+ *
+ * @author wacom
+ */
+public class StampCache {
+
+	/**
+	 * Key identifying a single stamp. A single mutable instance is
+	 * used for lookups so that cache hits do not allocate.
+	 */
+	static class Key {
+		int color;
+		int radius;
+		int hardness;
+
+		Key set(int color, int radius, int hardness) {
+			this.color = color;
+			this.radius = radius;
+			this.hardness = hardness;
+			return this;
+		}
+
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key k = (Key)obj;
+			return this.color == k.color &&
+			       this.radius == k.radius &&
+			       this.hardness == k.hardness;
+		}
+
+		public int hashCode() {
+			return (color * 31 + radius) * 31 + hardness;
+		}
+	}
+
+	final Map<Key,Bitmap> stamps = new LinkedHashMap<Key,Bitmap>(64, 0.75f, true);
+	final Key probe = new Key();
+	final Paint paint = new Paint();
+
+	int maxBytes;
+	float radiusStep;
+	int hardnessLevels;
+	int bytes;
+
+	/**
+	 * Create a StampCache with some basic default settings: a 4 MiB
+	 * memory cap, half-pixel radius buckets, and 64 hardness levels.
+	 */
+	public StampCache() {
+		this(4 * 1024 * 1024, 0.5f, 64);
+	}
+
+	/**
+	 * Create a StampCache from defined settings.
+	 *
+	 * @param maxBytes        Memory cap for all cached stamp bitmaps
+	 * @param radiusStep      Radius quantization step, in pixels. Stamps
+	 *                        differ from an exact render by at most half
+	 *                        of this value in radius.
+	 * @param hardnessLevels  Number of distinct hardness levels between
+	 *                        0 and 1 (inclusive) that will be rendered
+	 */
+	public StampCache(int maxBytes, float radiusStep, int hardnessLevels) {
+		if (radiusStep <= 0)
+			throw new IllegalArgumentException("Radius step must be positive");
+		if (hardnessLevels < 1)
+			throw new IllegalArgumentException("At least one hardness level is required");
+
+		this.maxBytes = maxBytes;
+		this.radiusStep = radiusStep;
+		this.hardnessLevels = hardnessLevels;
+		this.paint.setStyle(Paint.Style.FILL);
+	}
+
+	/**
+	 * Obtain the stamp for the given brush settings, rendering and
+	 * caching it if necessary. The stamp is centered in its bitmap,
+	 * so it should be drawn at (x - width/2, y - height/2).
+	 *
+	 * @param color     Fill color to use for the stamp
+	 * @param radius    Radius of the stamp, in pixels
+	 * @param hardness  Hardness of the stamp, between 0 and 1 (inclusive)
+	 * @return          The stamp, or null if the radius rounds to zero
+	 */
+	public synchronized Bitmap get(int color, float radius, float hardness) {
+		if (hardness < 0 || hardness > 1)
+			throw new IllegalArgumentException("Hardness may only take on values between 0 and 1 (inclusive)");
+
+		int r = Math.round(radius / radiusStep);
+		int h = Math.round(hardness * (hardnessLevels - 1));
+		if (r <= 0)
+			return null;
+
+		Bitmap stamp = stamps.get(probe.set(color, r, h));
+		if (stamp == null) {
+			stamp = render(color, r * radiusStep, h / (float)Math.max(hardnessLevels - 1, 1));
+			stamps.put(new Key().set(color, r, h), stamp);
+			bytes += stamp.getRowBytes() * stamp.getHeight();
+			trim(maxBytes);
+		}
+		return stamp;
+	}
+
+	/**
+	 * Update the memory cap, evicting stamps as necessary.
+	 *
+	 * @param maxBytes  New memory cap for all cached stamp bitmaps
+	 */
+	public synchronized void setMaxBytes(int maxBytes) {
+		this.maxBytes = maxBytes;
+		trim(maxBytes);
+	}
+
+	/**
+	 * Evict all cached stamps.
+	 */
+	public synchronized void clear() {
+		trim(0);
+	}
+
+	/**
+	 * @return  Total size of the cached stamp bitmaps, in bytes
+	 */
+	public synchronized int getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * Evict least-recently-used stamps until the cache fits within
+	 * the given size. The most recent stamp is only evicted if the
+	 * cache is being cleared entirely.
+	 */
+	void trim(int limit) {
+		Iterator<Bitmap> it = stamps.values().iterator();
+		while (bytes > limit && it.hasNext()) {
+			Bitmap stamp = it.next();
+			if (limit > 0 && !it.hasNext())
+				break;
+
+			bytes -= stamp.getRowBytes() * stamp.getHeight();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Render a new stamp. This is equivalent to the gradient-filled
+	 * circle previously drawn by Brush.render, but sized to fit the
+	 * stamp instead of the brush's maximum size.
+	 *
+	 * @param color     Fill color to use for the stamp
+	 * @param radius    Radius of the stamp, in pixels
+	 * @param hardness  Hardness of the stamp, between 0 and 1 (inclusive)
+	 * @return          The newly-rendered stamp
+	 */
+	Bitmap render(int color, float radius, float hardness) {
+		int dim = 2 * (int)Math.ceil(radius) + 2;
+		float center = dim/2f;
+
+		Bitmap stamp = Bitmap.createBitmap(dim, dim, Config.ARGB_8888);
+		RadialGradient gradient = new RadialGradient(center, center, radius,
+		    new int[] {color, color, color & 0x00ffffff},
+		    new float[] {0.0f, hardness, 1.0f},
+		    Shader.TileMode.CLAMP);
+
+		paint.setShader(gradient);
+		new Canvas(stamp).drawCircle(center, center, radius, paint);
+		paint.setShader(null);
+		return stamp;
+	}
+}
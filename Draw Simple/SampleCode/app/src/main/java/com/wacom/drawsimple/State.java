@@ -21,6 +21,7 @@
  */
 package com.wacom.drawsimple;
 
+import android.graphics.Matrix;
 import android.util.Log;
 import android.view.MotionEvent;
 
@@ -36,6 +37,7 @@ public class State {
 	
 	long time;
 	float x, y, pressure, size;
+	float tilt, orientation, twist;
 	
 	/**
 	 * Obtain an array of States, one for each historic and current data
@@ -60,7 +62,8 @@ public class State {
 	 * Obtain a State which is linearly interpolated between two others.
 	 * The degree of interpolation is specified by 'frac'. As 'frac' is
 	 * increased, the interpolated State will resemble 'a' less and 'b'
-	 * more.
+	 * more. Orientation and twist are angles, and are interpolated the
+	 * short way around.
 	 * 
 	 * @param a     The "first" state
 	 * @param b     The "second" state
@@ -68,29 +71,143 @@ public class State {
 	 * @return      A linear interpolation of states 'a' and 'b'
 	 */
 	static State interpolate(State a, State b, float frac) {
-		return new State(
-			(long)interpolate(a.time, b.time, frac),
+		return interpolate(a, b, frac, new State());
+	}
+	
+	/**
+	 * Linearly interpolate between two States, storing the result in
+	 * an existing State rather than allocating a new one. The output
+	 * may be the same object as either input.
+	 * 
+	 * @param a     The "first" state
+	 * @param b     The "second" state
+	 * @param frac  The fraction to use in interpolation, between 0 and 1
+	 * @param out   State to store the interpolation in
+	 * @return      The 'out' State
+	 */
+	static State interpolate(State a, State b, float frac, State out) {
+		return out.set(
+			a.time + (long)((b.time - a.time) * frac),
 			interpolate(a.x, b.x, frac),
 			interpolate(a.y, b.y, frac),
 			interpolate(a.pressure, b.pressure, frac),
-			interpolate(a.size, b.size, frac)
+			interpolate(a.size, b.size, frac),
+			interpolate(a.tilt, b.tilt, frac),
+			interpolateAngle(a.orientation, b.orientation, frac, -PI, 2*PI),
+			interpolateAngle(a.twist, b.twist, frac, 0, 1)
 		);
 	}
 	
+	private static final float PI = (float)Math.PI;
+	
 	private static float interpolate(float a, float b, float frac) {
 		return ((b-a)*frac) + a;
 	}
+	
+	/**
+	 * Interpolate between two angles the short way around, wrapping the
+	 * result back into the range [lo, lo + period).
+	 * 
+	 * @param lo      Smallest value of the angle's range
+	 * @param period  Length of a full turn, e.g. 2*PI for radians
+	 */
+	private static float interpolateAngle(float a, float b, float frac, float lo, float period) {
+		float d = b - a;
+		if (d > period/2)
+			d -= period;
+		else if (d < -period/2)
+			d += period;
+		
+		float r = a + d*frac;
+		if (r < lo)
+			r += period;
+		else if (r >= lo + period)
+			r -= period;
+		return r;
+	}
 
 	static float distance(State a, State b) {
-		return (float)Math.sqrt(Math.pow((b.x - a.x), 2) + Math.pow((b.y - a.y), 2));
+		float dx = b.x - a.x;
+		float dy = b.y - a.y;
+		return (float)Math.sqrt(dx*dx + dy*dy);
+	}
+	
+	/**
+	 * Transform the state's coordinates by a given matrix.
+	 * 
+	 * @param transform  Matrix transformation to apply
+	 * @param point      Scratch array of at least two floats
+	 * @return           This State
+	 */
+	State transform(Matrix transform, float[] point) {
+		point[0] = x;
+		point[1] = y;
+		transform.mapPoints(point);
+		x = point[0];
+		y = point[1];
+		return this;
+	}
+	
+	State() {
 	}
 	
 	State(long time, float x, float y, float pressure, float size) {
+		set(time, x, y, pressure, size);
+	}
+	
+	/**
+	 * Overwrite this State's values, allowing a single object to be
+	 * reused for many points in time.
+	 * 
+	 * @return  This State
+	 */
+	State set(long time, float x, float y, float pressure, float size) {
+		return set(time, x, y, pressure, size, 0, 0, 0);
+	}
+	
+	/**
+	 * Overwrite this State's values, including the angular axes used by
+	 * BrushDynamics.
+	 * 
+	 * @param tilt         Tilt away from perpendicular, in radians
+	 * @param orientation  Direction of tilt, in radians between -PI and PI
+	 * @param twist        Barrel rotation, as a fraction of a full turn
+	 * @return             This State
+	 */
+	State set(long time, float x, float y, float pressure, float size,
+	          float tilt, float orientation, float twist) {
 		this.time = time;
 		this.x = x;
 		this.y = y;
 		this.pressure = pressure;
 		this.size = size;
+		this.tilt = tilt;
+		this.orientation = orientation;
+		this.twist = twist;
+		return this;
+	}
+	
+	/**
+	 * Overwrite this State's values with those of another State.
+	 * 
+	 * @param s  State to copy
+	 * @return   This State
+	 */
+	State set(State s) {
+		return set(s.time, s.x, s.y, s.pressure, s.size, s.tilt, s.orientation, s.twist);
+	}
+	
+	/**
+	 * Overwrite this State's values with the given MotionEvent's
+	 * most-current data. Twist is not read, since it needs the
+	 * device's range to normalize; see StrokeBuffer.
+	 * 
+	 * @param e  Event to use as the data source
+	 * @return   This State
+	 */
+	State set(MotionEvent e) {
+		return set(e.getEventTime(), e.getX(), e.getY(), e.getPressure(), e.getSize(),
+		           e.getAxisValue(MotionEvent.AXIS_TILT), e.getAxisValue(MotionEvent.AXIS_ORIENTATION), 0);
 	}
 	
 	/**
@@ -107,6 +224,8 @@ public class State {
 		    e.getHistoricalPressure(pos),
 		    e.getHistoricalSize(pos)
 		);
+		this.tilt = e.getHistoricalAxisValue(MotionEvent.AXIS_TILT, pos);
+		this.orientation = e.getHistoricalAxisValue(MotionEvent.AXIS_ORIENTATION, pos);
 	}
 	
 	/**
@@ -122,10 +241,12 @@ public class State {
 		    e.getPressure(),
 		    e.getSize()
 		);
+		this.tilt = e.getAxisValue(MotionEvent.AXIS_TILT);
+		this.orientation = e.getAxisValue(MotionEvent.AXIS_ORIENTATION);
 	}
 	
 	public String toString() {
-		return String.format("State(%d, %f, %f, %f, %f)",
-		    time, x, y, pressure, size);
+		return String.format("State(%d, %f, %f, %f, %f, %f, %f, %f)",
+		    time, x, y, pressure, size, tilt, orientation, twist);
 	}
 }
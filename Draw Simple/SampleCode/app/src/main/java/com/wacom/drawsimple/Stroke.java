@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+/**
+ * A Stroke holds the progress of a single stroke being drawn by a
+ * Brush: its most recent states, how far it has been drawn, and which
+ * journal channel it is recorded on. Keeping this apart from the Brush
+ * lets several strokes (e.g. one per finger) share a single Brush's
+ * settings while each continues smoothly from its own previous
+ * position.
+ * 
+ * @author wacom
+ */
+public class Stroke {
+	
+	Brush brush;                 // Brush the stroke is drawn with
+	State before = new State();  // State before 'from'
+	State from = new State();    // State the stroke has been drawn up to
+	State last = new State();    // Final state of the stroke so far
+	int count;                   // Number of states in the stroke so far
+	float carry;                 // Distance past 'from' to place the next dab at
+	boolean drawing;             // Whether the stroke has begun
+	int channel;                 // Journal channel the stroke is recorded on
+	
+	/**
+	 * Create a Stroke which has not yet begun.
+	 * 
+	 * @param brush    Brush to draw the stroke with
+	 * @param channel  Journal channel to record the stroke on
+	 */
+	public Stroke(Brush brush, int channel) {
+		this.brush = brush;
+		this.channel = channel;
+	}
+	
+	/**
+	 * @return  'true' if the stroke has begun and not yet ended
+	 */
+	public boolean isDrawing() {
+		return drawing;
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import android.graphics.Matrix;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * StrokeBuffer holds the tool states contained in a single MotionEvent
+ * (historic and current, for every pointer) as parallel primitive
+ * arrays. Samples are ordered by time, and within each point in time
+ * by pointer index, so that the whole event can be processed in one
+ * pass. A single buffer
+ * is meant to be reused for every event so that no per-event or
+ * per-sample objects are created while drawing. The arrays only grow,
+ * and only when an event carries more samples than any event before.
+ * 
+ * Coordinates are stored interleaved as (x, y) pairs so that the whole
+ * buffer can be transformed with a single call to Matrix.mapPoints.
+ * 
+ * Twist is read from AXIS_GENERIC_3, which Wacom drivers use for barrel
+ * rotation, and normalized to a fraction of a full turn using the
+ * device's reported range so that BrushDynamics curves do not depend
+ * on the hardware's units.
+ * 
+ * @author wacom
+ */
+public class StrokeBuffer {
+	
+	int count;
+	int pointers;     // Number of pointers sampled at each point in time
+	int[] pointer;    // Pointer ID of each sample
+	long[] time;
+	float[] points;   // Interleaved x and y coordinates
+	float[] pressure;
+	float[] size;
+	float[] tilt;
+	float[] orientation;
+	float[] twist;
+	
+	int twistDevice = -1;  // Device whose twist range is cached below
+	float twistMin, twistScale;
+	
+	/**
+	 * Create an empty StrokeBuffer with room for a typical amount of
+	 * history.
+	 */
+	public StrokeBuffer() {
+		this(16);
+	}
+	
+	/**
+	 * Create an empty StrokeBuffer.
+	 * 
+	 * @param capacity  Number of samples to initially make room for
+	 */
+	public StrokeBuffer(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+	
+	/**
+	 * Replace the buffer contents with each historic and current data
+	 * point of every pointer contained in the provided MotionEvent.
+	 * 
+	 * @param event  The event to read samples from
+	 */
+	public void fill(MotionEvent event) {
+		int n = event.getHistorySize();
+		int m = event.getPointerCount();
+		ensureCapacity((n + 1) * m);
+		updateTwistRange(event);
+		
+		int i = 0;
+		for (int h = 0; h < n; h++) {
+			long t = event.getHistoricalEventTime(h);
+			for (int p = 0; p < m; p++, i++) {
+				pointer[i]      = event.getPointerId(p);
+				time[i]         = t;
+				points[2*i]     = event.getHistoricalX(p, h);
+				points[2*i + 1] = event.getHistoricalY(p, h);
+				pressure[i]     = event.getHistoricalPressure(p, h);
+				size[i]         = event.getHistoricalSize(p, h);
+				tilt[i]         = event.getHistoricalAxisValue(MotionEvent.AXIS_TILT, p, h);
+				orientation[i]  = event.getHistoricalAxisValue(MotionEvent.AXIS_ORIENTATION, p, h);
+				twist[i]        = (event.getHistoricalAxisValue(MotionEvent.AXIS_GENERIC_3, p, h) - twistMin) * twistScale;
+			}
+		}
+		long t = event.getEventTime();
+		for (int p = 0; p < m; p++, i++) {
+			pointer[i]      = event.getPointerId(p);
+			time[i]         = t;
+			points[2*i]     = event.getX(p);
+			points[2*i + 1] = event.getY(p);
+			pressure[i]     = event.getPressure(p);
+			size[i]         = event.getSize(p);
+			tilt[i]         = event.getAxisValue(MotionEvent.AXIS_TILT, p);
+			orientation[i]  = event.getAxisValue(MotionEvent.AXIS_ORIENTATION, p);
+			twist[i]        = (event.getAxisValue(MotionEvent.AXIS_GENERIC_3, p) - twistMin) * twistScale;
+		}
+		
+		pointers = m;
+		count = i;
+	}
+	
+	/**
+	 * Look up the twist range of the event's device, if it differs from
+	 * the device of the previous event. Devices without a twist axis
+	 * report zero.
+	 */
+	void updateTwistRange(MotionEvent event) {
+		int id = event.getDeviceId();
+		if (id == twistDevice)
+			return;
+		
+		twistDevice = id;
+		twistMin = 0;
+		twistScale = 0;
+		
+		InputDevice device = event.getDevice();
+		InputDevice.MotionRange range = device == null ? null : device.getMotionRange(MotionEvent.AXIS_GENERIC_3);
+		if (range != null && range.getRange() > 0) {
+			twistMin = range.getMin();
+			twistScale = 1 / range.getRange();
+		}
+	}
+	
+	/**
+	 * Transform every sample's coordinates by a given matrix in a
+	 * single bulk operation.
+	 * 
+	 * @param transform  Matrix transformation to apply to each sample
+	 */
+	public void transform(Matrix transform) {
+		transform.mapPoints(points, 0, points, 0, count);
+	}
+	
+	/**
+	 * Copy a single sample out of the buffer.
+	 * 
+	 * @param i    Index of the sample to copy
+	 * @param out  State to copy the sample into
+	 * @return     The 'out' State
+	 */
+	public State get(int i, State out) {
+		return out.set(time[i], points[2*i], points[2*i + 1], pressure[i], size[i],
+		               tilt[i], orientation[i], twist[i]);
+	}
+	
+	/**
+	 * @param i  Index of a sample
+	 * @return   Pointer ID of the sample
+	 */
+	public int getPointerId(int i) {
+		return pointer[i];
+	}
+	
+	/**
+	 * @param i  Index of a sample
+	 * @return   Index of the sample's pointer within its MotionEvent
+	 */
+	public int getPointerIndex(int i) {
+		return i % pointers;
+	}
+	
+	/**
+	 * @return  Number of pointers sampled at each point in time
+	 */
+	public int getPointerCount() {
+		return pointers;
+	}
+	
+	/**
+	 * @return  Number of samples currently held in the buffer
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Empty the buffer without releasing its storage.
+	 */
+	public void clear() {
+		count = 0;
+		pointers = 0;
+	}
+	
+	void ensureCapacity(int n) {
+		if (n > time.length)
+			allocate(Math.max(n, 2 * time.length));
+	}
+	
+	void allocate(int n) {
+		int[]   id = new int[n];
+		long[]  t = new long[n];
+		float[] xy = new float[2*n];
+		float[] p = new float[n];
+		float[] s = new float[n];
+		float[] tl = new float[n];
+		float[] or = new float[n];
+		float[] tw = new float[n];
+		
+		if (time != null) {
+			System.arraycopy(pointer, 0, id, 0, count);
+			System.arraycopy(time, 0, t, 0, count);
+			System.arraycopy(points, 0, xy, 0, 2*count);
+			System.arraycopy(pressure, 0, p, 0, count);
+			System.arraycopy(size, 0, s, 0, count);
+			System.arraycopy(tilt, 0, tl, 0, count);
+			System.arraycopy(orientation, 0, or, 0, count);
+			System.arraycopy(twist, 0, tw, 0, count);
+		}
+		
+		pointer = id;
+		time = t;
+		points = xy;
+		pressure = p;
+		size = s;
+		tilt = tl;
+		orientation = or;
+		twist = tw;
+	}
+}
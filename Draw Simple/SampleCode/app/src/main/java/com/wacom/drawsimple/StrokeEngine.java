@@ -0,0 +1,567 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+
+/**
+ * A StrokeEngine turns touch events into strokes on a TiledLayer. Each
+ * device is assigned its own Brush, and every pointer of an event draws
+ * its own Stroke, so several fingers (or a pen and a finger) can draw
+ * at once. Strokes are recorded in the undo history and the journal,
+ * if set, and each pointer's samples may be fed to an InkPredictor.
+ * 
+ * This is the stroke path of CanvasView, kept apart from the view so
+ * that the benchmark harness can replay recorded input through it.
+ * 
+ * @author wacom
+ */
+public class StrokeEngine {
+	
+	/**
+	 * Notified of the areas drawn off the calling thread, i.e. by the
+	 * RenderThread.
+	 */
+	public interface Listener {
+		/**
+		 * Called with 'lock' held each time a batch of samples has
+		 * been stamped.
+		 * 
+		 * @param bounds  Bitmap-space area that has changed
+		 */
+		void onDrawn(RectF bounds);
+	}
+	
+	/** Pointer IDs are always less than this. */
+	static final int MAX_POINTERS = 32;
+	/** Furthest predicted ink may reach ahead of a stroke, in pixels. */
+	static final float MAX_PREDICTION = 48;
+	
+	final Object lock = new Object();  // Guards 'layer' while a RenderThread runs
+	
+	SparseArray<Brush> brushes = new SparseArray<Brush>();
+	int hardness = Brush.DEFAULT_HARDNESS;       // Hardness of every brush (guarded by 'lock')
+	Brush brush;                                 // Brush of the pointer which caused the current event
+	Brush[] tools = new Brush[MAX_POINTERS];     // Brush of each pointer index in the current event
+	Stroke[] strokes = new Stroke[MAX_POINTERS]; // Stroke of each pointer ID (guarded by 'lock')
+	int ended;                                   // Strokes ended but not yet committed (guarded by 'lock')
+	
+	InkPredictor[] predictors = new InkPredictor[MAX_POINTERS]; // Predictor of each pointer ID
+	Brush[] predicting = new Brush[MAX_POINTERS];               // Brush of each pointer ID being predicted
+	InkPredictor.Stats predictionStats = new InkPredictor.Stats();
+	long predictionHorizon;                      // Milliseconds to predict ahead, or 0 if disabled
+	State predicted = new State();               // Reused for every prediction
+	
+	StrokeBuffer samples = new StrokeBuffer(); // Reused for every event's samples
+	State next = new State();                  // Reused for each sample drawn on the calling thread
+	
+	TiledLayer layer;                  // Layer the strokes are drawn into (guarded by 'lock')
+	RenderBackend ink;                 // Draws dabs into 'layer' (guarded by 'lock')
+	UndoHistory history;               // Undo history of 'layer' (guarded by 'lock')
+	StrokeJournal journal;             // Journal recording all strokes (may be null)
+	SampleRing ring;                   // Samples queued for the RenderThread
+	RenderThread renderer;             // Stamps queued samples, if running
+	Listener listener;                 // Notified of areas drawn by 'renderer' (may be null)
+	
+	/**
+	 * Set the layer to draw strokes into. The undo history, if any,
+	 * starts tracking the new layer. Must be called with 'lock' held.
+	 * 
+	 * @param layer  Layer to draw into
+	 * @param ink    Backend drawing dabs into 'layer'
+	 */
+	public void setLayer(TiledLayer layer, RenderBackend ink) {
+		this.layer = layer;
+		this.ink = ink;
+		layer.setTileListener(history);
+	}
+	
+	/**
+	 * Set the undo history that finished strokes are committed to. Must
+	 * be called with 'lock' held.
+	 * 
+	 * @param history  History of the layer, or null to disable undo
+	 */
+	public void setHistory(UndoHistory history) {
+		this.history = history;
+		if (layer != null)
+			layer.setTileListener(history);
+	}
+	
+	public UndoHistory getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Record every stroke drawn from now on in the given journal.
+	 * 
+	 * @param journal  Journal to record strokes in (may be null)
+	 */
+	public void setJournal(StrokeJournal journal) {
+		synchronized (lock) {
+			this.journal = journal;
+			for (int i = 0; i < brushes.size(); i++)
+				brushes.valueAt(i).journal = journal;
+		}
+	}
+	
+	/**
+	 * Change the hardness of every brush, including those of devices
+	 * which have yet to be used.
+	 * 
+	 * @param hardness  Maximum hardness, between 0 and
+	 *                  Brush.MAX_HARDNESS (inclusive)
+	 */
+	public void setHardness(int hardness) {
+		synchronized (lock) {
+			this.hardness = hardness;
+			for (int i = 0; i < brushes.size(); i++)
+				brushes.valueAt(i).setHardness(hardness);
+		}
+	}
+	
+	public int getHardness() {
+		return hardness;
+	}
+	
+	public StrokeJournal getJournal() {
+		return journal;
+	}
+	
+	/**
+	 * @param listener  Listener to notify of areas drawn by the
+	 *                  RenderThread (may be null)
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Draw the samples of a touch event. A fill will be drawn for each
+	 * pointer so long as it is touching. Once a pointer lifts, its
+	 * stroke is ended in preparation for the next stroke, while the
+	 * strokes of any other pointers carry on. The pointers draw with
+	 * the brushes found by the last call to changeTool.
+	 * 
+	 * The samples of every pointer are read into a reused StrokeBuffer
+	 * and drawn in a single pass, so that no objects are created per
+	 * event. If a RenderThread is running, the samples are only queued
+	 * here and the actual drawing happens on that thread. A sample the
+	 * COALESCE policy holds aside is queued as soon as there is room,
+	 * see flushHeld.
+	 * 
+	 * @param event    Event to draw
+	 * @param inverse  Transformation from the event's coordinates to
+	 *                 bitmap-space
+	 * @param dirty    Set to the bitmap-space area drawn, which is empty
+	 *                 if the samples were queued
+	 * @return         'true' if the event is used to draw the fill
+	 */
+	public boolean drawFill(MotionEvent event, Matrix inverse, RectF dirty) {
+		int action = event.getActionMasked();
+		switch (action) {
+			case MotionEvent.ACTION_DOWN:
+			case MotionEvent.ACTION_POINTER_DOWN:
+			case MotionEvent.ACTION_MOVE:
+			case MotionEvent.ACTION_POINTER_UP:
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				break;
+			
+			default:
+				return false;
+		}
+		
+		samples.fill(event);
+		samples.transform(inverse);
+		trackPredictions(action, event.getActionIndex());
+		
+		if (renderer != null) {
+			queueFill(action, event.getActionIndex());
+			flushHeld();
+			dirty.setEmpty();
+			return true;
+		}
+		
+		synchronized (lock) {
+			layer.dirty.setEmpty();
+			int n = samples.size();
+			for (int i = 0; i < n; i++) {
+				int flags = sampleFlags(i, action, event.getActionIndex());
+				if (flags >= 0)
+					stamp(tools[samples.getPointerIndex(i)], samples.getPointerId(i),
+					      samples.get(i, next), flags);
+			}
+			dirty.set(layer.dirty);
+			layer.dirty.setEmpty();
+		}
+		return true;
+	}
+	
+	/**
+	 * Queue the samples read by drawFill for the RenderThread.
+	 * 
+	 * @param action  Masked action of the event the samples were read from
+	 * @param index   Action index of the event the samples were read from
+	 */
+	protected void queueFill(int action, int index) {
+		int n = samples.size();
+		float[] xy = samples.points;
+		for (int i = 0; i < n; i++) {
+			int flags = sampleFlags(i, action, index);
+			if (flags >= 0)
+				ring.offer(tools[samples.getPointerIndex(i)], samples.getPointerId(i),
+				           samples.time[i], xy[2*i], xy[2*i + 1],
+				           samples.pressure[i], samples.size[i], samples.tilt[i],
+				           samples.orientation[i], samples.twist[i], flags);
+		}
+	}
+	
+	/**
+	 * Feed the samples read by drawFill to the InkPredictor of each
+	 * pointer. The predictor of a pointer whose stroke ends is reset.
+	 * 
+	 * @param action  Masked action of the event the samples were read from
+	 * @param index   Action index of the event the samples were read from
+	 */
+	protected void trackPredictions(int action, int index) {
+		if (predictionHorizon <= 0)
+			return;
+		
+		int n = samples.size();
+		for (int i = 0; i < n; i++) {
+			int flags = sampleFlags(i, action, index);
+			if (flags < 0)
+				continue;
+			
+			int id = samples.getPointerId(i);
+			InkPredictor p = predictors[id];
+			if (p == null)
+				p = predictors[id] = new InkPredictor(predictionHorizon, MAX_PREDICTION, predictionStats);
+			
+			if ((flags & (SampleRing.FLAG_END | SampleRing.FLAG_CANCEL)) != 0) {
+				p.reset();
+				predicting[id] = null;
+			} else {
+				p.add(samples.get(i, next));
+				predicting[id] = tools[samples.getPointerIndex(i)];
+			}
+		}
+	}
+	
+	/**
+	 * Draw a tail of predicted ink ahead of each stroke that is being
+	 * drawn. Since real ink lags one sample behind (see Brush), the
+	 * tail begins at the second most recent sample.
+	 * 
+	 * @param target  Backend to draw the predicted ink with
+	 */
+	public void drawPredictions(RenderBackend target) {
+		if (predictionHorizon <= 0)
+			return;
+		
+		for (int id = 0; id < MAX_POINTERS; id++) {
+			Brush b = predicting[id];
+			if (b == null || !predictors[id].latest(next) || !predictors[id].predict(predicted))
+				continue;
+			
+			b.drawFill(target, next, predicted);
+			if (predictors[id].previous(predicted))
+				b.drawFill(target, predicted, next);
+		}
+	}
+	
+	/**
+	 * Enable or disable predicting ink ahead of each stroke.
+	 * 
+	 * @param horizon  How far ahead to predict, in milliseconds, or 0
+	 *                 to disable prediction
+	 */
+	public void setPredictionHorizon(long horizon) {
+		predictionHorizon = horizon;
+		for (int id = 0; id < MAX_POINTERS; id++) {
+			if (predictors[id] != null) {
+				predictors[id].setHorizon(horizon);
+				predictors[id].reset();
+			}
+			predicting[id] = null;
+		}
+	}
+	
+	public long getPredictionHorizon() {
+		return predictionHorizon;
+	}
+	
+	/**
+	 * @return  Errors of the predictions made so far, measured against
+	 *          the samples which later arrived
+	 */
+	public InkPredictor.Stats getPredictionStats() {
+		return predictionStats;
+	}
+	
+	/**
+	 * Determine how a sample read by drawFill affects its stroke. The
+	 * current sample of a pointer which is touching down begins its
+	 * stroke, and that of a pointer which is lifting ends it, while an
+	 * ACTION_CANCEL ends every stroke without drawing anything further.
+	 * 
+	 * @param i       Index of the sample in 'samples'
+	 * @param action  Masked action of the event the sample was read from
+	 * @param index   Action index of the event the sample was read from
+	 * @return        SampleRing flags for the sample, or -1 if the
+	 *                sample should be skipped
+	 */
+	int sampleFlags(int i, int action, int index) {
+		int current = samples.size() - samples.getPointerCount();
+		if (i < current)
+			return action == MotionEvent.ACTION_CANCEL ? -1 : 0;
+		
+		switch (action) {
+			case MotionEvent.ACTION_DOWN:
+				return SampleRing.FLAG_START;
+			case MotionEvent.ACTION_POINTER_DOWN:
+				return i - current == index ? SampleRing.FLAG_START : 0;
+			case MotionEvent.ACTION_CANCEL:
+				return SampleRing.FLAG_CANCEL;
+			case MotionEvent.ACTION_UP:
+				return SampleRing.FLAG_END;
+			case MotionEvent.ACTION_POINTER_UP:
+				return i - current == index ? SampleRing.FLAG_END : 0;
+			default:
+				return 0;
+		}
+	}
+	
+	/**
+	 * Start rasterizing strokes on a dedicated RenderThread. Events will
+	 * then only queue their samples, leaving the calling thread free to
+	 * dispatch input. Does nothing if already started.
+	 * 
+	 * @param capacity  Number of samples that may be queued
+	 * @param policy    What to do when the queue is full
+	 */
+	public void startRenderThread(int capacity, SampleRing.Policy policy) {
+		if (renderer != null)
+			return;
+		
+		ring = new SampleRing(capacity, policy);
+		renderer = new RenderThread(this, ring);
+		renderer.start();
+	}
+	
+	/**
+	 * Stop the RenderThread, if running, and return to rasterizing
+	 * strokes on the calling thread. Any samples still queued, including
+	 * one held aside by the COALESCE policy, are drawn and published to
+	 * the listener before this method returns.
+	 */
+	public void stopRenderThread() {
+		if (renderer == null)
+			return;
+		
+		renderer.quit();
+		renderer = null;
+		
+		Brush b;
+		synchronized (lock) {
+			do {
+				while ((b = ring.poll(next)) != null)
+					stamp(b, ring.lastPointer(), next, ring.lastFlags());
+			} while (ring.flush());
+			publish(layer.dirty);
+			layer.dirty.setEmpty();
+		}
+	}
+	
+	/**
+	 * Queue the sample held aside by the COALESCE policy, if there is
+	 * room for it. Until it is queued, the stroke it belongs to is not
+	 * drawn up to the pen, so this should be retried while the pen is
+	 * still, e.g. once per frame, for as long as it returns 'true'.
+	 * 
+	 * @return  'true' if a sample is still held aside
+	 */
+	public boolean flushHeld() {
+		if (renderer == null)
+			return false;
+		
+		ring.flush();
+		return ring.isHolding();
+	}
+	
+	/**
+	 * @return  The queue feeding the RenderThread, or null if the
+	 *          thread has never been started
+	 */
+	public SampleRing getSampleRing() {
+		return ring;
+	}
+	
+	/**
+	 * Pass an area drawn by the RenderThread on to the listener. Must be
+	 * called with 'lock' held.
+	 * 
+	 * @param bounds  Bitmap-space area that has changed
+	 */
+	void publish(RectF bounds) {
+		if (listener != null && !bounds.isEmpty())
+			listener.onDrawn(bounds);
+	}
+	
+	/**
+	 * Extend the stroke of a pointer by a single sample, beginning a
+	 * new stroke with the given brush if the pointer is not already
+	 * drawing. Must be called with 'lock' held.
+	 * 
+	 * @param b      Brush to begin a new stroke with
+	 * @param id     Pointer ID of the sample
+	 * @param s      The sample
+	 * @param flags  SampleRing flags of the sample
+	 */
+	void stamp(Brush b, int id, State s, int flags) {
+		Stroke st = strokes[id];
+		if (st == null)
+			st = strokes[id] = new Stroke(b, id);
+		if (!st.drawing)
+			st.brush = b;
+		
+		if ((flags & SampleRing.FLAG_CANCEL) == 0)
+			st.brush.strokeTo(ink, st, s);
+		if ((flags & (SampleRing.FLAG_END | SampleRing.FLAG_CANCEL)) != 0)
+			endStroke(st);
+	}
+	
+	/**
+	 * End a pointer's stroke, if it has begun. Once no pointer is still
+	 * drawing, the strokes that ended are made the next to be undone,
+	 * together. Must be called with 'lock' held.
+	 * 
+	 * @param st  Stroke which has ended
+	 */
+	void endStroke(Stroke st) {
+		if (st.brush.endFill(ink, st))
+			ended++;
+		
+		for (int i = 0; i < strokes.length; i++) {
+			if (strokes[i] != null && strokes[i].drawing)
+				return;
+		}
+		
+		if (ended > 0 && history != null)
+			history.commit(ended);
+		ended = 0;
+	}
+	
+	/**
+	 * Undo the most recent stroke. Nothing is undone while a stroke is
+	 * still being drawn.
+	 * 
+	 * @param changed  Grown to include the bitmap-space area changed
+	 * @return         Number of strokes undone
+	 */
+	public int undo(RectF changed) {
+		return undoRedo(true, changed);
+	}
+	
+	/**
+	 * Redo the most recently undone stroke.
+	 * 
+	 * @param changed  Grown to include the bitmap-space area changed
+	 * @return         Number of strokes redone
+	 */
+	public int redo(RectF changed) {
+		return undoRedo(false, changed);
+	}
+	
+	int undoRedo(boolean undo, RectF changed) {
+		synchronized (lock) {
+			if (history == null || history.isRecording())
+				return 0;
+			
+			int n = undo ? history.undo(layer, changed) : history.redo(layer, changed);
+			for (int i = 0; journal != null && i < n; i++) {
+				if (undo)
+					journal.undo();
+				else
+					journal.redo();
+			}
+			return n;
+		}
+	}
+	
+	/**
+	 * Look up the tool of every pointer in the provided event, and
+	 * switch the currently-active tool to that of the pointer which
+	 * caused the event.
+	 * 
+	 * @param event  Event to locate new tools with
+	 */
+	public void changeTool(MotionEvent event) {
+		int n = event.getPointerCount();
+		for (int i = 0; i < n; i++)
+			tools[i] = brushFor(event, i);
+		
+		brush = tools[event.getActionIndex()];
+	}
+	
+	/**
+	 * @return  Tool of the pointer which caused the last event passed to
+	 *          changeTool, or null if there has been none
+	 */
+	public Brush getBrush() {
+		return brush;
+	}
+	
+	/**
+	 * Find the tool associated with one pointer of an event. Each
+	 * MotionEvent stores the ID of the device which generated it, as
+	 * well as the tool type of each pointer. This information is
+	 * combined into a single key and used to search the "brushes" map.
+	 * 
+	 * @param event  Event to locate the tool with
+	 * @param index  Index of the pointer within the event
+	 * @return       The pointer's tool
+	 */
+	protected Brush brushFor(MotionEvent event, int index) {
+		int key = event.getDeviceId();
+		
+		// XXX: Comment out this line if building for API level < 14.
+		key |= (event.getToolType(index) << 8);
+		
+		Brush b = brushes.get(key);
+		
+		if (b == null) {
+			b = new Brush();
+			b.setTool(event.getToolType(index));
+			synchronized (lock) {
+				b.journal = journal;
+				b.setHardness(hardness);
+				brushes.put(key, b);
+			}
+		}
+		return b;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+/**
+ * StrokeHull holds the geometry shared by the RenderBackends' drawStroke
+ * implementations: the quad which, together with the circles at each
+ * end, makes up the part of a stroke between two of its nodes.
+ * 
+ * @author wacom
+ */
+class StrokeHull {
+	
+	private StrokeHull() {
+	}
+	
+	/**
+	 * Find the quad joining two stroke nodes along their outer tangents.
+	 * 
+	 * @param nodes  Stroke nodes, as (x, y, radius) triples
+	 * @param n      Index of the first node's x coordinate
+	 * @param out    Receives the quad's corners as four (x, y) pairs:
+	 *               along one tangent from the first node to the
+	 *               second, then back along the other
+	 * @param o      Index in 'out' to store the first corner at
+	 * @return       'false' if one node's circle contains the other's,
+	 *               so that no quad is needed
+	 */
+	static boolean find(float[] nodes, int n, float[] out, int o) {
+		float x0 = nodes[n],     y0 = nodes[n + 1], r0 = nodes[n + 2];
+		float x1 = nodes[n + 3], y1 = nodes[n + 4], r1 = nodes[n + 5];
+		float dx = x1 - x0, dy = y1 - y0;
+		float len = (float)Math.sqrt(dx*dx + dy*dy);
+		if (len <= Math.abs(r1 - r0))
+			return false;
+		
+		// The tangents touch each circle at k*u +/- s*v from its center,
+		// where u points from the first node to the second and v is
+		// perpendicular to it.
+		float ux = dx / len, uy = dy / len;
+		float k = (r0 - r1) / len;
+		float s = (float)Math.sqrt(1 - k*k);
+		float ax = k*ux - s*uy, ay = k*uy + s*ux;
+		float bx = k*ux + s*uy, by = k*uy - s*ux;
+		
+		out[o]     = x0 + r0*ax; out[o + 1] = y0 + r0*ay;
+		out[o + 2] = x1 + r1*ax; out[o + 3] = y1 + r1*ay;
+		out[o + 4] = x1 + r1*bx; out[o + 5] = y1 + r1*by;
+		out[o + 6] = x0 + r0*bx; out[o + 7] = y0 + r0*by;
+		return true;
+	}
+}
@@ -0,0 +1,565 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A StrokeJournal is an append-only binary log of every stroke drawn:
+ * the brush settings each stroke began with, followed by its raw
+ * samples. Records are appended through a memory-mapped file, so
+ * journaling a sample is a handful of memory stores. A drawing can be
+ * restored by replaying the journal through a Brush.
+ * 
+ * The file consists of a header followed by tagged records:
+ * 
+ * <pre>
+ *   header:  int magic ('WDSJ'), int version
+ *   BEGIN:   byte tag, byte channel, int color, int spacing, int size, int hardness
+ *   SAMPLE:  byte tag, byte channel, long time, float x, float y, float pressure, float size
+ *   END:     byte tag, byte channel
+ *   CLEAR:   byte tag
+ *   UNDO:    byte tag                 (version 2)
+ *   REDO:    byte tag                 (version 2)
+ *   BEGIN_TOOL:   BEGIN, byte tool    (version 3)
+ *   SAMPLE_AXES:  SAMPLE, float tilt, float orientation, float twist  (version 3)
+ * </pre>
+ * 
+ * BEGIN_TOOL and SAMPLE_AXES are only written when the tool type or
+ * the extra axes are nonzero, which keeps mouse and finger strokes as
+ * compact as before. Records without them read back as tool type
+ * zero (TOOL_TYPE_UNKNOWN) and zero tilt, orientation and twist.
+ * 
+ * UNDO removes the most recently ended stroke which has not already
+ * been undone, and REDO restores the most recently undone stroke.
+ * Ending a new stroke discards any strokes which could be redone.
+ * 
+ * Each stroke is written on its own channel, allowing the samples of
+ * simultaneous strokes to be interleaved. The mapped region beyond the
+ * last record is zero-filled, and a zero tag marks the end of the log.
+ * This class uses no Android APIs so that it can be exercised on a
+ * plain JVM.
+ * 
+ * @author wacom
+ */
+public class StrokeJournal {
+	
+	static final int MAGIC   = 0x5744534A; // 'WDSJ'
+	static final int VERSION = 3;
+	static final int HEADER_SIZE = 8;
+	
+	static final byte EOF    = 0;
+	static final byte BEGIN  = 1;
+	static final byte SAMPLE = 2;
+	static final byte END    = 3;
+	static final byte CLEAR  = 4;
+	static final byte UNDO   = 5;
+	static final byte REDO   = 6;
+	static final byte BEGIN_TOOL  = 7;
+	static final byte SAMPLE_AXES = 8;
+	
+	static final int BEGIN_SIZE  = 18;
+	static final int SAMPLE_SIZE = 26;
+	static final int BEGIN_TOOL_SIZE  = 19;
+	static final int SAMPLE_AXES_SIZE = 38;
+	static final int END_SIZE    = 2;
+	static final int CLEAR_SIZE  = 1;
+	static final int UNDO_SIZE   = 1;
+	
+	static final int INITIAL_CAPACITY = 1024 * 1024;
+	
+	/**
+	 * Receives the records of a journal as it is read.
+	 */
+	public interface Visitor {
+		void begin(int channel, int color, int spacing, int size, int hardness, int tool);
+		void sample(int channel, long time, float x, float y, float pressure, float size,
+		            float tilt, float orientation, float twist);
+		void end(int channel);
+		void clear();
+		void undo();
+		void redo();
+	}
+	
+	final File file;
+	final RandomAccessFile raf;
+	final FileChannel channel;
+	MappedByteBuffer buffer;
+	int position;
+	
+	/**
+	 * Open a journal, creating it if it does not exist. New records will
+	 * be appended after any already present.
+	 * 
+	 * @param file  File to store the journal in
+	 * @throws IOException  If the file cannot be mapped or is not a
+	 *                      journal of a supported version
+	 */
+	public StrokeJournal(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		
+		try {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException("Journal too large: " + file);
+			
+			map(Math.max((int)length, INITIAL_CAPACITY));
+			if (length == 0) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				position = HEADER_SIZE;
+			}
+			else if (buffer.getInt(4) < VERSION) {
+				// Older versions are a subset of this one; upgrade in place
+				// so that newer records may be appended.
+				position = scan(buffer, (int)length);
+				buffer.putInt(4, VERSION);
+			}
+			else {
+				position = scan(buffer, (int)length);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Record the beginning of a stroke.
+	 */
+	public void begin(int ch, int color, int spacing, int size, int hardness, int tool) {
+		ByteBuffer b = reserve(BEGIN_TOOL_SIZE);
+		b.put(position, tool == 0 ? BEGIN : BEGIN_TOOL);
+		b.put(position + 1, (byte)ch);
+		b.putInt(position + 2, color);
+		b.putInt(position + 6, spacing);
+		b.putInt(position + 10, size);
+		b.putInt(position + 14, hardness);
+		if (tool == 0) {
+			position += BEGIN_SIZE;
+			return;
+		}
+		b.put(position + 18, (byte)tool);
+		position += BEGIN_TOOL_SIZE;
+	}
+	
+	/**
+	 * Record a single sample of a stroke.
+	 */
+	public void sample(int ch, long time, float x, float y, float pressure, float size,
+	                   float tilt, float orientation, float twist) {
+		boolean axes = tilt != 0 || orientation != 0 || twist != 0;
+		ByteBuffer b = reserve(SAMPLE_AXES_SIZE);
+		b.put(position, axes ? SAMPLE_AXES : SAMPLE);
+		b.put(position + 1, (byte)ch);
+		b.putLong(position + 2, time);
+		b.putFloat(position + 10, x);
+		b.putFloat(position + 14, y);
+		b.putFloat(position + 18, pressure);
+		b.putFloat(position + 22, size);
+		if (!axes) {
+			position += SAMPLE_SIZE;
+			return;
+		}
+		b.putFloat(position + 26, tilt);
+		b.putFloat(position + 30, orientation);
+		b.putFloat(position + 34, twist);
+		position += SAMPLE_AXES_SIZE;
+	}
+	
+	/**
+	 * Record the end of a stroke.
+	 */
+	public void end(int ch) {
+		ByteBuffer b = reserve(END_SIZE);
+		b.put(position, END);
+		b.put(position + 1, (byte)ch);
+		position += END_SIZE;
+	}
+	
+	/**
+	 * Record that the canvas was cleared. Every record before this one
+	 * no longer contributes to the drawing.
+	 */
+	public void clear() {
+		reserve(CLEAR_SIZE).put(position, CLEAR);
+		position += CLEAR_SIZE;
+	}
+	
+	/**
+	 * Record that the most recently ended stroke was undone.
+	 */
+	public void undo() {
+		reserve(UNDO_SIZE).put(position, UNDO);
+		position += UNDO_SIZE;
+	}
+	
+	/**
+	 * Record that the most recently undone stroke was redone.
+	 */
+	public void redo() {
+		reserve(UNDO_SIZE).put(position, REDO);
+		position += UNDO_SIZE;
+	}
+	
+	/**
+	 * @return  Number of bytes of the file holding valid records
+	 */
+	public int length() {
+		return position;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Obtain a Reader over the records written so far. Records appended
+	 * afterwards are not visible to the Reader.
+	 */
+	public Reader reader() {
+		ByteBuffer b = buffer.duplicate();
+		b.limit(position);
+		return new Reader(b);
+	}
+	
+	/**
+	 * Flush written records to storage and close the journal. Unused
+	 * mapped space at the end of the file is trimmed off.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		buffer.force();
+		buffer = null;
+		channel.truncate(position);
+		channel.close();
+	}
+	
+	/**
+	 * Ensure there is space to write a record at the current position,
+	 * growing the mapping if necessary.
+	 */
+	ByteBuffer reserve(int n) {
+		if (position + n > buffer.capacity()) {
+			try {
+				map(Math.max(2 * buffer.capacity(), position + n));
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to grow journal " + file, e);
+			}
+		}
+		return buffer;
+	}
+	
+	void map(int capacity) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+	
+	/**
+	 * Validate the header of an existing journal and find the end of its
+	 * records.
+	 * 
+	 * @return  Position just past the final complete record
+	 */
+	static int scan(ByteBuffer b, int length) throws IOException {
+		if (length < HEADER_SIZE || b.getInt(0) != MAGIC)
+			throw new IOException("Not a stroke journal");
+		if (b.getInt(4) < 1 || b.getInt(4) > VERSION)
+			throw new IOException("Unsupported stroke journal version " + b.getInt(4));
+		
+		ByteBuffer view = b.duplicate();
+		view.limit(length);
+		Reader r = new Reader(view);
+		while (r.next(null)) {
+		}
+		return r.position;
+	}
+	
+	/**
+	 * A Reader walks the records of a journal one at a time, allowing a
+	 * drawing to be loaded incrementally.
+	 */
+	public static class Reader {
+		final ByteBuffer buffer;
+		int position = HEADER_SIZE;
+		
+		Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		/**
+		 * Open a standalone Reader over a journal file.
+		 * 
+		 * @param file  Journal file to read
+		 * @throws IOException  If the file is not a supported journal
+		 */
+		public static Reader open(File file) throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel ch = raf.getChannel();
+				MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+				scan(b, (int)ch.size());
+				return new Reader(b);
+			} finally {
+				raf.close();
+			}
+		}
+		
+		/**
+		 * Read a single record, passing it to the visitor.
+		 * 
+		 * @param v  Visitor to receive the record (may be null)
+		 * @return   'false' once there are no more complete records
+		 */
+		public boolean next(Visitor v) {
+			ByteBuffer b = buffer;
+			int p = position;
+			int remaining = b.limit() - p;
+			if (remaining < 1)
+				return false;
+			
+			switch (b.get(p)) {
+				case BEGIN:
+					if (remaining < BEGIN_SIZE)
+						return false;
+					if (v != null)
+						v.begin(b.get(p + 1) & 0xff, b.getInt(p + 2), b.getInt(p + 6), b.getInt(p + 10), b.getInt(p + 14), 0);
+					position += BEGIN_SIZE;
+					return true;
+				
+				case BEGIN_TOOL:
+					if (remaining < BEGIN_TOOL_SIZE)
+						return false;
+					if (v != null)
+						v.begin(b.get(p + 1) & 0xff, b.getInt(p + 2), b.getInt(p + 6), b.getInt(p + 10), b.getInt(p + 14),
+						        b.get(p + 18) & 0xff);
+					position += BEGIN_TOOL_SIZE;
+					return true;
+				
+				case SAMPLE:
+					if (remaining < SAMPLE_SIZE)
+						return false;
+					if (v != null)
+						v.sample(b.get(p + 1) & 0xff, b.getLong(p + 2), b.getFloat(p + 10),
+						         b.getFloat(p + 14), b.getFloat(p + 18), b.getFloat(p + 22), 0, 0, 0);
+					position += SAMPLE_SIZE;
+					return true;
+				
+				case SAMPLE_AXES:
+					if (remaining < SAMPLE_AXES_SIZE)
+						return false;
+					if (v != null)
+						v.sample(b.get(p + 1) & 0xff, b.getLong(p + 2), b.getFloat(p + 10),
+						         b.getFloat(p + 14), b.getFloat(p + 18), b.getFloat(p + 22),
+						         b.getFloat(p + 26), b.getFloat(p + 30), b.getFloat(p + 34));
+					position += SAMPLE_AXES_SIZE;
+					return true;
+				
+				case END:
+					if (remaining < END_SIZE)
+						return false;
+					if (v != null)
+						v.end(b.get(p + 1) & 0xff);
+					position += END_SIZE;
+					return true;
+				
+				case CLEAR:
+					if (v != null)
+						v.clear();
+					position += CLEAR_SIZE;
+					return true;
+				
+				case UNDO:
+					if (v != null)
+						v.undo();
+					position += UNDO_SIZE;
+					return true;
+				
+				case REDO:
+					if (v != null)
+						v.redo();
+					position += UNDO_SIZE;
+					return true;
+				
+				default:
+					return false;
+			}
+		}
+		
+		/**
+		 * Skip ahead to just past the final CLEAR record, since nothing
+		 * before it contributes to the drawing. If there is no CLEAR
+		 * record the position is left unchanged.
+		 */
+		public void skipCleared() {
+			int start = position;
+			while (position < buffer.limit() && buffer.get(position) != EOF) {
+				boolean clear = buffer.get(position) == CLEAR;
+				if (!next(null))
+					break;
+				if (clear)
+					start = position;
+			}
+			position = start;
+		}
+		
+		/**
+		 * Determine which of the remaining strokes are still part of the
+		 * drawing once UNDO and REDO records are taken into account.
+		 * Strokes are numbered in the order of their BEGIN records,
+		 * starting from zero at the current position. The position is
+		 * left unchanged.
+		 * 
+		 * @return  Set of the strokes which have not been undone
+		 */
+		public BitSet liveStrokes() {
+			final int[] open = new int[256];
+			final int[] begun = {0};
+			final ArrayList<Integer> done = new ArrayList<Integer>();
+			final ArrayList<Integer> undone = new ArrayList<Integer>();
+			final BitSet live = new BitSet();
+			Arrays.fill(open, -1);
+			
+			int start = position;
+			readAll(new Visitor() {
+				public void begin(int ch, int color, int spacing, int size, int hardness, int tool) {
+					open[ch] = begun[0]++;
+				}
+				public void sample(int ch, long time, float x, float y, float pressure, float size,
+				                   float tilt, float orientation, float twist) {
+				}
+				public void end(int ch) {
+					if (open[ch] < 0)
+						return;
+					done.add(open[ch]);
+					undone.clear();
+					open[ch] = -1;
+				}
+				public void clear() {
+				}
+				public void undo() {
+					if (!done.isEmpty())
+						undone.add(done.remove(done.size() - 1));
+				}
+				public void redo() {
+					if (!undone.isEmpty())
+						done.add(undone.remove(undone.size() - 1));
+				}
+			});
+			position = start;
+			
+			for (int stroke : done)
+				live.set(stroke);
+			for (int stroke : open) {
+				if (stroke >= 0)
+					live.set(stroke);
+			}
+			return live;
+		}
+		
+		/**
+		 * Read every remaining record.
+		 * 
+		 * @param v  Visitor to receive the records
+		 */
+		public void readAll(Visitor v) {
+			while (next(v)) {
+			}
+		}
+		
+		/**
+		 * @return  Position of the next record to be read
+		 */
+		public int position() {
+			return position;
+		}
+	}
+	
+	/**
+	 * Rewrite a journal, keeping only the records which still contribute
+	 * to the drawing: everything before the final CLEAR is dropped, as
+	 * are strokes with no samples and strokes which were undone (along
+	 * with the UNDO and REDO records themselves). The journal is
+	 * replaced atomically.
+	 * 
+	 * @param file  Journal file to compact (must not be open)
+	 * @throws IOException
+	 */
+	public static void compact(File file) throws IOException {
+		Reader in = Reader.open(file);
+		in.skipCleared();
+		final BitSet live = in.liveStrokes();
+		
+		// Copy live strokes, holding back each BEGIN until the stroke
+		// is known to have at least one sample.
+		File tmp = new File(file.getPath() + ".tmp");
+		tmp.delete();
+		final StrokeJournal out = new StrokeJournal(tmp);
+		final int[][] begins = new int[256][];
+		final boolean[] copying = new boolean[256];
+		final int[] begun = {0};
+		in.readAll(new Visitor() {
+			public void begin(int ch, int color, int spacing, int size, int hardness, int tool) {
+				copying[ch] = live.get(begun[0]++);
+				begins[ch] = new int[] {color, spacing, size, hardness, tool};
+			}
+			public void sample(int ch, long time, float x, float y, float pressure, float size,
+			                   float tilt, float orientation, float twist) {
+				if (!copying[ch])
+					return;
+				
+				int[] b = begins[ch];
+				if (b != null) {
+					out.begin(ch, b[0], b[1], b[2], b[3], b[4]);
+					begins[ch] = null;
+				}
+				out.sample(ch, time, x, y, pressure, size, tilt, orientation, twist);
+			}
+			public void end(int ch) {
+				if (copying[ch] && begins[ch] == null)
+					out.end(ch);
+				copying[ch] = false;
+				begins[ch] = null;
+			}
+			public void clear() {
+			}
+			public void undo() {
+			}
+			public void redo() {
+			}
+		});
+		out.close();
+		
+		if (!tmp.renameTo(file))
+			throw new IOException("Unable to replace " + file);
+	}
+}
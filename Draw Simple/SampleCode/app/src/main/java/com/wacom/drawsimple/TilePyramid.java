@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.BitSet;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+
+/**
+ * A TilePyramid holds progressively downsampled copies of a TiledLayer,
+ * each half the width and height of the one below it. When the view is
+ * zoomed out, frames are drawn from the level closest to the zoom
+ * rather than filtering the full-resolution tiles, so the number of
+ * tiles drawn per frame stays flat however far out the view is zoomed.
+ * 
+ * Levels are kept up to date incrementally. Every level is itself a
+ * TiledLayer, which marks the tiles written to it; when a level is
+ * needed, only the tiles above those changed in the level below are
+ * rebuilt, each from the four tiles beneath it. Levels which are never
+ * drawn are never built.
+ * 
+ * All methods must be called with the lock guarding the base layer
+ * held.
+ * 
+ * @author wacom
+ */
+public class TilePyramid {
+	
+	/** Most levels (above the base layer) a pyramid will hold. */
+	static final int MAX_LEVELS = 6;
+	
+	final TiledLayer[] levels;  // levels[0] is the base layer
+	final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	final BitSet stale = new BitSet();
+	final Rect src = new Rect();
+	final Rect dst = new Rect();
+	
+	/**
+	 * Create a pyramid over a layer. Levels are added until the top
+	 * level fits within a single tile.
+	 * 
+	 * @param base  Full-resolution layer
+	 */
+	public TilePyramid(TiledLayer base) {
+		int n = 0;
+		while (n < MAX_LEVELS && Math.max(base.getWidth(), base.getHeight()) >> n > TiledLayer.TILE_SIZE)
+			n++;
+		
+		levels = new TiledLayer[n + 1];
+		levels[0] = base;
+		for (int k = 1; k <= n; k++) {
+			levels[k] = new TiledLayer(Math.max(1, (base.getWidth() + (1 << k) - 1) >> k),
+			                           Math.max(1, (base.getHeight() + (1 << k) - 1) >> k),
+			                           base.config);
+			levels[k].setPool(base.pool);
+		}
+	}
+	
+	/**
+	 * @return  Number of levels, including the base layer
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+	
+	/**
+	 * Choose the level to draw at a given scale: the smallest level
+	 * which is still at least as detailed as the screen.
+	 * 
+	 * @param scale  Ratio of screen pixels to base layer pixels
+	 * @return       Level to draw, where 0 is the base layer
+	 */
+	public int levelFor(float scale) {
+		int level = 0;
+		while (level + 1 < levels.length && scale <= 1f / (2 << level))
+			level++;
+		return level;
+	}
+	
+	/**
+	 * Release every tile above the base layer, e.g. to free memory. The
+	 * levels are rebuilt from the base layer's tiles as they are needed.
+	 */
+	public void clear() {
+		for (int k = 1; k < levels.length; k++) {
+			for (int i = 0; i < levels[k].tiles.length; i++)
+				levels[k].recycle(i);
+			levels[k].changed.clear();
+		}
+		
+		TiledLayer base = levels[0];
+		for (int i = 0; i < base.tiles.length; i++) {
+			if (base.tiles[i] != null)
+				base.changed.set(i);
+		}
+	}
+	
+	/**
+	 * Obtain a level, first bringing it up to date with the base layer.
+	 * 
+	 * @param level  Level to obtain, where 0 is the base layer
+	 * @return       The level, scaled down by 2^level from the base
+	 */
+	public TiledLayer update(int level) {
+		for (int k = 1; k <= level; k++)
+			rebuild(levels[k - 1], levels[k]);
+		return levels[level];
+	}
+	
+	/**
+	 * Rebuild the tiles of one level above the changed tiles of the
+	 * level below it. The changed tiles are consumed, and the rebuilt
+	 * tiles are in turn marked changed for the level above.
+	 */
+	void rebuild(TiledLayer below, TiledLayer level) {
+		if (below.changed.isEmpty())
+			return;
+		
+		stale.clear();
+		for (int i = below.changed.nextSetBit(0); i >= 0; i = below.changed.nextSetBit(i + 1)) {
+			int c = (i % below.columns) / 2;
+			int r = (i / below.columns) / 2;
+			stale.set(r * level.columns + c);
+		}
+		below.changed.clear();
+		
+		int half = TiledLayer.TILE_SIZE / 2;
+		for (int i = stale.nextSetBit(0); i >= 0; i = stale.nextSetBit(i + 1)) {
+			int c = i % level.columns;
+			int r = i / level.columns;
+			
+			Canvas canvas = null;
+			for (int dy = 0; dy < 2; dy++) {
+				for (int dx = 0; dx < 2; dx++) {
+					Bitmap tile = tileAt(below, 2 * c + dx, 2 * r + dy);
+					if (tile == null)
+						continue;
+					
+					if (canvas == null) {
+						canvas = level.canvas(c, r);
+						canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+					}
+					src.set(0, 0, TiledLayer.TILE_SIZE, TiledLayer.TILE_SIZE);
+					dst.set(dx * half, dy * half, dx * half + half, dy * half + half);
+					canvas.drawBitmap(tile, src, dst, paint);
+				}
+			}
+			
+			if (canvas == null)
+				level.recycle(i);
+		}
+	}
+	
+	static Bitmap tileAt(TiledLayer layer, int column, int row) {
+		if (column >= layer.columns || row >= layer.rows)
+			return null;
+		return layer.getTile(column, row);
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TileRasterizer draws a DabList into a SoftwareBackend in parallel.
+ * The dabs are first binned by the square tiles of the canvas they
+ * overlap, keeping their order within each tile. Tiles are then
+ * rasterized independently: every pixel sees the same dabs in the same
+ * order as it would if the list were drawn sequentially, so the result
+ * is bit-identical, whatever the number of threads.
+ * 
+ * Tiles are handed out to workers one at a time, so that workers which
+ * land on empty tiles go on to take more of the busy ones. The calling
+ * thread works alongside the executor's threads, which guarantees
+ * progress even if the executor is busy. ForkJoinPool is the intended
+ * executor on servers; it is not used directly since it is unavailable
+ * before API level 21.
+ * 
+ * @author wacom
+ */
+public class TileRasterizer {
+	
+	final int tileSize;
+	int columns, rows;
+	int[] start = new int[0]; // Dabs of tile 't' are order[start[t]] to order[start[t+1] - 1]
+	int[] order = new int[0]; // Dab indices, grouped by tile, in drawing order
+	
+	/**
+	 * @param tileSize  Width and height of each tile, in pixels
+	 */
+	public TileRasterizer(int tileSize) {
+		if (tileSize <= 0)
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.tileSize = tileSize;
+	}
+	
+	/**
+	 * Rasterize dabs on the calling thread alone.
+	 * 
+	 * @param dabs    Dabs to draw
+	 * @param target  Backend to draw into
+	 */
+	public void rasterize(DabList dabs, SoftwareBackend target) {
+		rasterize(dabs, target, null, 0);
+	}
+	
+	/**
+	 * Rasterize dabs in parallel. Returns once every tile is drawn.
+	 * 
+	 * @param dabs         Dabs to draw
+	 * @param target       Backend to draw into
+	 * @param executor     Executor to run workers on (e.g. a ForkJoinPool)
+	 * @param parallelism  Number of workers to run on the executor, in
+	 *                     addition to the calling thread
+	 */
+	public void rasterize(final DabList dabs, final SoftwareBackend target, Executor executor, int parallelism) {
+		bin(dabs, target.width, target.height);
+		
+		final AtomicInteger next = new AtomicInteger();
+		final Throwable[] failure = new Throwable[1];
+		int workers = executor == null ? 0 : parallelism;
+		final CountDownLatch done = new CountDownLatch(workers);
+		
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					drawTiles(dabs, target, next);
+				} catch (Throwable e) {
+					synchronized (failure) { failure[0] = e; }
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		
+		for (int i = 0; i < workers; i++)
+			executor.execute(worker);
+		drawTiles(dabs, target, next);
+		
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while rasterizing", e);
+		}
+		
+		synchronized (failure) {
+			if (failure[0] != null)
+				throw new IllegalStateException("Rasterizing a tile failed", failure[0]);
+		}
+	}
+	
+	/**
+	 * Draw tiles until none are left to claim. Each worker draws
+	 * through its own backend, clipped to the tile being drawn.
+	 */
+	void drawTiles(DabList dabs, SoftwareBackend target, AtomicInteger next) {
+		SoftwareBackend tile = new SoftwareBackend(target.pixels, target.offset, target.stride,
+		                                           target.width, target.height);
+		int tiles = columns * rows;
+		for (int t; (t = next.getAndIncrement()) < tiles; ) {
+			if (start[t] == start[t + 1])
+				continue;
+			
+			int left = (t % columns) * tileSize;
+			int top = (t / columns) * tileSize;
+			tile.setClip(left, top, left + tileSize, top + tileSize);
+			for (int k = start[t]; k < start[t + 1]; k++)
+				dabs.draw(order[k], tile);
+		}
+	}
+	
+	/**
+	 * Sort the dabs into tiles with a counting sort, which keeps the
+	 * dabs of each tile in drawing order. A dab is placed in every tile
+	 * its bounds (as SoftwareBackend computes them) overlap.
+	 */
+	void bin(DabList dabs, int width, int height) {
+		columns = (width + tileSize - 1) / tileSize;
+		rows = (height + tileSize - 1) / tileSize;
+		int tiles = columns * rows;
+		if (start.length < tiles + 1)
+			start = new int[tiles + 1];
+		else
+			Arrays.fill(start, 0);
+		
+		// Count each tile's dabs into start[t + 1]
+		int total = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < dabs.size; i++) {
+				float x = dabs.x[i], y = dabs.y[i], r = dabs.radius[i];
+				if (r <= 0 || (dabs.color[i] >>> 24) == 0)
+					continue;
+				
+				int left   = Math.max(0,      (int)Math.floor(x - r));
+				int top    = Math.max(0,      (int)Math.floor(y - r));
+				int right  = Math.min(width,  (int)Math.ceil(x + r));
+				int bottom = Math.min(height, (int)Math.ceil(y + r));
+				if (left >= right || top >= bottom)
+					continue;
+				
+				for (int ty = top / tileSize; ty <= (bottom - 1) / tileSize; ty++) {
+					for (int tx = left / tileSize; tx <= (right - 1) / tileSize; tx++) {
+						int t = ty * columns + tx;
+						if (pass == 0)
+							start[t + 1]++;
+						else
+							order[start[t]++] = i;
+					}
+				}
+			}
+			
+			if (pass == 0) {
+				for (int t = 0; t < tiles; t++)
+					start[t + 1] += start[t];
+				total = start[tiles];
+				if (order.length < total)
+					order = new int[total];
+			}
+		}
+		
+		// The second pass advanced start[t] to the end of tile 't'
+		for (int t = tiles; t > 0; t--)
+			start[t] = start[t - 1];
+		start[0] = 0;
+	}
+	
+	/**
+	 * Collect the dabs of every live stroke in a journal, by replaying
+	 * the strokes through fresh Brushes as JournalReplay does. Strokes
+	 * which were undone, or drawn before the canvas was last cleared,
+	 * produce no dabs.
+	 * 
+	 * @param reader  Reader positioned at the first record to replay
+	 * @param scale   Factor to scale the drawing by
+	 * @return        The dabs, in drawing order
+	 */
+	public static DabList collect(final StrokeJournal.Reader reader, float scale) {
+		final DabList dabs = new DabList();
+		dabs.setScale(scale);
+		final BitSet live = reader.liveStrokes();
+		
+		StrokeJournal.Visitor visitor = new StrokeJournal.Visitor() {
+			final Brush[] brushes = new Brush[256];
+			final State sample = new State();
+			int begun;
+			
+			@Override
+			public void begin(int channel, int color, int spacing, int size, int hardness, int tool) {
+				if (!live.get(begun++)) {
+					brushes[channel] = null;
+					return;
+				}
+				
+				Brush brush = new Brush(spacing, size, hardness);
+				brush.setColor(color);
+				brush.setTool(tool);
+				brushes[channel] = brush;
+			}
+			
+			@Override
+			public void sample(int channel, long time, float x, float y, float pressure, float size,
+			                   float tilt, float orientation, float twist) {
+				Brush brush = brushes[channel];
+				if (brush != null)
+					brush.strokeTo(dabs, sample.set(time, x, y, pressure, size, tilt, orientation, twist));
+			}
+			
+			@Override
+			public void end(int channel) {
+				if (brushes[channel] != null)
+					brushes[channel].endFill(dabs);
+				brushes[channel] = null;
+			}
+			
+			@Override
+			public void clear() {
+				dabs.clear();
+			}
+			
+			@Override
+			public void undo() {
+			}
+			
+			@Override
+			public void redo() {
+			}
+		};
+		
+		while (reader.next(visitor))
+			;
+		return dabs;
+	}
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.util.BitSet;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * A TiledLayer is a drawing surface split into fixed-size square tiles.
+ * Tiles are only allocated the first time something is drawn on them,
+ * so a layer which is mostly empty uses memory in proportion to its
+ * inked area rather than its total size. This allows layers far larger
+ * than the screen.
+ * 
+ * Drawing into a TiledLayer is pixel-identical to drawing into a single
+ * bitmap of the same size: each operation is simply replayed into every
+ * tile it overlaps, offset by a whole number of pixels.
+ * 
+ * @author wacom
+ */
+public class TiledLayer implements DrawTarget {
+	
+	static final int TILE_SIZE = 256;
+	
+	/**
+	 * Notified before any tile is modified, allowing its previous
+	 * contents to be preserved (e.g. for undo).
+	 */
+	public interface TileListener {
+		/**
+		 * @param layer  Layer about to be modified
+		 * @param index  Index of the tile about to be modified (whether
+		 *               or not it is allocated)
+		 */
+		void beforeWrite(TiledLayer layer, int index);
+	}
+	
+	int width, height;
+	int columns, rows;
+	Bitmap.Config config;
+	
+	Bitmap[] tiles;
+	Canvas[] canvases;
+	int allocated;
+	TileListener listener;
+	BitmapPool pool;           // Source of new tiles and sink of cleared ones (may be null)
+	
+	RectF dirty = new RectF(); // Union of everything drawn since last reset
+	BitSet changed;            // Tiles written since last collected by a TilePyramid
+	
+	Rect  src = new Rect();  // Scratch rectangle for drawing tiles
+	RectF dst = new RectF(); // Scratch rectangle for drawing tiles
+	RectF pathBounds = new RectF(); // Scratch rectangle for drawing paths
+	
+	/**
+	 * Create an empty TiledLayer. No tiles are allocated until they
+	 * are drawn on.
+	 * 
+	 * @param width   Width of the layer
+	 * @param height  Height of the layer
+	 * @param config  Bitmap configuration to use for each tile
+	 */
+	public TiledLayer(int width, int height, Bitmap.Config config) {
+		this.width = width;
+		this.height = height;
+		this.config = config;
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.tiles = new Bitmap[columns * rows];
+		this.canvases = new Canvas[columns * rows];
+		this.changed = new BitSet(columns * rows);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @return  Number of tiles which have been allocated
+	 */
+	public int getAllocatedTileCount() {
+		return allocated;
+	}
+	
+	/**
+	 * @return  Memory used by allocated tiles, in bytes
+	 */
+	public int getByteCount() {
+		int bytes = 0;
+		for (Bitmap tile : tiles) {
+			if (tile != null)
+				bytes += tile.getRowBytes() * tile.getHeight();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Obtain the tile at the given tile column and row.
+	 * 
+	 * @param column  Column of the tile
+	 * @param row     Row of the tile
+	 * @return        The tile, or null if it has not been allocated
+	 */
+	public Bitmap getTile(int column, int row) {
+		return tiles[row * columns + column];
+	}
+	
+	/**
+	 * Replace the tile at the given index. The listener is not notified.
+	 * 
+	 * @param index  Index of the tile (row * columns + column)
+	 * @param tile   New tile, or null to release the tile
+	 * @return       The tile which was replaced (may be null)
+	 */
+	public Bitmap swapTile(int index, Bitmap tile) {
+		Bitmap old = tiles[index];
+		release(index);
+		changed.set(index);
+		if (tile != null) {
+			tiles[index] = tile;
+			canvases[index] = new Canvas(tile);
+			allocated++;
+		}
+		return old;
+	}
+	
+	/**
+	 * Add the layer-space bounds of a tile to a rectangle.
+	 * 
+	 * @param index   Index of the tile (row * columns + column)
+	 * @param bounds  Rectangle to add the tile's bounds to
+	 */
+	public void unionTileBounds(int index, RectF bounds) {
+		int x = (index % columns) * TILE_SIZE;
+		int y = (index / columns) * TILE_SIZE;
+		bounds.union(x, y, x + TILE_SIZE, y + TILE_SIZE);
+	}
+	
+	public void setTileListener(TileListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Allocate tiles from a pool, and return tiles to it when they are
+	 * cleared. Tiles handed out by swapTile are never pooled, since the
+	 * caller holds on to them.
+	 * 
+	 * @param pool  Pool to use, or null to allocate every tile afresh
+	 */
+	public void setPool(BitmapPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Enlarge the layer, keeping every tile's contents in place. Tile
+	 * indices change if the number of columns does, so every allocated
+	 * tile is marked changed.
+	 * 
+	 * @param width   New width of the layer, at least the current width
+	 * @param height  New height of the layer, at least the current height
+	 */
+	public void grow(int width, int height) {
+		if (width < this.width || height < this.height)
+			throw new IllegalArgumentException("A layer can only grow");
+		
+		int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		Bitmap[] tiles = new Bitmap[columns * rows];
+		Canvas[] canvases = new Canvas[columns * rows];
+		BitSet changed = new BitSet(columns * rows);
+		for (int i = 0; i < this.tiles.length; i++) {
+			if (this.tiles[i] == null)
+				continue;
+			
+			int j = (i / this.columns) * columns + i % this.columns;
+			tiles[j] = this.tiles[i];
+			canvases[j] = this.canvases[i];
+			changed.set(j);
+		}
+		
+		this.width = width;
+		this.height = height;
+		this.columns = columns;
+		this.rows = rows;
+		this.tiles = tiles;
+		this.canvases = canvases;
+		this.changed = changed;
+	}
+	
+	/**
+	 * Draw a bitmap into every tile it overlaps, allocating any tiles
+	 * which do not yet exist. The drawn area is added to 'dirty'.
+	 */
+	@Override
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		int c0 = Math.max(column(left), 0);
+		int r0 = Math.max(row(top), 0);
+		int c1 = Math.min(lastColumn(left + bitmap.getWidth()), columns - 1);
+		int r1 = Math.min(lastRow(top + bitmap.getHeight()), rows - 1);
+		
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				Canvas canvas = canvas(c, r);
+				canvas.drawBitmap(bitmap, left - c * TILE_SIZE, top - r * TILE_SIZE, paint);
+			}
+		}
+		dirty.union(left, top, left + bitmap.getWidth(), top + bitmap.getHeight());
+	}
+	
+	/**
+	 * Draw a path into every tile its bounds overlap, allocating any
+	 * tiles which do not yet exist. The drawn area is added to 'dirty'.
+	 */
+	@Override
+	public void drawPath(Path path, Paint paint) {
+		RectF bounds = pathBounds;
+		path.computeBounds(bounds, true);
+		bounds.inset(-1, -1);  // Room for anti-aliasing
+		
+		int c0 = Math.max(column(bounds.left), 0);
+		int r0 = Math.max(row(bounds.top), 0);
+		int c1 = Math.min(lastColumn(bounds.right), columns - 1);
+		int r1 = Math.min(lastRow(bounds.bottom), rows - 1);
+		
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				Canvas canvas = canvas(c, r);
+				canvas.save();
+				canvas.translate(-c * TILE_SIZE, -r * TILE_SIZE);
+				canvas.drawPath(path, paint);
+				canvas.restore();
+			}
+		}
+		dirty.union(bounds);
+	}
+	
+	/**
+	 * Clear an area of the layer to transparent. Tiles which are
+	 * completely covered by the area are released.
+	 * 
+	 * @param bounds  Layer-space area to clear
+	 */
+	public void clear(RectF bounds) {
+		int c0 = Math.max(column(bounds.left), 0);
+		int r0 = Math.max(row(bounds.top), 0);
+		int c1 = Math.min(lastColumn(bounds.right), columns - 1);
+		int r1 = Math.min(lastRow(bounds.bottom), rows - 1);
+		
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int i = r * columns + c;
+				if (tiles[i] == null)
+					continue;
+				if (listener != null)
+					listener.beforeWrite(this, i);
+				
+				float x = c * TILE_SIZE;
+				float y = r * TILE_SIZE;
+				if (bounds.left <= x && bounds.top <= y &&
+				    bounds.right >= x + TILE_SIZE && bounds.bottom >= y + TILE_SIZE) {
+					recycle(i);
+					continue;
+				}
+				
+				changed.set(i);
+				Canvas canvas = canvases[i];
+				canvas.save();
+				canvas.clipRect(bounds.left - x, bounds.top - y, bounds.right - x, bounds.bottom - y);
+				canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+				canvas.restore();
+			}
+		}
+	}
+	
+	/**
+	 * Release every tile, leaving the layer empty.
+	 */
+	public void clear() {
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null && listener != null)
+				listener.beforeWrite(this, i);
+			recycle(i);
+		}
+	}
+	
+	/**
+	 * Draw the allocated tiles which overlap a region onto a canvas.
+	 * The canvas is expected to already be transformed into layer space.
+	 * 
+	 * @param canvas  Canvas to draw onto
+	 * @param region  Layer-space region to draw
+	 * @param paint   Paint used to draw the tiles (may be null)
+	 */
+	public void draw(Canvas canvas, Rect region, Paint paint) {
+		int c0 = Math.max(region.left / TILE_SIZE, 0);
+		int r0 = Math.max(region.top / TILE_SIZE, 0);
+		int c1 = Math.min((region.right - 1) / TILE_SIZE, columns - 1);
+		int r1 = Math.min((region.bottom - 1) / TILE_SIZE, rows - 1);
+		
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				Bitmap tile = tiles[r * columns + c];
+				if (tile == null)
+					continue;
+				
+				int x = c * TILE_SIZE;
+				int y = r * TILE_SIZE;
+				src.set(Math.max(region.left - x, 0), Math.max(region.top - y, 0),
+				        Math.min(region.right - x, TILE_SIZE), Math.min(region.bottom - y, TILE_SIZE));
+				dst.set(src);
+				dst.offset(x, y);
+				canvas.drawBitmap(tile, src, dst, paint);
+			}
+		}
+	}
+	
+	/**
+	 * Obtain the Canvas for a tile, allocating the tile if necessary.
+	 * The listener is notified that the tile is about to be written.
+	 */
+	Canvas canvas(int column, int row) {
+		int i = row * columns + column;
+		if (listener != null)
+			listener.beforeWrite(this, i);
+		changed.set(i);
+		if (tiles[i] == null) {
+			tiles[i] = pool != null ? pool.get(TILE_SIZE, TILE_SIZE, config)
+			                        : Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, config);
+			canvases[i] = new Canvas(tiles[i]);
+			allocated++;
+		}
+		return canvases[i];
+	}
+	
+	/**
+	 * Release a tile, returning it to the pool if there is one.
+	 */
+	void recycle(int i) {
+		Bitmap tile = tiles[i];
+		release(i);
+		if (pool != null)
+			pool.put(tile);
+	}
+	
+	void release(int i) {
+		if (tiles[i] == null)
+			return;
+		
+		tiles[i] = null;
+		canvases[i] = null;
+		changed.set(i);
+		allocated--;
+	}
+	
+	static int column(float x) {
+		return (int)Math.floor(x / TILE_SIZE);
+	}
+	
+	static int row(float y) {
+		return (int)Math.floor(y / TILE_SIZE);
+	}
+	
+	/**
+	 * @return  Column of the last pixel of an area which ends (exclusively)
+	 *          at 'right'. An area ending on a tile boundary does not reach
+	 *          the next tile.
+	 */
+	static int lastColumn(float right) {
+		return column((float)Math.ceil(right) - 1);
+	}
+	
+	static int lastRow(float bottom) {
+		return row((float)Math.ceil(bottom) - 1);
+	}
+}
@@ -0,0 +1,485 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.drawsimple;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.RectF;
+import android.util.Log;
+
+/**
+ * An UndoHistory records the tiles of a TiledLayer which each stroke
+ * modifies, allowing strokes to be undone and redone. Tiles are copied
+ * on write: the first time a stroke touches a tile, the tile's previous
+ * contents are saved. Undoing or redoing a stroke then simply swaps the
+ * saved tiles with those in the layer, so its cost is proportional to
+ * the stroke's footprint rather than the size of the canvas.
+ * 
+ * Saved tiles are kept in memory up to a configurable budget. Beyond
+ * that, the oldest strokes are compressed to disk in the background and
+ * read back if they are undone.
+ * 
+ * @author wacom
+ */
+public class UndoHistory implements TiledLayer.TileListener {
+	
+	/**
+	 * The tiles touched by a single stroke. Each saved tile holds the
+	 * contents which are *not* currently in the layer: the "before"
+	 * state while the entry can be undone, and the "after" state while
+	 * it can be redone.
+	 */
+	static class Entry {
+		int strokes = 1; // Number of strokes the entry undoes
+		int count;
+		int[] indices = new int[4];
+		Bitmap[] tiles = new Bitmap[4];
+		int bytes;      // Memory used by the tiles, or 0 once spilled
+		File file;      // Where the tiles were spilled to, if not in memory
+		boolean spilling;
+		
+		void add(int index, Bitmap tile) {
+			if (count == indices.length) {
+				int[] i = new int[2 * count];
+				Bitmap[] t = new Bitmap[2 * count];
+				System.arraycopy(indices, 0, i, 0, count);
+				System.arraycopy(tiles, 0, t, 0, count);
+				indices = i;
+				tiles = t;
+			}
+			indices[count] = index;
+			tiles[count] = tile;
+			bytes += byteCount(tile);
+			count++;
+		}
+	}
+	
+	final File spillDir;
+	final int budget;
+	final int maxDepth;
+	final ArrayList<Entry> undo = new ArrayList<Entry>();
+	final ArrayList<Entry> redo = new ArrayList<Entry>();
+	final ExecutorService spiller = Executors.newSingleThreadExecutor();
+	
+	Entry current;      // Entry being recorded for the stroke(s) in progress
+	int[] marks;        // Generation in which each tile was last saved
+	int generation = 1;
+	int bytes;          // Memory used by in-memory saved tiles (guarded by 'this')
+	int spilled;        // Sequence number for spill file names
+	
+	/**
+	 * Create an empty UndoHistory.
+	 * 
+	 * @param spillDir  Directory to spill old strokes to
+	 * @param budget    Memory budget for saved tiles, in bytes
+	 * @param maxDepth  Maximum number of strokes which can be undone
+	 */
+	public UndoHistory(File spillDir, int budget, int maxDepth) {
+		this.spillDir = spillDir;
+		this.budget = budget;
+		this.maxDepth = maxDepth;
+	}
+	
+	/**
+	 * Save a tile's contents the first time it is written during the
+	 * current stroke.
+	 */
+	@Override
+	public void beforeWrite(TiledLayer layer, int index) {
+		if (marks == null || marks.length != layer.tiles.length)
+			marks = new int[layer.tiles.length];
+		if (marks[index] == generation)
+			return;
+		marks[index] = generation;
+		
+		if (current == null)
+			current = new Entry();
+		
+		Bitmap tile = layer.tiles[index];
+		current.add(index, tile == null ? null : tile.copy(tile.getConfig(), true));
+		account(byteCount(current.tiles[current.count - 1]));
+	}
+	
+	/**
+	 * End the current stroke, making it the next one to be undone. This
+	 * should be called every time a stroke ends, even if it did not
+	 * modify any tiles, so that each stroke has exactly one entry.
+	 */
+	public void commit() {
+		commit(1);
+	}
+	
+	/**
+	 * End several strokes which were drawn at the same time, making
+	 * them the next to be undone together as a single entry.
+	 * 
+	 * @param strokes  Number of strokes that ended
+	 */
+	public void commit(int strokes) {
+		Entry entry = current != null ? current : new Entry();
+		entry.strokes = strokes;
+		undo.add(entry);
+		current = null;
+		generation++;
+		
+		for (Entry e : redo)
+			discard(e);
+		redo.clear();
+		
+		while (undo.size() > maxDepth)
+			discard(undo.remove(0));
+		trim();
+	}
+	
+	/**
+	 * Undo the most recent stroke which modified the layer. Strokes
+	 * which did not modify it are undone along the way.
+	 * 
+	 * @param layer  Layer to undo the stroke in
+	 * @param dirty  Rectangle to add the modified area to
+	 * @return       Number of strokes undone
+	 */
+	public int undo(TiledLayer layer, RectF dirty) {
+		return move(undo, redo, layer, dirty);
+	}
+	
+	/**
+	 * Redo the most recently undone stroke which modified the layer.
+	 * Strokes which did not modify it are redone along the way.
+	 * 
+	 * @param layer  Layer to redo the stroke in
+	 * @param dirty  Rectangle to add the modified area to
+	 * @return       Number of strokes redone
+	 */
+	public int redo(TiledLayer layer, RectF dirty) {
+		return move(redo, undo, layer, dirty);
+	}
+	
+	public boolean canUndo() {
+		return !undo.isEmpty();
+	}
+	
+	/**
+	 * @return  'true' if a stroke has modified the layer but not yet
+	 *          been committed
+	 */
+	public boolean isRecording() {
+		return current != null;
+	}
+	
+	public boolean canRedo() {
+		return !redo.isEmpty();
+	}
+	
+	/**
+	 * Renumber the saved tiles after a layer has grown to a different
+	 * number of columns (see TiledLayer.grow), so that the history stays
+	 * valid.
+	 * 
+	 * @param layer       Layer which grew
+	 * @param oldColumns  Columns of the layer before it grew
+	 */
+	public void remap(TiledLayer layer, int oldColumns) {
+		int newColumns = layer.columns;
+		if (oldColumns == newColumns)
+			return;
+		
+		for (Entry e : undo)
+			remap(e, oldColumns, newColumns);
+		for (Entry e : redo)
+			remap(e, oldColumns, newColumns);
+		if (current != null)
+			remap(current, oldColumns, newColumns);
+		
+		if (marks != null) {
+			int[] m = new int[layer.tiles.length];
+			for (int i = 0; i < marks.length; i++)
+				m[(i / oldColumns) * newColumns + i % oldColumns] = marks[i];
+			marks = m;
+		}
+	}
+	
+	static void remap(Entry e, int oldColumns, int newColumns) {
+		for (int i = 0; i < e.count; i++)
+			e.indices[i] = (e.indices[i] / oldColumns) * newColumns + e.indices[i] % oldColumns;
+	}
+	
+	/**
+	 * Spill every entry except the most recent to disk, regardless of
+	 * the memory budget, e.g. when the system is low on memory.
+	 */
+	public void spillAll() {
+		trim(0);
+	}
+	
+	/**
+	 * Discard all history, including anything spilled to disk.
+	 */
+	public void clear() {
+		for (Entry e : undo)
+			discard(e);
+		for (Entry e : redo)
+			discard(e);
+		undo.clear();
+		redo.clear();
+		current = null;
+		generation++;
+		synchronized (this) {
+			bytes = 0;
+		}
+	}
+	
+	/**
+	 * Discard all history and stop the background spill thread. The
+	 * history may not be used afterwards.
+	 */
+	public void close() {
+		clear();
+		spiller.shutdown();
+	}
+	
+	/**
+	 * Pop entries from one stack, swap their tiles into the layer and
+	 * push them onto the other, stopping after the first entry which
+	 * actually changes the layer.
+	 */
+	int move(ArrayList<Entry> from, ArrayList<Entry> to, TiledLayer layer, RectF dirty) {
+		if (current != null)
+			throw new IllegalStateException("Stroke in progress");
+		
+		int n = 0;
+		while (!from.isEmpty()) {
+			Entry e = from.remove(from.size() - 1);
+			if (!swap(e, layer, dirty)) {
+				// Leave the layer as it is rather than erase the tiles
+				from.add(e);
+				break;
+			}
+			to.add(e);
+			n += e.strokes;
+			
+			if (e.count > 0)
+				break;
+		}
+		
+		// Tiles must be saved afresh by the next stroke
+		generation++;
+		trim();
+		return n;
+	}
+	
+	/**
+	 * Swap an entry's tiles with those in the layer.
+	 * 
+	 * @return  'false' if the entry's tiles could not be read back from
+	 *          disk, in which case the layer is left unchanged
+	 */
+	boolean swap(Entry e, TiledLayer layer, RectF dirty) {
+		synchronized (e) {
+			if (e.spilling) {
+				// Cancel the pending spill; the tiles are still in memory
+				e.spilling = false;
+				account(e.bytes);
+			}
+			if (e.file != null && !load(e))
+				return false;
+			
+			account(-e.bytes);
+			e.bytes = 0;
+			for (int i = 0; i < e.count; i++) {
+				e.tiles[i] = layer.swapTile(e.indices[i], e.tiles[i]);
+				e.bytes += byteCount(e.tiles[i]);
+				layer.unionTileBounds(e.indices[i], dirty);
+			}
+			account(e.bytes);
+			return true;
+		}
+	}
+	
+	/**
+	 * Spill the oldest in-memory entries to disk until within budget.
+	 * The most recent entry is always kept in memory.
+	 */
+	void trim() {
+		trim(budget);
+	}
+	
+	void trim(int limit) {
+		for (int i = 0; getByteCount() > limit && i < undo.size() - 1; i++) {
+			final Entry e = undo.get(i);
+			synchronized (e) {
+				if (e.file != null || e.spilling || e.bytes == 0)
+					continue;
+				
+				// Counted as spilled from now on, unless the spill fails
+				e.spilling = true;
+				account(-e.bytes);
+			}
+			final File file = new File(spillDir, "undo-" + (spilled++));
+			spiller.execute(new Runnable() {
+				@Override
+				public void run() {
+					spill(e, file);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Compress an entry's tiles to a file and release them from memory.
+	 * Runs on the spill thread.
+	 */
+	void spill(Entry e, File file) {
+		synchronized (e) {
+			if (!e.spilling)
+				return;
+			e.spilling = false;
+			
+			try {
+				spillDir.mkdirs();
+				DataOutputStream out = new DataOutputStream(
+				    new BufferedOutputStream(new FileOutputStream(file)));
+				try {
+					ByteArrayOutputStream png = new ByteArrayOutputStream();
+					for (int i = 0; i < e.count; i++) {
+						out.writeInt(e.indices[i]);
+						if (e.tiles[i] == null) {
+							out.writeInt(-1);
+							continue;
+						}
+						png.reset();
+						e.tiles[i].compress(Bitmap.CompressFormat.PNG, 100, png);
+						out.writeInt(png.size());
+						png.writeTo(out);
+					}
+				} finally {
+					out.close();
+				}
+			} catch (IOException ex) {
+				// Keep the tiles in memory instead
+				Log.w("UndoHistory", "Unable to spill undo history", ex);
+				file.delete();
+				account(e.bytes);
+				return;
+			}
+			
+			e.file = file;
+			e.bytes = 0;
+			for (int i = 0; i < e.count; i++)
+				e.tiles[i] = null;
+		}
+	}
+	
+	/**
+	 * Read an entry's tiles back from disk. Must hold the entry's lock.
+	 * 
+	 * @return  'false' if the tiles could not be read, in which case the
+	 *          entry is left spilled
+	 */
+	boolean load(Entry e) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inMutable = true;
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		
+		try {
+			DataInputStream in = new DataInputStream(
+			    new BufferedInputStream(new FileInputStream(e.file)));
+			try {
+				byte[] data = new byte[0];
+				for (int i = 0; i < e.count; i++) {
+					in.readInt();
+					int length = in.readInt();
+					if (length < 0)
+						continue;
+					if (length > data.length)
+						data = new byte[length];
+					in.readFully(data, 0, length);
+					e.tiles[i] = BitmapFactory.decodeByteArray(data, 0, length, options);
+					if (e.tiles[i] == null)
+						throw new IOException("Unable to decode tile " + e.indices[i]);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			Log.e("UndoHistory", "Unable to read spilled undo history", ex);
+			for (int i = 0; i < e.count; i++)
+				e.tiles[i] = null;
+			return false;
+		}
+		
+		e.file.delete();
+		e.file = null;
+		e.bytes = 0;
+		for (int i = 0; i < e.count; i++)
+			e.bytes += byteCount(e.tiles[i]);
+		account(e.bytes);
+		return true;
+	}
+	
+	void discard(Entry e) {
+		synchronized (e) {
+			// Spilled and spilling entries are no longer counted
+			if (e.spilling)
+				e.spilling = false;
+			else if (e.file == null)
+				account(-e.bytes);
+			
+			if (e.file != null)
+				e.file.delete();
+			e.file = null;
+			e.count = 0;
+		}
+	}
+	
+	/**
+	 * @return  Memory used by in-memory saved tiles, in bytes
+	 */
+	public synchronized int getByteCount() {
+		return bytes;
+	}
+	
+	/**
+	 * Adjust the memory used by in-memory saved tiles. Spills complete
+	 * (or fail) on the spill thread, so the count is synchronized.
+	 */
+	synchronized void account(int delta) {
+		bytes += delta;
+	}
+	
+	static int byteCount(Bitmap b) {
+		return b == null ? 0 : b.getRowBytes() * b.getHeight();
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.util.Log;
+
+/**
+ * A ConstantIndex maps the values of a class's int constants which share
+ * a prefix (e.g. MotionEvent's "ACTION_" constants) to their names. The
+ * constants are found by reflection once, when the index is built; after
+ * that an index is immutable, so lookups may be made from any thread,
+ * and they do not allocate.
+ * 
+ * An index is either of plain values, which are looked up exactly, or
+ * of flags, where a value is decoded into every constant whose bits are
+ * all set in it. Constants with the same value share one entry, with
+ * their names joined by " | ".
+ * 
+ * @author wacom
+ */
+public class ConstantIndex {
+	
+	/** Name of a value which matches no constant. */
+	public static final String UNKNOWN = "???";
+	
+	final boolean bitwise;
+	final int[] values;     // Distinct values, ascending (as unsigned ints, for flags)
+	final String[] names;   // Name(s) of the constants with each value
+	
+	/**
+	 * Build an index of a class's public static final int constants.
+	 * 
+	 * @param c        Class declaring the constants
+	 * @param prefix   Prefix of the constants to index
+	 * @param bitwise  True if the constants are flags. Flag constants
+	 *                 of zero are left out, since they are in every value.
+	 */
+	public ConstantIndex(Class<?> c, String prefix, boolean bitwise) {
+		Map<Long,String> constants = new TreeMap<Long,String>();
+		for (Field f : c.getDeclaredFields()) {
+			int mod = f.getModifiers();
+			if (!Modifier.isPublic(mod) || !Modifier.isStatic(mod) || !Modifier.isFinal(mod) ||
+			    f.getType() != int.class || !f.getName().startsWith(prefix))
+				continue;
+			
+			int value;
+			try {
+				value = f.getInt(null);
+			} catch (IllegalAccessException e) {
+				Log.e("ConstantIndex", e.getLocalizedMessage());
+				continue;
+			}
+			if (bitwise && value == 0)
+				continue;
+			
+			Long key = bitwise ? value & 0xffffffffL : value;
+			String name = constants.get(key);
+			constants.put(key, name == null ? f.getName() : name + " | " + f.getName());
+		}
+		
+		this.bitwise = bitwise;
+		this.values = new int[constants.size()];
+		this.names = new String[constants.size()];
+		int i = 0;
+		for (Map.Entry<Long,String> e : constants.entrySet()) {
+			values[i] = (int)(long)e.getKey();
+			names[i++] = e.getValue();
+		}
+	}
+	
+	/**
+	 * Look up the name(s) of a value. For flags, this is the name of
+	 * the constant equal to the value, if any; use append() to decode
+	 * the flags set in the value.
+	 * 
+	 * @param value  Value to look up
+	 * @return       Name(s) of the constants with the value, or UNKNOWN
+	 */
+	public String name(int value) {
+		int i = find(value);
+		return i < 0 ? UNKNOWN : names[i];
+	}
+	
+	/**
+	 * Append the name(s) of a value. For flags, these are the names of
+	 * every constant whose bits are all set in the value, or nothing if
+	 * the value is zero.
+	 * 
+	 * @param b      Builder to append to
+	 * @param value  Value to look up
+	 * @return       The builder
+	 */
+	public StringBuilder append(StringBuilder b, int value) {
+		if (!bitwise)
+			return b.append(name(value));
+		if (value == 0)
+			return b;
+		
+		// A constant can only be made up of bits of the value if it is no
+		// larger, so the search stops at the first larger constant.
+		int start = b.length();
+		long unsigned = value & 0xffffffffL;
+		for (int i = 0; i < values.length && (values[i] & 0xffffffffL) <= unsigned; i++) {
+			if ((value & values[i]) != values[i])
+				continue;
+			if (b.length() > start)
+				b.append(" | ");
+			b.append(names[i]);
+		}
+		if (b.length() == start)
+			b.append(UNKNOWN);
+		return b;
+	}
+	
+	/**
+	 * @return  Index of a value in 'values', or -1 if no constant has it
+	 */
+	int find(int value) {
+		int lo = 0;
+		int hi = values.length - 1;
+		long key = bitwise ? value & 0xffffffffL : value;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long v = bitwise ? values[mid] & 0xffffffffL : values[mid];
+			if (v < key)
+				lo = mid + 1;
+			else if (v > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+}
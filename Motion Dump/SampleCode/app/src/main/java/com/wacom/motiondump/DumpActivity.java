@@ -22,16 +22,18 @@
 
 package com.wacom.motiondump;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.wacom.trace.InputTrace;
+
 import android.os.Bundle;
 import android.app.Activity;
+import android.view.Choreographer;
 import android.view.InputDevice;
 import android.view.InputDevice.MotionRange;
 import android.view.KeyEvent;
@@ -43,15 +45,44 @@ import android.view.View.OnTouchListener;
 import android.webkit.WebView;
 import android.util.Log;
 
-public class DumpActivity extends Activity implements OnGenericMotionListener, OnTouchListener, OnHoverListener {
+public class DumpActivity extends Activity implements OnGenericMotionListener, OnTouchListener, OnHoverListener, Choreographer.FrameCallback {
+
+	// Names of the constants shown for events
+	static final ConstantIndex ACTIONS    = new ConstantIndex(MotionEvent.class, "ACTION_", false);
+	static final ConstantIndex AXES       = new ConstantIndex(MotionEvent.class, "AXIS_", false);
+	static final ConstantIndex BUTTONS    = new ConstantIndex(MotionEvent.class, "BUTTON_", true);
+	static final ConstantIndex SOURCES    = new ConstantIndex(InputDevice.class, "SOURCE_", true);
+	static final ConstantIndex TOOL_TYPES = new ConstantIndex(MotionEvent.class, "TOOL_TYPE_", false);
 
 	WebView wv;
-	long callback_time[] = new long[30];
-	long event_time[] = new long[30];
-	long lag_time[] = new long[30];
-	StringBuilder builder = new StringBuilder(200);
+	PageView display;
 	int laststate = MotionEvent.ACTION_HOVER_EXIT;
 	String lastmethod = "";
+	InputTrace.Writer trace;   // Records every event received (may be null)
+	MotionCapture.Writer motionCapture;  // Captures every sample received (may be null)
+	
+	// Statistics of each device, updated for every event received
+	long statsWindow = InputStats.WINDOW;
+	List<InputStats> stats = new ArrayList<InputStats>();
+	
+	// Display, updated at most once per frame with the latest event
+	Choreographer choreographer;
+	boolean framePending;
+	MotionEvent frameMotion;   // Copy of the latest motion event, if it is the latest
+	KeyEvent frameKey;         // Copy of the latest key event, if it is the latest
+	String frameMethod;        // Callback which received the latest event
+	DumpPage page = new DumpPage();
+	
+	// Rows of the history tables for 'historyDevice', sorted by label
+	static final int ROW_INDEX = -1;
+	static final int ROW_TIME = -2;
+	static final int ROW_DELTA = -3;
+	static final int ROW_BITS = 0x100;  // Flag: show the axis value's bits as an int
+	InputDevice historyDevice;
+	String[] historyLabels;
+	int[] historyRows;                  // Axis shown in each row, or a ROW_ constant
+	int[] historyKept = new int[16];    // Samples shown, which are not repeats
+	int historyColumns;                 // Columns of the history tables, which only grow so that the layout stays put
 	
 	private boolean isValidAction(int action) {
 		switch (action) {
@@ -83,345 +114,485 @@ public class DumpActivity extends Activity implements OnGenericMotionListener, O
 		
 		String content = "Touch or bring a pen in proximity.";
 		
-		String document = String.format("<html><head><style>%s</style></head><body><div id='content'>%s</div></body></html>", style, content);
+		display = new PageView(wv, style, content);
+		choreographer = Choreographer.getInstance();
+		
+		if (getIntent().getBooleanExtra("record", false))
+			startTrace();
+		if (getIntent().getBooleanExtra("capture", false))
+			startCapture();
+		
+		// Window of the statistics, in milliseconds, e.g. --ei window 5000
+		// (at most InputStats.MAX_WINDOW)
+		int window = getIntent().getIntExtra("window", 0);
+		if (window > 0)
+			statsWindow = window * 1000000L;
+	}
+	
+	@Override
+	protected void onDestroy() {
+		stopTrace();
+		stopCapture();
+		if (framePending)
+			choreographer.removeFrameCallback(this);
+		if (frameMotion != null)
+			frameMotion.recycle();
+		frameMotion = null;
+		Log.i("DumpActivity", "Display: " + display);
+		super.onDestroy();
+	}
+	
+	/**
+	 * Record every input event in a trace file, which can be replayed
+	 * by the benchmark harness. Recording is enabled by launching the
+	 * activity with the "record" extra set, e.g.
+	 * 
+	 *   adb shell am start -n com.wacom.motiondump/.DumpActivity --ez record true
+	 * 
+	 * Traces are written to the "traces" directory of the app's
+	 * external files.
+	 */
+	void startTrace() {
+		File dir = getExternalFilesDir("traces");
+		if (dir == null) {
+			Log.e("DumpActivity", "External storage unavailable, not recording trace");
+			return;
+		}
+		
+		try {
+			File file = new File(dir, "trace-" + System.currentTimeMillis() + ".trace");
+			trace = new InputTrace.Writer(file);
+			Log.i("DumpActivity", "Recording trace to " + file);
+		} catch (IOException e) {
+			Log.e("DumpActivity", "Unable to create trace", e);
+		}
+	}
+	
+	void stopTrace() {
+		if (trace == null)
+			return;
+		
+		try {
+			trace.close();
+		} catch (IOException e) {
+			Log.e("DumpActivity", "Unable to close trace", e);
+		}
+		trace = null;
+	}
+	
+	/**
+	 * Capture every sample of every motion event for analysis, as a
+	 * MotionCapture. Capturing is enabled by launching the activity
+	 * with the "capture" extra set, e.g.
+	 * 
+	 *   adb shell am start -n com.wacom.motiondump/.DumpActivity --ez capture true
+	 * 
+	 * Captures are written to a new directory within the "captures"
+	 * directory of the app's external files.
+	 */
+	void startCapture() {
+		File dir = getExternalFilesDir("captures");
+		if (dir == null) {
+			Log.e("DumpActivity", "External storage unavailable, not capturing");
+			return;
+		}
+		
+		try {
+			File capture = new File(dir, "capture-" + System.currentTimeMillis());
+			motionCapture = new MotionCapture.Writer(capture);
+			Log.i("DumpActivity", "Capturing to " + capture);
+		} catch (IOException e) {
+			Log.e("DumpActivity", "Unable to create capture", e);
+		}
+	}
+	
+	void stopCapture() {
+		if (motionCapture == null)
+			return;
+		
+		try {
+			motionCapture.close();
+			Log.i("DumpActivity", "Captured " + motionCapture.getRowCount() + " samples using "
+					+ motionCapture.getBlocksAllocated() + " blocks");
+		} catch (IOException e) {
+			Log.e("DumpActivity", "Unable to close capture", e);
+		}
+		motionCapture = null;
+	}
+	
+	/**
+	 * Record an event in the trace and capture, if any. Recording
+	 * stops if the trace or capture cannot be written.
+	 */
+	void record(int callback, MotionEvent event) {
+		if (trace != null) {
+			try {
+				trace.record(callback, event);
+			} catch (IOException e) {
+				Log.e("DumpActivity", "Unable to record trace, recording stopped", e);
+				stopTrace();
+			}
+		}
 		
-		wv.loadData(document, "text/html", null);
-		wv.getSettings().setJavaScriptEnabled(true);
+		if (motionCapture != null) {
+			try {
+				motionCapture.record(event);
+			} catch (IOException e) {
+				Log.e("DumpActivity", "Unable to write capture, capturing stopped", e);
+				stopCapture();
+			}
+		}
 	}
 	
 	@Override
 	public boolean onTouch(View v, MotionEvent event) {
-		setInnerHtml(wv, "content", toHtml(event, "onTouch"));
+		record(InputTrace.CALLBACK_TOUCH, event);
+		capture(event, "onTouch");
 		return true;
 	}
 
 	@Override
 	public boolean onHover(View v, MotionEvent event) {
-		setInnerHtml(wv, "content", toHtml(event, "onHover"));
+		record(InputTrace.CALLBACK_HOVER, event);
+		capture(event, "onHover");
 		return true;
 	}
 	
 	@Override
 	public boolean onGenericMotion(View v, MotionEvent event) {
-		setInnerHtml(wv, "content", toHtml(event, "onGenericMotion"));
+		record(InputTrace.CALLBACK_GENERIC, event);
+		capture(event, "onGenericMotion");
 		return true;
 	}
 	
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
-		setInnerHtml(wv, "content", toHtml(event, "onKeyDown"));
+		capture(event, "onKeyDown");
 		return super.onKeyDown(keyCode, event);
 	}
 	
 	@Override
 	public boolean onKeyUp(int keyCode, KeyEvent event) {
-		setInnerHtml(wv, "content", toHtml(event, "onKeyUp"));
+		capture(event, "onKeyUp");
 		return super.onKeyUp(keyCode, event);
 	}
 	
-	public String toHtml(KeyEvent event, String method) {
-		Map<String,String> d = new TreeMap<String,String>();
-		d.put("Device", String.format("%d (%s)", event.getDeviceId(), event.getDevice().getName()));
-		d.put("Descriptor", event.getDevice().getDescriptor());
-		d.put("Source", decode(event.getSource(), "SOURCE_", InputDevice.class, true));
-		d.put("KeyCode", KeyEvent.keyCodeToString(event.getKeyCode()));
-		d.put("ScanCode", Integer.toString(event.getScanCode()));
-		d.put("Repeat", Integer.toString(event.getRepeatCount()));
+	/**
+	 * Take in a motion event as it is received: update the statistics,
+	 * check that the event follows on from the last one, and keep a
+	 * copy of it to be shown at the next frame. This runs for every
+	 * event, while the (much more expensive) display of events runs at
+	 * most once per frame.
+	 */
+	void capture(MotionEvent event, String method) {
+		update(event, method);
 		
-		return String.format("<h1>%s</h1>%s", method, toHtml(d));
+		if (frameMotion != null)
+			frameMotion.recycle();
+		frameMotion = MotionEvent.obtain(event);
+		frameKey = null;
+		frameMethod = method;
+		requestFrame();
 	}
 	
-	public String toHtml(MotionEvent event, String method) {
-		Map<String,String> d = new TreeMap<String,String>();
+	void capture(KeyEvent event, String method) {
+		if (frameMotion != null)
+			frameMotion.recycle();
+		frameMotion = null;
+		frameKey = new KeyEvent(event);
+		frameMethod = method;
+		requestFrame();
+	}
+	
+	void requestFrame() {
+		if (framePending || choreographer == null)
+			return;
 		
-		d.put("Device",        String.format("%d (%s)", event.getDeviceId(), event.getDevice().getName()));
-		d.put("Descriptor",    event.getDevice().getDescriptor());
-		d.put("Event Rate",    updateEventHz(event) + " Hz");
-		d.put("Callback Rate", updateCallbackHz() + " Hz");
-		d.put("Latency",       updateLatency(event));
-		d.put("Pointers",      Integer.toString(event.getPointerCount()));
+		choreographer.postFrameCallback(this);
+		framePending = true;
+	}
+	
+	/**
+	 * Show the latest event. Only the cells which differ from the last
+	 * event shown are sent to the WebView.
+	 */
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		framePending = false;
 		
-		d.put("Type",    decode(event.getAction(), "ACTION_", MotionEvent.class, false));
-		d.put("Source",  decode(event.getSource(), "SOURCE_", InputDevice.class, true));
-		d.put("Buttons", decode(event.getButtonState(), "BUTTON_", MotionEvent.class, true));
+		page.reset();
+		if (frameMotion != null)
+			format(frameMotion, frameMethod, page);
+		else if (frameKey != null)
+			format(frameKey, frameMethod, page);
+		else
+			return;
 		
-		StringBuilder b = builder;
-		b.setLength(0);
-		b.append(String.format("<h1>%s</h1>%s", method, toHtml(d)));
+		if (!display.show(page))
+			requestFrame();
+	}
+	
+	public void format(KeyEvent event, String method, DumpPage page) {
+		InputDevice device = event.getDevice();
 		
-		for (int i = 0; i < event.getPointerCount(); i++) {
-			b.append("<div class=\"pointer\">").append(getDetail(event, i)).append("</div>");
-		}
+		page.heading(1, method);
+		page.beginTable();
+		page.beginRow("Descriptor").cell(device.getDescriptor()).endRow();
+		page.beginRow("Device").beginCell().append(event.getDeviceId()).append(" (").append(device.getName()).append(')');
+		page.endCell().endRow();
+		page.beginRow("KeyCode").cell(KeyEvent.keyCodeToString(event.getKeyCode())).endRow();
+		page.beginRow("Repeat").cell(event.getRepeatCount()).endRow();
+		page.beginRow("ScanCode").cell(event.getScanCode()).endRow();
+		decode(event.getSource(), SOURCES, page.beginRow("Source").beginCell());
+		page.endCell().endRow();
+		page.endTable();
+	}
+	
+	/**
+	 * Update the statistics and check the event sequence for an event.
+	 */
+	void update(MotionEvent event, String method) {
+		getStats(event.getDeviceId()).update(event, System.nanoTime());
 		
 		int action = event.getActionMasked();
 		if (!isValidAction(action)) {
 			Log.w("BAD EVENT", String.format("%s (%s) -> %s (%s)",
-					FieldFinder.lookupFieldNames("ACTION_", MotionEvent.class, laststate, false), lastmethod,
-					FieldFinder.lookupFieldNames("ACTION_", MotionEvent.class, action, false), method));
+					ACTIONS.name(laststate), lastmethod, ACTIONS.name(action), method));
 		}
 		laststate = action;
 		lastmethod = method;
-		
-		return b.toString();
 	}
 	
-	String getDetail(MotionEvent event, int n) {
-		Map<String,String> c = new TreeMap<String,String>();
-		c.put("Index",   Integer.toString(n));
-		c.put("ID",      Integer.toString(event.getPointerId(n)));
-		c.put("Tool Type", decode(event.getToolType(n), "TOOL_TYPE_", MotionEvent.class, false));
+	/**
+	 * Format an event into a page. The layout of the page only depends
+	 * on the event's device, pointers and number of distinct samples,
+	 * and nothing is allocated once the page's buffers have grown to
+	 * fit the event.
+	 */
+	public void format(MotionEvent event, String method, DumpPage page) {
+		InputDevice device = event.getDevice();
 		
-		boolean isWacomHardware = event.getDevice().getName().toLowerCase().startsWith("wacom");
+		page.heading(1, method);
+		page.beginTable();
+		decode(event.getButtonState(), BUTTONS, page.beginRow("Buttons").beginCell());
+		page.endCell().endRow();
+		InputStats stats = getStats(event.getDeviceId());
+		formatRate(stats.callbacks, page.beginRow("Callback Rate").beginCell());
+		page.endCell().endRow();
+		page.beginRow("Descriptor").cell(device.getDescriptor()).endRow();
+		page.beginRow("Device").beginCell().append(event.getDeviceId()).append(" (").append(device.getName()).append(')');
+		page.endCell().endRow();
+		formatRate(stats.events, page.beginRow("Event Rate").beginCell());
+		page.endCell().endRow();
+		formatLatency(stats.latency, page.beginRow("Latency").beginCell());
+		page.endCell().endRow();
+		page.beginRow("Pointers").cell(event.getPointerCount()).endRow();
+		decode(event.getSource(), SOURCES, page.beginRow("Source").beginCell());
+		page.endCell().endRow();
+		decode(event.getAction(), ACTIONS, page.beginRow("Type").beginCell());
+		page.endCell().endRow();
+		page.endTable();
 		
-		List<Map<String,String>> history = new LinkedList<Map<String,String>>();
-		for (int h = 0; h <= event.getHistorySize(); h++) {
-			boolean current = h == event.getHistorySize();
-			Map<String, String> d = new TreeMap<String,String>();
-			
-			d.put("Index", current ? "NOW" : Integer.toString(h));
-			long time = current ? event.getEventTime() : event.getHistoricalEventTime(h);
-			d.put("Time", Long.toString(time));
-			d.put("TimeDelta", Long.toString(android.os.SystemClock.uptimeMillis() - time));
-			
-			for (MotionRange range : event.getDevice().getMotionRanges()) {
-				int axis = range.getAxis();
-				float val = current ? event.getAxisValue(axis, n) : event.getHistoricalAxisValue(axis, n, h);
-				
-				String key = FieldFinder.lookupFieldNames("AXIS_", MotionEvent.class, axis, false).replaceFirst("AXIS_", "");
-				String value = Float.toString(val);
-				
-				if (isWacomHardware) {
-					switch (axis) {
-						case MotionEvent.AXIS_GENERIC_1:
-							key = "Serial [AG1]";
-							value = Integer.toString(Float.floatToIntBits(val));
-							break;
-						case MotionEvent.AXIS_GENERIC_2:
-							key = "Function [AG2]";
-							value = Integer.toString(Float.floatToIntBits(val));
-							break;
-						case MotionEvent.AXIS_GENERIC_3:
-							key = "Twist [AG3]";
-							break;
-						case MotionEvent.AXIS_GENERIC_4:
-							key = "Fingerwheel [AG4]";
-							break; 
-					}
-				}
-				
-				d.put(key, value);
-			}
-			
-			// Check if this historic event is otherwise-identical to the
-			// previous one. If its the same (modulo the two always-different
-			// fields of index and time), then don't bother printing it.
-			if (history.size() > 0) {
-				Map<String,String> a = history.get(history.size()-1);
-				Map<String,String> b = d;
-				
-				String aIndex = a.remove("Index");
-				String bIndex = b.remove("Index");
-				String aTime  = a.remove("Time");
-				String bTime  = b.remove("Time");
-				
-				boolean match = a.equals(b);
-				
-				a.put("Index", aIndex);
-				b.put("Index", bIndex);
-				a.put("Time", aTime);
-				b.put("Time", bTime);
-				
-				if (match)
-					continue;
-			}
-			
-			history.add(d);
+		for (int i = 0; i < event.getPointerCount(); i++) {
+			page.beginBlock("pointer");
+			formatPointer(event, i, page);
+			page.endBlock();
 		}
-		
-		return String.format("<h2>Pointer</h2>%s%s", toHtml(c), toHtml(history));
 	}
 	
-	void setInnerHtml(WebView v, String id, String html) {
-		v.loadUrl(String.format("javascript:(function(){document.getElementById('%s').innerHTML='%s'})()", id, html));
+	void formatPointer(MotionEvent event, int n, DumpPage page) {
+		page.heading(2, "Pointer");
+		page.beginTable();
+		page.beginRow("ID").cell(event.getPointerId(n)).endRow();
+		page.beginRow("Index").cell(n).endRow();
+		decode(event.getToolType(n), TOOL_TYPES, page.beginRow("Tool Type").beginCell());
+		page.endCell().endRow();
+		page.endTable();
+		
+		formatHistory(event, n, page);
 	}
 	
-	String toHtml(Map<String,String> d) {
-		String res = "<table>";
-		for (String key : d.keySet()) {
-			res += String.format("<tr><th>%s</th><td>%s</td></tr>", key, d.get(key));
+	/**
+	 * Format a pointer's samples as a table, with a column per sample
+	 * and a row per axis of the device.
+	 */
+	void formatHistory(MotionEvent event, int n, DumpPage page) {
+		InputDevice device = event.getDevice();
+		if (device != historyDevice)
+			setHistoryRows(device);
+		
+		// Leave out samples which repeat the one before, i.e. which have
+		// the same time and the same value on every axis.
+		int samples = event.getHistorySize() + 1;
+		if (historyKept.length < samples)
+			historyKept = new int[Math.max(samples, 2 * historyKept.length)];
+		int kept = 0;
+		for (int h = 0; h < samples; h++) {
+			if (kept > 0 && isRepeat(event, n, historyKept[kept - 1], h))
+				continue;
+			historyKept[kept++] = h;
 		}
-		res += "</table>";
-		return res;
-	}
-	
-	String toHtml(List<Map<String,String>> history) {
-		if (history.size() < 1)
-			return "";
+		historyColumns = Math.max(historyColumns, kept);
 		
-		String res = "<table>";
-		for (String key : history.get(0).keySet()) {
-			res += String.format("<tr><th>%s</th>", key);
-			for (Map<String,String> m : history) {
-				res += String.format("<td>%s</td>", m.get(key));
+		long now = android.os.SystemClock.uptimeMillis();
+		page.beginTable();
+		for (int r = 0; r < historyRows.length; r++) {
+			int row = historyRows[r];
+			page.beginRow(historyLabels[r]);
+			for (int k = 0; k < kept; k++) {
+				int h = historyKept[k];
+				switch (row) {
+				case ROW_INDEX:
+					if (h == samples - 1)
+						page.cell("NOW");
+					else
+						page.cell(h);
+					break;
+				case ROW_TIME:
+					page.cell(sampleTime(event, h));
+					break;
+				case ROW_DELTA:
+					page.cell(now - sampleTime(event, h));
+					break;
+				default:
+					float value = sample(event, row & ~ROW_BITS, n, h);
+					if ((row & ROW_BITS) != 0)
+						page.cell(Float.floatToIntBits(value));
+					else
+						page.cell(value);
+				}
+			}
+			for (int k = kept; k < historyColumns; k++) {
+				page.cell("");
 			}
-			res += "</tr>";
+			page.endRow();
 		}
-		res += "</table>";
-		return res;
+		page.endTable();
 	}
 	
-	String decode(int value, String prefix, Class c, boolean bitwise) {
-		String fmt = bitwise ? "0x%X (%s)" : "%d (%s)";
-		return String.format(fmt, value, FieldFinder.lookupFieldNames(prefix, c, value, bitwise));
+	/**
+	 * Work out the rows of the history table for a device: the index,
+	 * time and age of each sample, and the device's axes, all sorted by
+	 * their labels. Wacom devices report some of their data (serial
+	 * numbers, twist, etc.) in generic axes, which are labelled to suit.
+	 */
+	void setHistoryRows(InputDevice device) {
+		boolean isWacomHardware = device.getName().toLowerCase().startsWith("wacom");
+		
+		Map<String,Integer> rows = new TreeMap<String,Integer>();
+		rows.put("Index", ROW_INDEX);
+		rows.put("Time", ROW_TIME);
+		rows.put("TimeDelta", ROW_DELTA);
+		
+		for (MotionRange range : device.getMotionRanges()) {
+			int axis = range.getAxis();
+			String key = AXES.name(axis).replaceFirst("AXIS_", "");
+			int row = axis;
+			
+			if (isWacomHardware) {
+				switch (axis) {
+					case MotionEvent.AXIS_GENERIC_1:
+						key = "Serial [AG1]";
+						row |= ROW_BITS;
+						break;
+					case MotionEvent.AXIS_GENERIC_2:
+						key = "Function [AG2]";
+						row |= ROW_BITS;
+						break;
+					case MotionEvent.AXIS_GENERIC_3:
+						key = "Twist [AG3]";
+						break;
+					case MotionEvent.AXIS_GENERIC_4:
+						key = "Fingerwheel [AG4]";
+						break; 
+				}
+			}
+			
+			rows.put(key, row);
+		}
+		
+		historyDevice = device;
+		historyLabels = new String[rows.size()];
+		historyRows = new int[rows.size()];
+		int r = 0;
+		for (Map.Entry<String,Integer> e : rows.entrySet()) {
+			historyLabels[r] = e.getKey();
+			historyRows[r++] = e.getValue();
+		}
 	}
 	
-	void push(long[] arr, long val) {
-		for (int i = 0; i < arr.length - 1; i++) {
-			arr[i] = arr[i+1];
+	/**
+	 * @return  True if sample 'b' of a pointer has the same time and axis
+	 *          values as sample 'a'
+	 */
+	boolean isRepeat(MotionEvent event, int n, int a, int b) {
+		if (sampleTime(event, a) != sampleTime(event, b))
+			return false;
+		
+		for (int row : historyRows) {
+			if (row < 0)
+				continue;
+			
+			int axis = row & ~ROW_BITS;
+			if (Float.floatToIntBits(sample(event, axis, n, a)) != Float.floatToIntBits(sample(event, axis, n, b)))
+				return false;
 		}
-		arr[arr.length - 1] = val;
+		return true;
 	}
 	
-	int getHz(long[] arr) {
-		float avg = (arr[arr.length - 1]- arr[0]) / (float)arr.length;
-		return Math.round(1000.0f / avg);
+	/**
+	 * @return  Value of an axis in a pointer's sample, where the samples
+	 *          are the event's history followed by the event itself
+	 */
+	static float sample(MotionEvent event, int axis, int n, int h) {
+		return h == event.getHistorySize() ? event.getAxisValue(axis, n) : event.getHistoricalAxisValue(axis, n, h);
 	}
 	
-	int updateCallbackHz() {
-		long now = System.currentTimeMillis();
-		push(callback_time, now);
-		return getHz(callback_time);
+	static long sampleTime(MotionEvent event, int h) {
+		return h == event.getHistorySize() ? event.getEventTime() : event.getHistoricalEventTime(h);
 	}
 	
-	int updateEventHz(MotionEvent event) {
-		for (int i = 0; i < event.getHistorySize(); i++) {
-			push(event_time, event.getHistoricalEventTime(i));
-		}
-		return getHz(event_time);
+	/**
+	 * Append a constant's value and name(s), e.g. "0x4002 (SOURCE_STYLUS)".
+	 */
+	void decode(int value, ConstantIndex constants, StringBuilder b) {
+		if (constants.bitwise)
+			TextFormat.appendHex(b, value);
+		else
+			b.append(value);
+		constants.append(b.append(" ("), value).append(')');
 	}
 	
-	String updateLatency(MotionEvent event) {
-		for (int i = 0; i < event.getHistorySize(); i++) {
-			long latency = android.os.SystemClock.uptimeMillis() - event.getHistoricalEventTime(i);
-			push(lag_time, latency);
-		}
-		long avg = 0;
-		long min = Long.MAX_VALUE;
-		long max = Long.MIN_VALUE;
-		for (long t : lag_time) {
-			avg += t;
-			if (t < min) { min = t; }
-			if (t > max) { max = t; }
+	/**
+	 * @return  Statistics of a device's events, created if necessary
+	 */
+	InputStats getStats(int deviceId) {
+		for (int i = 0; i < stats.size(); i++) {
+			if (stats.get(i).deviceId == deviceId)
+				return stats.get(i);
 		}
-		avg = Math.round((float)avg/lag_time.length);
-		return String.format("%d ms (avg) %d ms (max) %d ms (min)", avg, max, min);
+		InputStats s = new InputStats(deviceId, statsWindow);
+		stats.add(s);
+		return s;
 	}
 	
+	/**
+	 * Append a rate and its jitter, e.g. "240 Hz (jitter 0.42 ms)".
+	 */
+	void formatRate(InputStats.Rate rate, StringBuilder b) {
+		b.append(Math.round(rate.getHz())).append(" Hz (jitter ");
+		TextFormat.appendFixed(b, rate.getJitter(), 2).append(" ms)");
+	}
 	
-	static class FieldFinder {
-		static class CacheEntry {
-			Class c;
-			String prefix;
-			int value;
-			
-			public CacheEntry(Class c, String prefix, int value) {
-				this.c = c;
-				this.prefix = prefix;
-				this.value = value;
-			}
-			
-			public boolean equals(Object obj) {
-				if (obj == null)
-					return false;
-				if (obj == this)
-					return true;
-				if (!(obj instanceof CacheEntry))
-					return false;
-				
-				CacheEntry e = (CacheEntry)obj;
-				return this.c.equals(e.c) &&
-				       this.prefix.equals(e.prefix) &&
-				       this.value == e.value;
-			}
-			
-			public int hashCode() {
-				return c.hashCode() ^ prefix.hashCode() ^ value;
-			}
-		}
-		
-		static Map<CacheEntry,String> cache = new HashMap<CacheEntry,String>();
-		
-		static String lookupFieldNames(String prefix, Class c, int value, boolean bitwise) {
-			CacheEntry e = new CacheEntry(c, prefix, value);
-			String str = cache.get(e);
-			if (str != null) {
-				return str;
-			}
-			
-			str = fieldToNames(prefix, c, value, bitwise);			
-			cache.put(e, str);
-			return str;
-		}
-		
-		static String fieldToNames(String prefix, Class c, int value, boolean bitwise) {
-			if (value == 0 && bitwise)
-				return "";
-			
-			String str = "";
-			
-			for (Field f : getPrefixedConstants(c, prefix)) {
-				try {
-					String name = f.getName();
-					int constant = f.getInt(null);
-					
-					if (bitwise) {
-						if (!test(value, constant) || constant == 0)
-							continue;
-					}
-					else {
-						if (constant != value)
-							continue;
-					}
-					
-					str += name + " | ";
-				} catch (IllegalAccessException e) {
-					Log.e("DumpActivity", e.getLocalizedMessage());
-				}
-			}
-			
-			if (str.length() == 0)
-				str += "???";
-			else
-				str = str.substring(0, str.length()-3);
-			
-			return str;
-		}
-		
-		static List<Field> getConstants(Class c) {
-			List<Field> fields = new LinkedList<Field>();
-			
-			for (Field f : c.getDeclaredFields()) {
-				int mod = f.getModifiers();
-				if (Modifier.isPublic(mod) && Modifier.isStatic(mod) && Modifier.isFinal(mod) && f.getType() == int.class) {
-					fields.add(f);
-				}
-			}
-			
-			return fields;
-		}
-		
-		static List<Field> getPrefixedConstants(Class c, String prefix) {
-			List<Field> fields = new LinkedList<Field>();
-			for (Field f : getConstants(c)) {
-				if (f.getName().startsWith(prefix))
-						fields.add(f);
-			}
-			return fields;
-		}
-		
-		static boolean test(int x, int y) {
-			return ((x & y) == y);
-		}
+	/**
+	 * Append the percentiles of latency, e.g. "4.1 ms (p50) 6.0 ms (p95)
+	 * 7.9 ms (p99) 8.2 ms (max)".
+	 */
+	void formatLatency(InputStats.Latency latency, StringBuilder b) {
+		TextFormat.appendFixed(b, latency.getPercentile(0.50f), 1).append(" ms (p50) ");
+		TextFormat.appendFixed(b, latency.getPercentile(0.95f), 1).append(" ms (p95) ");
+		TextFormat.appendFixed(b, latency.getPercentile(0.99f), 1).append(" ms (p99) ");
+		TextFormat.appendFixed(b, latency.getMax(), 1).append(" ms (max)");
 	}
 	
 }
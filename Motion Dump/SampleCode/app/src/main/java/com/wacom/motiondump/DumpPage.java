@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+import java.util.Arrays;
+
+/**
+ * A DumpPage is the content shown by DumpActivity, split in two: the
+ * layout (headings, tables and row labels), which rarely changes, and
+ * the text of each table cell, which changes with every event. A page
+ * that differs from the one on screen only in its cells can then be
+ * shown by updating those cells (see PageView) rather than by
+ * replacing the whole document.
+ * 
+ * Cells are numbered in the order they are added, and appear in the
+ * layout as an empty <td id="cN">. Pages are meant to be reused:
+ * reset() empties a page but keeps its buffers.
+ * 
+ * @author wacom
+ */
+public class DumpPage {
+	
+	final StringBuilder layout = new StringBuilder(2048);
+	final StringBuilder text = new StringBuilder(1024);
+	int[] slots = new int[64];  // Offset in 'layout' of each cell's content
+	int[] ends = new int[64];   // End of each cell's text in 'text'
+	int cells;
+	
+	/**
+	 * Empty the page.
+	 */
+	public void reset() {
+		layout.setLength(0);
+		text.setLength(0);
+		cells = 0;
+	}
+	
+	public DumpPage heading(int level, CharSequence title) {
+		layout.append("<h").append(level).append('>');
+		escape(title, 0, title.length(), layout);
+		layout.append("</h").append(level).append('>');
+		return this;
+	}
+	
+	public DumpPage beginBlock(String cssClass) {
+		layout.append("<div class=\"").append(cssClass).append("\">");
+		return this;
+	}
+	
+	public DumpPage endBlock() {
+		layout.append("</div>");
+		return this;
+	}
+	
+	public DumpPage beginTable() {
+		layout.append("<table>");
+		return this;
+	}
+	
+	public DumpPage endTable() {
+		layout.append("</table>");
+		return this;
+	}
+	
+	public DumpPage beginRow(CharSequence label) {
+		layout.append("<tr><th>");
+		escape(label, 0, label.length(), layout);
+		layout.append("</th>");
+		return this;
+	}
+	
+	public DumpPage endRow() {
+		layout.append("</tr>");
+		return this;
+	}
+	
+	/**
+	 * Add a cell to the current row.
+	 * 
+	 * @param value  Text of the cell
+	 */
+	public DumpPage cell(CharSequence value) {
+		beginCell().append(value);
+		return endCell();
+	}
+	
+	public DumpPage cell(long value) {
+		beginCell().append(value);
+		return endCell();
+	}
+	
+	public DumpPage cell(float value) {
+		TextFormat.appendFloat(beginCell(), value);
+		return endCell();
+	}
+	
+	/**
+	 * Begin a cell in the current row, whose text is appended to the
+	 * returned builder. The cell must be completed with endCell().
+	 * 
+	 * @return  Builder to append the cell's text to
+	 */
+	public StringBuilder beginCell() {
+		if (cells == ends.length) {
+			slots = Arrays.copyOf(slots, 2 * cells);
+			ends = Arrays.copyOf(ends, 2 * cells);
+		}
+		layout.append("<td id=\"c").append(cells).append("\">");
+		slots[cells] = layout.length();
+		layout.append("</td>");
+		return text;
+	}
+	
+	public DumpPage endCell() {
+		ends[cells++] = text.length();
+		return this;
+	}
+	
+	/**
+	 * @return  Number of cells on the page
+	 */
+	public int getCellCount() {
+		return cells;
+	}
+	
+	/**
+	 * @return  Offset of a cell's text in 'text'
+	 */
+	int start(int cell) {
+		return cell == 0 ? 0 : ends[cell - 1];
+	}
+	
+	/**
+	 * @return  True if both pages have the same layout, i.e. the same
+	 *          headings, tables and rows, with the same number of cells
+	 */
+	public boolean sameLayout(DumpPage other) {
+		return cells == other.cells && equal(layout, 0, layout.length(), other.layout, 0, other.layout.length());
+	}
+	
+	/**
+	 * @return  True if a cell has the same text on both pages
+	 */
+	public boolean sameCell(int cell, DumpPage other) {
+		return equal(text, start(cell), ends[cell], other.text, other.start(cell), other.ends[cell]);
+	}
+	
+	/**
+	 * Make this page a copy of another.
+	 */
+	public void set(DumpPage other) {
+		reset();
+		layout.append(other.layout);
+		text.append(other.text);
+		if (slots.length < other.cells) {
+			slots = new int[other.slots.length];
+			ends = new int[other.ends.length];
+		}
+		System.arraycopy(other.slots, 0, slots, 0, other.cells);
+		System.arraycopy(other.ends, 0, ends, 0, other.cells);
+		cells = other.cells;
+	}
+	
+	/**
+	 * @return  The page as HTML, with every cell filled in
+	 */
+	public String toHtml() {
+		StringBuilder b = new StringBuilder(layout.length() + text.length() + 64);
+		int from = 0;
+		for (int i = 0; i < cells; i++) {
+			b.append(layout, from, slots[i]);
+			escape(text, start(i), ends[i], b);
+			from = slots[i];
+		}
+		b.append(layout, from, layout.length());
+		return b.toString();
+	}
+	
+	/**
+	 * @return  Length of the page's layout and text, in characters
+	 */
+	public int length() {
+		return layout.length() + text.length();
+	}
+	
+	static boolean equal(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd) {
+		if (aEnd - aStart != bEnd - bStart)
+			return false;
+		for (int i = aStart, j = bStart; i < aEnd; i++, j++) {
+			if (a.charAt(i) != b.charAt(j))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Append text to HTML, escaping the characters which are markup.
+	 */
+	static void escape(CharSequence s, int start, int end, StringBuilder out) {
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '<': out.append("&lt;"); break;
+			case '>': out.append("&gt;"); break;
+			case '&': out.append("&amp;"); break;
+			case '"': out.append("&quot;"); break;
+			default:  out.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+import java.util.Arrays;
+
+import android.view.MotionEvent;
+
+/**
+ * InputStats keeps streaming statistics of the events of one device over
+ * a sliding window of time: the rate and jitter of its samples and of
+ * the callbacks delivering them, and the distribution of their latency.
+ * Each sample is added and later evicted in constant (amortized) time,
+ * so the cost of an event does not depend on the length of the window.
+ * A window holds at most LIMIT samples, so memory is bounded however
+ * fast events arrive; past that, the window covers the latest LIMIT.
+ * 
+ * All times are in nanoseconds of the uptime clock. Event times are
+ * reported by SystemClock.uptimeMillis(), and System.nanoTime() reads
+ * the same clock (CLOCK_MONOTONIC) on Android with finer resolution, so
+ * the time a callback runs should be read with System.nanoTime().
+ * 
+ * @author wacom
+ */
+public class InputStats {
+	
+	/** Default length of the window, one second. */
+	public static final long WINDOW = 1000000000L;
+	
+	/**
+	 * Longest window, 3000 seconds. The sum of the squares of a window's
+	 * intervals, in microseconds, only fits in a long up to about 3037
+	 * seconds.
+	 */
+	public static final long MAX_WINDOW = 3000 * 1000000000L;
+	
+	/** Most samples (or callbacks) held in a window. */
+	public static final int LIMIT = 4096;
+	
+	static final long MILLIS = 1000000L;
+	
+	/**
+	 * Times and values in first-in, first-out order, in an array which
+	 * grows as needed. Once grown to fit the window, adding and
+	 * removing entries never allocates.
+	 */
+	static class Ring {
+		long[] times = new long[64];
+		long[] values = new long[64];
+		int head, size;
+		
+		void add(long time, long value) {
+			if (size == times.length) {
+				long[] t = new long[2 * size];
+				long[] v = new long[2 * size];
+				for (int i = 0; i < size; i++) {
+					t[i] = time(i);
+					v[i] = value(i);
+				}
+				times = t;
+				values = v;
+				head = 0;
+			}
+			int i = (head + size++) & (times.length - 1);
+			times[i] = time;
+			values[i] = value;
+		}
+		
+		long time(int i) {
+			return times[(head + i) & (times.length - 1)];
+		}
+		
+		long value(int i) {
+			return values[(head + i) & (times.length - 1)];
+		}
+		
+		void removeFirst() {
+			head = (head + 1) & (times.length - 1);
+			size--;
+		}
+		
+		void removeLast() {
+			size--;
+		}
+		
+		void clear() {
+			head = size = 0;
+		}
+	}
+	
+	/**
+	 * The rate of a series of times within a window, and the jitter of
+	 * the intervals between them (their standard deviation). The sums
+	 * of the intervals are kept in microseconds. The sum of their squares
+	 * is at most the square of the window, so it cannot overflow as long
+	 * as the window is no longer than MAX_WINDOW.
+	 */
+	public static class Rate {
+		final long window;
+		final Ring ring = new Ring();   // Times, and the interval to the previous time
+		long sum, sumSquares;           // Of the intervals in the ring, excluding the first
+		
+		/**
+		 * @param window  Length of the window, in nanoseconds, at most
+		 *                MAX_WINDOW
+		 */
+		public Rate(long window) {
+			if (window > MAX_WINDOW)
+				throw new IllegalArgumentException("Window must not exceed " + MAX_WINDOW + " ns");
+			this.window = window;
+		}
+		
+		/**
+		 * Add a time, which must not precede the last time added.
+		 */
+		public void add(long time) {
+			Ring r = ring;
+			if (r.size > 0 && time - r.time(r.size - 1) > window)
+				clear();
+			
+			long interval = 0;
+			if (r.size > 0) {
+				interval = (time - r.time(r.size - 1)) / 1000;
+				sum += interval;
+				sumSquares += interval * interval;
+			}
+			r.add(time, interval);
+			
+			while (r.time(0) < time - window || r.size > LIMIT) {
+				r.removeFirst();
+				long first = r.value(0);
+				sum -= first;
+				sumSquares -= first * first;
+			}
+		}
+		
+		/**
+		 * @return  Number of times per second, or 0 if unknown
+		 */
+		public float getHz() {
+			Ring r = ring;
+			long span = r.size < 2 ? 0 : r.time(r.size - 1) - r.time(0);
+			return span <= 0 ? 0 : (r.size - 1) * 1E9f / span;
+		}
+		
+		/**
+		 * @return  Standard deviation of the intervals, in milliseconds
+		 */
+		public float getJitter() {
+			int n = ring.size - 1;
+			if (n < 2)
+				return 0;
+			double mean = (double)sum / n;
+			double variance = (double)sumSquares / n - mean * mean;
+			return variance <= 0 ? 0 : (float)Math.sqrt(variance) / 1000;
+		}
+		
+		public int getCount() {
+			return ring.size;
+		}
+		
+		/**
+		 * @return  The last time added, or Long.MIN_VALUE if none
+		 */
+		public long getLast() {
+			return ring.size == 0 ? Long.MIN_VALUE : ring.time(ring.size - 1);
+		}
+		
+		public void clear() {
+			ring.clear();
+			sum = sumSquares = 0;
+		}
+	}
+	
+	/**
+	 * The distribution of the latencies within a window, as a histogram
+	 * of fixed size. Latencies are counted in microseconds, in buckets
+	 * of logarithmic width: those below 16 us exactly, and above that,
+	 * sixteen buckets for each power of two, so that a percentile is
+	 * within 6.25% of its true value. The maximum is exact, and is kept
+	 * by a monotonic queue of the latencies which may yet become the
+	 * maximum once those before them are evicted; they are identified
+	 * by sequence number, as several may share a time.
+	 */
+	public static class Latency {
+		static final int SUB_BITS = 4;
+		static final int SUB_BUCKETS = 1 << SUB_BITS;
+		static final long MAX_LATENCY = (1L << 31) - 1;  // About 36 minutes, in us
+		static final int BUCKETS = bucket(MAX_LATENCY) + 1;
+		
+		final long window;
+		final Ring ring = new Ring();      // Times and latencies
+		final Ring maxima = new Ring();    // Sequence numbers and latencies, latencies descending
+		final int[] counts = new int[BUCKETS];
+		long added;                        // Sequence number of the next latency
+		
+		public Latency(long window) {
+			this.window = window;
+		}
+		
+		/**
+		 * Add the latency of a sample.
+		 * 
+		 * @param time     Time of the sample, which must not precede the
+		 *                 last time added
+		 * @param latency  Latency of the sample, in nanoseconds
+		 */
+		public void add(long time, long latency) {
+			long us = Math.min(Math.max(latency / 1000, 0), MAX_LATENCY);
+			ring.add(time, us);
+			counts[bucket(us)]++;
+			while (maxima.size > 0 && maxima.value(maxima.size - 1) <= us)
+				maxima.removeLast();
+			maxima.add(added++, us);
+			
+			while (ring.time(0) < time - window || ring.size > LIMIT) {
+				counts[bucket(ring.value(0))]--;
+				ring.removeFirst();
+			}
+			while (maxima.time(0) < added - ring.size)
+				maxima.removeFirst();
+		}
+		
+		/**
+		 * @param p  Fraction of the latencies, between 0 and 1
+		 * @return   Latency which that fraction of the latencies do not
+		 *           exceed, in milliseconds, or 0 if there are none
+		 */
+		public float getPercentile(float p) {
+			int n = ring.size;
+			if (n == 0)
+				return 0;
+			
+			long rank = Math.max((long)Math.ceil(p * (double)n), 1);
+			long seen = 0;
+			int b = 0;
+			while ((seen += counts[b]) < rank)
+				b++;
+			
+			// The middle of the bucket, or the maximum if it is lower
+			long middle = (lowest(b) + lowest(b + 1) - 1) / 2;
+			return Math.min(middle, maxima.value(0)) / 1000f;
+		}
+		
+		/**
+		 * @return  Highest latency, in milliseconds, or 0 if there are none
+		 */
+		public float getMax() {
+			return maxima.size == 0 ? 0 : maxima.value(0) / 1000f;
+		}
+		
+		public int getCount() {
+			return ring.size;
+		}
+		
+		public void clear() {
+			ring.clear();
+			maxima.clear();
+			Arrays.fill(counts, 0);
+		}
+		
+		static int bucket(long us) {
+			if (us < SUB_BUCKETS)
+				return (int)us;
+			int exponent = 63 - Long.numberOfLeadingZeros(us);
+			int shift = exponent - SUB_BITS;
+			return (shift + 1) * SUB_BUCKETS + (int)(us >> shift) - SUB_BUCKETS;
+		}
+		
+		/**
+		 * @return  Lowest latency counted in a bucket, in microseconds
+		 */
+		static long lowest(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int shift = bucket / SUB_BUCKETS - 1;
+			return (long)(bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		}
+	}
+	
+	public final int deviceId;
+	public final long window;
+	public final Rate events;      // Samples, by their event time
+	public final Rate callbacks;   // Callbacks, by the time they ran
+	public final Latency latency;  // Age of each sample when its callback ran
+	
+	public InputStats(int deviceId) {
+		this(deviceId, WINDOW);
+	}
+	
+	/**
+	 * @param deviceId  ID of the device whose events are counted
+	 * @param window    Length of the window, in nanoseconds. Windows
+	 *                  longer than MAX_WINDOW are shortened to it.
+	 */
+	public InputStats(int deviceId, long window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Window must be positive");
+		
+		window = Math.min(window, MAX_WINDOW);
+		this.deviceId = deviceId;
+		this.window = window;
+		this.events = new Rate(window);
+		this.callbacks = new Rate(window);
+		this.latency = new Latency(window);
+	}
+	
+	/**
+	 * Count every sample of an event.
+	 * 
+	 * @param event  The event, which must be from this device
+	 * @param now    Time the event's callback ran, from System.nanoTime()
+	 */
+	public void update(MotionEvent event, long now) {
+		callbacks.add(now);
+		
+		int samples = event.getHistorySize() + 1;
+		for (int h = 0; h < samples; h++) {
+			long time = (h == samples - 1 ? event.getEventTime() : event.getHistoricalEventTime(h)) * MILLIS;
+			
+			// Samples of a gesture are in order, but a new gesture's may
+			// be timed slightly before the last of another callback's.
+			// Times further back than the window (e.g. from a replayed
+			// trace) start the statistics over.
+			long last = events.getLast();
+			if (time < last - window) {
+				events.clear();
+				latency.clear();
+			} else if (time < last) {
+				time = last;
+			}
+			events.add(time);
+			latency.add(time, now - time);
+		}
+	}
+}
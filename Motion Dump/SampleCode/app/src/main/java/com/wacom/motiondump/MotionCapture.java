@@ -0,0 +1,734 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * A MotionCapture is a columnar recording of every sample of every
+ * pointer delivered to a view, for analysis offline. Where an InputTrace
+ * stores events for replay, a capture stores samples for analysis: each
+ * column (e.g. the pressure of every sample) is contiguous, so it can be
+ * read straight into an array.
+ * 
+ * A capture is a directory of segment files, named capture-0000.wdmc,
+ * capture-0001.wdmc and so on. Each segment is created at a fixed size
+ * and memory-mapped, and trimmed to the size used once full. It begins
+ * with a header, followed by records:
+ * 
+ *   HEADER:  int magic, int version, int bytes used (including the
+ *            header), int segment number
+ *   DEVICE:  byte tag, int id, short name length, name (UTF-8),
+ *            int sources, byte axes, then per axis: byte axis,
+ *            float min, float max
+ *   BLOCK:   byte tag, int deviceId, int rows, long axis mask, then the
+ *            columns, 'rows' values each: long time, int event,
+ *            int source, int action, int buttonState, byte pointerId,
+ *            byte toolType, and a float for each axis in the mask, in
+ *            ascending order of axis
+ * 
+ * A row is one sample of one pointer. Rows of the same event share an
+ * event number, which counts up from zero through the capture. Every
+ * block holds the samples of a single device. A DEVICE record precedes
+ * its device's first block in each segment, so each segment can be
+ * read on its own. The header's count of bytes used is only updated
+ * once a record is complete, so a segment cut short (e.g. by a crash)
+ * is still readable up to its last whole block. All values are
+ * big-endian.
+ * 
+ * @author wacom
+ */
+public class MotionCapture {
+	
+	static final int MAGIC = 0x57444d43; // "WDMC"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int USED_OFFSET = 8;
+	
+	public static final int DEVICE = 1;
+	public static final int BLOCK = 2;
+	
+	/** Default size of a segment file, in bytes. */
+	public static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+	
+	/** Rows held by a block, unless a single event needs more. */
+	static final int BLOCK_ROWS = 1024;
+	
+	/** Size of a row with no axes, in bytes. */
+	static final int ROW_SIZE = 8 + 4 + 4 + 4 + 4 + 1 + 1;
+	
+	/** Size of a block record, excluding its rows. */
+	static final int BLOCK_HEADER_SIZE = 1 + 4 + 4 + 8;
+	
+	/** Axes captured for events of a device which cannot be looked up. */
+	static final int[] DEFAULT_AXES = {
+		MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_PRESSURE,
+		MotionEvent.AXIS_SIZE, MotionEvent.AXIS_ORIENTATION
+	};
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * A device, as described by a DEVICE record.
+	 */
+	public static class Device {
+		public final int id;
+		public final String name;
+		public final int sources;
+		public final int[] axes;          // Axes captured, in ascending order
+		public final float[] min, max;    // Range of each axis
+		
+		public Device(int id, String name, int sources, int[] axes, float[] min, float[] max) {
+			this.id = id;
+			this.name = name;
+			this.sources = sources;
+			this.axes = axes;
+			this.min = min;
+			this.max = max;
+		}
+		
+		/**
+		 * Describe the device of an event.
+		 */
+		static Device of(MotionEvent e) {
+			InputDevice device = e.getDevice();
+			List<InputDevice.MotionRange> ranges = device == null ? null : device.getMotionRanges();
+			if (ranges == null || ranges.isEmpty()) {
+				int n = DEFAULT_AXES.length;
+				return new Device(e.getDeviceId(), device == null ? "" : device.getName(),
+				                  device == null ? e.getSource() : device.getSources(),
+				                  DEFAULT_AXES.clone(), new float[n], new float[n]);
+			}
+			
+			// Devices report a range per source, so an axis may be listed
+			// more than once; the first range listed is kept.
+			long mask = 0;
+			InputDevice.MotionRange[] byAxis = new InputDevice.MotionRange[64];
+			for (InputDevice.MotionRange r : ranges) {
+				int axis = r.getAxis();
+				if (axis < 0 || axis >= 64 || (mask & (1L << axis)) != 0)
+					continue;
+				mask |= 1L << axis;
+				byAxis[axis] = r;
+			}
+			
+			int n = Long.bitCount(mask);
+			int[] axes = new int[n];
+			float[] min = new float[n];
+			float[] max = new float[n];
+			for (int axis = 0, i = 0; axis < 64; axis++) {
+				if (byAxis[axis] == null)
+					continue;
+				axes[i] = axis;
+				min[i] = byAxis[axis].getMin();
+				max[i++] = byAxis[axis].getMax();
+			}
+			return new Device(e.getDeviceId(), device.getName(), device.getSources(), axes, min, max);
+		}
+		
+		long axisMask() {
+			long mask = 0;
+			for (int axis : axes)
+				mask |= 1L << axis;
+			return mask;
+		}
+		
+		int recordSize() {
+			return 1 + 4 + 2 + name.getBytes(UTF8).length + 4 + 1 + axes.length * (1 + 4 + 4);
+		}
+	}
+	
+	/**
+	 * Rows of samples from a single device, stored column by column.
+	 * Blocks are filled on the thread receiving events and written on
+	 * the writer's thread; a Reader returns the blocks it reads.
+	 */
+	public static class Block {
+		public Device device;
+		public int rows;
+		public int[] axes;           // Axes held, in ascending order
+		public long[] time;
+		public int[] event;
+		public int[] source;
+		public int[] action;
+		public int[] buttonState;
+		public byte[] pointerId;
+		public byte[] toolType;
+		public float[][] values;     // [axis index][row], for each of 'axes'
+		int capacity;
+		
+		Block(int capacity) {
+			this.capacity = capacity;
+			time = new long[capacity];
+			event = new int[capacity];
+			source = new int[capacity];
+			action = new int[capacity];
+			buttonState = new int[capacity];
+			pointerId = new byte[capacity];
+			toolType = new byte[capacity];
+			values = new float[0][];
+		}
+		
+		/**
+		 * Empty the block, and prepare it for a device's samples.
+		 */
+		void reset(Device device, int[] axes) {
+			this.device = device;
+			this.axes = axes;
+			this.rows = 0;
+			if (values.length < axes.length) {
+				float[][] v = Arrays.copyOf(values, axes.length);
+				for (int i = values.length; i < v.length; i++)
+					v[i] = new float[capacity];
+				values = v;
+			}
+		}
+		
+		/**
+		 * @return  Index of an axis in 'axes' and 'values', or -1 if the
+		 *          block does not hold the axis
+		 */
+		public int indexOf(int axis) {
+			int i = Arrays.binarySearch(axes, axis);
+			return i < 0 ? -1 : i;
+		}
+		
+		/**
+		 * @return  Value of an axis in a row, or NaN if the block does not
+		 *          hold the axis
+		 */
+		public float getAxisValue(int axis, int row) {
+			int i = indexOf(axis);
+			return i < 0 ? Float.NaN : values[i][row];
+		}
+		
+		int recordSize() {
+			return BLOCK_HEADER_SIZE + rows * (ROW_SIZE + 4 * axes.length);
+		}
+	}
+	
+	/**
+	 * Captures events to a directory of segment files. The thread which
+	 * receives events only copies their samples into blocks, which are
+	 * written by a separate thread, so that no I/O is done on the UI
+	 * thread. Blocks are never dropped: if the writer falls behind, more
+	 * blocks are allocated.
+	 */
+	public static class Writer implements Closeable {
+		
+		static final Block CLOSE = new Block(0);
+		
+		final File dir;
+		final int segmentSize;
+		final BlockingQueue<Block> full = new LinkedBlockingQueue<Block>();
+		final ConcurrentLinkedQueue<Block> free = new ConcurrentLinkedQueue<Block>();
+		final Thread thread;
+		volatile IOException error;  // Error which stopped the writer thread
+		
+		// Used by the thread receiving events
+		Block current;               // Block being filled
+		final List<Device> devices = new ArrayList<Device>();
+		int events;                  // Events captured
+		int allocated;               // Blocks allocated
+		long rows;                   // Rows captured
+		boolean closed;
+		
+		// Used by the writer thread
+		RandomAccessFile file;
+		FileChannel channel;
+		MappedByteBuffer buffer;
+		int segments;                // Segments started
+		int[] written = new int[0];  // IDs of devices described in the current segment
+		
+		public Writer(File dir) throws IOException {
+			this(dir, SEGMENT_SIZE);
+		}
+		
+		/**
+		 * @param dir          Directory to write the segments to, which is
+		 *                     created if necessary
+		 * @param segmentSize  Size of each segment file, in bytes
+		 */
+		public Writer(File dir, int segmentSize) throws IOException {
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Unable to create " + dir);
+			
+			this.dir = dir;
+			this.segmentSize = segmentSize;
+			this.thread = new Thread("MotionCapture") {
+				@Override
+				public void run() {
+					writeBlocks();
+				}
+			};
+			thread.start();
+		}
+		
+		/**
+		 * Capture every sample of an event. This only copies the samples;
+		 * they are written later by the writer thread.
+		 * 
+		 * @param e  The event
+		 * @throws IOException  If the writer thread has stopped on an error
+		 */
+		public void record(MotionEvent e) throws IOException {
+			if (error != null)
+				throw new IOException("Capture stopped", error);
+			
+			// Device IDs are not reused while the system runs, so a
+			// device need only be described once.
+			Device device = find(devices, e.getDeviceId());
+			if (device == null) {
+				device = Device.of(e);
+				devices.add(device);
+			}
+			
+			int pointers = e.getPointerCount();
+			int samples = e.getHistorySize() + 1;
+			int needed = pointers * samples;
+			if (current != null && (current.device != device || current.rows + needed > current.capacity))
+				submit();
+			if (current == null)
+				current = obtain(device, needed);
+			
+			Block b = current;
+			int event = events++;
+			int source = e.getSource();
+			int action = e.getAction();
+			int buttonState = e.getButtonState();
+			for (int h = 0; h < samples; h++) {
+				boolean now = h == samples - 1;
+				long time = now ? e.getEventTime() : e.getHistoricalEventTime(h);
+				for (int p = 0; p < pointers; p++) {
+					int row = b.rows++;
+					b.time[row] = time;
+					b.event[row] = event;
+					b.source[row] = source;
+					b.action[row] = action;
+					b.buttonState[row] = buttonState;
+					b.pointerId[row] = (byte)e.getPointerId(p);
+					b.toolType[row] = (byte)e.getToolType(p);
+					for (int a = 0; a < b.axes.length; a++)
+						b.values[a][row] = now ? e.getAxisValue(b.axes[a], p) : e.getHistoricalAxisValue(b.axes[a], p, h);
+				}
+			}
+			rows += needed;
+			
+			// Hand the block over at the end of each gesture, so that
+			// samples do not sit in memory while the device is idle.
+			switch (e.getActionMasked()) {
+				case MotionEvent.ACTION_UP:
+				case MotionEvent.ACTION_CANCEL:
+				case MotionEvent.ACTION_HOVER_EXIT:
+					submit();
+			}
+		}
+		
+		/**
+		 * Take an empty block from the pool, or allocate one.
+		 */
+		Block obtain(Device device, int rows) {
+			Block b = rows <= BLOCK_ROWS ? free.poll() : null;
+			if (b == null) {
+				b = new Block(Math.max(rows, BLOCK_ROWS));
+				allocated++;
+			}
+			b.reset(device, device.axes);
+			return b;
+		}
+		
+		/**
+		 * Queue the current block for writing.
+		 */
+		void submit() {
+			if (current != null && current.rows > 0)
+				full.add(current);
+			current = null;
+		}
+		
+		/**
+		 * Write queued blocks until closed. Runs on the writer thread.
+		 */
+		void writeBlocks() {
+			try {
+				while (true) {
+					Block b = full.take();
+					if (b == CLOSE)
+						break;
+					write(b);
+					if (b.capacity == BLOCK_ROWS)
+						free.add(b);
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				error = new IOException("Capture interrupted");
+			} finally {
+				try {
+					finishSegment();
+				} catch (IOException e) {
+					if (error == null)
+						error = e;
+				}
+			}
+		}
+		
+		void write(Block b) throws IOException {
+			boolean described = contains(written, b.device.id);
+			int size = b.recordSize() + (described ? 0 : b.device.recordSize());
+			if (buffer == null || buffer.remaining() < size) {
+				finishSegment();
+				startSegment();
+				described = false;
+				size = b.recordSize() + b.device.recordSize();
+				if (buffer.remaining() < size)
+					throw new IOException("Block of " + b.rows + " rows does not fit in a segment");
+			}
+			
+			ByteBuffer out = buffer;
+			if (!described) {
+				Device d = b.device;
+				byte[] name = d.name.getBytes(UTF8);
+				out.put((byte)DEVICE);
+				out.putInt(d.id);
+				out.putShort((short)name.length);
+				out.put(name);
+				out.putInt(d.sources);
+				out.put((byte)d.axes.length);
+				for (int i = 0; i < d.axes.length; i++) {
+					out.put((byte)d.axes[i]);
+					out.putFloat(d.min[i]);
+					out.putFloat(d.max[i]);
+				}
+				written = Arrays.copyOf(written, written.length + 1);
+				written[written.length - 1] = d.id;
+			}
+			
+			int n = b.rows;
+			out.put((byte)BLOCK);
+			out.putInt(b.device.id);
+			out.putInt(n);
+			out.putLong(b.device.axisMask());
+			out.asLongBuffer().put(b.time, 0, n);
+			out.position(out.position() + 8 * n);
+			putInts(out, b.event, n);
+			putInts(out, b.source, n);
+			putInts(out, b.action, n);
+			putInts(out, b.buttonState, n);
+			out.put(b.pointerId, 0, n);
+			out.put(b.toolType, 0, n);
+			for (int a = 0; a < b.axes.length; a++) {
+				out.asFloatBuffer().put(b.values[a], 0, n);
+				out.position(out.position() + 4 * n);
+			}
+			
+			// Only now is the block part of the segment
+			out.putInt(USED_OFFSET, out.position());
+		}
+		
+		static void putInts(ByteBuffer out, int[] values, int n) {
+			out.asIntBuffer().put(values, 0, n);
+			out.position(out.position() + 4 * n);
+		}
+		
+		void startSegment() throws IOException {
+			File f = new File(dir, segmentName(segments));
+			file = new RandomAccessFile(f, "rw");
+			file.setLength(segmentSize);
+			channel = file.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(HEADER_SIZE);
+			buffer.putInt(segments++);
+			written = new int[0];
+		}
+		
+		/**
+		 * Flush the current segment to disk, and trim it to the size used.
+		 */
+		void finishSegment() throws IOException {
+			if (buffer == null)
+				return;
+			
+			int used = buffer.getInt(USED_OFFSET);
+			buffer.force();
+			buffer = null;
+			try {
+				channel.truncate(used);
+			} finally {
+				file.close();
+				channel = null;
+				file = null;
+			}
+		}
+		
+		/**
+		 * @return  Number of rows (pointer samples) captured so far
+		 */
+		public long getRowCount() {
+			return rows;
+		}
+		
+		/**
+		 * @return  Number of blocks allocated, which only grows past a
+		 *          handful if the writer thread cannot keep up
+		 */
+		public int getBlocksAllocated() {
+			return allocated;
+		}
+		
+		public File getDirectory() {
+			return dir;
+		}
+		
+		/**
+		 * Write every sample captured, and stop the writer thread.
+		 * 
+		 * @throws IOException  If any samples could not be written
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			
+			submit();
+			full.add(CLOSE);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while closing capture");
+			}
+			if (error != null)
+				throw error;
+		}
+	}
+	
+	/**
+	 * Reads the blocks of a capture back, in order, through each segment
+	 * in turn. The block returned by next() is reused by the following
+	 * call.
+	 */
+	public static class Reader implements Closeable {
+		
+		final File[] segments;
+		int segment;                 // Next segment to open
+		ByteBuffer buffer;           // Current segment, up to its bytes used
+		final List<Device> devices = new ArrayList<Device>();
+		final Block block = new Block(0);
+		
+		/**
+		 * @param dir  Directory the capture was written to
+		 */
+		public Reader(File dir) throws IOException {
+			File[] files = dir.listFiles(new FilenameFilter() {
+				@Override
+				public boolean accept(File d, String name) {
+					return segmentNumber(name) >= 0;
+				}
+			});
+			if (files == null)
+				throw new IOException("Not a directory: " + dir);
+			
+			// Segment numbers outgrow their four digits after 9999, so
+			// the names do not sort in order.
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File a, File b) {
+					return segmentNumber(a.getName()) - segmentNumber(b.getName());
+				}
+			});
+			this.segments = files;
+		}
+		
+		/**
+		 * Read the next block.
+		 * 
+		 * @return  The block, or null at the end of the capture
+		 */
+		public Block next() throws IOException {
+			while (buffer == null || !buffer.hasRemaining()) {
+				if (segment == segments.length)
+					return null;
+				open(segments[segment++]);
+			}
+			
+			int tag = buffer.get();
+			if (tag == DEVICE) {
+				readDevice();
+				return next();
+			}
+			if (tag != BLOCK)
+				throw new IOException("Corrupt capture (tag " + tag + ")");
+			
+			int id = buffer.getInt();
+			int n = buffer.getInt();
+			long mask = buffer.getLong();
+			Device device = getDevice(id);
+			if (device == null || device.axisMask() != mask)
+				throw new IOException("Block for unknown device " + id);
+			
+			Block b = block;
+			if (b.capacity < n) {
+				b.capacity = n;
+				b.time = new long[n];
+				b.event = new int[n];
+				b.source = new int[n];
+				b.action = new int[n];
+				b.buttonState = new int[n];
+				b.pointerId = new byte[n];
+				b.toolType = new byte[n];
+				b.values = new float[0][];
+			}
+			b.reset(device, device.axes);
+			b.rows = n;
+			
+			buffer.asLongBuffer().get(b.time, 0, n);
+			buffer.position(buffer.position() + 8 * n);
+			getInts(b.event, n);
+			getInts(b.source, n);
+			getInts(b.action, n);
+			getInts(b.buttonState, n);
+			buffer.get(b.pointerId, 0, n);
+			buffer.get(b.toolType, 0, n);
+			for (int a = 0; a < b.axes.length; a++) {
+				buffer.asFloatBuffer().get(b.values[a], 0, n);
+				buffer.position(buffer.position() + 4 * n);
+			}
+			return b;
+		}
+		
+		/**
+		 * @return  The most recent description of a device, or null if
+		 *          none has been read
+		 */
+		public Device getDevice(int id) {
+			return find(devices, id);
+		}
+		
+		void open(File file) throws IOException {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				MappedByteBuffer map = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+				if (f.length() < HEADER_SIZE || map.getInt() != MAGIC)
+					throw new IOException("Not a motion capture: " + file);
+				int version = map.getInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported motion capture version " + version);
+				int used = map.getInt();
+				map.getInt();
+				map.limit(used);
+				buffer = map;
+			} finally {
+				f.close();
+			}
+		}
+		
+		void readDevice() {
+			int id = buffer.getInt();
+			byte[] name = new byte[buffer.getShort() & 0xffff];
+			buffer.get(name);
+			int sources = buffer.getInt();
+			int n = buffer.get() & 0xff;
+			int[] axes = new int[n];
+			float[] min = new float[n];
+			float[] max = new float[n];
+			for (int i = 0; i < n; i++) {
+				axes[i] = buffer.get() & 0xff;
+				min[i] = buffer.getFloat();
+				max[i] = buffer.getFloat();
+			}
+			
+			Device d = new Device(id, new String(name, UTF8), sources, axes, min, max);
+			Device old = getDevice(id);
+			if (old != null)
+				devices.remove(old);
+			devices.add(d);
+		}
+		
+		void getInts(int[] values, int n) {
+			buffer.asIntBuffer().get(values, 0, n);
+			buffer.position(buffer.position() + 4 * n);
+		}
+		
+		@Override
+		public void close() {
+			buffer = null;
+		}
+	}
+	
+	static String segmentName(int segment) {
+		return String.format("capture-%04d.wdmc", segment);
+	}
+	
+	/**
+	 * @return  Number of the segment with the given file name, or -1 if
+	 *          it is not the name of a segment
+	 */
+	static int segmentNumber(String name) {
+		if (!name.startsWith("capture-") || !name.endsWith(".wdmc"))
+			return -1;
+		
+		try {
+			return Math.max(-1, Integer.parseInt(name.substring(8, name.length() - 5)));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	static Device find(List<Device> devices, int id) {
+		for (int i = 0; i < devices.size(); i++) {
+			if (devices.get(i).id == id)
+				return devices.get(i);
+		}
+		return null;
+	}
+	
+	static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value)
+				return true;
+		}
+		return false;
+	}
+}
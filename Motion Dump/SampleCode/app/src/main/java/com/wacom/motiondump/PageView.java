@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+import android.os.Build;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * A PageView shows DumpPages in a WebView. The document is loaded once,
+ * with a small script to replace its content and to update individual
+ * cells. Each page shown afterwards sends the WebView only what has
+ * changed since the last one: the text of the cells that differ, or
+ * the whole layout if that has changed.
+ * 
+ * @author wacom
+ */
+public class PageView {
+	
+	static final String SCRIPT =
+			  "function setLayout(h) { document.getElementById('content').innerHTML = h; }"
+			+ "function update(c) {"
+			+ "  for (var i = 0; i < c.length; i += 2)"
+			+ "    document.getElementById('c' + c[i]).textContent = c[i+1];"
+			+ "}";
+	
+	final WebView view;
+	final DumpPage shown = new DumpPage();       // Page the WebView is showing
+	final StringBuilder script = new StringBuilder(1024);
+	boolean ready;                              // Document (and so SCRIPT) is loaded
+	boolean blank = true;                       // Nothing has been shown yet
+	int updates, cellUpdates, layoutUpdates;
+	
+	/**
+	 * Load the document into a WebView.
+	 * 
+	 * @param view     WebView to show pages in
+	 * @param style    CSS for the document
+	 * @param message  Text to show until the first page
+	 */
+	public PageView(WebView view, String style, String message) {
+		this.view = view;
+		view.getSettings().setJavaScriptEnabled(true);
+		view.setWebViewClient(new WebViewClient() {
+			@Override
+			public void onPageFinished(WebView v, String url) {
+				ready = true;
+			}
+		});
+		
+		String document = String.format("<html><head><style>%s</style><script>%s</script></head>" +
+				"<body><div id='content'>%s</div></body></html>", style, SCRIPT, message);
+		view.loadDataWithBaseURL(null, document, "text/html", "utf-8", null);
+	}
+	
+	/**
+	 * Show a page, sending the WebView only the parts which differ from
+	 * the page shown last.
+	 * 
+	 * @param page  Page to show. It is copied, and may be reused.
+	 * @return      False if the document has not finished loading, in
+	 *              which case the page should be shown again later
+	 */
+	public boolean show(DumpPage page) {
+		if (!ready)
+			return false;
+		
+		script.setLength(0);
+		boolean relayout = blank || !page.sameLayout(shown);
+		if (relayout) {
+			script.append("setLayout(");
+			quote(page.layout, 0, page.layout.length(), script);
+			script.append(");");
+			layoutUpdates++;
+		}
+		
+		int changed = 0;
+		script.append("update([");
+		for (int i = 0; i < page.getCellCount(); i++) {
+			if (!relayout && page.sameCell(i, shown))
+				continue;
+			
+			if (changed++ > 0)
+				script.append(',');
+			script.append(i).append(',');
+			quote(page.text, page.start(i), page.ends[i], script);
+		}
+		script.append("]);");
+		
+		if (!relayout && changed == 0)
+			return true;
+		
+		shown.set(page);
+		blank = false;
+		updates++;
+		cellUpdates += changed;
+		
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+			view.evaluateJavascript(script.toString(), null);
+		else
+			view.loadUrl("javascript:" + script);
+		return true;
+	}
+	
+	public String toString() {
+		return String.format("PageView(%d updates, %d cells, %d layouts)", updates, cellUpdates, layoutUpdates);
+	}
+	
+	/**
+	 * Append text as a JavaScript string literal. Besides quotes and
+	 * line breaks, '%' is escaped, since a javascript: URL is decoded
+	 * before it is run.
+	 */
+	static void quote(CharSequence s, int start, int end, StringBuilder out) {
+		out.append('\'');
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':     out.append("\\\\"); break;
+			case '\'':     out.append("\\'"); break;
+			case '\n':     out.append("\\n"); break;
+			case '\r':     out.append("\\r"); break;
+			case '%':      out.append("\\x25"); break;
+			case '\u2028': out.append("\\u2028"); break;
+			case '\u2029': out.append("\\u2029"); break;
+			default:       out.append(c);
+			}
+		}
+		out.append('\'');
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wacom.motiondump;
+
+/**
+ * TextFormat appends numbers to a StringBuilder without allocating, for
+ * formatting every event as it is shown. Integers can be appended with
+ * StringBuilder.append directly; the methods here cover hexadecimal and
+ * floating point, whose usual formatting (Integer.toHexString,
+ * String.format, Float.toString) creates a new String each time.
+ * 
+ * @author wacom
+ */
+public final class TextFormat {
+	
+	/** Significant digits shown for a float (as many as it holds). */
+	static final int FLOAT_DIGITS = 7;
+	
+	static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	static final long[] POWERS = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+	};
+	
+	private TextFormat() {
+	}
+	
+	/**
+	 * Append an int in hexadecimal, e.g. "0x4002", as "0x%X" would.
+	 */
+	public static StringBuilder appendHex(StringBuilder b, int value) {
+		b.append("0x");
+		int shift = 28;
+		while (shift > 0 && (value >>> shift) == 0)
+			shift -= 4;
+		for (; shift >= 0; shift -= 4)
+			b.append(HEX[(value >>> shift) & 0xf]);
+		return b;
+	}
+	
+	/**
+	 * Append a float, rounded to seven significant digits. The format
+	 * follows Float.toString: "0.25", "1024.0" and "1.5E-5". Unlike
+	 * Float.toString, which may need an eighth digit to identify the
+	 * float exactly, a value may be shown rounded, e.g. "0.6423556"
+	 * rather than "0.64235556".
+	 */
+	public static StringBuilder appendFloat(StringBuilder b, float value) {
+		if (value != value)
+			return b.append("NaN");
+		if (value < 0 || (value == 0 && 1 / value < 0)) {
+			b.append('-');
+			value = -value;
+		}
+		if (value == Float.POSITIVE_INFINITY)
+			return b.append("Infinity");
+		if (value == 0)
+			return b.append("0.0");
+		
+		// Find the digits d.dddddd and the exponent of the value
+		double v = value;
+		int exponent = 0;
+		while (v >= 10) {
+			v /= 10;
+			exponent++;
+		}
+		while (v < 1) {
+			v *= 10;
+			exponent--;
+		}
+		long digits = Math.round(v * POWERS[FLOAT_DIGITS - 1]);
+		if (digits >= POWERS[FLOAT_DIGITS]) {
+			digits /= 10;
+			exponent++;
+		}
+		
+		// Trim trailing zeros, keeping those before the decimal point
+		int count = FLOAT_DIGITS;
+		int whole = exponent >= -3 && exponent < 7 ? Math.max(exponent + 1, 1) : 1;
+		while (count > whole && digits % 10 == 0) {
+			digits /= 10;
+			count--;
+		}
+		
+		if (exponent >= -3 && exponent < 7) {
+			if (exponent < 0) {
+				b.append("0.");
+				for (int i = -1; i > exponent; i--)
+					b.append('0');
+				appendDigits(b, digits, count);
+			} else {
+				appendDigits(b, digits / POWERS[count - exponent - 1], exponent + 1);
+				b.append('.');
+				if (count > exponent + 1)
+					appendDigits(b, digits % POWERS[count - exponent - 1], count - exponent - 1);
+				else
+					b.append('0');
+			}
+		} else {
+			appendDigits(b, digits / POWERS[count - 1], 1);
+			b.append('.');
+			if (count > 1)
+				appendDigits(b, digits % POWERS[count - 1], count - 1);
+			else
+				b.append('0');
+			b.append('E').append(exponent);
+		}
+		return b;
+	}
+	
+	/**
+	 * Append a float rounded to a number of decimal places, e.g. "4.25"
+	 * for two, as "%.2f" would. Values too large to round this way
+	 * (beyond 1E10) are appended as appendFloat would.
+	 */
+	public static StringBuilder appendFixed(StringBuilder b, float value, int decimals) {
+		if (value != value || Math.abs(value) >= 1E10f)
+			return appendFloat(b, value);
+		
+		long scaled = Math.round(Math.abs((double)value) * POWERS[decimals]);
+		if (value < 0 && scaled != 0)
+			b.append('-');
+		b.append(scaled / POWERS[decimals]);
+		if (decimals > 0) {
+			b.append('.');
+			appendDigits(b, scaled % POWERS[decimals], decimals);
+		}
+		return b;
+	}
+	
+	/**
+	 * Append exactly 'count' digits of a number, with leading zeros.
+	 */
+	static void appendDigits(StringBuilder b, long value, int count) {
+		for (int i = count - 1; i >= 0; i--)
+			b.append((char)('0' + (value / POWERS[i]) % 10));
+	}
+}
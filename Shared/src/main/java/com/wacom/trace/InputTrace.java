@@ -0,0 +1,388 @@
+/**
+ * Copyright (c) 2013, 2020 Wacom Technology Corp.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wacom.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * An InputTrace is a compact recording of the MotionEvents delivered to
+ * a view, which can be read back and replayed (e.g. by the benchmark
+ * harness) to reproduce performance problems seen in the field. Every
+ * event is stored with its full history, every axis its device
+ * reports, and the tool type, button state and timestamps of each
+ * pointer.
+ * 
+ * The file begins with a magic number and version, followed by records:
+ * 
+ *   DEVICE:  byte tag, int id, UTF name, int sources, byte ranges,
+ *            then per range: byte axis, float min, float max
+ *   EVENT:   byte tag, byte callback, int action, int buttonState,
+ *            int metaState, int deviceId, int source, long downTime,
+ *            byte pointers, then per pointer: byte id, byte toolType,
+ *            short rows, then per row: int time (relative to downTime),
+ *            and per pointer, a float for each of the device's axes
+ * 
+ * A DEVICE record precedes the first event of each device, and lists
+ * the axes recorded for its events. All values are big-endian.
+ * 
+ * Draw Simple and Motion Dump both record traces, so each compiles
+ * this class from the Shared source directory.
+ * 
+ * @author wacom
+ */
+public class InputTrace {
+	
+	static final int MAGIC = 0x57444954; // "WDIT"
+	static final int VERSION = 1;
+	
+	public static final int DEVICE = 1;
+	public static final int EVENT = 2;
+	
+	/** The event was delivered to onTouch. */
+	public static final int CALLBACK_TOUCH = 1;
+	/** The event was delivered to onHover. */
+	public static final int CALLBACK_HOVER = 2;
+	/** The event was delivered to onGenericMotion. */
+	public static final int CALLBACK_GENERIC = 3;
+	
+	/** Axes recorded for events of a device which cannot be looked up. */
+	static final int[] DEFAULT_AXES = {
+		MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_PRESSURE,
+		MotionEvent.AXIS_SIZE, MotionEvent.AXIS_ORIENTATION
+	};
+	
+	/**
+	 * Records events to a file. Writes are buffered, so events are
+	 * only guaranteed to be in the file once the writer is closed.
+	 */
+	public static class Writer implements Closeable {
+		
+		final DataOutputStream out;
+		final File file;
+		
+		int devices;                     // Number of devices seen
+		int[] deviceIds = new int[4];    // ID of each device seen
+		int[][] deviceAxes = new int[4][]; // Axes recorded for each device seen
+		
+		public Writer(File file) throws IOException {
+			this.file = file;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+		}
+		
+		/**
+		 * Record an event.
+		 * 
+		 * @param callback  CALLBACK_TOUCH, CALLBACK_HOVER or CALLBACK_GENERIC
+		 * @param e         The event
+		 */
+		public void record(int callback, MotionEvent e) throws IOException {
+			int[] axes = axes(e);
+			int pointers = e.getPointerCount();
+			int rows = e.getHistorySize() + 1;
+			long downTime = e.getDownTime();
+			
+			out.writeByte(EVENT);
+			out.writeByte(callback);
+			out.writeInt(e.getAction());
+			out.writeInt(e.getButtonState());
+			out.writeInt(e.getMetaState());
+			out.writeInt(e.getDeviceId());
+			out.writeInt(e.getSource());
+			out.writeLong(downTime);
+			out.writeByte(pointers);
+			for (int p = 0; p < pointers; p++) {
+				out.writeByte(e.getPointerId(p));
+				out.writeByte(e.getToolType(p));
+			}
+			
+			out.writeShort(rows);
+			for (int h = 0; h < rows; h++) {
+				boolean current = h == rows - 1;
+				out.writeInt((int)((current ? e.getEventTime() : e.getHistoricalEventTime(h)) - downTime));
+				for (int p = 0; p < pointers; p++) {
+					for (int axis : axes)
+						out.writeFloat(current ? e.getAxisValue(axis, p) : e.getHistoricalAxisValue(axis, p, h));
+				}
+			}
+		}
+		
+		/**
+		 * Find the axes recorded for an event's device, writing a
+		 * DEVICE record the first time the device is seen.
+		 */
+		int[] axes(MotionEvent e) throws IOException {
+			int id = e.getDeviceId();
+			for (int i = 0; i < devices; i++) {
+				if (deviceIds[i] == id)
+					return deviceAxes[i];
+			}
+			
+			InputDevice device = e.getDevice();
+			List<InputDevice.MotionRange> ranges = device == null ? null : device.getMotionRanges();
+			int n = 0;
+			int[] axes = DEFAULT_AXES;
+			InputDevice.MotionRange[] unique = null;
+			if (ranges != null && !ranges.isEmpty()) {
+				// Devices report a range per source, so an axis may be listed more than once
+				axes = new int[ranges.size()];
+				unique = new InputDevice.MotionRange[ranges.size()];
+				for (InputDevice.MotionRange r : ranges) {
+					int i = 0;
+					while (i < n && axes[i] != r.getAxis())
+						i++;
+					if (i == n) {
+						axes[n] = r.getAxis();
+						unique[n++] = r;
+					}
+				}
+				axes = java.util.Arrays.copyOf(axes, n);
+			}
+			else {
+				n = axes.length;
+			}
+			
+			out.writeByte(DEVICE);
+			out.writeInt(id);
+			out.writeUTF(device == null ? "" : device.getName());
+			out.writeInt(device == null ? e.getSource() : device.getSources());
+			out.writeByte(n);
+			for (int i = 0; i < n; i++) {
+				out.writeByte(axes[i]);
+				out.writeFloat(unique == null ? 0 : unique[i].getMin());
+				out.writeFloat(unique == null ? 0 : unique[i].getMax());
+			}
+			
+			if (devices == deviceIds.length) {
+				deviceIds = java.util.Arrays.copyOf(deviceIds, 2 * devices);
+				deviceAxes = java.util.Arrays.copyOf(deviceAxes, 2 * devices);
+			}
+			deviceIds[devices] = id;
+			deviceAxes[devices] = axes;
+			devices++;
+			return axes;
+		}
+		
+		public File getFile() {
+			return file;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Reads records back from a file, one at a time. After next()
+	 * returns DEVICE, the 'device' fields describe the device; after it
+	 * returns EVENT, toMotionEvent() rebuilds the event.
+	 */
+	public static class Reader implements Closeable {
+		
+		final DataInputStream in;
+		
+		public int deviceId;
+		public String deviceName;
+		public int deviceSources;
+		public int[] deviceAxes;
+		public float[] deviceMin, deviceMax;
+		
+		public int callback;
+		int action, buttonState, metaState, eventDeviceId, source, pointers, rows;
+		long downTime;
+		
+		final SparseAxes axesById = new SparseAxes();
+		MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[0];
+		MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[0];
+		long[] times = new long[0];
+		float[] values = new float[0]; // [row][pointer][axis]
+		int[] axes;
+		
+		public Reader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an input trace: " + file);
+			int version = in.readShort();
+			if (version != VERSION)
+				throw new IOException("Unsupported input trace version " + version);
+		}
+		
+		/**
+		 * Read the next record.
+		 * 
+		 * @return  DEVICE or EVENT, or 0 at the end of the trace
+		 */
+		public int next() throws IOException {
+			int tag;
+			try {
+				tag = in.readByte();
+			} catch (EOFException e) {
+				return 0;
+			}
+			
+			switch (tag) {
+				case DEVICE:
+					readDevice();
+					return DEVICE;
+				case EVENT:
+					readEvent();
+					return EVENT;
+				default:
+					throw new IOException("Corrupt input trace (tag " + tag + ")");
+			}
+		}
+		
+		void readDevice() throws IOException {
+			deviceId = in.readInt();
+			deviceName = in.readUTF();
+			deviceSources = in.readInt();
+			int n = in.readUnsignedByte();
+			deviceAxes = new int[n];
+			deviceMin = new float[n];
+			deviceMax = new float[n];
+			for (int i = 0; i < n; i++) {
+				deviceAxes[i] = in.readUnsignedByte();
+				deviceMin[i] = in.readFloat();
+				deviceMax[i] = in.readFloat();
+			}
+			axesById.put(deviceId, deviceAxes);
+		}
+		
+		void readEvent() throws IOException {
+			callback = in.readUnsignedByte();
+			action = in.readInt();
+			buttonState = in.readInt();
+			metaState = in.readInt();
+			eventDeviceId = in.readInt();
+			source = in.readInt();
+			downTime = in.readLong();
+			
+			pointers = in.readUnsignedByte();
+			if (properties.length < pointers) {
+				properties = new MotionEvent.PointerProperties[pointers];
+				coords = new MotionEvent.PointerCoords[pointers];
+				for (int p = 0; p < pointers; p++) {
+					properties[p] = new MotionEvent.PointerProperties();
+					coords[p] = new MotionEvent.PointerCoords();
+				}
+			}
+			for (int p = 0; p < pointers; p++) {
+				properties[p].id = in.readUnsignedByte();
+				properties[p].toolType = in.readUnsignedByte();
+			}
+			
+			axes = axesById.get(eventDeviceId);
+			if (axes == null)
+				throw new IOException("Event for unknown device " + eventDeviceId);
+			
+			rows = in.readUnsignedShort();
+			int stride = pointers * axes.length;
+			if (times.length < rows)
+				times = new long[rows];
+			if (values.length < rows * stride)
+				values = new float[rows * stride];
+			for (int h = 0; h < rows; h++) {
+				times[h] = downTime + in.readInt();
+				for (int i = 0; i < stride; i++)
+					values[h * stride + i] = in.readFloat();
+			}
+		}
+		
+		/**
+		 * @return  Time of the most recently read event
+		 */
+		public long getEventTime() {
+			return times[rows - 1];
+		}
+		
+		/**
+		 * Rebuild the most recently read event. The caller should
+		 * recycle it once done.
+		 */
+		public MotionEvent toMotionEvent() {
+			MotionEvent e = null;
+			for (int h = 0; h < rows; h++) {
+				for (int p = 0; p < pointers; p++) {
+					coords[p].clear();
+					for (int a = 0; a < axes.length; a++)
+						coords[p].setAxisValue(axes[a], values[(h * pointers + p) * axes.length + a]);
+				}
+				
+				if (e == null)
+					e = MotionEvent.obtain(downTime, times[h], action, pointers, properties, coords,
+					                       metaState, buttonState, 1, 1, eventDeviceId, 0, source, 0);
+				else
+					e.addBatch(times[h], coords, metaState);
+			}
+			return e;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Recorded axes of each device, by device ID.
+	 */
+	static class SparseAxes {
+		int[] ids = new int[0];
+		int[][] axes = new int[0][];
+		
+		void put(int id, int[] a) {
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] == id) {
+					axes[i] = a;
+					return;
+				}
+			}
+			ids = java.util.Arrays.copyOf(ids, ids.length + 1);
+			axes = java.util.Arrays.copyOf(axes, axes.length + 1);
+			ids[ids.length - 1] = id;
+			axes[axes.length - 1] = a;
+		}
+		
+		int[] get(int id) {
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] == id)
+					return axes[i];
+			}
+			return null;
+		}
+	}
+}